@@ -1,7 +1,7 @@
 import React, { useState } from 'react';
 import { Vendor, VendorIntegrationSnapshot, FileAttachment } from '../types/vendor';
 import { useSettings } from '../contexts/SettingsContext';
-import { parsePcapFile, PcapParseResponse, RadiusPacketData } from '../services/pcapService';
+import { streamPcapFile, profilePcapFile, PcapParseResponse, RadiusPacketData } from '../services/pcapService';
 import FileUpload from './FileUpload';
 import './VendorWizard.css';
 
@@ -42,6 +42,7 @@ const VendorWizard: React.FC<VendorWizardProps> = ({ initialData, onDataChange }
   const [pcapParams, setPcapParams] = useState({
     sourceIpFilter: '',
     textFilter: '',
+    filter: '',
   });
   const [pcapParseResult, setPcapParseResult] = useState<PcapParseResponse | null>(null);
   const [showPcapResultsModal, setShowPcapResultsModal] = useState(false);
@@ -201,7 +202,7 @@ const VendorWizard: React.FC<VendorWizardProps> = ({ initialData, onDataChange }
 
     const input = document.createElement('input');
     input.type = 'file';
-    input.accept = '.pcap,.cap';
+    input.accept = '.pcap,.pcapng,.cap,.gz,.zst,.lz4,.xz';
     input.onchange = async (e: Event) => {
       const target = e.target as HTMLInputElement;
       const file = target.files?.[0];
@@ -210,10 +211,16 @@ const VendorWizard: React.FC<VendorWizardProps> = ({ initialData, onDataChange }
       setPcapLoading(true);
 
       try {
-        const response = await parsePcapFile(
+        // Show packets as they arrive instead of waiting for the whole capture
+        const response = await streamPcapFile(
           file,
           pcapParams.sourceIpFilter || undefined,
-          pcapParams.textFilter || undefined
+          pcapParams.textFilter || undefined,
+          (partial) => {
+            setPcapParseResult(partial);
+            setShowPcapResultsModal(true);
+          },
+          pcapParams.filter || undefined
         );
 
         setPcapParseResult(response);
@@ -228,6 +235,47 @@ const VendorWizard: React.FC<VendorWizardProps> = ({ initialData, onDataChange }
     input.click();
   };
 
+  const handlePcapProfile = () => {
+    const input = document.createElement('input');
+    input.type = 'file';
+    input.accept = '.pcap,.pcapng,.cap,.gz,.zst,.lz4,.xz';
+    input.onchange = async (e: Event) => {
+      const target = e.target as HTMLInputElement;
+      const file = target.files?.[0];
+      if (!file) return;
+
+      setPcapLoading(true);
+
+      try {
+        const profile = await profilePcapFile(file);
+        const radius = snapshot.radius || {};
+        const draft = profile.draft;
+
+        // Fill in what the capture shows, keep what was entered for the rest
+        updateSnapshot('radius', {
+          ...radius,
+          accessRequest: draft.accessRequest || radius.accessRequest,
+          accountingStart: draft.accountingStart || radius.accountingStart,
+          accountingUpdate: draft.accountingUpdate || radius.accountingUpdate,
+          accountingStop: draft.accountingStop || radius.accountingStop,
+          authAttributes: { ...radius.authAttributes, ...draft.authAttributes },
+          acctAttributes: { ...radius.acctAttributes, ...draft.acctAttributes },
+          supportCoa: draft.supportCoa || radius.supportCoa,
+          packetSource: draft.packetSource || radius.packetSource,
+          authenticationMask: draft.authenticationMask || radius.authenticationMask,
+          supportMacAuthentication: draft.supportMacAuthentication || radius.supportMacAuthentication,
+          notes: (radius.notes || '') + `\n\nRADIUS profile inferred from PCAP (${profile.packets} RADIUS packets)`,
+        });
+      } catch (err: any) {
+        console.error('Failed to profile PCAP file:', err);
+        alert('Failed to parse PCAP file: ' + (err.message || 'Unknown error'));
+      } finally {
+        setPcapLoading(false);
+      }
+    };
+    input.click();
+  };
+
   const handleApplyPcapResults = () => {
     if (!pcapParseResult) return;
 
@@ -454,6 +502,14 @@ const VendorWizard: React.FC<VendorWizardProps> = ({ initialData, onDataChange }
           >
             Upload RADIUS pcap
           </button>
+          <button
+          type="button"
+          onClick={handlePcapProfile}
+          className="btn-sample"
+          disabled={pcapLoading}
+          >
+            Infer from pcap
+          </button>
         </div>
 
         <div className="form-group">
@@ -813,7 +869,18 @@ const VendorWizard: React.FC<VendorWizardProps> = ({ initialData, onDataChange }
                 onChange={(e) => setPcapParams({ ...pcapParams, textFilter: e.target.value })}
                 placeholder="Enter text to search in packet data"
               />
-              <small className="help-text">Filter packets containing specific text in attributes</small>
+              <small className="help-text">Filter packets containing specific text in attributes, separate several terms with |</small>
+            </div>
+
+            <div className="form-group">
+              <label>Filter Expression (optional)</label>
+              <input
+                type="text"
+                value={pcapParams.filter}
+                onChange={(e) => setPcapParams({ ...pcapParams, filter: e.target.value })}
+                placeholder='e.g. src in 10.0.0.0/8 and attr[User-Name] ~ "guest" and code == 4'
+              />
+              <small className="help-text">Match on addresses, ports, packet code and RADIUS attributes</small>
             </div>
 
             <div className="modal-actions">
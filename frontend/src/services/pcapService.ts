@@ -1,10 +1,13 @@
+import { RadiusConfig } from '../types/vendor';
+
 export interface RadiusPacketData {
   packetType: string;
   sourceIp: string;
   destinationIp: string;
   timestamp: number;
   attributes: { [key: string]: string };
-  rawData: string;
+  rawData?: string; // absent in the rows of cached captures, see getPacket
+  row?: number;
 }
 
 export interface PcapParseResponse {
@@ -15,6 +18,59 @@ export interface PcapParseResponse {
   totalPacketsProcessed: number;
   radiusPacketsFound: number;
   message: string;
+  captureId?: string;
+}
+
+export interface ValueCount {
+  value: string;
+  count: number;
+}
+
+export interface AttributePresence {
+  packetType: string;
+  attribute: string;
+  packets: number;
+  frequency: number;
+  values?: ValueCount[];
+  moreValues: boolean;
+}
+
+export interface RadiusProfile {
+  draft: RadiusConfig;
+  packets: number;
+  packetTypes: { [packetType: string]: number };
+  attributes: AttributePresence[];
+  requestSources: ValueCount[];
+  moreRequestSources: boolean;
+}
+
+export interface CaptureRates {
+  bucketMillis: number;
+  start?: number;
+  buckets: number;
+  total: number[];
+  packetTypes?: { [packetType: string]: number[] };
+  nasIdentifiers?: { [nasIdentifier: string]: number[] };
+  ssids?: { [ssid: string]: number[] };
+}
+
+export interface TrafficTimeline {
+  sampleMillis: number;
+  pointMillis: number;
+  start?: number;
+  points: number;
+  packets: number[];
+  octets: number[];
+  minPackets?: number[];
+  maxPackets?: number[];
+  minOctets?: number[];
+  maxOctets?: number[];
+}
+
+export interface PacketPage {
+  packets: RadiusPacketData[];
+  total: number;
+  nextCursor?: string;
 }
 
 export const parsePcapFile = async (
@@ -45,3 +101,226 @@ export const parsePcapFile = async (
 
   return response.json();
 };
+
+/**
+ * Infers the RADIUS profile of the device that sent a capture, with a draft of its RADIUS
+ * configuration. Only the profile comes back, never the packet lists.
+ */
+export const profilePcapFile = async (file: File, filter?: string): Promise<RadiusProfile> => {
+  const formData = new FormData();
+  formData.append('file', file);
+  formData.append('profile', 'true');
+
+  if (filter) {
+    formData.append('filter', filter);
+  }
+
+  const response = await fetch('/api/pcap/parse', {
+    method: 'POST',
+    body: formData,
+  });
+
+  if (!response.ok) {
+    const error = await response.text();
+    throw new Error(error || 'Failed to parse PCAP file');
+  }
+
+  const result = await response.json();
+  return result.profile;
+};
+
+/**
+ * Counts the packets of a capture per time bucket (e.g. `1m`), in total and per packet type,
+ * NAS-Identifier and SSID. Bucket `i` of every series starts at `start + i * bucketMillis`.
+ */
+export const ratesPcapFile = async (file: File, bucket: string, filter?: string): Promise<CaptureRates> => {
+  const formData = new FormData();
+  formData.append('file', file);
+  formData.append('rateBucket', bucket);
+
+  if (filter) {
+    formData.append('filter', filter);
+  }
+
+  const response = await fetch('/api/pcap/parse', {
+    method: 'POST',
+    body: formData,
+  });
+
+  if (!response.ok) {
+    const error = await response.text();
+    throw new Error(error || 'Failed to parse PCAP file');
+  }
+
+  const result = await response.json();
+  return result.rates;
+};
+
+/**
+ * Packet and octet counts of a capture over at most `points` points, e.g. the width of the chart
+ * in pixels, with the lowest and highest counts per `sampleMillis` within each point.
+ */
+export const timelinePcapFile = async (file: File, points: number, filter?: string): Promise<TrafficTimeline> => {
+  const formData = new FormData();
+  formData.append('file', file);
+  formData.append('timelinePoints', String(points));
+
+  if (filter) {
+    formData.append('filter', filter);
+  }
+
+  const response = await fetch('/api/pcap/parse', {
+    method: 'POST',
+    body: formData,
+  });
+
+  if (!response.ok) {
+    const error = await response.text();
+    throw new Error(error || 'Failed to parse PCAP file');
+  }
+
+  const result = await response.json();
+  return result.timeline;
+};
+
+/**
+ * Parses a capture through the streaming endpoint, which sends each packet as an NDJSON line
+ * as soon as it is decoded and the totals last. `onProgress` gets the packets received so far
+ * after every chunk of the response, so results can be shown before the parse completes.
+ */
+export const streamPcapFile = async (
+  file: File,
+  sourceIpFilter?: string,
+  textFilter?: string,
+  onProgress?: (partial: PcapParseResponse) => void,
+  filter?: string
+): Promise<PcapParseResponse> => {
+  const formData = new FormData();
+  formData.append('file', file);
+
+  if (sourceIpFilter) {
+    formData.append('sourceIpFilter', sourceIpFilter);
+  }
+
+  if (textFilter) {
+    formData.append('textFilter', textFilter);
+  }
+
+  if (filter) {
+    formData.append('filter', filter);
+  }
+
+  const response = await fetch('/api/pcap/parse/stream?format=ndjson', {
+    method: 'POST',
+    body: formData,
+  });
+
+  if (!response.ok || !response.body) {
+    const error = await response.text();
+    throw new Error(error || 'Failed to parse PCAP file');
+  }
+
+  const result: PcapParseResponse = {
+    accessRequests: [],
+    accountingStarts: [],
+    accountingUpdates: [],
+    accountingStops: [],
+    totalPacketsProcessed: 0,
+    radiusPacketsFound: 0,
+    message: '',
+  };
+
+  const categories: { [packetType: string]: RadiusPacketData[] } = {
+    'Access-Request': result.accessRequests,
+    'Accounting-Start': result.accountingStarts,
+    'Accounting-Interim-Update': result.accountingUpdates,
+    'Accounting-Stop': result.accountingStops,
+  };
+
+  const reader = response.body.getReader();
+  const decoder = new TextDecoder();
+  let pending = '';
+
+  for (;;) {
+    const { done, value } = await reader.read();
+    if (done) break;
+
+    pending += decoder.decode(value, { stream: true });
+    const lines = pending.split('\n');
+    pending = lines.pop() || '';
+
+    for (const line of lines) {
+      if (!line) continue;
+      const event = JSON.parse(line);
+      if (event.error) {
+        throw new Error(event.error);
+      } else if (event.packetType) {
+        categories[event.packetType]?.push(event);
+      } else {
+        result.totalPacketsProcessed = event.totalPacketsProcessed;
+        result.radiusPacketsFound = event.radiusPacketsFound;
+        result.message = event.message;
+      }
+    }
+
+    onProgress?.({ ...result });
+  }
+
+  return result;
+};
+
+/**
+ * Fetches one page of a packet list of a capture parsed before through `parsePcapFile`, whose
+ * response carries the `captureId`. Pass the `nextCursor` of a page to get the following one.
+ */
+export const getPacketPage = async (
+  captureId: string,
+  category: 'accessRequests' | 'accountingStarts' | 'accountingUpdates' | 'accountingStops',
+  cursor?: string,
+  limit = 100,
+  sourceIpFilter?: string,
+  textFilter?: string,
+  filter?: string
+): Promise<PacketPage> => {
+  const params = new URLSearchParams({ limit: String(limit) });
+
+  if (cursor) {
+    params.append('cursor', cursor);
+  }
+
+  if (sourceIpFilter) {
+    params.append('sourceIpFilter', sourceIpFilter);
+  }
+
+  if (textFilter) {
+    params.append('textFilter', textFilter);
+  }
+
+  if (filter) {
+    params.append('filter', filter);
+  }
+
+  const response = await fetch(`/api/pcap/captures/${captureId}/${category}?${params}`);
+
+  if (!response.ok) {
+    const error = await response.text();
+    throw new Error(error || 'Failed to load packets');
+  }
+
+  return response.json();
+};
+
+/**
+ * Fetches one whole packet, with its raw dump, of a capture parsed before through `parsePcapFile`:
+ * its packet lists and pages only carry the `row` of each packet.
+ */
+export const getPacket = async (captureId: string, row: number): Promise<RadiusPacketData> => {
+  const response = await fetch(`/api/pcap/captures/${captureId}/packets/${row}`);
+
+  if (!response.ok) {
+    const error = await response.text();
+    throw new Error(error || 'Failed to load packet');
+  }
+
+  return response.json();
+};
@@ -0,0 +1,163 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.CaptureSummary;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusAttribute;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.radius.RadiusPacketView;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Shape of a capture in one pass and fixed memory, whatever its size: packet counts per type,
+ * distinct User-Names and client MACs (Calling-Station-Id) with {@link HyperLogLog}, and the most
+ * frequent NAS-Identifiers and attribute values with {@link TopK}. Values are hashed straight
+ * from the packet view; text is only built for values entering the top lists.
+ * <p>
+ * Summarizers of consecutive chunks of a capture can be merged.
+ */
+public class CaptureSummarizer implements PacketObserver {
+
+    private static final int USER_NAME = 1;
+    private static final int USER_PASSWORD = 2;
+    private static final int CHAP_PASSWORD = 3;
+    private static final int STATE = 24;
+    private static final int CLASS = 25;
+    private static final int CALLING_STATION_ID = 31;
+    private static final int NAS_IDENTIFIER = 32;
+    private static final int PROXY_STATE = 33;
+    private static final int EAP_MESSAGE = 79;
+    private static final int MESSAGE_AUTHENTICATOR = 80;
+
+    private static final int TOP_VALUES = 10;
+
+    private final RadiusDictionary dictionary;
+    private final Function<RadiusPacketView, String> packetType;
+    private final Map<String, long[]> packetTypes = new LinkedHashMap<>();
+    private final HyperLogLog users = new HyperLogLog();
+    private final HyperLogLog clientMacs = new HyperLogLog();
+    private final TopK nasIdentifiers = new TopK();
+    private final TopK attributeValues = new TopK();
+    private long packets;
+
+    /**
+     * @param packetType name under which a packet is counted
+     */
+    public CaptureSummarizer(RadiusDictionary dictionary, Function<RadiusPacketView, String> packetType) {
+        this.dictionary = dictionary;
+        this.packetType = packetType;
+    }
+
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        packets++;
+        packetTypes.computeIfAbsent(packetType.apply(radius), type -> new long[1])[0]++;
+
+        ByteBuffer buffer = radius.getBuffer();
+        for (int i = 0; i < radius.getAttributeCount(); i++) {
+            int type = radius.getAttributeType(i);
+            int offset = radius.getAttributeValueOffset(i);
+            int length = radius.getAttributeValueLength(i);
+            switch (type) {
+                case USER_NAME:
+                    users.add(ValueHash.of(type, buffer, offset, length));
+                    break;
+                case CALLING_STATION_ID:
+                    clientMacs.add(macHash(buffer, offset, length));
+                    break;
+                case NAS_IDENTIFIER:
+                    long nasHash = ValueHash.of(type, buffer, offset, length);
+                    if (nasIdentifiers.add(nasHash)) {
+                        nasIdentifiers.track(nasHash, text(buffer, offset, length));
+                    }
+                    break;
+                case USER_PASSWORD:
+                case CHAP_PASSWORD:
+                case STATE:
+                case CLASS:
+                case PROXY_STATE:
+                case EAP_MESSAGE:
+                case MESSAGE_AUTHENTICATOR:
+                case RadiusDictionary.VENDOR_SPECIFIC:
+                    // Secrets, opaque state and per-packet values, never useful in a top list
+                    continue;
+                default:
+                    break;
+            }
+
+            RadiusAttribute attribute = dictionary.getAttribute(type);
+            if (attribute != null && attribute.isEncrypted()) continue;
+            long valueHash = ValueHash.of(type, buffer, offset, length);
+            if (attributeValues.add(valueHash)) {
+                attributeValues.track(valueHash, attributeValue(type, attribute, buffer, offset, length));
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of a summarizer of the following chunk.
+     *
+     * @return this summarizer
+     */
+    public CaptureSummarizer merge(CaptureSummarizer next) {
+        packets += next.packets;
+        next.packetTypes.forEach((type, count) -> packetTypes.computeIfAbsent(type, t -> new long[1])[0] += count[0]);
+        users.merge(next.users);
+        clientMacs.merge(next.clientMacs);
+        nasIdentifiers.merge(next.nasIdentifiers);
+        attributeValues.merge(next.attributeValues);
+        return this;
+    }
+
+    public CaptureSummary summary() {
+        CaptureSummary summary = new CaptureSummary();
+        summary.setPackets(packets);
+        Map<String, Long> types = new LinkedHashMap<>();
+        packetTypes.forEach((type, count) -> types.put(type, count[0]));
+        summary.setPacketTypes(types);
+        summary.setDistinctUsers(users.estimate());
+        summary.setDistinctClientMacs(clientMacs.estimate());
+        summary.setDistinctError(HyperLogLog.standardError());
+        summary.setTopNasIdentifiers(nasIdentifiers.top(TOP_VALUES));
+        summary.setNasIdentifierMaxOvercount(nasIdentifiers.maxOvercount());
+        summary.setTopAttributeValues(attributeValues.top(TOP_VALUES));
+        summary.setAttributeValueMaxOvercount(attributeValues.maxOvercount());
+        return summary;
+    }
+
+    private String attributeValue(int type, RadiusAttribute attribute, ByteBuffer buffer, int offset, int length) {
+        byte[] value = new byte[length];
+        buffer.get(offset, value);
+        if (attribute == null) {
+            return "Attribute-" + type + "=0x" + HexFormat.of().formatHex(value);
+        }
+        return attribute.getName() + "=" + attribute.format(value, 0, length);
+    }
+
+    private static String text(ByteBuffer buffer, int offset, int length) {
+        byte[] value = new byte[length];
+        buffer.get(offset, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hash of a MAC address whatever its notation (separators, case); other values are hashed as they are.
+     */
+    private static long macHash(ByteBuffer buffer, int offset, int length) {
+        long mac = 0;
+        int digits = 0;
+        for (int i = offset; i < offset + length && digits <= 12; i++) {
+            int digit = Character.digit(buffer.get(i), 16);
+            if (digit >= 0) {
+                mac = mac << 4 | digit;
+                digits++;
+            }
+        }
+        return digits == 12 ? ValueHash.mix(mac) : ValueHash.of(CALLING_STATION_ID, buffer, offset, length);
+    }
+}
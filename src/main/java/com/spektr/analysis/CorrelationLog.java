@@ -0,0 +1,82 @@
+package com.spektr.analysis;
+
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusPacketView;
+
+import java.util.Arrays;
+
+/**
+ * Compact record of the requests and responses of one chunk of a capture decoded in parallel.
+ * Correlation depends on packet order across chunk boundaries, so chunks only log the few
+ * header fields it needs (28 bytes per packet), with whether the packet matched the filter, and
+ * the logs are replayed in capture order through a single {@link RadiusCorrelator} once all
+ * chunks are done.
+ */
+public class CorrelationLog implements PacketObserver {
+
+    private static final int MATCHES = 1 << 16;
+
+    private long[] timestamps = new long[1024];
+    private long[] addresses = new long[1024];
+    private long[] portsAndHash = new long[1024];
+    private int[] codesAndIdentifiers = new int[1024];
+    private int size;
+
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        log(timestampNanos, datagram, radius, true);
+    }
+
+    @Override
+    public void observeUnmatched(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        log(timestampNanos, datagram, radius, false);
+    }
+
+    private void log(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius, boolean matches) {
+        int code = radius.getCode();
+        if (!RadiusCorrelator.isRequest(code) && !RadiusCorrelator.isResponse(code)) return;
+
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+            portsAndHash = Arrays.copyOf(portsAndHash, capacity);
+            codesAndIdentifiers = Arrays.copyOf(codesAndIdentifiers, capacity);
+        }
+        timestamps[size] = timestampNanos;
+        addresses[size] = ((long) datagram.getSourceIp() << 32) | (datagram.getDestinationIp() & 0xFFFFFFFFL);
+        portsAndHash[size] = ((long) datagram.getSourcePort() << 48) | ((long) datagram.getDestinationPort() << 32)
+                | (RadiusCorrelator.authenticatorHash(radius) & 0xFFFFFFFFL);
+        codesAndIdentifiers[size] = (matches ? MATCHES : 0) | (code << 8) | radius.getIdentifier();
+        size++;
+    }
+
+    /**
+     * Appends the log of the chunk that directly follows this one.
+     */
+    public CorrelationLog append(CorrelationLog next) {
+        int capacity = size + next.size;
+        if (capacity > timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+            portsAndHash = Arrays.copyOf(portsAndHash, capacity);
+            codesAndIdentifiers = Arrays.copyOf(codesAndIdentifiers, capacity);
+        }
+        System.arraycopy(next.timestamps, 0, timestamps, size, next.size);
+        System.arraycopy(next.addresses, 0, addresses, size, next.size);
+        System.arraycopy(next.portsAndHash, 0, portsAndHash, size, next.size);
+        System.arraycopy(next.codesAndIdentifiers, 0, codesAndIdentifiers, size, next.size);
+        size = capacity;
+        return this;
+    }
+
+    public void replay(RadiusCorrelator correlator) {
+        for (int i = 0; i < size; i++) {
+            correlator.observe(timestamps[i],
+                    (int) (addresses[i] >>> 32), (int) (portsAndHash[i] >>> 48),
+                    (int) addresses[i], (int) (portsAndHash[i] >>> 32) & 0xFFFF,
+                    (codesAndIdentifiers[i] >>> 8) & 0xFF, codesAndIdentifiers[i] & 0xFF, (int) portsAndHash[i],
+                    (codesAndIdentifiers[i] & MATCHES) != 0);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.DuplicateReport;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusPacketView;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Recognizes copies of a RADIUS packet seen shortly before, keyed by (source, destination,
+ * identifier, authenticator hash). A copy carried by the same IP datagram (same IP
+ * identification) is a duplicate, as when the capture sees the packet on several interfaces;
+ * otherwise it was sent again, a retransmission.
+ * <p>
+ * Packets are remembered in an insertion-ordered map trimmed from the oldest end once they are
+ * older than the window or too many are remembered. Feed packets in capture order.
+ */
+public class DuplicateDetector {
+
+    // Stacks sending every datagram with IP identification 0 only tell copies apart by timing
+    private static final long ZERO_ID_DUPLICATE_NANOS = 50_000_000L;
+
+    private final long windowNanos;
+    private final int maxEntries;
+    private final boolean suppress;
+    private final LinkedHashMap<Key, Seen> seen = new LinkedHashMap<>();
+    private long duplicates;
+    private long retransmissions;
+
+    /**
+     * @param suppress whether copies are dropped rather than only counted
+     */
+    public DuplicateDetector(Duration window, int maxEntries, boolean suppress) {
+        this.windowNanos = window.toNanos();
+        this.maxEntries = maxEntries;
+        this.suppress = suppress;
+    }
+
+    /**
+     * Counts the packet if it is a copy.
+     *
+     * @return true if the packet is a copy that should be dropped
+     */
+    public boolean isSuppressed(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        Iterator<Seen> oldest = seen.values().iterator();
+        while (oldest.hasNext() && timestampNanos - oldest.next().lastSeenNanos > windowNanos) {
+            oldest.remove();
+        }
+
+        Key key = new Key((long) datagram.getSourceIp() << 32 | (datagram.getDestinationIp() & 0xFFFFFFFFL),
+                radius.getIdentifier(), RadiusCorrelator.authenticatorHash(radius));
+        int ipIdentification = datagram.getIpIdentification();
+        Seen previous = seen.remove(key);
+        if (previous == null) {
+            seen.put(key, new Seen(timestampNanos, ipIdentification));
+            if (seen.size() > maxEntries) {
+                Iterator<Seen> eldest = seen.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            return false;
+        }
+
+        boolean duplicate = previous.ipIdentification == ipIdentification
+                && (ipIdentification != 0 || timestampNanos - previous.lastSeenNanos < ZERO_ID_DUPLICATE_NANOS);
+        if (duplicate) {
+            duplicates++;
+        } else {
+            retransmissions++;
+        }
+        previous.lastSeenNanos = timestampNanos;
+        previous.ipIdentification = ipIdentification;
+        seen.put(key, previous); // back to the young end of the map
+        return suppress;
+    }
+
+    public DuplicateReport report() {
+        return new DuplicateReport(duplicates, retransmissions, suppress);
+    }
+
+    private record Key(long addresses, int identifier, int authenticatorHash) {
+    }
+
+    private static class Seen {
+        long lastSeenNanos;
+        int ipIdentification;
+
+        Seen(long lastSeenNanos, int ipIdentification) {
+            this.lastSeenNanos = lastSeenNanos;
+            this.ipIdentification = ipIdentification;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.LatencyHistogramData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log-linear histogram of response times in microseconds, in the style of HdrHistogram: values
+ * below 32 us are counted exactly, larger ones in 16 sub-buckets per power of two, so every
+ * bucket is within about 6% of the values it holds. Fixed size, no allocation when recording.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_LIMIT = 2 * SUB_BUCKETS;
+    private static final int EXACT_BITS = SUB_BUCKET_BITS + 1;
+    // Up to 2^40 us, about 12 days
+    private static final int MAX_EXPONENT = 40;
+
+    private final long[] counts = new long[EXACT_LIMIT + (MAX_EXPONENT - EXACT_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the highest value equivalent to the given percentile, 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    public LatencyHistogramData toData() {
+        LatencyHistogramData data = new LatencyHistogramData();
+        data.setCount(count);
+        if (count == 0) return data;
+
+        data.setMinMillis(millis(min));
+        data.setMeanMillis(millis(sum) / count);
+        data.setP50Millis(millis(getValueAtPercentile(50)));
+        data.setP90Millis(millis(getValueAtPercentile(90)));
+        data.setP99Millis(millis(getValueAtPercentile(99)));
+        data.setP999Millis(millis(getValueAtPercentile(99.9)));
+        data.setMaxMillis(millis(max));
+
+        List<LatencyHistogramData.Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                buckets.add(new LatencyHistogramData.Bucket(millis(upperBound(i)), counts[i]));
+            }
+        }
+        data.setBuckets(buckets);
+        return data;
+    }
+
+    static int indexOf(long value) {
+        if (value < EXACT_LIMIT) return (int) value;
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        if (exponent == MAX_EXPONENT && value >= 1L << (MAX_EXPONENT + 1)) subBucket = SUB_BUCKETS - 1;
+        return EXACT_LIMIT + (exponent - EXACT_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+        if (index < EXACT_LIMIT) return index;
+        int exponent = EXACT_BITS + (index - EXACT_LIMIT) / SUB_BUCKETS;
+        int subBucket = (index - EXACT_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((long) (SUB_BUCKETS + subBucket) * width) + width - 1;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
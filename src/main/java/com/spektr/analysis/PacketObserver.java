@@ -0,0 +1,52 @@
+package com.spektr.analysis;
+
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusPacketView;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Sees every RADIUS packet that passes the packet filter, whatever its code, while the capture
+ * is scanned. Arguments are only valid during the call.
+ * <p>
+ * Observers pairing packets with each other, such as requests with their responses, are also
+ * shown the packets the filter leaves out through {@link #observeUnmatched}, and report only
+ * what involves matching packets.
+ */
+@FunctionalInterface
+public interface PacketObserver {
+
+    void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius);
+
+    /**
+     * Sees a RADIUS packet the packet filter leaves out, in capture order with the others; ignored
+     * by default.
+     */
+    default void observeUnmatched(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+    }
+
+    /**
+     * @return an observer passing each packet to all non-null {@code observers}, or null if there are none
+     */
+    static PacketObserver all(PacketObserver... observers) {
+        PacketObserver[] present = Arrays.stream(observers).filter(Objects::nonNull).toArray(PacketObserver[]::new);
+        if (present.length == 0) return null;
+        if (present.length == 1) return present[0];
+        return new PacketObserver() {
+            @Override
+            public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+                for (PacketObserver observer : present) {
+                    observer.observe(timestampNanos, datagram, radius);
+                }
+            }
+
+            @Override
+            public void observeUnmatched(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+                for (PacketObserver observer : present) {
+                    observer.observeUnmatched(timestampNanos, datagram, radius);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,268 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.CorrelationReport;
+import com.spektr.dto.TransactionStats;
+import com.spektr.pcap.Ipv4;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusCode;
+import com.spektr.radius.RadiusPacketView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Pairs RADIUS requests with their responses and collects response times, retransmissions and
+ * timeouts per NAS and per server.
+ * <p>
+ * A request is identified by (requester address, requester port, responder address, identifier),
+ * which is what a RADIUS client uses to match the answer. Requests wait in an insertion-ordered
+ * map that is trimmed from the oldest end as the capture time advances: a request unanswered for
+ * longer than the timeout, or pushed out because too many are pending, counts as a timeout.
+ * A request repeating a pending one with the same authenticator is a retransmission; response
+ * times are measured from the first transmission.
+ * <p>
+ * For Access and Accounting the NAS is the requester; for CoA and Disconnect it is the responder.
+ * Feed packets in capture order, those the packet filter leaves out included: only transactions
+ * with a matching request or response are reported, but a response is paired with its request
+ * whether they match or not.
+ */
+public class RadiusCorrelator implements PacketObserver {
+
+    private final long timeoutNanos;
+    private final int maxPending;
+    private final LinkedHashMap<Key, Pending> pending = new LinkedHashMap<>();
+    private final Stats total = new Stats();
+    private final Map<Integer, Stats> byNas = new HashMap<>();
+    private final Map<Integer, Stats> byServer = new HashMap<>();
+
+    public RadiusCorrelator(Duration timeout, int maxPending) {
+        this.timeoutNanos = timeout.toNanos();
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        observe(timestampNanos, datagram, radius, true);
+    }
+
+    @Override
+    public void observeUnmatched(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        observe(timestampNanos, datagram, radius, false);
+    }
+
+    private void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius, boolean matches) {
+        observe(timestampNanos, datagram.getSourceIp(), datagram.getSourcePort(),
+                datagram.getDestinationIp(), datagram.getDestinationPort(),
+                radius.getCode(), radius.getIdentifier(), authenticatorHash(radius), matches);
+    }
+
+    /**
+     * @param matches whether the packet passes the packet filter
+     */
+    public void observe(long timestampNanos, int sourceIp, int sourcePort, int destinationIp, int destinationPort,
+                        int code, int identifier, int authenticatorHash, boolean matches) {
+        evictExpired(timestampNanos);
+
+        if (isRequest(code)) {
+            Key key = new Key(sourceIp, destinationIp, sourcePort, identifier);
+            Pending previous = pending.remove(key);
+            if (previous != null && previous.authenticatorHash == authenticatorHash) {
+                previous.lastSentNanos = timestampNanos;
+                pending.put(key, previous); // back to the young end of the map
+                previous.retransmissions++;
+                if (previous.reported) count(previous.nas, previous.server, stats -> stats.retransmissions++);
+                else if (matches) report(previous);
+                return;
+            }
+            if (previous != null) {
+                // Identifier reused for a new request, the old one will not be answered anymore
+                timeout(previous);
+            }
+
+            boolean nasRequests = isNasRequest(code);
+            Pending request = new Pending(nasRequests ? sourceIp : destinationIp,
+                    nasRequests ? destinationIp : sourceIp, timestampNanos, authenticatorHash);
+            pending.put(key, request);
+            if (matches) report(request);
+            if (pending.size() > maxPending) {
+                Iterator<Pending> oldest = pending.values().iterator();
+                timeout(oldest.next());
+                oldest.remove();
+            }
+        } else if (isResponse(code)) {
+            Pending request = pending.remove(new Key(destinationIp, sourceIp, destinationPort, identifier));
+            if (request == null) {
+                if (!matches) return;
+                boolean fromNas = isNasResponse(code);
+                count(fromNas ? sourceIp : destinationIp, fromNas ? destinationIp : sourceIp,
+                        stats -> stats.unmatchedResponses++);
+                return;
+            }
+            if (matches && !request.reported) report(request);
+            if (!request.reported) return;
+
+            long micros = (timestampNanos - request.firstSentNanos) / 1000;
+            count(request.nas, request.server, stats -> {
+                stats.responses++;
+                stats.latency.record(micros);
+                switch (code) {
+                    case RadiusCode.ACCESS_ACCEPT:
+                        stats.accessAccepts++;
+                        break;
+                    case RadiusCode.ACCESS_REJECT:
+                        stats.accessRejects++;
+                        break;
+                    case RadiusCode.ACCESS_CHALLENGE:
+                        stats.accessChallenges++;
+                        break;
+                    case RadiusCode.ACCOUNTING_RESPONSE:
+                        stats.accountingResponses++;
+                        break;
+                    default:
+                        stats.otherResponses++;
+                        break;
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts the requests still pending as timeouts and returns the statistics. Call once, after
+     * the last packet.
+     */
+    public CorrelationReport report() {
+        for (Pending request : pending.values()) {
+            timeout(request);
+        }
+        pending.clear();
+        return new CorrelationReport(total.toData(null), toData(byNas), toData(byServer));
+    }
+
+    static int authenticatorHash(RadiusPacketView radius) {
+        int hash = 0;
+        int offset = radius.getAuthenticatorOffset();
+        for (int i = 0; i < 16; i++) {
+            hash = 31 * hash + radius.getBuffer().get(offset + i);
+        }
+        return hash;
+    }
+
+    static boolean isRequest(int code) {
+        return code == RadiusCode.ACCESS_REQUEST || code == RadiusCode.ACCOUNTING_REQUEST
+                || code == RadiusCode.STATUS_SERVER || code == RadiusCode.DISCONNECT_REQUEST
+                || code == RadiusCode.COA_REQUEST;
+    }
+
+    static boolean isResponse(int code) {
+        return code == RadiusCode.ACCESS_ACCEPT || code == RadiusCode.ACCESS_REJECT
+                || code == RadiusCode.ACCESS_CHALLENGE || code == RadiusCode.ACCOUNTING_RESPONSE
+                || isNasResponse(code);
+    }
+
+    private static boolean isNasRequest(int code) {
+        return code != RadiusCode.DISCONNECT_REQUEST && code != RadiusCode.COA_REQUEST;
+    }
+
+    private static boolean isNasResponse(int code) {
+        return code == RadiusCode.DISCONNECT_ACK || code == RadiusCode.DISCONNECT_NAK
+                || code == RadiusCode.COA_ACK || code == RadiusCode.COA_NAK;
+    }
+
+    private void evictExpired(long nowNanos) {
+        Iterator<Pending> oldest = pending.values().iterator();
+        while (oldest.hasNext()) {
+            Pending request = oldest.next();
+            if (nowNanos - request.lastSentNanos <= timeoutNanos) break;
+            timeout(request);
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Counts the request, and the retransmissions so far, once a packet of its transaction matches.
+     */
+    private void report(Pending request) {
+        request.reported = true;
+        count(request.nas, request.server, stats -> {
+            stats.requests++;
+            stats.retransmissions += request.retransmissions;
+        });
+    }
+
+    private void timeout(Pending request) {
+        if (request.reported) count(request.nas, request.server, stats -> stats.timeouts++);
+    }
+
+    private void count(int nas, int server, Consumer<Stats> update) {
+        update.accept(total);
+        update.accept(byNas.computeIfAbsent(nas, address -> new Stats()));
+        update.accept(byServer.computeIfAbsent(server, address -> new Stats()));
+    }
+
+    private static List<TransactionStats> toData(Map<Integer, Stats> stats) {
+        List<TransactionStats> data = new ArrayList<>(stats.size());
+        stats.forEach((address, value) -> data.add(value.toData(Ipv4.format(address))));
+        data.sort(Comparator.comparingLong(TransactionStats::getRequests).reversed()
+                .thenComparing(TransactionStats::getAddress));
+        return data;
+    }
+
+    private record Key(int requester, int responder, int requesterPort, int identifier) {
+    }
+
+    private static class Pending {
+        final int nas;
+        final int server;
+        final long firstSentNanos;
+        final int authenticatorHash;
+        long lastSentNanos;
+        int retransmissions;
+        boolean reported;
+
+        Pending(int nas, int server, long sentNanos, int authenticatorHash) {
+            this.nas = nas;
+            this.server = server;
+            this.firstSentNanos = sentNanos;
+            this.lastSentNanos = sentNanos;
+            this.authenticatorHash = authenticatorHash;
+        }
+    }
+
+    private static class Stats {
+        long requests;
+        long retransmissions;
+        long responses;
+        long accessAccepts;
+        long accessRejects;
+        long accessChallenges;
+        long accountingResponses;
+        long otherResponses;
+        long timeouts;
+        long unmatchedResponses;
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        TransactionStats toData(String address) {
+            TransactionStats data = new TransactionStats();
+            data.setAddress(address);
+            data.setRequests(requests);
+            data.setRetransmissions(retransmissions);
+            data.setResponses(responses);
+            data.setAccessAccepts(accessAccepts);
+            data.setAccessRejects(accessRejects);
+            data.setAccessChallenges(accessChallenges);
+            data.setAccountingResponses(accountingResponses);
+            data.setOtherResponses(otherResponses);
+            data.setTimeouts(timeouts);
+            data.setUnmatchedResponses(unmatchedResponses);
+            data.setLatency(latency.toData());
+            return data;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.spektr.analysis;
+
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusPacketView;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Every RADIUS datagram of a capture with just the fields the filters and observers look at:
+ * timestamp, addresses, ports, IP identification and the RADIUS packet bytes, which are kept
+ * back to back in one array. Replaying the log is the scan of the original capture without the
+ * capture file and without the link, IP and UDP decoding.
+ * <p>
+ * A log can be bounded, so that a capture with too much RADIUS traffic to keep is given up on as
+ * soon as that shows instead of after reading it all.
+ */
+public class RadiusDatagramLog implements PacketObserver {
+
+    private static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+    private static final int DATAGRAM_BYTES = 2 * Long.BYTES + 3 * Integer.BYTES;
+
+    private long maxSize;
+
+    private long[] timestamps = new long[1024];
+    private long[] addresses = new long[1024];
+    private int[] ports = new int[1024];
+    private int[] ipIdentifications = new int[1024];
+    private int[] packetEnds = new int[1024];
+    private byte[] bytes = new byte[64 * 1024];
+    private int size;
+
+    public RadiusDatagramLog() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize bound of the {@link #estimatedSize} of the log
+     */
+    public RadiusDatagramLog(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @throws IllegalStateException if the log would grow beyond its bound, or the packets would
+     *                               not fit in a single array
+     */
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        ensureCapacity(size + 1, (long) end() + radius.getLength());
+        timestamps[size] = timestampNanos;
+        addresses[size] = ((long) datagram.getSourceIp() << 32) | (datagram.getDestinationIp() & 0xFFFFFFFFL);
+        ports[size] = (datagram.getSourcePort() << 16) | datagram.getDestinationPort();
+        ipIdentifications[size] = datagram.getIpIdentification();
+        radius.getBuffer().get(radius.getOffset(), bytes, end(), radius.getLength());
+        packetEnds[size] = end() + radius.getLength();
+        size++;
+    }
+
+    /**
+     * Appends the log of the chunk that directly follows this one; the bounds of both logs add up.
+     */
+    public RadiusDatagramLog append(RadiusDatagramLog next) {
+        int base = end();
+        maxSize = maxSize > Long.MAX_VALUE - next.maxSize ? Long.MAX_VALUE : maxSize + next.maxSize;
+        ensureCapacity(size + next.size, (long) base + next.end());
+        System.arraycopy(next.timestamps, 0, timestamps, size, next.size);
+        System.arraycopy(next.addresses, 0, addresses, size, next.size);
+        System.arraycopy(next.ports, 0, ports, size, next.size);
+        System.arraycopy(next.ipIdentifications, 0, ipIdentifications, size, next.size);
+        System.arraycopy(next.bytes, 0, bytes, base, next.end());
+        for (int i = 0; i < next.size; i++) {
+            packetEnds[size + i] = base + next.packetEnds[i];
+        }
+        size += next.size;
+        return this;
+    }
+
+    /**
+     * Shows every logged datagram to {@code observer}, in capture order.
+     */
+    public void replay(PacketObserver observer) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        UdpDatagram datagram = new UdpDatagram();
+        RadiusPacketView radius = new RadiusPacketView();
+        for (int i = 0; i < size; i++) {
+            int start = i == 0 ? 0 : packetEnds[i - 1];
+            int length = packetEnds[i] - start;
+            datagram.wrap((int) (addresses[i] >>> 32), ports[i] >>> 16, (int) addresses[i], ports[i] & 0xFFFF,
+                    ipIdentifications[i], buffer, start, length);
+            radius.wrap(buffer, start, length);
+            observer.observe(timestamps[i], datagram, radius);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap size of the log in bytes.
+     */
+    public long estimatedSize() {
+        return (long) timestamps.length * DATAGRAM_BYTES + bytes.length;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(timestamps[i]);
+            out.writeLong(addresses[i]);
+            out.writeInt(ports[i]);
+            out.writeShort(ipIdentifications[i]);
+            out.writeInt(packetEnds[i]);
+        }
+        out.writeInt(end());
+        out.write(bytes, 0, end());
+    }
+
+    public static RadiusDatagramLog read(DataInputStream in) throws IOException {
+        RadiusDatagramLog log = new RadiusDatagramLog();
+        int size = in.readInt();
+        log.ensureCapacity(size, 0);
+        for (int i = 0; i < size; i++) {
+            log.timestamps[i] = in.readLong();
+            log.addresses[i] = in.readLong();
+            log.ports[i] = in.readInt();
+            log.ipIdentifications[i] = in.readUnsignedShort();
+            log.packetEnds[i] = in.readInt();
+        }
+        log.size = size;
+
+        int length = in.readInt();
+        log.ensureCapacity(size, length);
+        in.readFully(log.bytes, 0, length);
+        return log;
+    }
+
+    private int end() {
+        return size == 0 ? 0 : packetEnds[size - 1];
+    }
+
+    private void ensureCapacity(int datagrams, long byteCount) {
+        if ((long) datagrams * DATAGRAM_BYTES + byteCount > maxSize) {
+            throw new IllegalStateException("RADIUS traffic of the capture exceeds " + maxSize + " bytes");
+        }
+        if (datagrams > timestamps.length) {
+            int capacity = Math.max(datagrams, timestamps.length * 2);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+            ports = Arrays.copyOf(ports, capacity);
+            ipIdentifications = Arrays.copyOf(ipIdentifications, capacity);
+            packetEnds = Arrays.copyOf(packetEnds, capacity);
+        }
+        if (byteCount > bytes.length) {
+            if (byteCount > MAX_BYTES) {
+                throw new IllegalStateException("RADIUS traffic of the capture exceeds " + MAX_BYTES + " bytes");
+            }
+            // Not doubled past the bound
+            long limit = Math.min(MAX_BYTES, Math.max(byteCount, maxSize - (long) timestamps.length * DATAGRAM_BYTES));
+            bytes = Arrays.copyOf(bytes, (int) Math.min(limit, Math.max(byteCount, bytes.length * 2L)));
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.AttributePresence;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.dto.RadiusProfile;
+import com.spektr.dto.ValueCount;
+import com.spektr.model.Vendor;
+import com.spektr.pcap.Ipv4;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusAttribute;
+import com.spektr.radius.RadiusCode;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.radius.RadiusPacketFormatter;
+import com.spektr.radius.RadiusPacketView;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Infers the RADIUS behaviour of a device in one pass over a capture, for a draft of its
+ * {@link Vendor.Radius} configuration: which attributes each packet type carries and how often,
+ * their most frequent values, the password authentication methods, MAC authentication, CoA
+ * support and the senders of the requests. The most frequent values of each attribute are
+ * counted with a small {@link TopK} sketch, and only the first packet of each type is kept,
+ * whatever the size of the capture. Packets are copied into one reused array to be walked.
+ * <p>
+ * Profilers of consecutive chunks of a capture can be merged.
+ */
+public class RadiusProfiler implements PacketObserver, RadiusPacketFormatter.RawAttributeVisitor {
+
+    // Attributes present in at least this share of their packets go into the draft
+    private static final double DRAFT_PRESENCE = 0.5;
+
+    // 8KB sketch per attribute of a packet type
+    private static final int VALUE_SKETCH_WIDTH = 256;
+    private static final int TRACKED_VALUES = 16;
+    private static final int TRACKED_SOURCES = 1024;
+    private static final int TOP_VALUES = 5;
+    private static final int TOP_SOURCES = 10;
+    private static final String HIDDEN = "<hidden>";
+
+    private static final int USER_NAME = 1;
+    private static final int USER_PASSWORD = 2;
+    private static final int CHAP_PASSWORD = 3;
+    private static final int SERVICE_TYPE = 6;
+    private static final int STATE = 24;
+    private static final int CLASS = 25;
+    private static final int CALLING_STATION_ID = 31;
+    private static final int PROXY_STATE = 33;
+    private static final int EAP_MESSAGE = 79;
+    private static final int MESSAGE_AUTHENTICATOR = 80;
+    private static final int SERVICE_TYPE_CALL_CHECK = 10;
+    private static final int MICROSOFT = 311;
+    private static final int MS_CHAP_CHALLENGE = 11;
+    private static final int MS_CHAP2_RESPONSE = 25;
+
+    private final RadiusDictionary dictionary;
+    private final Function<RadiusPacketView, String> packetType;
+    private final Map<String, TypeProfile> types = new LinkedHashMap<>();
+    private final Map<Integer, long[]> requestSources = new HashMap<>();
+    private final byte[] packet = new byte[RadiusPacketView.MAX_PACKET_LENGTH];
+    private boolean moreRequestSources;
+    private long packets;
+    private int authenticationMask;
+    private long macAuthentications;
+    private boolean coa;
+
+    // Packet being visited
+    private TypeProfile current;
+    private boolean accessRequest;
+    private long userName = -1;
+    private long callingStationId = -1;
+    private boolean callCheck;
+
+    /**
+     * @param packetType name under which a packet is profiled
+     */
+    public RadiusProfiler(RadiusDictionary dictionary, Function<RadiusPacketView, String> packetType) {
+        this.dictionary = dictionary;
+        this.packetType = packetType;
+    }
+
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        packets++;
+        int code = radius.getCode();
+        if (code >= RadiusCode.DISCONNECT_REQUEST && code <= RadiusCode.COA_NAK) coa = true;
+        if (code == RadiusCode.ACCESS_REQUEST || code == RadiusCode.ACCOUNTING_REQUEST) {
+            long[] count = requestSources.get(datagram.getSourceIp());
+            if (count != null) {
+                count[0]++;
+            } else if (requestSources.size() < TRACKED_SOURCES) {
+                requestSources.put(datagram.getSourceIp(), new long[]{1});
+            } else {
+                moreRequestSources = true;
+            }
+        }
+
+        String type = packetType.apply(radius);
+        current = types.computeIfAbsent(type, t -> new TypeProfile());
+        current.packets++;
+        int length = radius.getLength();
+        radius.getBuffer().get(radius.getOffset(), packet, 0, length);
+        if (current.sample == null) {
+            current.sample = new Sample(Arrays.copyOf(packet, length), datagram.getSourceIp(),
+                    datagram.getDestinationIp(), Math.floorDiv(timestampNanos, 1_000_000L));
+        }
+
+        accessRequest = code == RadiusCode.ACCESS_REQUEST;
+        userName = -1;
+        callingStationId = -1;
+        callCheck = false;
+        RadiusPacketFormatter.visit(dictionary, packet, length, this);
+        if (callCheck || (userName >= 0 && userName == callingStationId)) macAuthentications++;
+    }
+
+    @Override
+    public void attribute(int vendorId, int type, String name, RadiusAttribute attribute, byte[] packet, int offset,
+                          int length) {
+        if (accessRequest) {
+            if (vendorId == 0 && type == USER_PASSWORD) authenticationMask |= Vendor.PasswordAuthenticationMask.PAP.getFlag();
+            if (vendorId == 0 && type == CHAP_PASSWORD) authenticationMask |= Vendor.PasswordAuthenticationMask.CHAP.getFlag();
+            if (vendorId == MICROSOFT && type == MS_CHAP2_RESPONSE) {
+                authenticationMask |= Vendor.PasswordAuthenticationMask.MS_CHAP_V2.getFlag();
+            }
+            if (vendorId == 0 && type == USER_NAME) userName = mac(packet, offset, length);
+            if (vendorId == 0 && type == CALLING_STATION_ID) callingStationId = mac(packet, offset, length);
+            if (vendorId == 0 && type == SERVICE_TYPE && length == 4 && intValue(packet, offset) == SERVICE_TYPE_CALL_CHECK) {
+                callCheck = true;
+            }
+        }
+
+        AttributeProfile profile = current.attributes.computeIfAbsent(name,
+                n -> new AttributeProfile(isHidden(vendorId, type, attribute)));
+        if (profile.lastPacket != current.packets) {
+            profile.lastPacket = current.packets;
+            profile.packets++;
+        }
+        if (!profile.hidden) {
+            profile.add(ValueHash.of(packet, offset, length), vendorId, attribute, packet, offset, length);
+        }
+    }
+
+    /**
+     * Adds the profile of the following chunk.
+     *
+     * @return this profiler
+     */
+    public RadiusProfiler merge(RadiusProfiler next) {
+        packets += next.packets;
+        authenticationMask |= next.authenticationMask;
+        macAuthentications += next.macAuthentications;
+        coa |= next.coa;
+        moreRequestSources |= next.moreRequestSources;
+        next.requestSources.forEach((source, count) -> {
+            long[] merged = requestSources.get(source);
+            if (merged != null) {
+                merged[0] += count[0];
+            } else if (requestSources.size() < TRACKED_SOURCES) {
+                requestSources.put(source, count);
+            } else {
+                moreRequestSources = true;
+            }
+        });
+        next.types.forEach((type, profile) -> {
+            TypeProfile merged = types.get(type);
+            if (merged == null) {
+                types.put(type, profile);
+            } else {
+                merged.merge(profile);
+            }
+        });
+        return this;
+    }
+
+    public RadiusProfile profile() {
+        RadiusProfile profile = new RadiusProfile();
+        profile.setPackets(packets);
+
+        Map<String, Long> packetTypes = new LinkedHashMap<>();
+        List<AttributePresence> attributes = new ArrayList<>();
+        types.forEach((type, typeProfile) -> {
+            packetTypes.put(type, typeProfile.packets);
+            typeProfile.attributes.forEach((name, attribute) -> attributes.add(new AttributePresence(type, name,
+                    attribute.packets, (double) attribute.packets / typeProfile.packets,
+                    attribute.hidden ? null : attribute.top(TOP_VALUES), attribute.hasMore(TOP_VALUES))));
+        });
+        profile.setPacketTypes(packetTypes);
+        profile.setAttributes(attributes);
+
+        List<ValueCount> sources = new ArrayList<>(requestSources.size());
+        requestSources.forEach((source, count) -> sources.add(new ValueCount(Ipv4.format(source), count[0])));
+        sources.sort(Comparator.comparingLong(ValueCount::getCount).reversed().thenComparing(ValueCount::getValue));
+        profile.setRequestSources(sources.subList(0, Math.min(TOP_SOURCES, sources.size())));
+        profile.setMoreRequestSources(moreRequestSources);
+
+        profile.setDraft(draft(sources));
+        return profile;
+    }
+
+    private Vendor.Radius draft(List<ValueCount> sources) {
+        Vendor.Radius draft = new Vendor.Radius();
+        draft.setAccessRequest(sample("Access-Request"));
+        draft.setAccountingStart(sample("Accounting-Start"));
+        draft.setAccountingUpdate(sample("Accounting-Interim-Update"));
+        draft.setAccountingStop(sample("Accounting-Stop"));
+
+        TypeProfile auth = types.get("Access-Request");
+        draft.setAuthAttributes(auth != null ? draftAttributes(List.of(auth)) : Map.of());
+        List<TypeProfile> accounting = new ArrayList<>();
+        for (String type : List.of("Accounting-Start", "Accounting-Interim-Update", "Accounting-Stop", "Accounting-Request")) {
+            if (types.containsKey(type)) accounting.add(types.get(type));
+        }
+        draft.setAcctAttributes(draftAttributes(accounting));
+
+        draft.setSupportCoa(coa);
+        draft.setPacketSource(sources.isEmpty() ? null : sources.get(0).getValue());
+        draft.setAuthenticationMask(authenticationMask);
+        draft.setSupportMacAuthentication(macAuthentications > 0);
+        return draft;
+    }
+
+    /**
+     * Attributes carried by most packets of the given types, with their most frequent value.
+     */
+    private static Map<String, String> draftAttributes(List<TypeProfile> profiles) {
+        long total = 0;
+        Map<String, AttributeProfile> merged = new LinkedHashMap<>();
+        for (TypeProfile profile : profiles) {
+            total += profile.packets;
+            profile.attributes.forEach((name, attribute) -> merged.merge(name, attribute.copy(), AttributeProfile::merge));
+        }
+
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (Map.Entry<String, AttributeProfile> entry : merged.entrySet()) {
+            AttributeProfile attribute = entry.getValue();
+            if (attribute.packets < DRAFT_PRESENCE * total) continue;
+            List<ValueCount> top = attribute.hidden ? List.of() : attribute.top(1);
+            attributes.put(entry.getKey(), top.isEmpty() ? HIDDEN : top.get(0).getValue());
+        }
+        return attributes;
+    }
+
+    private String sample(String type) {
+        TypeProfile profile = types.get(type);
+        if (profile == null) return null;
+
+        Sample sample = profile.sample;
+        RadiusPacketData data = new RadiusPacketData();
+        RadiusPacketFormatter.materialize(dictionary, sample.packet, data);
+        return "[" + Instant.ofEpochMilli(sample.timestamp) + "] " + Ipv4.format(sample.sourceIp) + " -> "
+                + Ipv4.format(sample.destinationIp) + "\n" + data.getRawData();
+    }
+
+    /**
+     * Secrets, and opaque or per-packet values, whose values are not worth recording.
+     */
+    private static boolean isHidden(int vendorId, int type, RadiusAttribute attribute) {
+        if (attribute != null && attribute.isEncrypted()) return true;
+        if (vendorId == MICROSOFT) return type == MS_CHAP_CHALLENGE || type == MS_CHAP2_RESPONSE;
+        if (vendorId != 0) return false;
+        switch (type) {
+            case USER_PASSWORD:
+            case CHAP_PASSWORD:
+            case STATE:
+            case CLASS:
+            case PROXY_STATE:
+            case EAP_MESSAGE:
+            case MESSAGE_AUTHENTICATOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * A MAC address as a number whatever its notation, or -1 if the value is not one.
+     */
+    private static long mac(byte[] packet, int offset, int length) {
+        long mac = 0;
+        int digits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = Character.digit(packet[i], 16);
+            if (digit >= 0) {
+                if (++digits > 12) return -1;
+                mac = mac << 4 | digit;
+            } else if (packet[i] != ':' && packet[i] != '-' && packet[i] != '.') {
+                return -1;
+            }
+        }
+        return digits == 12 ? mac : -1;
+    }
+
+    private static int intValue(byte[] packet, int offset) {
+        return (packet[offset] & 0xFF) << 24 | (packet[offset + 1] & 0xFF) << 16
+                | (packet[offset + 2] & 0xFF) << 8 | (packet[offset + 3] & 0xFF);
+    }
+
+    private record Sample(byte[] packet, int sourceIp, int destinationIp, long timestamp) {
+    }
+
+    private static class TypeProfile {
+        final Map<String, AttributeProfile> attributes = new LinkedHashMap<>();
+        long packets;
+        Sample sample;
+
+        void merge(TypeProfile next) {
+            next.attributes.forEach((name, attribute) -> attributes.merge(name, attribute, AttributeProfile::merge));
+            packets += next.packets;
+            if (sample == null) sample = next.sample;
+        }
+    }
+
+    /**
+     * Presence of an attribute in the packets of a type, and the most frequent of its values with
+     * their estimated counts; the values of hidden attributes are not counted.
+     */
+    private static class AttributeProfile {
+        final boolean hidden;
+        final TopK values;
+        long packets;
+        long lastPacket;
+
+        AttributeProfile(boolean hidden) {
+            this.hidden = hidden;
+            this.values = hidden ? null : new TopK(VALUE_SKETCH_WIDTH, TRACKED_VALUES);
+        }
+
+        void add(long hash, int vendorId, RadiusAttribute attribute, byte[] packet, int offset, int length) {
+            if (values.add(hash)) {
+                values.track(hash, RadiusPacketFormatter.format(vendorId, attribute, packet, offset, length));
+            }
+        }
+
+        AttributeProfile merge(AttributeProfile next) {
+            packets += next.packets;
+            if (values != null) values.merge(next.values);
+            return this;
+        }
+
+        AttributeProfile copy() {
+            AttributeProfile copy = new AttributeProfile(hidden);
+            return copy.merge(this);
+        }
+
+        List<ValueCount> top(int limit) {
+            return values.top(limit);
+        }
+
+        /**
+         * Whether more than {@code limit} distinct values were seen, exact for limits below
+         * {@value #TRACKED_VALUES} as every new value is tracked until the candidates are full.
+         */
+        boolean hasMore(int limit) {
+            return !hidden && values.top(limit + 1).size() > limit;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.CaptureRates;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusPacketView;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Packet rates over time in one pass: packets are counted in fixed-width time buckets aligned on
+ * the epoch, in total and per packet type, NAS-Identifier and SSID (the part of Called-Station-Id
+ * after the access point MAC, as in {@code 00-10-A4-23-19-C0:Guest}). Counters are plain long
+ * arrays; NAS-Identifiers and SSIDs are looked up by a hash of the packet bytes and only turned
+ * into text the first time they are seen. Past {@code maxSeries} keys in a dimension, packets
+ * are counted under {@value #OTHER}. The buckets of all series together are bounded by
+ * {@code maxBuckets}, so that narrow buckets over a long capture are refused rather than filling the heap.
+ * <p>
+ * Aggregators of consecutive chunks of a capture can be merged; their bounds add up.
+ */
+public class RateAggregator implements PacketObserver {
+
+    public static final String OTHER = "(other)";
+
+    // Bounds the span of one series, whatever the capture and bucket
+    private static final int MAX_BUCKETS = 1 << 20;
+    private static final int FIRST_BUCKETS = 16;
+
+    private static final int CALLED_STATION_ID = 30;
+    private static final int NAS_IDENTIFIER = 32;
+
+    private final long bucketNanos;
+    private long maxBuckets;
+    private long buckets;
+    private final Function<RadiusPacketView, String> packetType;
+    private final Series total = new Series(null);
+    private final Map<String, Series> packetTypes = new HashMap<>();
+    private final SeriesTable nasIdentifiers;
+    private final SeriesTable ssids;
+
+    /**
+     * @param maxBuckets bound of the buckets of all series together
+     * @param packetType name under which a packet is counted
+     * @throws IllegalArgumentException if the bucket is shorter than a millisecond
+     */
+    public RateAggregator(Duration bucket, int maxSeries, long maxBuckets, Function<RadiusPacketView, String> packetType) {
+        if (bucket.toMillis() < 1) {
+            throw new IllegalArgumentException("Rate buckets must be at least 1ms wide");
+        }
+        this.bucketNanos = bucket.toNanos();
+        this.maxBuckets = maxBuckets;
+        this.packetType = packetType;
+        this.nasIdentifiers = new SeriesTable(maxSeries);
+        this.ssids = new SeriesTable(maxSeries);
+    }
+
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        long bucket = Math.floorDiv(timestampNanos, bucketNanos);
+        total.add(bucket, 1);
+        packetTypes.computeIfAbsent(packetType.apply(radius), Series::new).add(bucket, 1);
+
+        ByteBuffer buffer = radius.getBuffer();
+        int nas = radius.findAttribute(NAS_IDENTIFIER);
+        if (nas >= 0) {
+            nasIdentifiers.add(bucket, buffer, radius.getAttributeValueOffset(nas), radius.getAttributeValueLength(nas));
+        }
+        int called = radius.findAttribute(CALLED_STATION_ID);
+        if (called >= 0) {
+            int offset = radius.getAttributeValueOffset(called);
+            int end = offset + radius.getAttributeValueLength(called);
+            int ssid = ssidOffset(buffer, offset, end);
+            if (ssid >= 0) {
+                ssids.add(bucket, buffer, ssid, end - ssid);
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of an aggregator of the following chunk.
+     *
+     * @return this aggregator
+     */
+    public RateAggregator merge(RateAggregator next) {
+        maxBuckets = maxBuckets > Long.MAX_VALUE - next.maxBuckets ? Long.MAX_VALUE : maxBuckets + next.maxBuckets;
+        total.merge(next.total);
+        next.packetTypes.forEach((type, series) -> packetTypes.computeIfAbsent(type, Series::new).merge(series));
+        nasIdentifiers.merge(next.nasIdentifiers);
+        ssids.merge(next.ssids);
+        return this;
+    }
+
+    /**
+     * Every series over the same buckets, from the first packet to the last.
+     */
+    public CaptureRates rates() {
+        CaptureRates rates = new CaptureRates();
+        rates.setBucketMillis(bucketNanos / 1_000_000L);
+        if (total.counts == null) {
+            rates.setTotal(new long[0]);
+            return rates;
+        }
+
+        long first = total.first;
+        int buckets = total.length;
+        rates.setStart(first * bucketNanos / 1_000_000L);
+        rates.setBuckets(buckets);
+        rates.setTotal(total.toArray(first, buckets));
+        rates.setPacketTypes(toArrays(packetTypes.values(), first, buckets));
+        rates.setNasIdentifiers(toArrays(nasIdentifiers.series(), first, buckets));
+        rates.setSsids(toArrays(ssids.series(), first, buckets));
+        return rates;
+    }
+
+    /**
+     * Series with the most packets first, {@value #OTHER} last.
+     */
+    private static Map<String, long[]> toArrays(Iterable<Series> series, long first, int buckets) {
+        List<Series> sorted = new ArrayList<>();
+        series.forEach(sorted::add);
+        sorted.sort(Comparator.comparing((Series s) -> OTHER.equals(s.name))
+                .thenComparing(Comparator.comparingLong((Series s) -> s.sum).reversed())
+                .thenComparing(s -> s.name));
+        Map<String, long[]> arrays = new LinkedHashMap<>();
+        for (Series s : sorted) {
+            arrays.put(s.name, s.toArray(first, buckets));
+        }
+        return arrays;
+    }
+
+    /**
+     * @return where the SSID starts after a leading MAC address and ':', or -1 if there is none
+     */
+    private static int ssidOffset(ByteBuffer buffer, int offset, int end) {
+        int digits = 0;
+        int position = offset;
+        while (position < end && digits < 12) {
+            int c = buffer.get(position);
+            if (Character.digit(c, 16) >= 0) {
+                digits++;
+            } else if (c != '-' && c != ':' && c != '.') {
+                return -1;
+            }
+            position++;
+        }
+        return digits == 12 && position < end && buffer.get(position) == ':' ? position + 1 : -1;
+    }
+
+    /**
+     * Takes the buckets of a series growing from {@code current} to {@code needed} buckets, or to
+     * {@code preferred} if enough are left.
+     *
+     * @return the new length of the series
+     * @throws IllegalArgumentException if fewer than {@code needed} buckets are left
+     */
+    private int reserve(int current, int needed, int preferred) {
+        long left = maxBuckets - buckets;
+        if (needed - current > left) {
+            throw new IllegalArgumentException("The rate series of the capture need more than " + maxBuckets
+                    + " buckets, use wider buckets");
+        }
+        int length = (int) Math.min(preferred, current + left);
+        buckets += length - current;
+        return length;
+    }
+
+    /**
+     * Counts per bucket from bucket {@code first} on, grown at either end as packets arrive.
+     */
+    private final class Series {
+        final String name;
+        long first;
+        long[] counts;
+        int length;
+        long sum;
+
+        Series(String name) {
+            this.name = name;
+        }
+
+        void add(long bucket, long count) {
+            if (counts == null) {
+                counts = new long[reserve(0, 1, FIRST_BUCKETS)];
+                first = bucket;
+            } else if (bucket < first) {
+                int shift = checkSpan(first + length - bucket) - length;
+                int needed = Math.max(counts.length, length + shift);
+                long[] grown = new long[reserve(counts.length, needed, needed)];
+                System.arraycopy(counts, 0, grown, shift, length);
+                counts = grown;
+                length += shift;
+                first = bucket;
+            } else if (bucket - first >= counts.length) {
+                int needed = checkSpan(bucket - first + 1);
+                long[] grown = new long[reserve(counts.length, needed,
+                        Math.min(MAX_BUCKETS, Math.max(needed, counts.length * 2)))];
+                System.arraycopy(counts, 0, grown, 0, length);
+                counts = grown;
+            }
+            int index = (int) (bucket - first);
+            counts[index] += count;
+            length = Math.max(length, index + 1);
+            sum += count;
+        }
+
+        void merge(Series other) {
+            for (int i = 0; i < other.length; i++) {
+                if (other.counts[i] != 0) add(other.first + i, other.counts[i]);
+            }
+        }
+
+        long[] toArray(long from, int buckets) {
+            long[] array = new long[buckets];
+            if (counts != null) {
+                System.arraycopy(counts, 0, array, (int) (first - from), length);
+            }
+            return array;
+        }
+
+        private static int checkSpan(long span) {
+            if (span > MAX_BUCKETS) {
+                throw new IllegalArgumentException("The capture spans more than " + MAX_BUCKETS
+                        + " rate buckets, use wider buckets");
+            }
+            return (int) span;
+        }
+    }
+
+    /**
+     * Series keyed by the 64-bit hash of their value, in an open-addressing table, so that
+     * counting a packet allocates nothing.
+     */
+    private final class SeriesTable {
+        private final int maxSeries;
+        private long[] hashes = new long[64];
+        private Series[] series = new Series[64];
+        private int size;
+        private Series other;
+
+        SeriesTable(int maxSeries) {
+            this.maxSeries = maxSeries;
+        }
+
+        void add(long bucket, ByteBuffer buffer, int offset, int length) {
+            long hash = ValueHash.of(buffer, offset, length);
+            Series s = get(hash);
+            if (s == null && size == maxSeries) {
+                s = other(); // not decoded, it would not get a series of its own
+            } else if (s == null) {
+                byte[] value = new byte[length];
+                buffer.get(offset, value);
+                s = get(hash, new String(value, StandardCharsets.UTF_8));
+            }
+            s.add(bucket, 1);
+        }
+
+        void merge(SeriesTable next) {
+            for (int i = 0; i < next.series.length; i++) {
+                Series s = next.series[i];
+                if (s != null) get(next.hashes[i], s.name).merge(s);
+            }
+            if (next.other != null) {
+                other().merge(next.other);
+            }
+        }
+
+        List<Series> series() {
+            List<Series> all = new ArrayList<>(size + 1);
+            for (Series s : series) {
+                if (s != null) all.add(s);
+            }
+            if (other != null) all.add(other);
+            return all;
+        }
+
+        private Series get(long hash) {
+            for (int i = (int) hash & (series.length - 1); series[i] != null; i = (i + 1) & (series.length - 1)) {
+                if (hashes[i] == hash) return series[i];
+            }
+            return null;
+        }
+
+        /**
+         * The series of the value, added if there is room for it, {@value #OTHER} otherwise.
+         */
+        private Series get(long hash, String name) {
+            Series s = get(hash);
+            if (s != null) return s;
+            if (size == maxSeries) return other();
+
+            if ((size + 1) * 2 > series.length) {
+                resize();
+            }
+            int i = (int) hash & (series.length - 1);
+            while (series[i] != null) {
+                i = (i + 1) & (series.length - 1);
+            }
+            hashes[i] = hash;
+            series[i] = s = new Series(name);
+            size++;
+            return s;
+        }
+
+        private Series other() {
+            if (other == null) other = new Series(OTHER);
+            return other;
+        }
+
+        private void resize() {
+            long[] oldHashes = hashes;
+            Series[] oldSeries = series;
+            hashes = new long[oldHashes.length * 2];
+            series = new Series[oldSeries.length * 2];
+            for (int j = 0; j < oldSeries.length; j++) {
+                if (oldSeries[j] == null) continue;
+                int i = (int) oldHashes[j] & (series.length - 1);
+                while (series[i] != null) {
+                    i = (i + 1) & (series.length - 1);
+                }
+                hashes[i] = oldHashes[j];
+                series[i] = oldSeries[j];
+            }
+        }
+    }
+}
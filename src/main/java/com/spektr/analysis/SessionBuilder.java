@@ -0,0 +1,445 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.AccountingSession;
+import com.spektr.dto.AccountingSession.State;
+import com.spektr.pcap.Ipv4;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusAttribute;
+import com.spektr.radius.RadiusCode;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.radius.RadiusPacketView;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Folds Accounting-Request packets into one record per session, keyed by Acct-Session-Id and
+ * NAS, as the capture streams by. Only the attributes the record needs are read, straight from
+ * the packet view.
+ * <p>
+ * Open sessions stay in a table ordered by last activity. When the estimated size of the table
+ * exceeds the memory budget the least recently active sessions are evicted: they are reported as
+ * they are, and a later packet of the same session starts a new, partial record. At most
+ * {@code maxSessions} finished sessions with a matching packet are kept; those finished later
+ * are only counted.
+ * <p>
+ * Builders of consecutive chunks of a capture can be merged, continuing the sessions left open
+ * by the first one with the packets seen by the second. Their memory budgets add up, while
+ * {@code maxSessions} bounds each builder as well as the merged one.
+ * <p>
+ * Packets the packet filter leaves out still update their session, so that it is complete; only
+ * sessions with at least one matching packet are reported.
+ */
+public class SessionBuilder implements PacketObserver {
+
+    private static final int NAS_IP_ADDRESS = 4;
+    private static final int FRAMED_IP_ADDRESS = 8;
+    private static final int USER_NAME = 1;
+    private static final int CALLING_STATION_ID = 31;
+    private static final int NAS_IDENTIFIER = 32;
+    private static final int ACCT_STATUS_TYPE = 40;
+    private static final int ACCT_INPUT_OCTETS = 42;
+    private static final int ACCT_OUTPUT_OCTETS = 43;
+    private static final int ACCT_SESSION_ID = 44;
+    private static final int ACCT_SESSION_TIME = 46;
+    private static final int ACCT_INPUT_PACKETS = 47;
+    private static final int ACCT_OUTPUT_PACKETS = 48;
+    private static final int ACCT_TERMINATE_CAUSE = 49;
+    private static final int ACCT_INPUT_GIGAWORDS = 52;
+    private static final int ACCT_OUTPUT_GIGAWORDS = 53;
+
+    private static final int STATUS_START = 1;
+    private static final int STATUS_STOP = 2;
+    private static final int STATUS_INTERIM_UPDATE = 3;
+
+    // Rough heap footprint of a session record and its map entry, strings excluded
+    private static final int SESSION_OVERHEAD = 256;
+
+    private final RadiusAttribute terminateCause;
+    private long memoryBudget;
+    private long maxSessions;
+    private final LinkedHashMap<Key, Session> open = new LinkedHashMap<>(1024, 0.75f, true);
+    private final List<Session> finished = new ArrayList<>();
+    private long openBytes;
+    private long kept;
+    private long dropped;
+
+    /**
+     * @param memoryBudget bound of the estimated size of the open sessions
+     * @param maxSessions  finished sessions with a matching packet kept at most
+     */
+    public SessionBuilder(RadiusDictionary dictionary, long memoryBudget, long maxSessions) {
+        this.terminateCause = dictionary.getAttribute(ACCT_TERMINATE_CAUSE);
+        this.memoryBudget = memoryBudget;
+        this.maxSessions = maxSessions;
+    }
+
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        fold(timestampNanos, datagram, radius, true);
+    }
+
+    @Override
+    public void observeUnmatched(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        fold(timestampNanos, datagram, radius, false);
+    }
+
+    private void fold(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius, boolean matches) {
+        if (radius.getCode() != RadiusCode.ACCOUNTING_REQUEST) return;
+        int sessionIdIndex = radius.findAttribute(ACCT_SESSION_ID);
+        if (sessionIdIndex < 0) return;
+
+        int statusIndex = radius.findAttribute(ACCT_STATUS_TYPE);
+        int status = statusIndex < 0 ? -1 : radius.getIntValue(statusIndex, -1);
+        if (status != STATUS_START && status != STATUS_STOP && status != STATUS_INTERIM_UPDATE) return;
+
+        long time = timestampNanos / 1_000_000;
+        Key key = new Key(nas(datagram, radius), string(radius, sessionIdIndex));
+        Session session = open.get(key);
+        if (session != null && status == STATUS_START) {
+            finish(key, State.INCOMPLETE);
+            session = null;
+        }
+        if (session == null) {
+            session = new Session(key, time);
+            open.put(key, session);
+            openBytes += session.estimatedSize();
+        }
+
+        long sizeBefore = session.estimatedSize();
+        session.lastSeen = time;
+        session.matches |= matches;
+        if (session.userName == null) session.userName = string(radius, radius.findAttribute(USER_NAME));
+        if (session.callingStationId == null) {
+            session.callingStationId = string(radius, radius.findAttribute(CALLING_STATION_ID));
+        }
+        if (session.framedIp == null) {
+            int framedIp = radius.findAttribute(FRAMED_IP_ADDRESS);
+            if (framedIp >= 0 && radius.getAttributeValueLength(framedIp) == 4) {
+                session.framedIp = Ipv4.format(radius.getIntValue(framedIp, 0));
+            }
+        }
+        readCounters(session, radius, time);
+        openBytes += session.estimatedSize() - sizeBefore;
+
+        if (status == STATUS_START) {
+            session.startTime = time;
+            session.anchor = time;
+        } else if (status == STATUS_INTERIM_UPDATE) {
+            session.interimUpdates++;
+            if (session.anchor >= 0) {
+                session.addInterval(time - session.anchor);
+            } else if (session.unanchoredInterim < 0) {
+                session.unanchoredInterim = time;
+            }
+            session.anchor = time;
+        } else {
+            session.stopTime = time;
+            int cause = radius.findAttribute(ACCT_TERMINATE_CAUSE);
+            if (cause >= 0) session.terminateCause = format(terminateCause, radius, cause);
+            finish(key, State.STOPPED);
+        }
+        enforceBudget();
+    }
+
+    /**
+     * Takes over the sessions of the builder of the chunk that directly follows this one.
+     */
+    public SessionBuilder merge(SessionBuilder next) {
+        memoryBudget = memoryBudget > Long.MAX_VALUE - next.memoryBudget ? Long.MAX_VALUE : memoryBudget + next.memoryBudget;
+        dropped += next.dropped;
+        List<Session> sessions = new ArrayList<>(next.finished);
+        sessions.addAll(next.open.values());
+        sessions.sort(Comparator.comparingLong(session -> session.firstSeen));
+
+        // Only the first record of a session in the next chunk can continue one open here
+        for (Session session : sessions) {
+            Session previous = open.remove(session.key);
+            if (previous != null) openBytes -= previous.estimatedSize();
+            if (previous != null && session.startTime < 0) {
+                previous.absorb(session);
+                session.replaceWith(previous);
+            } else if (previous != null) {
+                previous.state = State.INCOMPLETE;
+                keep(previous);
+            }
+        }
+
+        next.finished.forEach(this::keep);
+        for (Session session : next.open.values()) {
+            open.put(session.key, session);
+            openBytes += session.estimatedSize();
+        }
+        enforceBudget();
+        return this;
+    }
+
+    /**
+     * @return every session with a matching packet, those still open last reported as
+     *         {@link State#OPEN}, by first packet
+     */
+    public List<AccountingSession> getSessions() {
+        List<Session> sessions = new ArrayList<>(finished);
+        for (Session session : open.values()) {
+            session.state = State.OPEN;
+            sessions.add(session);
+        }
+        sessions.sort(Comparator.comparingLong(session -> session.firstSeen));
+
+        List<AccountingSession> data = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            if (session.matches) data.add(session.toData());
+        }
+        return data;
+    }
+
+    /**
+     * Number of finished sessions with a matching packet left out of {@link #getSessions} past
+     * {@code maxSessions}.
+     */
+    public long getDroppedSessions() {
+        return dropped;
+    }
+
+    private void finish(Key key, State state) {
+        Session session = open.remove(key);
+        openBytes -= session.estimatedSize();
+        session.state = state;
+        keep(session);
+    }
+
+    /**
+     * Keeps a finished session if it is reported. Sessions without a matching packet are only
+     * kept when they have no Start, as a merge may still join them to a matching session.
+     */
+    private void keep(Session session) {
+        if (!session.matches) {
+            if (session.startTime < 0) finished.add(session);
+        } else if (kept < maxSessions) {
+            finished.add(session);
+            kept++;
+        } else {
+            dropped++;
+        }
+    }
+
+    private void enforceBudget() {
+        Iterator<Session> leastRecent = open.values().iterator();
+        while (openBytes > memoryBudget && leastRecent.hasNext()) {
+            Session session = leastRecent.next();
+            leastRecent.remove();
+            openBytes -= session.estimatedSize();
+            session.state = State.EVICTED;
+            keep(session);
+        }
+    }
+
+    private static void readCounters(Session session, RadiusPacketView radius, long time) {
+        long inputOctets = counter(radius, ACCT_INPUT_OCTETS, ACCT_INPUT_GIGAWORDS);
+        long outputOctets = counter(radius, ACCT_OUTPUT_OCTETS, ACCT_OUTPUT_GIGAWORDS);
+        long inputPackets = counter(radius, ACCT_INPUT_PACKETS, -1);
+        long outputPackets = counter(radius, ACCT_OUTPUT_PACKETS, -1);
+        long sessionTime = counter(radius, ACCT_SESSION_TIME, -1);
+        if (inputOctets < 0 && outputOctets < 0 && inputPackets < 0 && outputPackets < 0 && sessionTime < 0) return;
+
+        // Counters are cumulative, the latest packet carrying them wins
+        session.countersTime = time;
+        session.inputOctets = inputOctets;
+        session.outputOctets = outputOctets;
+        session.inputPackets = inputPackets;
+        session.outputPackets = outputPackets;
+        session.sessionTime = sessionTime;
+    }
+
+    /**
+     * @return the 32-bit counter plus 2^32 times its gigawords attribute, -1 if absent
+     */
+    private static long counter(RadiusPacketView radius, int type, int gigawordsType) {
+        int index = radius.findAttribute(type);
+        if (index < 0 || radius.getAttributeValueLength(index) != 4) return -1;
+        long value = radius.getIntValue(index, 0) & 0xFFFFFFFFL;
+        int gigawords = gigawordsType < 0 ? -1 : radius.findAttribute(gigawordsType);
+        if (gigawords >= 0 && radius.getAttributeValueLength(gigawords) == 4) {
+            value += (radius.getIntValue(gigawords, 0) & 0xFFFFFFFFL) << 32;
+        }
+        return value;
+    }
+
+    private static String nas(UdpDatagram datagram, RadiusPacketView radius) {
+        int nasIp = radius.findAttribute(NAS_IP_ADDRESS);
+        if (nasIp >= 0 && radius.getAttributeValueLength(nasIp) == 4) {
+            return Ipv4.format(radius.getIntValue(nasIp, 0));
+        }
+        String nasIdentifier = string(radius, radius.findAttribute(NAS_IDENTIFIER));
+        return nasIdentifier != null ? nasIdentifier : Ipv4.format(datagram.getSourceIp());
+    }
+
+    private static String string(RadiusPacketView radius, int index) {
+        if (index < 0) return null;
+        byte[] value = new byte[radius.getAttributeValueLength(index)];
+        radius.getBuffer().get(radius.getAttributeValueOffset(index), value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String format(RadiusAttribute attribute, RadiusPacketView radius, int index) {
+        byte[] value = new byte[radius.getAttributeValueLength(index)];
+        radius.getBuffer().get(radius.getAttributeValueOffset(index), value);
+        return attribute != null ? attribute.format(value, 0, value.length) : Long.toString(radius.getIntValue(index, 0));
+    }
+
+    private record Key(String nas, String sessionId) {
+    }
+
+    private static class Session {
+        Key key;
+        long firstSeen;
+        long lastSeen;
+        long startTime = -1;
+        long stopTime = -1;
+        String userName;
+        String framedIp;
+        String callingStationId;
+        String terminateCause;
+        State state;
+        boolean matches;
+
+        int interimUpdates;
+        // Time of the last Start or Interim-Update, and of the first Interim-Update seen without one
+        long anchor = -1;
+        long unanchoredInterim = -1;
+        int intervals;
+        long intervalSum;
+        long minInterval = Long.MAX_VALUE;
+        long maxInterval;
+
+        long countersTime = -1;
+        long inputOctets = -1;
+        long outputOctets = -1;
+        long inputPackets = -1;
+        long outputPackets = -1;
+        long sessionTime = -1;
+
+        Session(Key key, long time) {
+            this.key = key;
+            this.firstSeen = time;
+            this.lastSeen = time;
+        }
+
+        void addInterval(long millis) {
+            intervals++;
+            intervalSum += millis;
+            minInterval = Math.min(minInterval, millis);
+            maxInterval = Math.max(maxInterval, millis);
+        }
+
+        /**
+         * Appends a later record of the same session that has no Start of its own.
+         */
+        void absorb(Session later) {
+            lastSeen = later.lastSeen;
+            stopTime = later.stopTime;
+            state = later.state;
+            matches |= later.matches;
+            if (userName == null) userName = later.userName;
+            if (framedIp == null) framedIp = later.framedIp;
+            if (callingStationId == null) callingStationId = later.callingStationId;
+            if (later.terminateCause != null) terminateCause = later.terminateCause;
+
+            interimUpdates += later.interimUpdates;
+            if (later.intervals > 0) {
+                intervals += later.intervals;
+                intervalSum += later.intervalSum;
+                minInterval = Math.min(minInterval, later.minInterval);
+                maxInterval = Math.max(maxInterval, later.maxInterval);
+            }
+            if (later.unanchoredInterim >= 0) {
+                if (anchor >= 0) {
+                    addInterval(later.unanchoredInterim - anchor);
+                } else if (unanchoredInterim < 0) {
+                    unanchoredInterim = later.unanchoredInterim;
+                }
+            }
+            if (later.anchor >= 0) anchor = later.anchor;
+
+            if (later.countersTime >= 0) {
+                countersTime = later.countersTime;
+                inputOctets = later.inputOctets;
+                outputOctets = later.outputOctets;
+                inputPackets = later.inputPackets;
+                outputPackets = later.outputPackets;
+                sessionTime = later.sessionTime;
+            }
+        }
+
+        /**
+         * Takes over all fields of {@code other}, so that this record's position in the lists of
+         * its builder now holds the merged session.
+         */
+        void replaceWith(Session other) {
+            key = other.key;
+            firstSeen = other.firstSeen;
+            lastSeen = other.lastSeen;
+            startTime = other.startTime;
+            stopTime = other.stopTime;
+            userName = other.userName;
+            framedIp = other.framedIp;
+            callingStationId = other.callingStationId;
+            terminateCause = other.terminateCause;
+            state = other.state;
+            matches = other.matches;
+            interimUpdates = other.interimUpdates;
+            anchor = other.anchor;
+            unanchoredInterim = other.unanchoredInterim;
+            intervals = other.intervals;
+            intervalSum = other.intervalSum;
+            minInterval = other.minInterval;
+            maxInterval = other.maxInterval;
+            countersTime = other.countersTime;
+            inputOctets = other.inputOctets;
+            outputOctets = other.outputOctets;
+            inputPackets = other.inputPackets;
+            outputPackets = other.outputPackets;
+            sessionTime = other.sessionTime;
+        }
+
+        long estimatedSize() {
+            return SESSION_OVERHEAD + 2L * (length(key.nas()) + length(key.sessionId()) + length(userName)
+                    + length(framedIp) + length(callingStationId) + length(terminateCause));
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
+        }
+
+        AccountingSession toData() {
+            AccountingSession data = new AccountingSession();
+            data.setSessionId(key.sessionId());
+            data.setNas(key.nas());
+            data.setUserName(userName);
+            data.setFramedIp(framedIp);
+            data.setCallingStationId(callingStationId);
+            data.setState(state);
+            data.setStartTime(startTime >= 0 ? startTime : null);
+            data.setStopTime(stopTime >= 0 ? stopTime : null);
+            data.setFirstSeen(firstSeen);
+            data.setLastSeen(lastSeen);
+            data.setInterimUpdates(interimUpdates);
+            if (intervals > 0) {
+                data.setMinInterimIntervalMillis(minInterval);
+                data.setMaxInterimIntervalMillis(maxInterval);
+                data.setMeanInterimIntervalMillis(intervalSum / intervals);
+            }
+            data.setSessionTime(sessionTime >= 0 ? sessionTime : null);
+            data.setInputOctets(inputOctets >= 0 ? inputOctets : null);
+            data.setOutputOctets(outputOctets >= 0 ? outputOctets : null);
+            data.setInputPackets(inputPackets >= 0 ? inputPackets : null);
+            data.setOutputPackets(outputPackets >= 0 ? outputPackets : null);
+            data.setTerminateCause(terminateCause);
+            return data;
+        }
+    }
+}
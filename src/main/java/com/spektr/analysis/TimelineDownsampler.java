@@ -0,0 +1,150 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.TrafficTimeline;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusPacketView;
+
+import java.util.Arrays;
+
+/**
+ * Packet and octet timeline of a capture, reduced to at most {@code maxPoints} points whatever its
+ * length. Packets are counted in samples, time buckets aligned on the epoch that start 1ms wide and
+ * double in width, pairs folded together, whenever the capture spans more than
+ * {@value #SAMPLES_PER_POINT} samples per point. Each point then sums the samples it covers and keeps
+ * their minimum and maximum, so that bursts and gaps shorter than a point stay visible.
+ * <p>
+ * Downsamplers of consecutive chunks of a capture can be merged.
+ */
+public class TimelineDownsampler implements PacketObserver {
+
+    private static final int SAMPLES_PER_POINT = 16;
+    private static final long FIRST_SAMPLE_NANOS = 1_000_000L;
+
+    private final int maxPoints;
+    private final long[] packets;
+    private final long[] octets;
+    private long sampleNanos = FIRST_SAMPLE_NANOS;
+    private long first;
+    private int length;
+
+    /**
+     * @throws IllegalArgumentException if {@code maxPoints} is not positive
+     */
+    public TimelineDownsampler(int maxPoints) {
+        if (maxPoints < 1) {
+            throw new IllegalArgumentException("A timeline needs at least one point");
+        }
+        this.maxPoints = maxPoints;
+        this.packets = new long[maxPoints * SAMPLES_PER_POINT];
+        this.octets = new long[maxPoints * SAMPLES_PER_POINT];
+    }
+
+    @Override
+    public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+        add(timestampNanos, 1, datagram.getPayloadLength());
+    }
+
+    /**
+     * Adds the samples of a downsampler of the following chunk.
+     *
+     * @return this downsampler
+     */
+    public TimelineDownsampler merge(TimelineDownsampler next) {
+        while (sampleNanos < next.sampleNanos) {
+            fold();
+        }
+        for (int i = 0; i < next.length; i++) {
+            if (next.packets[i] != 0) add((next.first + i) * next.sampleNanos, next.packets[i], next.octets[i]);
+        }
+        return this;
+    }
+
+    public TrafficTimeline timeline() {
+        TrafficTimeline timeline = new TrafficTimeline();
+        long sampleMillis = sampleNanos / 1_000_000L;
+        timeline.setSampleMillis(sampleMillis);
+        if (length == 0) {
+            timeline.setPackets(new long[0]);
+            timeline.setOctets(new long[0]);
+            return timeline;
+        }
+
+        int perPoint = (length + maxPoints - 1) / maxPoints;
+        int points = (length + perPoint - 1) / perPoint;
+        long[] pointPackets = new long[points];
+        long[] pointOctets = new long[points];
+        long[] minPackets = new long[points];
+        long[] maxPackets = new long[points];
+        long[] minOctets = new long[points];
+        long[] maxOctets = new long[points];
+        for (int point = 0; point < points; point++) {
+            int from = point * perPoint;
+            int to = Math.min(length, from + perPoint);
+            minPackets[point] = Long.MAX_VALUE;
+            minOctets[point] = Long.MAX_VALUE;
+            for (int i = from; i < to; i++) {
+                pointPackets[point] += packets[i];
+                pointOctets[point] += octets[i];
+                minPackets[point] = Math.min(minPackets[point], packets[i]);
+                maxPackets[point] = Math.max(maxPackets[point], packets[i]);
+                minOctets[point] = Math.min(minOctets[point], octets[i]);
+                maxOctets[point] = Math.max(maxOctets[point], octets[i]);
+            }
+        }
+        timeline.setStart(first * sampleMillis);
+        timeline.setPointMillis(perPoint * sampleMillis);
+        timeline.setPoints(points);
+        timeline.setPackets(pointPackets);
+        timeline.setOctets(pointOctets);
+        timeline.setMinPackets(minPackets);
+        timeline.setMaxPackets(maxPackets);
+        timeline.setMinOctets(minOctets);
+        timeline.setMaxOctets(maxOctets);
+        return timeline;
+    }
+
+    private void add(long timestampNanos, long packetCount, long octetCount) {
+        long sample = Math.floorDiv(timestampNanos, sampleNanos);
+        if (length == 0) {
+            first = sample;
+        }
+        while (Math.max(first + length - 1, sample) - Math.min(first, sample) >= packets.length) {
+            fold();
+            sample = Math.floorDiv(sample, 2);
+        }
+        if (sample < first) {
+            int shift = (int) (first - sample);
+            System.arraycopy(packets, 0, packets, shift, length);
+            System.arraycopy(octets, 0, octets, shift, length);
+            Arrays.fill(packets, 0, shift, 0);
+            Arrays.fill(octets, 0, shift, 0);
+            first = sample;
+            length += shift;
+        }
+        int index = (int) (sample - first);
+        packets[index] += packetCount;
+        octets[index] += octetCount;
+        length = Math.max(length, index + 1);
+    }
+
+    /**
+     * Doubles the sample width, adding up the pairs of samples that now fall in the same one.
+     */
+    private void fold() {
+        long folded = Math.floorDiv(first, 2);
+        for (int i = 0; i < length; i++) {
+            int target = (int) (Math.floorDiv(first + i, 2) - folded);
+            long p = packets[i];
+            long o = octets[i];
+            packets[i] = 0;
+            octets[i] = 0;
+            packets[target] += p;
+            octets[target] += o;
+        }
+        if (length > 0) {
+            length = (int) (Math.floorDiv(first + length - 1, 2) - folded + 1);
+        }
+        first = folded;
+        sampleNanos *= 2;
+    }
+}
@@ -0,0 +1,173 @@
+package com.spektr.analysis;
+
+import com.spektr.dto.ValueCount;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Most frequent values of a stream in fixed memory: a Count-Min sketch (Cormode and
+ * Muthukrishnan) counts every value by its 64-bit hash, and the values whose estimate is among
+ * the highest seen so far are kept as candidates along with their text.
+ * <p>
+ * Estimates never undercount; they overcount by at most {@link #maxOvercount()} with a
+ * probability of about 98%. The sketch takes 32 bytes per cell of a row, 64KB at the default
+ * width; only sketches of the same width can be merged.
+ */
+public class TopK {
+
+    private static final int WIDTH = 2048;
+    private static final int DEPTH = 4;
+    private static final int CANDIDATES = 64;
+
+    private final int width;
+    private final long[] counts;
+    private final long[] candidateHashes;
+    private final String[] candidateValues;
+    private final long[] candidateCounts;
+    private int candidateCount;
+    private long minCandidate;
+    private long total;
+
+    public TopK() {
+        this(WIDTH, CANDIDATES);
+    }
+
+    /**
+     * @param width      cells per row of the sketch, a power of two
+     * @param candidates values kept with their text
+     * @throws IllegalArgumentException if {@code width} is not a power of two
+     */
+    public TopK(int width, int candidates) {
+        if (width < 1 || Integer.bitCount(width) != 1) {
+            throw new IllegalArgumentException("TopK width must be a power of two: " + width);
+        }
+        this.width = width;
+        this.counts = new long[width * DEPTH];
+        this.candidateHashes = new long[candidates];
+        this.candidateValues = new String[candidates];
+        this.candidateCounts = new long[candidates];
+    }
+
+    /**
+     * Counts a value.
+     *
+     * @return true if the value should be tracked: call {@link #track} with its text
+     */
+    public boolean add(long hash) {
+        total++;
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = row * width + index(hash, row);
+            estimate = Math.min(estimate, ++counts[cell]);
+        }
+
+        if (candidateCount < candidateHashes.length || estimate > minCandidate) {
+            int candidate = find(hash);
+            if (candidate < 0) return true;
+            long previous = candidateCounts[candidate];
+            candidateCounts[candidate] = estimate;
+            if (previous == minCandidate) minCandidate = minCount();
+        }
+        return false;
+    }
+
+    /**
+     * Adds the value just counted by {@link #add} to the candidates, in place of the least frequent one.
+     */
+    public void track(long hash, String value) {
+        track(hash, value, estimate(hash));
+    }
+
+    public void merge(TopK other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        for (int i = 0; i < candidateCount; i++) {
+            candidateCounts[i] = estimate(candidateHashes[i]);
+        }
+        minCandidate = minCount();
+        for (int i = 0; i < other.candidateCount; i++) {
+            long hash = other.candidateHashes[i];
+            long estimate = estimate(hash);
+            int candidate = find(hash);
+            if (candidate >= 0) continue;
+            if (candidateCount < candidateHashes.length || estimate > minCandidate) {
+                track(hash, other.candidateValues[i], estimate);
+            }
+        }
+    }
+
+    /**
+     * @return the {@code limit} most frequent values, most frequent first
+     */
+    public List<ValueCount> top(int limit) {
+        List<ValueCount> top = new ArrayList<>(candidateCount);
+        for (int i = 0; i < candidateCount; i++) {
+            top.add(new ValueCount(candidateValues[i], estimate(candidateHashes[i])));
+        }
+        top.sort(Comparator.comparingLong(ValueCount::getCount).reversed().thenComparing(ValueCount::getValue));
+        return top.subList(0, Math.min(limit, top.size()));
+    }
+
+    /**
+     * Number of values counted.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Bound of the overcount of each estimate, e / width of the values counted.
+     */
+    public long maxOvercount() {
+        return (long) Math.ceil(Math.E / width * total);
+    }
+
+    private void track(long hash, String value, long estimate) {
+        int slot = candidateCount;
+        if (candidateCount < candidateHashes.length) {
+            candidateCount++;
+        } else {
+            slot = 0;
+            for (int i = 1; i < candidateHashes.length; i++) {
+                if (candidateCounts[i] < candidateCounts[slot]) slot = i;
+            }
+        }
+        candidateHashes[slot] = hash;
+        candidateValues[slot] = value;
+        candidateCounts[slot] = estimate;
+        minCandidate = candidateCount < candidateHashes.length ? 0 : minCount();
+    }
+
+    private long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counts[row * width + index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    private int find(long hash) {
+        for (int i = 0; i < candidateCount; i++) {
+            if (candidateHashes[i] == hash) return i;
+        }
+        return -1;
+    }
+
+    private long minCount() {
+        if (candidateCount < candidateHashes.length) return 0;
+        return Arrays.stream(candidateCounts).min().orElse(0);
+    }
+
+    /**
+     * Cell of a row, from the two halves of the hash (Kirsch and Mitzenmacher).
+     */
+    private int index(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return combined & (width - 1);
+    }
+}
@@ -0,0 +1,46 @@
+package com.spektr.analysis;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 64-bit FNV-1a of attribute values, finished with the MurmurHash3 mixer: the sketches and
+ * tables of the observers take their buckets from both halves of the hash, which FNV alone
+ * spreads poorly over short values.
+ */
+final class ValueHash {
+
+    private static final long OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long PRIME = 0x100000001B3L;
+
+    private ValueHash() {
+    }
+
+    static long of(ByteBuffer buffer, int offset, int length) {
+        return of(0, buffer, offset, length);
+    }
+
+    /**
+     * Hash of the value seeded with its attribute type, so equal values of different attributes differ.
+     */
+    static long of(int type, ByteBuffer buffer, int offset, int length) {
+        long hash = OFFSET_BASIS ^ type;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * PRIME;
+        }
+        return mix(hash);
+    }
+
+    static long of(byte[] bytes, int offset, int length) {
+        long hash = OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * PRIME;
+        }
+        return mix(hash);
+    }
+
+    static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,27 @@
+package com.spektr.config;
+
+import com.spektr.radius.RadiusDictionary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Configuration
+public class RadiusDictionaryConfig {
+
+    /**
+     * Dictionaries are parsed once at startup; extra FreeRADIUS dictionary files can be listed
+     * in spektr.radius.dictionaries to add vendors that are not bundled.
+     */
+    @Bean
+    public RadiusDictionary radiusDictionary(@Value("${spektr.radius.dictionaries:}") List<String> dictionaries) throws IOException {
+        return RadiusDictionary.load(dictionaries.stream()
+                .filter(path -> !path.isBlank())
+                .map(path -> Path.of(path.trim()))
+                .collect(Collectors.toList()));
+    }
+}
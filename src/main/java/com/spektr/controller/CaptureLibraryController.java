@@ -0,0 +1,97 @@
+package com.spektr.controller;
+
+import com.spektr.dto.LibraryCapture;
+import com.spektr.model.User;
+import com.spektr.service.CaptureLibraryService;
+import com.spektr.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Capture library: captures imported into PostgreSQL and searchable across all of them.
+ */
+@RestController
+@RequestMapping("/api/library")
+@RequiredArgsConstructor
+public class CaptureLibraryController {
+
+    private final CaptureLibraryService captureLibraryService;
+    private final UserService userService;
+
+    @PostMapping("/captures")
+    public ResponseEntity<?> importCapture(@RequestParam("file") MultipartFile file) {
+        User currentUser = userService.getCurrentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+        }
+
+        String invalid = PcapController.validateUpload(file);
+        if (invalid != null) {
+            return ResponseEntity.badRequest().body(invalid);
+        }
+
+        try {
+            LibraryCapture capture = captureLibraryService.importCapture(file, currentUser.getUsername());
+            return ResponseEntity.ok(capture);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to import PCAP file: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/captures")
+    public ResponseEntity<?> getCaptures() {
+        try {
+            return ResponseEntity.ok(captureLibraryService.getCaptures());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Packets of all captures matching every given criterion, most recent first.
+     */
+    @GetMapping("/packets")
+    public ResponseEntity<?> searchPackets(
+            @RequestParam(value = "mac", required = false) String mac,
+            @RequestParam(value = "userName", required = false) String userName,
+            @RequestParam(value = "attribute", required = false) String attribute,
+            @RequestParam(value = "value", required = false) String value,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(captureLibraryService.search(mac, userName, attribute, value, from, to, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Where a client or access point MAC address has appeared: one entry per capture.
+     */
+    @GetMapping("/macs/{mac}")
+    public ResponseEntity<?> findMac(
+            @PathVariable String mac,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        try {
+            return ResponseEntity.ok(captureLibraryService.findMac(mac, from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.spektr.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.filter.CaptureFilter;
+import com.spektr.service.MirrorIngestService;
+import com.spektr.service.PcapParserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Live RADIUS packets from the mirrored feed, see {@link MirrorIngestService}.
+ */
+@RestController
+@RequestMapping("/api/ingest")
+public class MirrorIngestController {
+
+    private static final Duration KEEP_ALIVE = Duration.ofSeconds(15);
+
+    // Left to a stream past its own limit before the container gives up on it
+    private static final Duration ASYNC_TIMEOUT_MARGIN = Duration.ofMinutes(1);
+
+    // Live streams end themselves after this long (0 for never), whatever spring.mvc.async.request-timeout
+    @Value("${spektr.ingest.stream.max-duration:12h}")
+    private Duration streamMaxDuration = Duration.ofHours(12);
+
+    @Autowired
+    private MirrorIngestService mirrorIngestService;
+
+    @Autowired
+    private PcapParserService pcapParserService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @GetMapping
+    public ResponseEntity<?> getStatus() {
+        try {
+            return ResponseEntity.ok(mirrorIngestService.getStatus());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * The packets received over the rolling window, as the packet lists of a parse.
+     */
+    @GetMapping("/window")
+    public ResponseEntity<?> getWindow() {
+        try {
+            return ResponseEntity.ok(mirrorIngestService.getWindow());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the matching packets as they are received, as NDJSON lines or SSE "packet" events,
+     * until the client goes away or ingest stops, or until the stream has lasted its maximum
+     * duration: it then ends with an "end" event and the client reconnects.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> stream(
+            @RequestParam(value = "sourceIpFilter", required = false) String sourceIpFilter,
+            @RequestParam(value = "textFilter", required = false) String textFilter,
+            @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            NativeWebRequest webRequest) {
+
+        if (!mirrorIngestService.isEnabled()) {
+            return textResponse(HttpStatus.SERVICE_UNAVAILABLE, "Mirror ingest is disabled");
+        }
+
+        PacketStreamWriter.Format streamFormat;
+        CaptureFilter captureFilter;
+        try {
+            streamFormat = PacketStreamWriter.Format.of(format);
+            captureFilter = pcapParserService.compileFilter(sourceIpFilter, textFilter, filter);
+        } catch (IllegalArgumentException e) {
+            return textResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        MirrorIngestService.Subscription subscription;
+        try {
+            subscription = mirrorIngestService.subscribe(captureFilter);
+        } catch (IllegalStateException e) {
+            return textResponse(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+
+        boolean limited = !streamMaxDuration.isZero();
+        long asyncTimeout = limited ? streamMaxDuration.plus(ASYNC_TIMEOUT_MARGIN).toMillis() : -1;
+        WebAsyncUtils.getAsyncManager(webRequest).registerCallableInterceptor(MirrorIngestController.class.getName(),
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                        // Called with the async request before it starts, the only time its timeout can be set
+                        ((AsyncWebRequest) request).setTimeout(asyncTimeout);
+                    }
+
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                        // Also when the body never ran, so that the subscription does not hold its place
+                        subscription.close();
+                    }
+                });
+
+        StreamingResponseBody body = out -> {
+            PacketStreamWriter writer = new PacketStreamWriter(objectMapper, out, streamFormat);
+            long deadline = System.nanoTime() + streamMaxDuration.toNanos();
+            try (subscription) {
+                while (!subscription.isClosed()) {
+                    if (limited && System.nanoTime() - deadline >= 0) {
+                        writer.end("Live stream reached its maximum duration, reconnect to go on");
+                        return;
+                    }
+                    RadiusPacketData packet = subscription.poll(Duration.ZERO);
+                    if (packet == null) {
+                        writer.flush(); // caught up, send what is buffered before waiting
+                        packet = subscription.poll(KEEP_ALIVE);
+                    }
+                    if (packet != null) {
+                        writer.accept(packet);
+                    } else {
+                        writer.keepAlive();
+                    }
+                }
+                writer.error("Mirror ingest stopped");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Live stream interrupted");
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(streamFormat.mediaType)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(body);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> textResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,106 @@
+package com.spektr.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.service.RadiusPacketSink;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Writes parse results to the response as they are produced, either as newline-delimited JSON
+ * or as Server-Sent Events. Packets are followed by a single summary with the totals, or an
+ * error if the capture could not be read to the end. Live streams have no totals, they are
+ * followed by an "end" when they stop on purpose.
+ */
+class PacketStreamWriter implements RadiusPacketSink {
+
+    // Output is buffered, but never held back longer than this so the client sees packets promptly
+    private static final long FLUSH_INTERVAL_NANOS = 50_000_000L;
+
+    enum Format {
+        NDJSON(MediaType.parseMediaType("application/x-ndjson")),
+        SSE(MediaType.TEXT_EVENT_STREAM);
+
+        final MediaType mediaType;
+
+        Format(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        static Format of(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) return format;
+            }
+            throw new IllegalArgumentException("Unsupported stream format: " + name + " (use ndjson or sse)");
+        }
+    }
+
+    private final JsonGenerator generator;
+    private final Format format;
+    private long lastFlush;
+    private int packets;
+
+    PacketStreamWriter(ObjectMapper objectMapper, OutputStream out, Format format) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(out);
+        this.generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        this.format = format;
+        this.lastFlush = System.nanoTime();
+    }
+
+    @Override
+    public void accept(RadiusPacketData packet) throws IOException {
+        write("packet", packet);
+
+        long now = System.nanoTime();
+        if (packets++ == 0 || now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+            generator.flush();
+            lastFlush = now;
+        }
+    }
+
+    void finish(PcapParseResponse totals) throws IOException {
+        write("summary", totals);
+        generator.flush();
+    }
+
+    void flush() throws IOException {
+        generator.flush();
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Writes nothing the client parses, so that idle live streams are kept open and a client
+     * that went away is noticed.
+     */
+    void keepAlive() throws IOException {
+        generator.writeRaw(format == Format.SSE ? ":\n\n" : "\n");
+        generator.flush();
+    }
+
+    void end(String message) throws IOException {
+        write("end", Map.of("end", message));
+        generator.flush();
+    }
+
+    void error(String message) throws IOException {
+        write("error", Map.of("error", message));
+        generator.flush();
+    }
+
+    private void write(String event, Object value) throws IOException {
+        if (format == Format.SSE) {
+            generator.writeRaw("event: " + event + "\ndata: ");
+            generator.writeObject(value);
+            generator.writeRaw("\n\n");
+        } else {
+            generator.writeObject(value);
+            generator.writeRaw('\n');
+        }
+    }
+}
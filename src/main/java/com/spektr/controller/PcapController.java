@@ -1,52 +1,300 @@
 package com.spektr.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spektr.dto.PacketPage;
 import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.pcap.CaptureFormatException;
+import com.spektr.model.User;
+import com.spektr.service.CaptureCacheService;
+import com.spektr.service.CaptureLibraryService;
+import com.spektr.service.ParseOptions;
 import com.spektr.service.PcapParserService;
+import com.spektr.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/pcap")
 public class PcapController {
 
+    private static final String INVALID_FORMAT =
+            "Invalid file format. Please upload a .pcap, .pcapng or .cap file, optionally compressed (.gz, .zst, .lz4, .xz)";
+
     @Autowired
     private PcapParserService pcapParserService;
 
+    @Autowired
+    private CaptureCacheService captureCacheService;
+
+    @Autowired
+    private CaptureLibraryService captureLibraryService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @PostMapping("/parse")
     public ResponseEntity<?> parsePcapFile(
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "sourceIpFilter", required = false) String sourceIpFilter,
-            @RequestParam(value = "textFilter", required = false) String textFilter) {
+            @RequestParam(value = "textFilter", required = false) String textFilter,
+            @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "correlate", defaultValue = "false") boolean correlate,
+            @RequestParam(value = "sessions", defaultValue = "false") boolean sessions,
+            @RequestParam(value = "summary", defaultValue = "false") boolean summary,
+            @RequestParam(value = "profile", defaultValue = "false") boolean profile,
+            @RequestParam(value = "rateBucket", required = false) String rateBucket,
+            @RequestParam(value = "timelinePoints", defaultValue = "0") int timelinePoints,
+            @RequestParam(value = "dedup", defaultValue = "false") boolean dedup,
+            @RequestParam(value = "suppressDuplicates", defaultValue = "false") boolean suppressDuplicates,
+            @RequestParam(value = "persist", defaultValue = "false") boolean persist) {
 
         // Validate file
-        if (file.isEmpty()) {
-            return ResponseEntity.badRequest().body("File is empty");
+        String invalid = validateUpload(file);
+        if (invalid != null) {
+            return ResponseEntity.badRequest().body(invalid);
         }
-
-        String filename = file.getOriginalFilename();
-        if (filename == null || (!filename.endsWith(".pcap") && !filename.endsWith(".cap"))) {
-            return ResponseEntity.badRequest().body("Invalid file format. Please upload a .pcap or .cap file");
+        if (persist && !captureLibraryService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("The capture library is disabled");
         }
 
         try {
-            PcapParseResponse response = pcapParserService.parsePcapFile(file, sourceIpFilter, textFilter);
+            ParseOptions options = ParseOptions.of(pcapParserService.compileFilter(sourceIpFilter, textFilter, filter));
+            options.setCorrelate(correlate);
+            options.setSessions(sessions);
+            options.setSummary(summary);
+            options.setProfile(profile);
+            options.setRateBucket(rateBucket != null ? DurationStyle.detectAndParse(rateBucket) : null);
+            options.setTimelinePoints(timelinePoints);
+            options.setDedup(dedup || suppressDuplicates);
+            options.setSuppressDuplicates(suppressDuplicates);
+            PcapParseResponse response = captureCacheService.parsePcapFile(file, options);
+            if (response.getCaptureId() == null) {
+                // Not kept by the cache: the files behind its packets go once the body is written
+                RequestContextHolder.currentRequestAttributes().registerDestructionCallback(
+                        PcapController.class.getName() + ".response", () -> PcapParserService.release(response),
+                        RequestAttributes.SCOPE_REQUEST);
+            }
+            if (persist) {
+                // Also load every packet of the capture into the library, whatever the filters
+                User currentUser = userService.getCurrentUser();
+                captureLibraryService.importCapture(file, currentUser != null ? currentUser.getUsername() : "unknown");
+            }
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (CaptureFormatException e) {
+            return ResponseEntity.badRequest().body("Invalid PCAP file: " + e.getMessage());
         } catch (IOException e) {
-            String errorMsg = e.getMessage();
-            if (errorMsg.contains("libpcap") || errorMsg.contains("UnsatisfiedLinkError")) {
-                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
-                        .body("PCAP parsing unavailable on this system. Please use Docker or x86 environment. " + errorMsg);
-            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("Failed to parse PCAP file: " + errorMsg);
+                    .body("Failed to parse PCAP file: " + e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body("Unexpected error: " + e.getMessage());
         }
     }
+
+    /**
+     * One page of a packet list of a capture parsed before, with the given filters applied.
+     * {@code captureId} comes from the parse response; pass the returned {@code nextCursor} to get the next page.
+     */
+    @GetMapping("/captures/{captureId}/{category}")
+    public ResponseEntity<?> getPacketPage(
+            @PathVariable String captureId,
+            @PathVariable String category,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "sourceIpFilter", required = false) String sourceIpFilter,
+            @RequestParam(value = "textFilter", required = false) String textFilter,
+            @RequestParam(value = "filter", required = false) String filter) {
+        try {
+            ParseOptions options = ParseOptions.of(pcapParserService.compileFilter(sourceIpFilter, textFilter, filter));
+            PacketPage page = captureCacheService.getPage(captureId, category, options, cursor, limit);
+            if (page == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Capture not found, upload it again");
+            }
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * One whole packet of a capture parsed before, with its raw dump, by the {@code row} given
+     * with it in the packet lists.
+     */
+    @GetMapping("/captures/{captureId}/packets/{row}")
+    public ResponseEntity<?> getPacket(@PathVariable String captureId, @PathVariable int row) {
+        try {
+            RadiusPacketData packet = captureCacheService.getPacket(captureId, row);
+            if (packet == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Capture not found, upload it again");
+            }
+            return ResponseEntity.ok(packet);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to read packet: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Same as {@link #parsePcapFile} but writes each packet as soon as it is decoded, as NDJSON lines
+     * or SSE "packet" events, followed by a "summary" with the totals (or an "error").
+     */
+    @PostMapping("/parse/stream")
+    public ResponseEntity<StreamingResponseBody> streamPcapFile(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "sourceIpFilter", required = false) String sourceIpFilter,
+            @RequestParam(value = "textFilter", required = false) String textFilter,
+            @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "correlate", defaultValue = "false") boolean correlate,
+            @RequestParam(value = "sessions", defaultValue = "false") boolean sessions,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format) {
+
+        String invalid = validateUpload(file);
+        if (invalid != null) {
+            return textResponse(HttpStatus.BAD_REQUEST, invalid);
+        }
+
+        PacketStreamWriter.Format streamFormat;
+        ParseOptions options;
+        try {
+            streamFormat = PacketStreamWriter.Format.of(format);
+            options = ParseOptions.of(pcapParserService.compileFilter(sourceIpFilter, textFilter, filter));
+            options.setCorrelate(correlate);
+            options.setSessions(sessions);
+        } catch (IllegalArgumentException e) {
+            return textResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        StreamingResponseBody body = out -> {
+            PacketStreamWriter writer = new PacketStreamWriter(objectMapper, out, streamFormat);
+            PcapParseResponse totals;
+            try {
+                totals = pcapParserService.streamPcapFile(file, options, writer);
+            } catch (CaptureFormatException e) {
+                writer.error("Invalid PCAP file: " + e.getMessage());
+                return;
+            } catch (IOException e) {
+                writer.error("Failed to parse PCAP file: " + e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                // The response is already committed, the client only learns of it from the stream
+                writer.error("Unexpected error: " + e.getMessage());
+                return;
+            }
+            writer.finish(totals);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(streamFormat.mediaType)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Accel-Buffering", "no") // keep nginx from buffering the stream
+                .body(body);
+    }
+
+    /**
+     * Parses captures of the same traffic taken at different points, or zip archives of them, in
+     * parallel and streams their packets as one timeline, each with its {@code captureFile}. The
+     * summary holds the totals of each capture.
+     */
+    @PostMapping("/parse/batch")
+    public ResponseEntity<StreamingResponseBody> streamBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "sourceIpFilter", required = false) String sourceIpFilter,
+            @RequestParam(value = "textFilter", required = false) String textFilter,
+            @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "dedup", defaultValue = "false") boolean dedup,
+            @RequestParam(value = "suppressDuplicates", defaultValue = "false") boolean suppressDuplicates,
+            @RequestParam(value = "format", defaultValue = "ndjson") String format) {
+
+        for (MultipartFile file : files) {
+            String name = file.getOriginalFilename();
+            String invalid = name != null && name.endsWith(".zip") && !file.isEmpty() ? null : validateUpload(file);
+            if (invalid != null) {
+                return textResponse(HttpStatus.BAD_REQUEST, name + ": " + invalid);
+            }
+        }
+
+        PacketStreamWriter.Format streamFormat;
+        ParseOptions options;
+        try {
+            streamFormat = PacketStreamWriter.Format.of(format);
+            options = ParseOptions.of(pcapParserService.compileFilter(sourceIpFilter, textFilter, filter));
+            options.setDedup(dedup || suppressDuplicates);
+            options.setSuppressDuplicates(suppressDuplicates);
+        } catch (IllegalArgumentException e) {
+            return textResponse(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        StreamingResponseBody body = out -> {
+            PacketStreamWriter writer = new PacketStreamWriter(objectMapper, out, streamFormat);
+            PcapParseResponse totals;
+            try {
+                totals = pcapParserService.streamBatch(files, options, writer);
+            } catch (IllegalArgumentException e) {
+                writer.error(e.getMessage());
+                return;
+            } catch (CaptureFormatException e) {
+                writer.error("Invalid PCAP file: " + e.getMessage());
+                return;
+            } catch (IOException e) {
+                writer.error("Failed to parse PCAP file: " + e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                writer.error("Unexpected error: " + e.getMessage());
+                return;
+            }
+            writer.finish(totals);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(streamFormat.mediaType)
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(body);
+    }
+
+    static String validateUpload(MultipartFile file) {
+        if (file.isEmpty()) {
+            return "File is empty";
+        }
+
+        String filename = file.getOriginalFilename();
+        if (filename == null) {
+            return INVALID_FORMAT;
+        }
+        // Compressed captures are recognized by their content, the extension only has to fit
+        String name = filename.replaceFirst("\\.(gz|zst|lz4|xz)$", "");
+        if (!name.endsWith(".pcap") && !name.endsWith(".pcapng") && !name.endsWith(".cap")) {
+            return INVALID_FORMAT;
+        }
+        return null;
+    }
+
+    private static ResponseEntity<StreamingResponseBody> textResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+    }
 }
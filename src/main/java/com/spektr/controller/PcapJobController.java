@@ -0,0 +1,149 @@
+package com.spektr.controller;
+
+import com.spektr.dto.PcapJobStatus;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.model.User;
+import com.spektr.service.ParseOptions;
+import com.spektr.service.PcapJobService;
+import com.spektr.service.PcapParserService;
+import com.spektr.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+/**
+ * Background PCAP parsing: submit a capture, poll its progress, then fetch the result.
+ */
+@RestController
+@RequestMapping("/api/pcap/jobs")
+@RequiredArgsConstructor
+public class PcapJobController {
+
+    private final PcapJobService pcapJobService;
+    private final PcapParserService pcapParserService;
+    private final UserService userService;
+
+    @PostMapping
+    public ResponseEntity<?> submitJob(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "sourceIpFilter", required = false) String sourceIpFilter,
+            @RequestParam(value = "textFilter", required = false) String textFilter,
+            @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "correlate", defaultValue = "false") boolean correlate,
+            @RequestParam(value = "sessions", defaultValue = "false") boolean sessions,
+            @RequestParam(value = "summary", defaultValue = "false") boolean summary,
+            @RequestParam(value = "profile", defaultValue = "false") boolean profile,
+            @RequestParam(value = "rateBucket", required = false) String rateBucket,
+            @RequestParam(value = "timelinePoints", defaultValue = "0") int timelinePoints,
+            @RequestParam(value = "dedup", defaultValue = "false") boolean dedup,
+            @RequestParam(value = "suppressDuplicates", defaultValue = "false") boolean suppressDuplicates) {
+
+        User currentUser = userService.getCurrentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+        }
+
+        String invalid = PcapController.validateUpload(file);
+        if (invalid != null) {
+            return ResponseEntity.badRequest().body(invalid);
+        }
+
+        try {
+            ParseOptions options = ParseOptions.of(pcapParserService.compileFilter(sourceIpFilter, textFilter, filter));
+            options.setCorrelate(correlate);
+            options.setSessions(sessions);
+            options.setSummary(summary);
+            options.setProfile(profile);
+            options.setRateBucket(rateBucket != null ? DurationStyle.detectAndParse(rateBucket) : null);
+            options.setTimelinePoints(timelinePoints);
+            options.setDedup(dedup || suppressDuplicates);
+            options.setSuppressDuplicates(suppressDuplicates);
+            PcapJobStatus status = pcapJobService.submit(file, options, currentUser.getUsername());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(status);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to store PCAP file: " + e.getMessage());
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getJobs() {
+        User currentUser = userService.getCurrentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+        }
+        return ResponseEntity.ok(pcapJobService.getJobs(currentUser.getUsername()));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getJob(@PathVariable String id) {
+        User currentUser = userService.getCurrentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+        }
+
+        PcapJobStatus status = pcapJobService.getStatus(id, currentUser.getUsername());
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Job not found");
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    @GetMapping("/{id}/result")
+    public ResponseEntity<?> getJobResult(@PathVariable String id) {
+        User currentUser = userService.getCurrentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+        }
+
+        PcapJobStatus status = pcapJobService.getStatus(id, currentUser.getUsername());
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Job not found");
+        }
+
+        PcapParseResponse result = pcapJobService.getResult(id, currentUser.getUsername());
+        if (result == null) {
+            String message = status.getState() == PcapJobStatus.State.FAILED
+                    ? status.getError()
+                    : "Job is " + status.getState().name().toLowerCase();
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(message);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<?> cancelJob(@PathVariable String id) {
+        User currentUser = userService.getCurrentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+        }
+
+        PcapJobStatus status = pcapJobService.cancel(id, currentUser.getUsername());
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Job not found");
+        }
+        return ResponseEntity.ok(status);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> deleteJob(@PathVariable String id) {
+        User currentUser = userService.getCurrentUser();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not authenticated");
+        }
+
+        if (!pcapJobService.delete(id, currentUser.getUsername())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Job not found");
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
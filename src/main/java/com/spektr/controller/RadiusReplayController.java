@@ -0,0 +1,70 @@
+package com.spektr.controller;
+
+import com.spektr.pcap.CaptureFormatException;
+import com.spektr.service.PcapParserService;
+import com.spektr.service.RadiusReplayService;
+import com.spektr.service.ReplayOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+/**
+ * Replays the RADIUS requests of an uploaded capture to a RADIUS server, see {@link RadiusReplayService}.
+ */
+@RestController
+@RequestMapping("/api/pcap/replay")
+public class RadiusReplayController {
+
+    @Autowired
+    private RadiusReplayService radiusReplayService;
+
+    @Autowired
+    private PcapParserService pcapParserService;
+
+    @PostMapping
+    public ResponseEntity<?> replay(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("target") String target,
+            @RequestParam(value = "sourceIpFilter", required = false) String sourceIpFilter,
+            @RequestParam(value = "filter", required = false) String filter,
+            @RequestParam(value = "timing", defaultValue = "original") String timing,
+            @RequestParam(value = "speed", defaultValue = "1") double speed,
+            @RequestParam(value = "rate", defaultValue = "0") int rate,
+            @RequestParam(value = "rewriteIdentifiers", defaultValue = "false") boolean rewriteIdentifiers,
+            @RequestParam(value = "nasIpAddress", required = false) String nasIpAddress,
+            @RequestParam(value = "acctSessionIdSuffix", required = false) String acctSessionIdSuffix,
+            @RequestParam(value = "secret", required = false) String secret) {
+
+        String invalid = PcapController.validateUpload(file);
+        if (invalid != null) {
+            return ResponseEntity.badRequest().body(invalid);
+        }
+
+        try {
+            ReplayOptions options = new ReplayOptions();
+            options.setTarget(target);
+            options.setFilter(pcapParserService.compileFilter(sourceIpFilter, null, filter));
+            options.setTiming(ReplayOptions.Timing.of(timing));
+            options.setSpeed(speed);
+            options.setRate(rate);
+            options.setRewriteIdentifiers(rewriteIdentifiers);
+            options.setNasIpAddress(nasIpAddress);
+            options.setAcctSessionIdSuffix(acctSessionIdSuffix);
+            options.setSecret(secret);
+            return ResponseEntity.ok(radiusReplayService.replay(file, options));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (CaptureFormatException e) {
+            return ResponseEntity.badRequest().body("Invalid PCAP file: " + e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to replay PCAP file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountingSession {
+
+    public enum State {
+        STOPPED,    // Accounting-Stop seen
+        OPEN,       // still running when the capture ended
+        INCOMPLETE, // a new Accounting-Start reused the session id before any Stop
+        EVICTED     // dropped from the session table to stay within the memory budget
+    }
+
+    private String sessionId;
+    private String nas; // NAS-IP-Address, else NAS-Identifier, else the packet source address
+    private String userName;
+    private String framedIp;
+    private String callingStationId;
+    private State state;
+    private Long startTime;
+    private Long stopTime;
+    private long firstSeen;
+    private long lastSeen;
+    private int interimUpdates;
+    private Long minInterimIntervalMillis;
+    private Long maxInterimIntervalMillis;
+    private Long meanInterimIntervalMillis;
+    private Long sessionTime; // seconds, Acct-Session-Time of the last packet
+    private Long inputOctets; // including Acct-Input-Gigawords
+    private Long outputOctets; // including Acct-Output-Gigawords
+    private Long inputPackets;
+    private Long outputPackets;
+    private String terminateCause;
+}
@@ -0,0 +1,21 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AttributePresence {
+    private String packetType;
+    private String attribute;
+    private long packets; // packets of the type holding the attribute
+    private double frequency; // share of the packets of the type holding the attribute
+    private List<ValueCount> values; // most frequent values, not recorded for secrets and opaque values
+    private boolean moreValues; // values beyond the tracked ones were seen
+}
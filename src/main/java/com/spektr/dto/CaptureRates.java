@@ -0,0 +1,23 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Packet counts per time bucket; every series has one count per bucket, from {@code start} on.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CaptureRates {
+    private long bucketMillis;
+    private Long start; // epoch millis of the first bucket, null when no packet matched
+    private int buckets;
+    private long[] total;
+    private Map<String, long[]> packetTypes;
+    private Map<String, long[]> nasIdentifiers; // most packets first, "(other)" past the series limit
+    private Map<String, long[]> ssids; // from Called-Station-Id, same order
+}
@@ -0,0 +1,24 @@
+package com.spektr.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate shape of a capture, computed with fixed-size sketches.
+ */
+@Data
+@NoArgsConstructor
+public class CaptureSummary {
+    private long packets;
+    private Map<String, Long> packetTypes; // exact counts
+    private long distinctUsers;
+    private long distinctClientMacs;
+    private double distinctError; // relative standard error of the distinct counts
+    private List<ValueCount> topNasIdentifiers;
+    private long nasIdentifierMaxOvercount; // counts of the top lists may be this much too high
+    private List<ValueCount> topAttributeValues; // as "Name=value"
+    private long attributeValueMaxOvercount;
+}
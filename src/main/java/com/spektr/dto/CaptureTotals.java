@@ -0,0 +1,17 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CaptureTotals {
+    private String captureFile; // name of the upload, or of the entry for zip archives
+    private int totalPacketsProcessed;
+    private int radiusPacketsFound;
+    private DuplicateReport duplicates; // only when duplicate detection was requested
+}
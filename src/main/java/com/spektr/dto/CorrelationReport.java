@@ -0,0 +1,16 @@
+package com.spektr.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CorrelationReport {
+    private TransactionStats total;
+    private List<TransactionStats> byNas;
+    private List<TransactionStats> byServer;
+}
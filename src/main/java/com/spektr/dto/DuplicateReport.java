@@ -0,0 +1,14 @@
+package com.spektr.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DuplicateReport {
+    private long duplicates; // the same IP datagram captured again, e.g. on another interface
+    private long retransmissions; // the packet sent again in a new datagram
+    private boolean suppressed; // whether the copies were left out of the results
+}
@@ -0,0 +1,21 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IngestStatus {
+    private String mode; // tzsp, ethernet or radius
+    private String address; // where the feed is received
+    private long datagramsReceived;
+    private long datagramsDropped; // received while every buffer was waiting to be decoded
+    private long radiusPacketsFound; // packets of the four packet lists
+    private int subscribers;
+    private long windowSeconds;
+    private String error; // only when the listener stopped on an error
+}
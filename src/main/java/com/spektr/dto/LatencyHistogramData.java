@@ -0,0 +1,31 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LatencyHistogramData {
+    private long count;
+    private Double minMillis;
+    private Double meanMillis;
+    private Double p50Millis;
+    private Double p90Millis;
+    private Double p99Millis;
+    private Double p999Millis;
+    private Double maxMillis;
+    private List<Bucket> buckets; // non-empty buckets only
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Bucket {
+        private double upToMillis;
+        private long count;
+    }
+}
@@ -0,0 +1,21 @@
+package com.spektr.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LibraryCapture {
+    private Long id;
+    private String captureHash; // SHA-256 of the uploaded file
+    private String fileName;
+    private String owner;
+    private Instant uploadedAt;
+    private int packetCount;
+    private Instant firstPacketAt;
+    private Instant lastPacketAt;
+}
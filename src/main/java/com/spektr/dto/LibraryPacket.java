@@ -0,0 +1,26 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LibraryPacket {
+    private Long captureId;
+    private String fileName;
+    private Instant timestamp;
+    private String packetType;
+    private String sourceIp;
+    private String destinationIp;
+    private String userName; // lower case
+    private String clientMac; // Calling-Station-Id as aa:bb:cc:dd:ee:ff
+    private String apMac; // MAC part of Called-Station-Id
+    private Map<String, String> attributes;
+}
@@ -0,0 +1,23 @@
+package com.spektr.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Packets of one capture in which a MAC address appears, as client or access point.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MacAppearance {
+    private Long captureId;
+    private String fileName;
+    private Instant firstSeen;
+    private Instant lastSeen;
+    private long packets;
+    private List<String> userNames;
+}
@@ -0,0 +1,18 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PacketPage {
+    private List<RadiusPacketData> packets;
+    private int total; // packets of the category matching the filters
+    private String nextCursor; // absent on the last page
+}
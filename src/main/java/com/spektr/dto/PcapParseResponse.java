@@ -1,5 +1,6 @@
 package com.spektr.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,6 +10,7 @@ import java.util.List;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PcapParseResponse {
     private List<RadiusPacketData> accessRequests;
     private List<RadiusPacketData> accountingStarts;
@@ -17,4 +19,14 @@ public class PcapParseResponse {
     private int totalPacketsProcessed;
     private int radiusPacketsFound;
     private String message;
+    private String captureId; // only when the capture is cached, to page through its packets
+    private CorrelationReport correlation; // only when correlation was requested
+    private List<AccountingSession> sessions; // only when sessions were requested, instead of the packet lists
+    private Long droppedSessions; // only when more sessions finished than could be kept
+    private DuplicateReport duplicates; // only when duplicate detection was requested
+    private CaptureSummary summary; // only when a summary was requested, instead of the packet lists
+    private RadiusProfile profile; // only when a profile was requested, instead of the packet lists
+    private CaptureRates rates; // only when rates were requested, instead of the packet lists
+    private TrafficTimeline timeline; // only when a timeline was requested, instead of the packet lists
+    private List<CaptureTotals> captures; // only in batch parses, the counters of each capture
 }
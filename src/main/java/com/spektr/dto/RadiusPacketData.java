@@ -1,5 +1,6 @@
 package com.spektr.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,5 +16,10 @@ public class RadiusPacketData {
     private String destinationIp;
     private Long timestamp;
     private Map<String, String> attributes; // RADIUS attributes as key-value pairs
-    private String rawData; // Raw packet data for display
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String rawData; // Raw packet data for display, absent in the rows of cached captures
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String captureFile; // only in batch parses, the capture the packet comes from
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer row; // only in the rows of cached captures, to fetch the whole packet
 }
@@ -0,0 +1,22 @@
+package com.spektr.dto;
+
+import com.spektr.model.Vendor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RADIUS behaviour of a device inferred from a capture, with a draft of its vendor RADIUS configuration.
+ */
+@Data
+@NoArgsConstructor
+public class RadiusProfile {
+    private Vendor.Radius draft;
+    private long packets;
+    private Map<String, Long> packetTypes;
+    private List<AttributePresence> attributes; // per packet type, in order of first appearance
+    private List<ValueCount> requestSources; // most frequent senders of requests
+    private boolean moreRequestSources; // senders beyond the tracked ones were seen
+}
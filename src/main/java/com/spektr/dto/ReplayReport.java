@@ -0,0 +1,24 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReplayReport {
+    private String target;
+    private long packetsSent;
+    private long durationMillis; // from the first send to the last response or timeout
+    private double packetsPerSecond; // achieved send rate
+    private long responses;
+    private Map<String, Long> responseCodes; // responses by code name
+    private long timeouts; // requests never answered within the response timeout
+    private long unmatchedResponses; // responses to no request in flight
+    private long sendErrors; // sends refused, e.g. ICMP port unreachable
+    private boolean truncated; // stopped at the maximum replay duration
+    private LatencyHistogramData latency;
+}
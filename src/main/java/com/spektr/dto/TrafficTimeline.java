@@ -0,0 +1,25 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Packet and octet counts over time, one value per point from {@code start} on. Each point also
+ * carries the lowest and highest counts of the samples it covers.
+ */
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TrafficTimeline {
+    private long sampleMillis;
+    private long pointMillis;
+    private Long start; // epoch millis of the first point, null when no packet matched
+    private int points;
+    private long[] packets;
+    private long[] octets; // RADIUS bytes, UDP payloads
+    private long[] minPackets; // per sample of sampleMillis
+    private long[] maxPackets;
+    private long[] minOctets;
+    private long[] maxOctets;
+}
@@ -0,0 +1,23 @@
+package com.spektr.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransactionStats {
+    private String address; // NAS or server address, null for the capture-wide totals
+    private long requests;
+    private long retransmissions;
+    private long responses;
+    private long accessAccepts;
+    private long accessRejects;
+    private long accessChallenges;
+    private long accountingResponses;
+    private long otherResponses; // CoA/Disconnect ACK and NAK
+    private long timeouts; // requests never answered within the correlation timeout
+    private long unmatchedResponses; // responses to no pending request, e.g. answers to retransmissions
+    private LatencyHistogramData latency;
+}
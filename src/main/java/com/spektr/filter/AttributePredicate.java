@@ -0,0 +1,74 @@
+package com.spektr.filter;
+
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusAttribute;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.radius.RadiusPacketView;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Matches packets carrying an attribute whose value passes a {@link ValueTest}.
+ * Standard attributes are found through the view's attribute index; vendor attributes are looked
+ * up inside Vendor-Specific attributes using the vendor's type and length field sizes.
+ */
+final class AttributePredicate extends PacketFilterCompiler.Node {
+
+    private static final int STANDARD_COST = 10;
+    private static final int VENDOR_COST = 20;
+
+    private final int vendorId;
+    private final int type;
+    private final int typeLength;
+    private final int lengthLength;
+    private final ValueTest test;
+
+    AttributePredicate(RadiusAttribute attribute, int typeLength, int lengthLength, ValueTest test) {
+        this.vendorId = attribute.getVendorId();
+        this.type = attribute.getType();
+        this.typeLength = typeLength;
+        this.lengthLength = lengthLength;
+        this.test = test;
+    }
+
+    @Override
+    public boolean matches(UdpDatagram datagram, RadiusPacketView radius) {
+        ByteBuffer buffer = radius.getBuffer();
+        for (int i = 0; i < radius.getAttributeCount(); i++) {
+            int attributeType = radius.getAttributeType(i);
+            int offset = radius.getAttributeValueOffset(i);
+            int length = radius.getAttributeValueLength(i);
+
+            if (vendorId == 0) {
+                if (attributeType == type && test.test(buffer, offset, length)) return true;
+            } else if (attributeType == RadiusDictionary.VENDOR_SPECIFIC && length >= 4
+                    && ValueTest.readUnsigned(buffer, offset, 4) == vendorId
+                    && matchesVendorSpecific(buffer, offset + 4, offset + length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesVendorSpecific(ByteBuffer buffer, int position, int end) {
+        int header = typeLength + lengthLength;
+        while (end - position >= header) {
+            int subLength = lengthLength == 0
+                    ? end - position
+                    : (int) ValueTest.readUnsigned(buffer, position + typeLength, lengthLength);
+            if (subLength < header || position + subLength > end) return false;
+
+            if (ValueTest.readUnsigned(buffer, position, typeLength) == type
+                    && test.test(buffer, position + header, subLength - header)) {
+                return true;
+            }
+            position += subLength;
+        }
+        return false;
+    }
+
+    @Override
+    int cost() {
+        return (vendorId == 0 ? STANDARD_COST : VENDOR_COST) + test.cost();
+    }
+}
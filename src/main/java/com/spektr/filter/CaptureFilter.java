@@ -0,0 +1,125 @@
+package com.spektr.filter;
+
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.pcap.Ipv4;
+import com.spektr.radius.RadiusAttribute;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.radius.RadiusPacketView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * All filters of a parse request, compiled once before the capture is read: the packet filter
+ * expression (with the legacy source IP filter folded in) and the free-text filter.
+ * <p>
+ * The text filter holds one or more terms separated by {@code |}; a packet matches if its decoded
+ * attributes contain any of them, ignoring case. Decoding is expensive, so the raw attribute bytes
+ * are first scanned for all terms at once with a {@link PatternMatcher} and packets without a hit
+ * are dropped undecoded. That shortcut is only taken when every term could only ever match the
+ * text of a string attribute, not a rendered number, address or attribute name.
+ */
+public final class CaptureFilter {
+
+    public static final CaptureFilter NONE = new CaptureFilter("", PacketFilter.ALL, List.of(), null);
+
+    // Characters making up rendered integers, dates, addresses and hex values
+    private static final String RENDERED_CHARACTERS = "0123456789abcdefx.-/tz ";
+
+    private final String key;
+    private final PacketFilter packetFilter;
+    private final List<String> terms;
+    private final PatternMatcher prefilter;
+
+    private CaptureFilter(String key, PacketFilter packetFilter, List<String> terms, PatternMatcher prefilter) {
+        this.key = key;
+        this.packetFilter = packetFilter;
+        this.terms = terms;
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * @param sourceIp   only keep packets sent by this address, may be null or empty
+     * @param text       only keep packets whose decoded attributes contain one of these
+     *                   {@code |}-separated terms, may be null or empty
+     * @param expression filter expression, see {@link PacketFilterCompiler}; may be null or empty
+     * @throws IllegalArgumentException if the source address or the expression is invalid
+     */
+    public static CaptureFilter compile(RadiusDictionary dictionary, String sourceIp, String text, String expression) {
+        PacketFilter packetFilter = PacketFilterCompiler.compile(expression, dictionary);
+        if (sourceIp != null && !sourceIp.isEmpty()) {
+            int address = Ipv4.parse(sourceIp);
+            PacketFilter bySource = (datagram, radius) -> datagram.getSourceIp() == address;
+            packetFilter = bySource.and(packetFilter);
+        }
+
+        List<String> terms = new ArrayList<>();
+        if (text != null) {
+            for (String term : text.toLowerCase().split("\\|")) {
+                if (!term.isEmpty()) terms.add(term);
+            }
+        }
+
+        PatternMatcher prefilter = null;
+        if (!terms.isEmpty() && terms.stream().allMatch(term -> onlyInStringValues(term, dictionary))) {
+            prefilter = PatternMatcher.compile(terms);
+        }
+        String key = (sourceIp != null ? sourceIp : "") + "\n" + (expression != null ? expression.trim() : "")
+                + "\n" + String.join("|", terms);
+        return new CaptureFilter(key.equals("\n\n") ? "" : key, packetFilter, terms, prefilter);
+    }
+
+    /**
+     * Text of the filter parameters; filters compiled from the same parameters have the same key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public PacketFilter getPacketFilter() {
+        return packetFilter;
+    }
+
+    /**
+     * Cheap check on the undecoded packet.
+     *
+     * @return false only if {@link #matchesText} is certain to be false
+     */
+    public boolean mayMatchText(RadiusPacketView radius) {
+        if (prefilter == null) return true;
+        int attributes = radius.getOffset() + RadiusPacketView.HEADER_LENGTH;
+        return prefilter.find(radius.getBuffer(), attributes, radius.getOffset() + radius.getLength());
+    }
+
+    public boolean matchesText(RadiusPacketData packet) {
+        if (terms.isEmpty()) return true;
+        String rawData = packet.getRawData().toLowerCase();
+        for (String term : terms) {
+            if (rawData.contains(term)) return true;
+            if (packet.getAttributes().values().stream().anyMatch(v -> v.toLowerCase().contains(term))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether a term can only occur in the decoded text inside the value of a string attribute,
+     * whose displayed form is its printable raw bytes. Terms that could span the ": " and line
+     * breaks of the dump, be part of an attribute or value name, or be part of a rendered number,
+     * address or hex value are not.
+     */
+    private static boolean onlyInStringValues(String term, RadiusDictionary dictionary) {
+        if (term.indexOf(':') >= 0 || term.indexOf(',') >= 0 || term.indexOf('\n') >= 0) return false;
+        if (term.chars().allMatch(c -> RENDERED_CHARACTERS.indexOf(c) >= 0)) return false;
+
+        for (String header : List.of("code", " identifier", " length", "  attribute-", "  attr-26.")) {
+            if (header.contains(term)) return false;
+        }
+        for (RadiusAttribute attribute : dictionary.getAttributes()) {
+            if (("  " + attribute.getName().toLowerCase()).contains(term)) return false;
+            for (String valueName : attribute.getValueNames()) {
+                if ((" " + valueName.toLowerCase()).contains(term)) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+package com.spektr.filter;
+
+/**
+ * Splits a filter expression into tokens. Bare words cover identifiers, numbers, addresses and
+ * CIDRs alike; the parser decides what they mean from context.
+ */
+class FilterLexer {
+
+    enum Kind {
+        WORD, STRING, LEFT_PAREN, RIGHT_PAREN, LEFT_BRACKET, RIGHT_BRACKET, COMMA, OPERATOR, END
+    }
+
+    private final String input;
+    private int position;
+
+    Kind kind;
+    String text;
+    int start;
+
+    FilterLexer(String input) {
+        this.input = input;
+        advance();
+    }
+
+    void advance() {
+        while (position < input.length() && Character.isWhitespace(input.charAt(position))) {
+            position++;
+        }
+        start = position;
+        if (position >= input.length()) {
+            kind = Kind.END;
+            text = "";
+            return;
+        }
+
+        char c = input.charAt(position);
+        switch (c) {
+            case '(':
+                single(Kind.LEFT_PAREN);
+                return;
+            case ')':
+                single(Kind.RIGHT_PAREN);
+                return;
+            case '[':
+                single(Kind.LEFT_BRACKET);
+                return;
+            case ']':
+                single(Kind.RIGHT_BRACKET);
+                return;
+            case ',':
+                single(Kind.COMMA);
+                return;
+            case '"':
+                readString();
+                return;
+            default:
+                break;
+        }
+
+        for (String operator : new String[] {"==", "!=", "!~", "<=", ">=", "&&", "||", "=", "~", "<", ">", "!"}) {
+            if (input.startsWith(operator, position)) {
+                position += operator.length();
+                kind = Kind.OPERATOR;
+                text = operator.equals("=") ? "==" : operator;
+                return;
+            }
+        }
+
+        while (position < input.length() && isWordChar(input.charAt(position))) {
+            position++;
+        }
+        if (position == start) {
+            throw error("Unexpected character '" + c + "'");
+        }
+        kind = Kind.WORD;
+        text = input.substring(start, position);
+    }
+
+    private void single(Kind singleKind) {
+        kind = singleKind;
+        text = String.valueOf(input.charAt(position++));
+    }
+
+    private void readString() {
+        StringBuilder value = new StringBuilder();
+        position++;
+        while (position < input.length() && input.charAt(position) != '"') {
+            char c = input.charAt(position++);
+            if (c == '\\' && position < input.length()) {
+                c = input.charAt(position++);
+            }
+            value.append(c);
+        }
+        if (position >= input.length()) {
+            throw error("Unterminated string");
+        }
+        position++;
+        kind = Kind.STRING;
+        text = value.toString();
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' || c == '/' || c == ':';
+    }
+
+    boolean isKeyword(String keyword) {
+        return kind == Kind.WORD && text.equalsIgnoreCase(keyword);
+    }
+
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid filter at position " + (start + 1) + ": " + message);
+    }
+}
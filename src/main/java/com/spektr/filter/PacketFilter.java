@@ -0,0 +1,24 @@
+package com.spektr.filter;
+
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusPacketView;
+
+/**
+ * Compiled filter expression, evaluated against the undecoded datagram and RADIUS packet view.
+ * Implementations are immutable and safe to share between parsing threads.
+ *
+ * @see PacketFilterCompiler
+ */
+@FunctionalInterface
+public interface PacketFilter {
+
+    PacketFilter ALL = (datagram, radius) -> true;
+
+    boolean matches(UdpDatagram datagram, RadiusPacketView radius);
+
+    default PacketFilter and(PacketFilter other) {
+        if (this == ALL) return other;
+        if (other == ALL) return this;
+        return (datagram, radius) -> matches(datagram, radius) && other.matches(datagram, radius);
+    }
+}
@@ -0,0 +1,454 @@
+package com.spektr.filter;
+
+import com.spektr.filter.FilterLexer.Kind;
+import com.spektr.pcap.Ipv4;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusAttribute;
+import com.spektr.radius.RadiusCode;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.radius.RadiusPacketView;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compiles filter expressions such as
+ * <pre>
+ *   src in 10.0.0.0/8 and attr[User-Name] ~ "guest" and code == Accounting-Request
+ * </pre>
+ * into a tree of {@link PacketFilter} nodes. Names, addresses and values are resolved once here,
+ * so evaluation only compares ints and bytes. Operands of {@code and} / {@code or} are reordered
+ * so that header checks run before attribute scans.
+ * <p>
+ * Grammar, keywords case-insensitive:
+ * <pre>
+ *   expression := term (("or" | "||") term)*
+ *   term       := factor (("and" | "&&") factor)*
+ *   factor     := ("not" | "!") factor | "(" expression ")" | comparison
+ *   comparison := field operator value | field "in" (value | "(" value ("," value)* ")") | attribute
+ *   field      := src | dst | ip | sport | dport | port | code | id | length | attribute
+ *   attribute  := "attr[" name "]"
+ *   operator   := == | != | ~ | !~ | &lt; | &lt;= | &gt; | &gt;=
+ * </pre>
+ * {@code ip} and {@code port} match either direction; a bare {@code attr[Name]} tests presence;
+ * {@code ~} is a case-insensitive substring match. A comparison on an attribute that occurs more
+ * than once is true if any occurrence matches.
+ */
+public final class PacketFilterCompiler {
+
+    static final int HEADER_COST = 1;
+
+    private final FilterLexer lexer;
+    private final RadiusDictionary dictionary;
+
+    private PacketFilterCompiler(String expression, RadiusDictionary dictionary) {
+        this.lexer = new FilterLexer(expression);
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return the compiled filter, {@link PacketFilter#ALL} for a blank expression
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static PacketFilter compile(String expression, RadiusDictionary dictionary) {
+        if (expression == null || expression.isBlank()) return PacketFilter.ALL;
+
+        PacketFilterCompiler compiler = new PacketFilterCompiler(expression, dictionary);
+        Node filter = compiler.parseExpression();
+        if (compiler.lexer.kind != Kind.END) {
+            throw compiler.lexer.error("Unexpected '" + compiler.lexer.text + "'");
+        }
+        return filter;
+    }
+
+    private Node parseExpression() {
+        List<Node> operands = new ArrayList<>();
+        operands.add(parseTerm());
+        while (lexer.isKeyword("or") || isOperator("||")) {
+            lexer.advance();
+            operands.add(parseTerm());
+        }
+        return operands.size() == 1 ? operands.get(0) : new Or(operands);
+    }
+
+    private Node parseTerm() {
+        List<Node> operands = new ArrayList<>();
+        operands.add(parseFactor());
+        while (lexer.isKeyword("and") || isOperator("&&")) {
+            lexer.advance();
+            operands.add(parseFactor());
+        }
+        return operands.size() == 1 ? operands.get(0) : new And(operands);
+    }
+
+    private Node parseFactor() {
+        if (lexer.isKeyword("not") || isOperator("!")) {
+            lexer.advance();
+            return new Not(parseFactor());
+        }
+        if (lexer.kind == Kind.LEFT_PAREN) {
+            lexer.advance();
+            Node inner = parseExpression();
+            expect(Kind.RIGHT_PAREN, "')'");
+            return inner;
+        }
+        return parseComparison();
+    }
+
+    private Node parseComparison() {
+        if (lexer.kind != Kind.WORD) {
+            throw lexer.error("Expected a field name");
+        }
+
+        String field = lexer.text.toLowerCase();
+        if (field.equals("attr")) {
+            return parseAttributeComparison();
+        }
+
+        HeaderField header = HeaderField.of(field);
+        if (header == null) {
+            throw lexer.error("Unknown field '" + lexer.text + "'");
+        }
+        lexer.advance();
+
+        if (lexer.isKeyword("in")) {
+            lexer.advance();
+            List<Node> alternatives = new ArrayList<>();
+            for (String value : parseValueList()) {
+                alternatives.add(headerComparison(header, "in", value));
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Or(alternatives);
+        }
+
+        String operator = expectOperator();
+        String value = expectValue();
+        if (operator.equals("!=")) {
+            return new Not(headerComparison(header, "==", value));
+        }
+        return headerComparison(header, operator, value);
+    }
+
+    private Node headerComparison(HeaderField field, String operator, String value) {
+        if (field.isAddress()) {
+            if (!operator.equals("==") && !operator.equals("in")) {
+                throw lexer.error("Operator " + operator + " is not supported for " + field.name);
+            }
+            int[] network = parseNetwork(value);
+            return new AddressTest(field, network[0], network[1]);
+        }
+
+        if (operator.equals("in")) operator = "==";
+        if (operator.equals("~") || operator.equals("!~")) {
+            throw lexer.error("Operator " + operator + " is not supported for " + field.name);
+        }
+        long number = field == HeaderField.CODE ? parseCode(value) : parseNumber(value);
+        return new NumberTest(field, Comparison.of(operator), number);
+    }
+
+    private Node parseAttributeComparison() {
+        lexer.advance();
+        expect(Kind.LEFT_BRACKET, "'[' after attr");
+        if (lexer.kind != Kind.WORD && lexer.kind != Kind.STRING) {
+            throw lexer.error("Expected an attribute name");
+        }
+        String name = lexer.text;
+        RadiusAttribute attribute = dictionary.getAttribute(name);
+        if (attribute == null) {
+            throw lexer.error("Unknown RADIUS attribute '" + name + "'");
+        }
+        lexer.advance();
+        expect(Kind.RIGHT_BRACKET, "']'");
+
+        if (lexer.isKeyword("in")) {
+            lexer.advance();
+            List<Node> alternatives = new ArrayList<>();
+            for (String value : parseValueList()) {
+                alternatives.add(attributeTest(attribute, "in", value));
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new Or(alternatives);
+        }
+        if (lexer.kind != Kind.OPERATOR || isOperator("!") || isOperator("&&") || isOperator("||")) {
+            return attributeTest(attribute, null, null); // presence
+        }
+
+        String operator = expectOperator();
+        String value = expectValue();
+        if (operator.equals("!=")) return new Not(attributeTest(attribute, "==", value));
+        if (operator.equals("!~")) return new Not(attributeTest(attribute, "~", value));
+        return attributeTest(attribute, operator, value);
+    }
+
+    private Node attributeTest(RadiusAttribute attribute, String operator, String value) {
+        int vendorId = attribute.getVendorId();
+        try {
+            return new AttributePredicate(attribute,
+                    vendorId != 0 ? dictionary.getVendorTypeLength(vendorId) : 0,
+                    vendorId != 0 ? dictionary.getVendorLengthLength(vendorId) : 0,
+                    ValueTest.compile(attribute, operator, value));
+        } catch (IllegalArgumentException e) {
+            throw lexer.error(e.getMessage());
+        }
+    }
+
+    private List<String> parseValueList() {
+        List<String> values = new ArrayList<>();
+        if (lexer.kind != Kind.LEFT_PAREN) {
+            values.add(expectValue());
+            return values;
+        }
+        lexer.advance();
+        values.add(expectValue());
+        while (lexer.kind == Kind.COMMA) {
+            lexer.advance();
+            values.add(expectValue());
+        }
+        expect(Kind.RIGHT_PAREN, "')'");
+        return values;
+    }
+
+    private String expectOperator() {
+        if (lexer.kind != Kind.OPERATOR || isOperator("!") || isOperator("&&") || isOperator("||")) {
+            throw lexer.error("Expected a comparison operator");
+        }
+        String operator = lexer.text;
+        lexer.advance();
+        return operator;
+    }
+
+    private String expectValue() {
+        if (lexer.kind != Kind.WORD && lexer.kind != Kind.STRING) {
+            throw lexer.error("Expected a value");
+        }
+        String value = lexer.text;
+        lexer.advance();
+        return value;
+    }
+
+    private void expect(Kind kind, String description) {
+        if (lexer.kind != kind) {
+            throw lexer.error("Expected " + description);
+        }
+        lexer.advance();
+    }
+
+    private boolean isOperator(String operator) {
+        return lexer.kind == Kind.OPERATOR && lexer.text.equals(operator);
+    }
+
+    private int[] parseNetwork(String value) {
+        int slash = value.indexOf('/');
+        try {
+            int address = Ipv4.parse(slash < 0 ? value : value.substring(0, slash));
+            int prefix = slash < 0 ? 32 : Integer.parseInt(value.substring(slash + 1));
+            if (prefix < 0 || prefix > 32) throw new IllegalArgumentException();
+            int mask = prefix == 0 ? 0 : -1 << (32 - prefix);
+            return new int[] {address & mask, mask};
+        } catch (IllegalArgumentException e) {
+            throw lexer.error("Invalid IPv4 address or CIDR '" + value + "'");
+        }
+    }
+
+    private long parseCode(String value) {
+        int code = RadiusCode.valueOf(value);
+        return code >= 0 ? code : parseNumber(value);
+    }
+
+    private long parseNumber(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw lexer.error("Expected a number, got '" + value + "'");
+        }
+    }
+
+    enum HeaderField {
+        SRC("src"), DST("dst"), IP("ip"), SPORT("sport"), DPORT("dport"), PORT("port"),
+        CODE("code"), ID("id"), LENGTH("length");
+
+        final String name;
+
+        HeaderField(String name) {
+            this.name = name;
+        }
+
+        boolean isAddress() {
+            return this == SRC || this == DST || this == IP;
+        }
+
+        static HeaderField of(String name) {
+            for (HeaderField field : values()) {
+                if (field.name.equals(name)) return field;
+            }
+            return null;
+        }
+    }
+
+    enum Comparison {
+        EQ, LT, LE, GT, GE;
+
+        static Comparison of(String operator) {
+            switch (operator) {
+                case "==":
+                    return EQ;
+                case "<":
+                    return LT;
+                case "<=":
+                    return LE;
+                case ">":
+                    return GT;
+                case ">=":
+                    return GE;
+                default:
+                    throw new IllegalArgumentException("Unsupported operator " + operator);
+            }
+        }
+
+        boolean test(long actual, long expected) {
+            switch (this) {
+                case LT:
+                    return actual < expected;
+                case LE:
+                    return actual <= expected;
+                case GT:
+                    return actual > expected;
+                case GE:
+                    return actual >= expected;
+                default:
+                    return actual == expected;
+            }
+        }
+    }
+
+    /**
+     * Filter tree node; the cost is a rough relative price of evaluating it.
+     */
+    abstract static class Node implements PacketFilter {
+        abstract int cost();
+    }
+
+    private static final class And extends Node {
+        private final Node[] operands;
+        private final int cost;
+
+        And(List<Node> operands) {
+            this.operands = operands.stream().sorted(Comparator.comparingInt(Node::cost)).toArray(Node[]::new);
+            this.cost = operands.stream().mapToInt(Node::cost).sum();
+        }
+
+        @Override
+        public boolean matches(UdpDatagram datagram, RadiusPacketView radius) {
+            for (Node operand : operands) {
+                if (!operand.matches(datagram, radius)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+    }
+
+    private static final class Or extends Node {
+        private final Node[] operands;
+        private final int cost;
+
+        Or(List<Node> operands) {
+            this.operands = operands.stream().sorted(Comparator.comparingInt(Node::cost)).toArray(Node[]::new);
+            this.cost = operands.stream().mapToInt(Node::cost).sum();
+        }
+
+        @Override
+        public boolean matches(UdpDatagram datagram, RadiusPacketView radius) {
+            for (Node operand : operands) {
+                if (operand.matches(datagram, radius)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        int cost() {
+            return cost;
+        }
+    }
+
+    private static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean matches(UdpDatagram datagram, RadiusPacketView radius) {
+            return !operand.matches(datagram, radius);
+        }
+
+        @Override
+        int cost() {
+            return operand.cost();
+        }
+    }
+
+    private static final class AddressTest extends Node {
+        private final HeaderField field;
+        private final int network;
+        private final int mask;
+
+        AddressTest(HeaderField field, int network, int mask) {
+            this.field = field;
+            this.network = network;
+            this.mask = mask;
+        }
+
+        @Override
+        public boolean matches(UdpDatagram datagram, RadiusPacketView radius) {
+            boolean source = (datagram.getSourceIp() & mask) == network;
+            if (field == HeaderField.SRC) return source;
+            boolean destination = (datagram.getDestinationIp() & mask) == network;
+            return field == HeaderField.DST ? destination : source || destination;
+        }
+
+        @Override
+        int cost() {
+            return HEADER_COST;
+        }
+    }
+
+    private static final class NumberTest extends Node {
+        private final HeaderField field;
+        private final Comparison comparison;
+        private final long value;
+
+        NumberTest(HeaderField field, Comparison comparison, long value) {
+            this.field = field;
+            this.comparison = comparison;
+            this.value = value;
+        }
+
+        @Override
+        public boolean matches(UdpDatagram datagram, RadiusPacketView radius) {
+            switch (field) {
+                case SPORT:
+                    return comparison.test(datagram.getSourcePort(), value);
+                case DPORT:
+                    return comparison.test(datagram.getDestinationPort(), value);
+                case PORT:
+                    return comparison.test(datagram.getSourcePort(), value)
+                            || comparison.test(datagram.getDestinationPort(), value);
+                case CODE:
+                    return comparison.test(radius.getCode(), value);
+                case ID:
+                    return comparison.test(radius.getIdentifier(), value);
+                default:
+                    return comparison.test(radius.getDeclaredLength(), value);
+            }
+        }
+
+        @Override
+        int cost() {
+            return HEADER_COST;
+        }
+    }
+}
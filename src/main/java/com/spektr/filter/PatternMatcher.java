@@ -0,0 +1,102 @@
+package com.spektr.filter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton that finds any of several ASCII patterns in raw bytes, ignoring case,
+ * in a single pass of one table lookup per byte.
+ * <p>
+ * Bytes that are not printable ASCII are skipped rather than breaking a match, mirroring how
+ * string attributes are rendered for display: a pattern found in the displayed value of an
+ * attribute is always found in its raw bytes too.
+ */
+public final class PatternMatcher {
+
+    private static final int ALPHABET = 256;
+
+    // transitions[state * 256 + byte] is the next state, negative once a pattern has matched
+    private final int[] transitions;
+
+    private PatternMatcher(int[] transitions) {
+        this.transitions = transitions;
+    }
+
+    /**
+     * @param patterns non-empty patterns; characters outside printable ASCII can never match
+     */
+    public static PatternMatcher compile(List<String> patterns) {
+        // Trie of the lower-cased patterns, -1 for missing edges
+        int capacity = 1 + patterns.stream().mapToInt(String::length).sum();
+        int[] trie = new int[capacity * ALPHABET];
+        Arrays.fill(trie, -1);
+        boolean[] accepting = new boolean[capacity];
+        int states = 1;
+        for (String pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern.toLowerCase().getBytes(StandardCharsets.UTF_8)) {
+                int edge = state * ALPHABET + (b & 0xFF);
+                if (trie[edge] < 0) trie[edge] = states++;
+                state = trie[edge];
+            }
+            accepting[state] = true;
+        }
+
+        // Breadth-first pass turning the trie into a complete DFA through the failure links
+        int[] transitions = new int[states * ALPHABET];
+        int[] failure = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int b = 0; b < ALPHABET; b++) {
+            int next = trie[b];
+            transitions[b] = next < 0 ? 0 : next;
+            if (next > 0) queue.add(next);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            accepting[state] |= accepting[failure[state]];
+            for (int b = 0; b < ALPHABET; b++) {
+                int next = trie[state * ALPHABET + b];
+                if (next < 0) {
+                    transitions[state * ALPHABET + b] = transitions[failure[state] * ALPHABET + b];
+                } else {
+                    failure[next] = transitions[failure[state] * ALPHABET + b];
+                    transitions[state * ALPHABET + b] = next;
+                    queue.add(next);
+                }
+            }
+        }
+
+        // Fold case and skipping into the table, and mark accepting targets so the scan loop
+        // only needs a sign test
+        int[] table = new int[states * ALPHABET];
+        for (int state = 0; state < states; state++) {
+            for (int b = 0; b < ALPHABET; b++) {
+                int next;
+                if (b < 0x20 || b >= 0x7F) {
+                    next = state;
+                } else {
+                    next = transitions[state * ALPHABET + (b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b)];
+                }
+                table[state * ALPHABET + b] = accepting[next] ? -1 : next * ALPHABET;
+            }
+        }
+        return new PatternMatcher(table);
+    }
+
+    /**
+     * @return true if any pattern occurs in {@code buffer} between {@code from} and {@code to}
+     */
+    public boolean find(ByteBuffer buffer, int from, int to) {
+        int[] table = transitions;
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            state = table[state + (buffer.get(i) & 0xFF)];
+            if (state < 0) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,234 @@
+package com.spektr.filter;
+
+import com.spektr.pcap.Ipv4;
+import com.spektr.radius.RadiusAttribute;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Test applied to the raw bytes of an attribute value. Strings, octets, integers and IPv4
+ * addresses are compared without decoding; other types (and tagged or encrypted attributes) fall
+ * back to comparing the value as the UI would display it.
+ */
+abstract class ValueTest {
+
+    private static final int FORMATTED_COST = 50;
+
+    abstract boolean test(ByteBuffer buffer, int offset, int length);
+
+    int cost() {
+        return 0;
+    }
+
+    /**
+     * @param operator null to test presence, otherwise one of ==, ~, in, &lt;, &lt;=, &gt;, &gt;=
+     * @throws IllegalArgumentException if the operator or value do not fit the attribute type
+     */
+    static ValueTest compile(RadiusAttribute attribute, String operator, String value) {
+        if (operator == null) return PRESENT;
+        if (operator.equals("in")) operator = "==";
+
+        boolean contains = operator.equals("~");
+        boolean equals = operator.equals("==");
+        if (attribute.isTagged() || attribute.isEncrypted()) {
+            return formatted(attribute, operator, value);
+        }
+
+        switch (attribute.getDataType()) {
+            case STRING:
+                if (equals) return new BytesEqual(value.getBytes(StandardCharsets.UTF_8));
+                if (contains) return new Contains(value);
+                break;
+            case OCTETS:
+                if (equals) return new BytesEqual(octets(value));
+                if (contains) return new Contains(value);
+                break;
+            case INTEGER:
+                if (!contains) return new Unsigned(4, PacketFilterCompiler.Comparison.of(operator), number(attribute, value));
+                break;
+            case INTEGER64:
+                if (!contains) return new Unsigned(8, PacketFilterCompiler.Comparison.of(operator), number(attribute, value));
+                break;
+            case SHORT:
+                if (!contains) return new Unsigned(2, PacketFilterCompiler.Comparison.of(operator), number(attribute, value));
+                break;
+            case BYTE:
+                if (!contains) return new Unsigned(1, PacketFilterCompiler.Comparison.of(operator), number(attribute, value));
+                break;
+            case IPADDR:
+                if (equals) return network(value);
+                break;
+            default:
+                break;
+        }
+        return formatted(attribute, operator, value);
+    }
+
+    static long readUnsigned(ByteBuffer buffer, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (buffer.get(offset + i) & 0xFF);
+        }
+        return value;
+    }
+
+    private static ValueTest formatted(RadiusAttribute attribute, String operator, String value) {
+        if (!operator.equals("==") && !operator.equals("~")) {
+            throw new IllegalArgumentException("Operator " + operator + " is not supported for attribute " + attribute.getName());
+        }
+        return new Formatted(attribute, operator.equals("~"), value);
+    }
+
+    private static long number(RadiusAttribute attribute, String value) {
+        long named = attribute.valueOf(value);
+        if (named >= 0) return named;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number or value name for attribute " + attribute.getName() + ", got '" + value + "'");
+        }
+    }
+
+    private static byte[] octets(String value) {
+        if (!value.startsWith("0x") && !value.startsWith("0X")) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        String hex = value.substring(2);
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits in '" + value + "'");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) throw new IllegalArgumentException("Invalid hex value '" + value + "'");
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static ValueTest network(String value) {
+        int slash = value.indexOf('/');
+        int address = Ipv4.parse(slash < 0 ? value : value.substring(0, slash));
+        int prefix;
+        try {
+            prefix = slash < 0 ? 32 : Integer.parseInt(value.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            prefix = -1;
+        }
+        if (prefix < 0 || prefix > 32) throw new IllegalArgumentException("Invalid CIDR '" + value + "'");
+        int mask = prefix == 0 ? 0 : -1 << (32 - prefix);
+        return new Network(address & mask, mask);
+    }
+
+    private static final ValueTest PRESENT = new ValueTest() {
+        @Override
+        boolean test(ByteBuffer buffer, int offset, int length) {
+            return true;
+        }
+    };
+
+    private static final class BytesEqual extends ValueTest {
+        private final byte[] expected;
+
+        BytesEqual(byte[] expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        boolean test(ByteBuffer buffer, int offset, int length) {
+            if (length != expected.length) return false;
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(offset + i) != expected[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Case-insensitive substring search; only ASCII letters are case-folded.
+     */
+    private static final class Contains extends ValueTest {
+        private final byte[] needle;
+
+        Contains(String value) {
+            this.needle = value.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        boolean test(ByteBuffer buffer, int offset, int length) {
+            int last = offset + length - needle.length;
+            for (int start = offset; start <= last; start++) {
+                int i = 0;
+                while (i < needle.length && lower(buffer.get(start + i)) == needle[i]) i++;
+                if (i == needle.length) return true;
+            }
+            return false;
+        }
+
+        private static byte lower(byte b) {
+            return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+        }
+    }
+
+    private static final class Unsigned extends ValueTest {
+        private final int width;
+        private final PacketFilterCompiler.Comparison comparison;
+        private final long expected;
+
+        Unsigned(int width, PacketFilterCompiler.Comparison comparison, long expected) {
+            this.width = width;
+            this.comparison = comparison;
+            this.expected = expected;
+        }
+
+        @Override
+        boolean test(ByteBuffer buffer, int offset, int length) {
+            return length == width && comparison.test(readUnsigned(buffer, offset, width), expected);
+        }
+    }
+
+    private static final class Network extends ValueTest {
+        private final int network;
+        private final int mask;
+
+        Network(int network, int mask) {
+            this.network = network;
+            this.mask = mask;
+        }
+
+        @Override
+        boolean test(ByteBuffer buffer, int offset, int length) {
+            return length == 4 && ((int) readUnsigned(buffer, offset, 4) & mask) == network;
+        }
+    }
+
+    private static final class Formatted extends ValueTest {
+        private final RadiusAttribute attribute;
+        private final boolean contains;
+        private final String expected;
+
+        Formatted(RadiusAttribute attribute, boolean contains, String expected) {
+            this.attribute = attribute;
+            this.contains = contains;
+            this.expected = contains ? expected.toLowerCase(Locale.ROOT) : expected;
+        }
+
+        @Override
+        boolean test(ByteBuffer buffer, int offset, int length) {
+            byte[] value = new byte[length];
+            buffer.get(offset, value);
+            String formatted = attribute.format(value, 0, length);
+            return contains
+                    ? formatted.toLowerCase(Locale.ROOT).contains(expected)
+                    : formatted.equalsIgnoreCase(expected);
+        }
+
+        @Override
+        int cost() {
+            return FORMATTED_COST;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.spektr.pcap;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Record-aligned slice of a capture file, mapped on its own so that chunks can be decoded
+ * in parallel.
+ * <p>
+ * Chunk boundaries are found without reading the file up to them: near each cut point the
+ * format's header chain check locates the next record. Such a guess can in theory land inside
+ * packet data, so after a chunk is read to the end {@link #isAligned()} tells whether it ended
+ * exactly where the next chunk starts; if any chunk does not, the capture must be read sequentially.
+ */
+public class CaptureChunk implements CaptureReader {
+
+    // Size of the mapped region searched for a record start around each cut point
+    private static final int SYNC_WINDOW = 1 << 20;
+
+    private final ChannelCaptureReader reader;
+    private final long end;
+    private boolean corrupt;
+
+    private CaptureChunk(ChannelCaptureReader reader, long end) {
+        this.reader = reader;
+        this.end = end;
+    }
+
+    /**
+     * Splits a capture into up to {@code maxChunks} chunks of at least {@code minChunkSize} bytes.
+     *
+     * @return the chunks in file order, or an empty list if the capture is too small or could not be split
+     */
+    public static List<CaptureChunk> split(FileChannel channel, int maxChunks, long minChunkSize) throws IOException {
+        long size = channel.size();
+        int count = (int) Math.min(maxChunks, size / Math.max(minChunkSize, 1L));
+        if (count < 2) return List.of();
+
+        // The first record is read to learn the format state that every chunk starts from
+        MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, SYNC_WINDOW));
+        // Compressed captures can only be read from the start
+        if (DecompressingCaptureReader.Compression.detect(head) != null) return List.of();
+        ChannelCaptureReader header = CaptureReaders.openBuffer(head);
+        if (header.next() == null) return List.of();
+
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        for (int i = 1; i < count; i++) {
+            long cut = (size / count * i) & ~3L;
+            if (cut <= starts.get(starts.size() - 1)) continue;
+
+            long windowLength = Math.min(SYNC_WINDOW, size - cut);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, cut, windowLength);
+            int start = header.findRecordStart(window, cut + windowLength == size);
+            if (start >= 0) starts.add(cut + start);
+        }
+        if (starts.size() < 2) return List.of();
+
+        List<CaptureChunk> chunks = new ArrayList<>(starts.size());
+        for (int i = 0; i < starts.size(); i++) {
+            long start = starts.get(i);
+            long end = i + 1 < starts.size() ? starts.get(i + 1) : size;
+            // A single mapping is limited to 2 GB
+            if (end - start > Integer.MAX_VALUE) return List.of();
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            ChannelCaptureReader reader = i == 0
+                    ? CaptureReaders.openBuffer(mapped)
+                    : header.readerForChunk(mapped, start);
+            chunks.add(new CaptureChunk(reader, end));
+        }
+        return chunks;
+    }
+
+    @Override
+    public CaptureRecord next() throws IOException {
+        if (corrupt) return null;
+        try {
+            return reader.next();
+        } catch (CaptureFormatException e) {
+            // Either a misplaced boundary or a really corrupt file; the sequential read will tell
+            corrupt = true;
+            return null;
+        }
+    }
+
+    /**
+     * Whether the chunk, once read to the end, was consumed exactly up to the start of the next one.
+     */
+    public boolean isAligned() {
+        return !corrupt && reader.position() == end && !reader.hasMultipleSections();
+    }
+
+    @Override
+    public long position() {
+        return reader.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
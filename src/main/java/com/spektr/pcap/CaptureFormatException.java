@@ -0,0 +1,12 @@
+package com.spektr.pcap;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an upload is not a capture file we can read, or is corrupted beyond recovery.
+ */
+public class CaptureFormatException extends IOException {
+    public CaptureFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,24 @@
+package com.spektr.pcap;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sequential reader over the records of a capture file.
+ * Implementations reuse a single {@link CaptureRecord} instance, so the record returned by
+ * {@link #next()} is only valid until the following call.
+ */
+public interface CaptureReader extends Closeable {
+
+    /**
+     * Advances to the next record of the capture.
+     *
+     * @return the current record, or {@code null} once the end of the capture is reached
+     */
+    CaptureRecord next() throws IOException;
+
+    /**
+     * Number of bytes of the underlying capture consumed so far.
+     */
+    long position();
+}
@@ -0,0 +1,146 @@
+package com.spektr.pcap;
+
+import com.spektr.pcap.DecompressingCaptureReader.Compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Opens the right {@link CaptureReader} for a capture by looking at its first bytes,
+ * so callers do not have to trust the file extension. Captures compressed with gzip, zstd, lz4
+ * or xz are decompressed while they are read.
+ */
+public final class CaptureReaders {
+
+    private static final int SNIFF_BUFFER_SIZE = 1 << 20;
+    // Mapped to read the format state from the headers in front of the first record
+    private static final int HEADER_WINDOW = 1 << 20;
+
+    private CaptureReaders() {
+    }
+
+    public static CaptureReader open(ReadableByteChannel channel) throws IOException {
+        ByteBuffer prefetched = prefetch(channel);
+        Compression compression = Compression.detect(prefetched);
+        if (compression != null) {
+            byte[] head = new byte[prefetched.remaining()];
+            prefetched.get(head);
+            InputStream in = new SequenceInputStream(new ByteArrayInputStream(head),
+                    Channels.newInputStream(channel));
+            return new DecompressingCaptureReader(compression, in);
+        }
+        return open(channel, prefetched);
+    }
+
+    public static CaptureReader open(ByteBuffer capture) throws IOException {
+        Compression compression = Compression.detect(capture);
+        if (compression != null) {
+            return new DecompressingCaptureReader(compression, new BufferInputStream(capture.slice()));
+        }
+        return openBuffer(capture);
+    }
+
+    /**
+     * Reads the record at {@code captureOffset} of a capture file, as given by
+     * {@link CaptureRecord#getFileOffset()}, mapping only the headers and that record. In pcapng
+     * files the record is read with the interfaces described before the first record.
+     *
+     * @return the record, valid while the channel is open, or null if the capture ends there
+     * @throws CaptureFormatException if the capture is compressed or there is no record at this offset
+     */
+    public static CaptureRecord readRecord(FileChannel channel, long captureOffset) throws IOException {
+        long size = channel.size();
+        if (captureOffset < 0 || captureOffset >= size) return null;
+
+        ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_WINDOW));
+        if (Compression.detect(head) != null) {
+            throw new CaptureFormatException("Records of compressed captures can only be read in order");
+        }
+        ChannelCaptureReader header = openBuffer(head);
+        if (header.next() == null) return null;
+
+        ByteBuffer record = channel.map(FileChannel.MapMode.READ_ONLY, captureOffset,
+                Math.min(size - captureOffset, ChannelCaptureReader.MAX_RECORD_LENGTH));
+        return header.readerForChunk(record, captureOffset).next();
+    }
+
+    /**
+     * Whether the stream starts like a compressed capture; reads its first few bytes.
+     */
+    public static boolean isCompressed(InputStream in) throws IOException {
+        byte[] head = in.readNBytes(Compression.MAX_MAGIC_LENGTH);
+        return Compression.detect(ByteBuffer.wrap(head)) != null;
+    }
+
+    static CaptureReader openUncompressed(ReadableByteChannel channel) throws IOException {
+        return open(channel, prefetch(channel));
+    }
+
+    static ChannelCaptureReader openBuffer(ByteBuffer capture) throws IOException {
+        if (isPcapNg(capture)) {
+            return new PcapNgReader(capture);
+        }
+        return new PcapReader(capture);
+    }
+
+    private static ByteBuffer prefetch(ReadableByteChannel channel) throws IOException {
+        ByteBuffer prefetched = ByteBuffer.allocateDirect(SNIFF_BUFFER_SIZE);
+        while (prefetched.position() < Compression.MAX_MAGIC_LENGTH) {
+            if (channel.read(prefetched) < 0) break;
+        }
+        prefetched.flip();
+        return prefetched;
+    }
+
+    private static CaptureReader open(ReadableByteChannel channel, ByteBuffer prefetched) throws IOException {
+        if (isPcapNg(prefetched)) {
+            return new PcapNgReader(channel, prefetched);
+        }
+        return new PcapReader(channel, prefetched);
+    }
+
+    private static boolean isPcapNg(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.limit() - start < 4) return false;
+        int magic = ((buffer.get(start) & 0xFF) << 24) | ((buffer.get(start + 1) & 0xFF) << 16) |
+                    ((buffer.get(start + 2) & 0xFF) << 8) | (buffer.get(start + 3) & 0xFF);
+        return magic == PcapNgReader.SECTION_HEADER_BLOCK;
+    }
+
+    /**
+     * Reads a (memory-mapped) buffer as a stream, for the decompressors.
+     */
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
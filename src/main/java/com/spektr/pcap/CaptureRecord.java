@@ -0,0 +1,65 @@
+package com.spektr.pcap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mutable view of a single captured frame.
+ * The frame bytes are not copied: {@link #getBuffer()} is the reader's own buffer and the frame
+ * occupies {@code capturedLength} bytes starting at {@code dataOffset}.
+ */
+public class CaptureRecord {
+
+    private ByteBuffer buffer;
+    private int dataOffset;
+    private int capturedLength;
+    private int originalLength;
+    private long timestampNanos;
+    private int linkType;
+    private long fileOffset;
+
+    void set(ByteBuffer buffer, int dataOffset, int capturedLength, int originalLength,
+             long timestampNanos, int linkType, long fileOffset) {
+        this.buffer = buffer;
+        this.dataOffset = dataOffset;
+        this.capturedLength = capturedLength;
+        this.originalLength = originalLength;
+        this.timestampNanos = timestampNanos;
+        this.linkType = linkType;
+        this.fileOffset = fileOffset;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getDataOffset() {
+        return dataOffset;
+    }
+
+    public int getCapturedLength() {
+        return capturedLength;
+    }
+
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getTimestampMillis() {
+        return Math.floorDiv(timestampNanos, 1_000_000L);
+    }
+
+    public int getLinkType() {
+        return linkType;
+    }
+
+    /**
+     * Offset of this record's header from the start of the capture.
+     */
+    public long getFileOffset() {
+        return fileOffset;
+    }
+}
@@ -0,0 +1,135 @@
+package com.spektr.pcap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Buffer management shared by the capture readers.
+ * Reads either from a channel through a single reusable direct buffer, or straight out of a
+ * (memory-mapped) buffer holding the whole capture. Records are handed out as offsets into
+ * {@link #buffer}, so nothing is copied or allocated per record.
+ */
+abstract class ChannelCaptureReader implements CaptureReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    // Largest record or block we accept; anything bigger means the file is corrupt
+    static final int MAX_RECORD_LENGTH = 64 << 20;
+
+    private final ReadableByteChannel channel;
+    protected ByteBuffer buffer;
+    private long bufferBase;
+    private boolean endOfStream;
+
+    protected ChannelCaptureReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Continues reading from a channel whose first bytes were already read into {@code prefetched}
+     * (a direct buffer in read mode), e.g. while sniffing the capture format.
+     */
+    protected ChannelCaptureReader(ReadableByteChannel channel, ByteBuffer prefetched) {
+        this.channel = channel;
+        this.buffer = prefetched;
+    }
+
+    protected ChannelCaptureReader(ByteBuffer capture) {
+        this(capture, 0L);
+    }
+
+    /**
+     * Reads a buffer holding the part of a capture that starts at {@code captureOffset},
+     * so that record offsets and {@link #position()} stay relative to the whole file.
+     */
+    protected ChannelCaptureReader(ByteBuffer capture, long captureOffset) {
+        this.channel = null;
+        this.buffer = capture.slice();
+        this.bufferBase = captureOffset;
+        this.endOfStream = true;
+    }
+
+    /**
+     * Creates a reader for a chunk of the same capture that starts on a record boundary,
+     * carrying over the format state (byte order, link type, interfaces) read so far.
+     */
+    abstract ChannelCaptureReader readerForChunk(ByteBuffer chunk, long captureOffset);
+
+    /**
+     * Looks for the start of a record in a window taken from the middle of the capture, by
+     * checking that a chain of consecutive headers parses consistently from there.
+     *
+     * @param endOfCapture whether the window extends to the end of the capture
+     * @return offset in the window of the first record found, or -1
+     */
+    abstract int findRecordStart(ByteBuffer window, boolean endOfCapture);
+
+    /**
+     * Whether the reader came across a new section whose format state may differ from the one
+     * it started with (only possible in pcapng).
+     */
+    boolean hasMultipleSections() {
+        return false;
+    }
+
+    /**
+     * Makes sure at least {@code length} bytes are readable from the buffer's position,
+     * refilling from the channel if needed. The buffer position may move when this refills.
+     *
+     * @return false if the capture ends before {@code length} more bytes
+     */
+    protected final boolean ensure(int length) throws IOException {
+        if (buffer.remaining() >= length) return true;
+        if (endOfStream) return false;
+
+        if (buffer.capacity() < length) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Integer.highestOneBit(length) << 1).order(buffer.order());
+            bufferBase += buffer.position();
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            bufferBase += buffer.position();
+            buffer.compact();
+        }
+
+        // Fill the whole buffer so that the following records are served without further reads
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                endOfStream = true;
+                break;
+            }
+            if (read == 0 && buffer.position() >= length) break;
+        }
+        buffer.flip();
+        return buffer.remaining() >= length;
+    }
+
+    protected final void order(ByteOrder order) {
+        buffer.order(order);
+    }
+
+    /**
+     * Reads a big-endian int at the given buffer index, regardless of the capture byte order.
+     */
+    protected final int bigEndianInt(int index) {
+        return ((buffer.get(index) & 0xFF) << 24) | ((buffer.get(index + 1) & 0xFF) << 16) |
+               ((buffer.get(index + 2) & 0xFF) << 8) | (buffer.get(index + 3) & 0xFF);
+    }
+
+    @Override
+    public long position() {
+        return bufferBase + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
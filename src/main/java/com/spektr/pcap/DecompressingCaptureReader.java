@@ -0,0 +1,155 @@
+package com.spektr.pcap;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a compressed capture by decompressing it on the fly into a capture reader, so that
+ * nothing but the decompressor's window is held in memory. {@link #position()} counts compressed
+ * bytes, record offsets are offsets into the decompressed capture.
+ */
+class DecompressingCaptureReader implements CaptureReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Compression formats recognized by their magic bytes.
+     */
+    enum Compression {
+        GZIP("gzip", new byte[]{0x1F, (byte) 0x8B}),
+        ZSTD("zstd", new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD}),
+        LZ4("lz4", new byte[]{0x04, 0x22, 0x4D, 0x18}),
+        XZ("xz", new byte[]{(byte) 0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00});
+
+        static final int MAX_MAGIC_LENGTH = 6;
+
+        final String name;
+        private final byte[] magic;
+
+        Compression(String name, byte[] magic) {
+            this.name = name;
+            this.magic = magic;
+        }
+
+        /**
+         * @return the compression of the data starting at the buffer's position, or null if it is not compressed
+         */
+        static Compression detect(ByteBuffer buffer) {
+            for (Compression compression : values()) {
+                if (compression.matches(buffer)) return compression;
+            }
+            return null;
+        }
+
+        private boolean matches(ByteBuffer buffer) {
+            if (buffer.remaining() < magic.length) return false;
+            for (int i = 0; i < magic.length; i++) {
+                if (buffer.get(buffer.position() + i) != magic[i]) return false;
+            }
+            return true;
+        }
+
+        InputStream decompress(InputStream in) throws IOException {
+            switch (this) {
+                case GZIP:
+                    return new GZIPInputStream(in, BUFFER_SIZE);
+                case ZSTD:
+                    return new ZstdCompressorInputStream(in);
+                case LZ4:
+                    return new FramedLZ4CompressorInputStream(in, true);
+                default:
+                    return new XZCompressorInputStream(in, true);
+            }
+        }
+    }
+
+    private final Compression compression;
+    private final CountingInputStream compressed;
+    private final CaptureReader reader;
+
+    DecompressingCaptureReader(Compression compression, InputStream in) throws IOException {
+        this.compression = compression;
+        this.compressed = new CountingInputStream(in);
+        CaptureReader opened;
+        try {
+            opened = CaptureReaders.openUncompressed(Channels.newChannel(compression.decompress(compressed)));
+        } catch (EOFException e) {
+            throw new CaptureFormatException("Truncated " + compression.name + " data");
+        } catch (CaptureFormatException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new CaptureFormatException("Invalid " + compression.name + " data: " + e.getMessage());
+        }
+        this.reader = opened;
+    }
+
+    @Override
+    public CaptureRecord next() throws IOException {
+        try {
+            return reader.next();
+        } catch (EOFException e) {
+            // Truncated like an uncompressed capture can be, keep what was read
+            return null;
+        } catch (CaptureFormatException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new CaptureFormatException("Invalid " + compression.name + " data: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long position() {
+        return compressed.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (compressed) {
+            reader.close();
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.spektr.pcap;
+
+/**
+ * Conversions between dotted-quad strings and IPv4 addresses held as plain ints.
+ */
+public final class Ipv4 {
+
+    private Ipv4() {
+    }
+
+    /**
+     * Parses a dotted-quad address such as {@code 192.168.1.1}.
+     *
+     * @throws IllegalArgumentException if the string is not a valid IPv4 address
+     */
+    public static int parse(String address) {
+        int result = 0;
+        int octet = -1;
+        int octets = 0;
+        for (int i = 0; i <= address.length(); i++) {
+            char c = i < address.length() ? address.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || ++octets > 4) break;
+                result = (result << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) break;
+            } else {
+                break;
+            }
+            if (i == address.length() && octets == 4) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Invalid IPv4 address: " + address);
+    }
+
+    public static String format(int address) {
+        return new StringBuilder(15)
+                .append(address >>> 24).append('.')
+                .append((address >>> 16) & 0xFF).append('.')
+                .append((address >>> 8) & 0xFF).append('.')
+                .append(address & 0xFF)
+                .toString();
+    }
+}
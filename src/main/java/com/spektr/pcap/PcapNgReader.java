@@ -0,0 +1,246 @@
+package com.spektr.pcap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for pcapng captures (the default Wireshark format).
+ * Blocks are decoded one at a time as they come off the channel: Section Header blocks set the
+ * byte order, Interface Description blocks register link type and timestamp resolution, and
+ * Enhanced, Simple and obsolete Packet blocks are returned as records. Everything else is skipped.
+ */
+public class PcapNgReader extends ChannelCaptureReader {
+
+    static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+    private static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+    private static final int PACKET_BLOCK = 0x00000002;
+    private static final int SIMPLE_PACKET_BLOCK = 0x00000003;
+    private static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+
+    private static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+    private static final int OPTION_END = 0;
+    private static final int OPTION_IF_TSRESOL = 9;
+    private static final int OPTION_IF_TSOFFSET = 14;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    // Consecutive blocks that must check out before a chunk boundary is trusted
+    private static final int SYNC_BLOCKS = 4;
+
+    private final CaptureRecord record = new CaptureRecord();
+    private final List<Interface> interfaces = new ArrayList<>();
+    private boolean multipleSections;
+
+    public PcapNgReader(ReadableByteChannel channel) throws IOException {
+        super(channel);
+        readFirstSectionHeader();
+    }
+
+    PcapNgReader(ReadableByteChannel channel, ByteBuffer prefetched) throws IOException {
+        super(channel, prefetched);
+        readFirstSectionHeader();
+    }
+
+    public PcapNgReader(ByteBuffer capture) throws IOException {
+        super(capture);
+        readFirstSectionHeader();
+    }
+
+    private PcapNgReader(ByteBuffer chunk, long captureOffset, PcapNgReader section) {
+        super(chunk, captureOffset);
+        order(section.buffer.order());
+        interfaces.addAll(section.interfaces);
+    }
+
+    private void readFirstSectionHeader() throws IOException {
+        if (!ensure(12) || bigEndianInt(buffer.position()) != SECTION_HEADER_BLOCK) {
+            throw new CaptureFormatException("File does not start with a pcapng Section Header block");
+        }
+    }
+
+    @Override
+    public CaptureRecord next() throws IOException {
+        while (ensure(12)) {
+            long offset = position();
+            int block = buffer.position();
+
+            if (bigEndianInt(block) == SECTION_HEADER_BLOCK) {
+                readByteOrder(block, offset);
+                multipleSections |= offset != 0;
+            }
+
+            int type = buffer.getInt(block);
+            int totalLength = buffer.getInt(block + 4);
+            if (totalLength < 12 || (totalLength & 3) != 0 || totalLength > MAX_RECORD_LENGTH) {
+                throw new CaptureFormatException("Corrupt pcapng block at offset " + offset);
+            }
+
+            // A block cut short by the end of the file is dropped
+            if (!ensure(totalLength)) return null;
+            block = buffer.position();
+            buffer.position(block + totalLength);
+
+            int body = block + 8;
+            int bodyEnd = block + totalLength - 4;
+            switch (type) {
+                case SECTION_HEADER_BLOCK:
+                    interfaces.clear();
+                    break;
+                case INTERFACE_DESCRIPTION_BLOCK:
+                    interfaces.add(readInterface(body, bodyEnd));
+                    break;
+                case ENHANCED_PACKET_BLOCK:
+                    if (readPacket(buffer.getInt(body), body + 4, body + 20, bodyEnd, offset)) return record;
+                    break;
+                case PACKET_BLOCK:
+                    if (readPacket(buffer.getShort(body) & 0xFFFF, body + 4, body + 20, bodyEnd, offset)) return record;
+                    break;
+                case SIMPLE_PACKET_BLOCK:
+                    if (readSimplePacket(body, bodyEnd, offset)) return record;
+                    break;
+                default:
+                    // Name resolution, statistics, custom blocks... nothing we need
+                    break;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    ChannelCaptureReader readerForChunk(ByteBuffer chunk, long captureOffset) {
+        return new PcapNgReader(chunk, captureOffset, this);
+    }
+
+    @Override
+    int findRecordStart(ByteBuffer window, boolean endOfCapture) {
+        // Blocks are 32-bit aligned and windows start on a multiple of 4 in the file
+        ByteBuffer blocks = window.duplicate().order(buffer.order());
+        for (int start = blocks.position(); start + 12 <= blocks.limit(); start += 4) {
+            if (isBlockChain(blocks, start, endOfCapture)) return start - blocks.position();
+        }
+        return -1;
+    }
+
+    private boolean isBlockChain(ByteBuffer blocks, int offset, boolean endOfCapture) {
+        for (int count = 0; count < SYNC_BLOCKS; count++) {
+            if (offset == blocks.limit()) return endOfCapture && count > 0;
+            if (offset + 12 > blocks.limit()) return false;
+
+            int type = blocks.getInt(offset);
+            int totalLength = blocks.getInt(offset + 4);
+            if (type == SECTION_HEADER_BLOCK || totalLength < 12 || (totalLength & 3) != 0
+                    || totalLength > blocks.limit() - offset
+                    || blocks.getInt(offset + totalLength - 4) != totalLength) {
+                return false;
+            }
+            if (type == ENHANCED_PACKET_BLOCK && (totalLength < 32 || blocks.getInt(offset + 8) < 0
+                    || blocks.getInt(offset + 8) >= interfaces.size())) {
+                return false;
+            }
+            offset += totalLength;
+        }
+        return true;
+    }
+
+    @Override
+    boolean hasMultipleSections() {
+        return multipleSections;
+    }
+
+    private void readByteOrder(int block, long offset) throws CaptureFormatException {
+        int magic = bigEndianInt(block + 8);
+        if (magic == BYTE_ORDER_MAGIC) {
+            order(ByteOrder.BIG_ENDIAN);
+        } else if (Integer.reverseBytes(magic) == BYTE_ORDER_MAGIC) {
+            order(ByteOrder.LITTLE_ENDIAN);
+        } else {
+            throw new CaptureFormatException("Invalid pcapng byte-order magic at offset " + offset);
+        }
+    }
+
+    private Interface readInterface(int body, int bodyEnd) {
+        Interface description = new Interface();
+        description.linkType = buffer.getShort(body) & 0xFFFF;
+        description.snapLength = buffer.getInt(body + 4);
+
+        int option = body + 8;
+        while (option + 4 <= bodyEnd) {
+            int code = buffer.getShort(option) & 0xFFFF;
+            int length = buffer.getShort(option + 2) & 0xFFFF;
+            if (code == OPTION_END || option + 4 + length > bodyEnd) break;
+
+            if (code == OPTION_IF_TSRESOL && length >= 1) {
+                int resolution = buffer.get(option + 4) & 0xFF;
+                description.binaryResolution = (resolution & 0x80) != 0;
+                description.resolutionExponent = resolution & 0x7F;
+            } else if (code == OPTION_IF_TSOFFSET && length >= 8) {
+                description.offsetSeconds = buffer.getLong(option + 4);
+            }
+            option += 4 + ((length + 3) & ~3);
+        }
+        return description;
+    }
+
+    private boolean readPacket(int interfaceId, int timestamp, int data, int bodyEnd, long offset)
+            throws CaptureFormatException {
+        Interface description = description(interfaceId, offset);
+        long units = (buffer.getInt(timestamp) & 0xFFFFFFFFL) << 32 | (buffer.getInt(timestamp + 4) & 0xFFFFFFFFL);
+        int capturedLength = buffer.getInt(timestamp + 8);
+        int originalLength = buffer.getInt(timestamp + 12);
+        if (capturedLength < 0 || data + capturedLength > bodyEnd) {
+            throw new CaptureFormatException("Corrupt pcapng packet block at offset " + offset);
+        }
+
+        record.set(buffer, data, capturedLength, originalLength, description.toNanos(units),
+                description.linkType, offset);
+        return true;
+    }
+
+    private boolean readSimplePacket(int body, int bodyEnd, long offset) throws CaptureFormatException {
+        Interface description = description(0, offset);
+        int originalLength = buffer.getInt(body);
+        int capturedLength = Math.min(originalLength, bodyEnd - (body + 4));
+        if (description.snapLength > 0) {
+            capturedLength = Math.min(capturedLength, description.snapLength);
+        }
+
+        // Simple packet blocks carry no timestamp
+        record.set(buffer, body + 4, Math.max(capturedLength, 0), originalLength, 0L, description.linkType, offset);
+        return true;
+    }
+
+    private Interface description(int interfaceId, long offset) throws CaptureFormatException {
+        if (interfaceId < 0 || interfaceId >= interfaces.size()) {
+            throw new CaptureFormatException("Packet block at offset " + offset + " references unknown interface " + interfaceId);
+        }
+        return interfaces.get(interfaceId);
+    }
+
+    private static class Interface {
+        int linkType;
+        int snapLength;
+        boolean binaryResolution;
+        int resolutionExponent = 6; // microseconds unless if_tsresol says otherwise
+        long offsetSeconds;
+
+        long toNanos(long units) {
+            long nanos;
+            if (binaryResolution) {
+                long seconds = units >>> resolutionExponent;
+                long fraction = units & ((1L << resolutionExponent) - 1);
+                nanos = seconds * 1_000_000_000L + (long) (fraction * 1e9 / (1L << resolutionExponent));
+            } else if (resolutionExponent <= 9) {
+                nanos = units * POWERS_OF_TEN[9 - resolutionExponent];
+            } else {
+                nanos = units / POWERS_OF_TEN[Math.min(resolutionExponent - 9, 9)];
+            }
+            return nanos + offsetSeconds * 1_000_000_000L;
+        }
+    }
+}
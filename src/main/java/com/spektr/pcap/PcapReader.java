@@ -0,0 +1,146 @@
+package com.spektr.pcap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reader for classic libpcap capture files (the format written by tcpdump, not pcapng).
+ * Handles both byte orders and both microsecond and nanosecond timestamp variants.
+ */
+public class PcapReader extends ChannelCaptureReader {
+
+    static final int GLOBAL_HEADER_LENGTH = 24;
+    static final int RECORD_HEADER_LENGTH = 16;
+
+    private static final int MAGIC_MICROS = 0xa1b2c3d4;
+    private static final int MAGIC_NANOS = 0xa1b23c4d;
+
+    // Consecutive record headers that must check out before a chunk boundary is trusted
+    private static final int SYNC_RECORDS = 8;
+    private static final long SYNC_MAX_TIME_SPREAD_SECONDS = 86_400L;
+
+    private final CaptureRecord record = new CaptureRecord();
+    private boolean nanosecondTimestamps;
+    private int snapLength;
+    private int linkType;
+
+    public PcapReader(ReadableByteChannel channel) throws IOException {
+        super(channel);
+        readGlobalHeader();
+    }
+
+    PcapReader(ReadableByteChannel channel, ByteBuffer prefetched) throws IOException {
+        super(channel, prefetched);
+        readGlobalHeader();
+    }
+
+    public PcapReader(ByteBuffer capture) throws IOException {
+        super(capture);
+        readGlobalHeader();
+    }
+
+    private PcapReader(ByteBuffer chunk, long captureOffset, PcapReader header) {
+        super(chunk, captureOffset);
+        order(header.buffer.order());
+        nanosecondTimestamps = header.nanosecondTimestamps;
+        snapLength = header.snapLength;
+        linkType = header.linkType;
+    }
+
+    private void readGlobalHeader() throws IOException {
+        if (!ensure(GLOBAL_HEADER_LENGTH)) {
+            throw new CaptureFormatException("File is too short to be a PCAP capture");
+        }
+
+        int magic = bigEndianInt(buffer.position());
+        if (magic == MAGIC_MICROS || magic == MAGIC_NANOS) {
+            order(ByteOrder.BIG_ENDIAN);
+        } else if (Integer.reverseBytes(magic) == MAGIC_MICROS || Integer.reverseBytes(magic) == MAGIC_NANOS) {
+            order(ByteOrder.LITTLE_ENDIAN);
+            magic = Integer.reverseBytes(magic);
+        } else {
+            throw new CaptureFormatException("Unrecognized capture format (magic 0x" + Integer.toHexString(magic) + ")");
+        }
+
+        int start = buffer.position();
+        nanosecondTimestamps = magic == MAGIC_NANOS;
+        snapLength = buffer.getInt(start + 16);
+        linkType = buffer.getInt(start + 20) & 0x0FFFFFFF; // upper bits carry FCS information
+        buffer.position(start + GLOBAL_HEADER_LENGTH);
+    }
+
+    @Override
+    public CaptureRecord next() throws IOException {
+        if (!ensure(RECORD_HEADER_LENGTH)) return null;
+
+        long offset = position();
+        int header = buffer.position();
+        long seconds = buffer.getInt(header) & 0xFFFFFFFFL;
+        long fraction = buffer.getInt(header + 4) & 0xFFFFFFFFL;
+        int capturedLength = buffer.getInt(header + 8);
+        int originalLength = buffer.getInt(header + 12);
+
+        if (capturedLength < 0 || capturedLength > MAX_RECORD_LENGTH) {
+            throw new CaptureFormatException("Corrupt PCAP record at offset " + offset);
+        }
+
+        // A record cut short by the end of the file is dropped, as tcpdump does
+        if (!ensure(RECORD_HEADER_LENGTH + capturedLength)) return null;
+
+        int data = buffer.position() + RECORD_HEADER_LENGTH;
+        long timestampNanos = seconds * 1_000_000_000L + (nanosecondTimestamps ? fraction : fraction * 1_000L);
+        record.set(buffer, data, capturedLength, originalLength, timestampNanos, linkType, offset);
+        buffer.position(data + capturedLength);
+        return record;
+    }
+
+    @Override
+    ChannelCaptureReader readerForChunk(ByteBuffer chunk, long captureOffset) {
+        return new PcapReader(chunk, captureOffset, this);
+    }
+
+    @Override
+    int findRecordStart(ByteBuffer window, boolean endOfCapture) {
+        ByteBuffer records = window.duplicate().order(buffer.order());
+        for (int start = records.position(); start + RECORD_HEADER_LENGTH <= records.limit(); start++) {
+            if (isRecordChain(records, start, endOfCapture)) return start - records.position();
+        }
+        return -1;
+    }
+
+    private boolean isRecordChain(ByteBuffer records, int offset, boolean endOfCapture) {
+        long maxFraction = nanosecondTimestamps ? 1_000_000_000L : 1_000_000L;
+        int maxCapturedLength = snapLength > 0 ? snapLength : MAX_RECORD_LENGTH;
+        long firstSeconds = 0;
+        for (int count = 0; count < SYNC_RECORDS; count++) {
+            if (offset == records.limit()) return endOfCapture && count > 0;
+            if (offset + RECORD_HEADER_LENGTH > records.limit()) return false;
+
+            long seconds = records.getInt(offset) & 0xFFFFFFFFL;
+            long fraction = records.getInt(offset + 4) & 0xFFFFFFFFL;
+            int capturedLength = records.getInt(offset + 8);
+            int originalLength = records.getInt(offset + 12);
+            if (fraction >= maxFraction || capturedLength < 0 || capturedLength > maxCapturedLength
+                    || originalLength < capturedLength) {
+                return false;
+            }
+            if (count == 0) {
+                firstSeconds = seconds;
+            } else if (Math.abs(seconds - firstSeconds) > SYNC_MAX_TIME_SPREAD_SECONDS) {
+                return false;
+            }
+            offset += RECORD_HEADER_LENGTH + capturedLength;
+        }
+        return true;
+    }
+
+    public int getSnapLength() {
+        return snapLength;
+    }
+
+    public int getLinkType() {
+        return linkType;
+    }
+}
@@ -0,0 +1,44 @@
+package com.spektr.pcap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * TZSP (TaZmen Sniffer Protocol), the UDP encapsulation switches and routers such as MikroTik
+ * use to send mirrored frames to a remote analyzer. A 4-byte header is followed by tagged
+ * fields up to an END tag, then the frame itself.
+ */
+public final class Tzsp {
+
+    public static final int DEFAULT_PORT = 37008;
+
+    private static final int VERSION = 1;
+    private static final int ENCAPSULATION_ETHERNET = 1;
+    private static final int TAG_PADDING = 0;
+    private static final int TAG_END = 1;
+
+    private Tzsp() {
+    }
+
+    /**
+     * @return the offset of the encapsulated Ethernet frame, or -1 if the datagram does not carry one
+     */
+    public static int ethernetOffset(ByteBuffer b, int offset, int end) {
+        if (end - offset < 5) return -1;
+        if ((b.get(offset) & 0xFF) != VERSION) return -1;
+        int encapsulation = ((b.get(offset + 2) & 0xFF) << 8) | (b.get(offset + 3) & 0xFF);
+        if (encapsulation != ENCAPSULATION_ETHERNET) return -1;
+
+        int position = offset + 4;
+        while (position < end) {
+            int tag = b.get(position) & 0xFF;
+            if (tag == TAG_END) return position + 1;
+            if (tag == TAG_PADDING) {
+                position++;
+            } else {
+                if (position + 2 > end) return -1;
+                position += 2 + (b.get(position + 1) & 0xFF);
+            }
+        }
+        return -1;
+    }
+}
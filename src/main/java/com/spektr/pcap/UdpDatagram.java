@@ -0,0 +1,173 @@
+package com.spektr.pcap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable decoder for the link, IPv4 and UDP headers of a captured frame.
+ * After a successful {@link #decode(CaptureRecord)} the UDP payload is available as
+ * {@code payloadLength} bytes at {@code payloadOffset} in {@link #getBuffer()}.
+ * Multi-byte fields are read explicitly in network order, independent of the buffer's byte order.
+ */
+public class UdpDatagram {
+
+    // Link-layer header types, see https://www.tcpdump.org/linktypes.html
+    public static final int LINKTYPE_NULL = 0;
+    public static final int LINKTYPE_ETHERNET = 1;
+    public static final int LINKTYPE_RAW = 101;
+    public static final int LINKTYPE_LOOP = 108;
+    public static final int LINKTYPE_LINUX_SLL = 113;
+    public static final int LINKTYPE_IPV4 = 228;
+    public static final int LINKTYPE_LINUX_SLL2 = 276;
+    private static final int DLT_RAW = 12;
+    private static final int DLT_RAW_OPENBSD = 14;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88A8;
+    private static final int AF_INET = 2;
+    private static final int IP_PROTOCOL_UDP = 17;
+
+    private ByteBuffer buffer;
+    private int sourceIp;
+    private int destinationIp;
+    private int ipIdentification;
+    private int sourcePort;
+    private int destinationPort;
+    private int payloadOffset;
+    private int payloadLength;
+
+    /**
+     * @return false if the record is not an unfragmented (or first-fragment) IPv4/UDP frame
+     */
+    public boolean decode(CaptureRecord record) {
+        ByteBuffer b = record.getBuffer();
+        int offset = record.getDataOffset();
+        int end = offset + record.getCapturedLength();
+
+        switch (record.getLinkType()) {
+            case LINKTYPE_ETHERNET:
+                return decodeEthernet(b, offset, end);
+            case LINKTYPE_RAW:
+            case LINKTYPE_IPV4:
+            case DLT_RAW:
+            case DLT_RAW_OPENBSD:
+                return decodeIpv4(b, offset, end);
+            case LINKTYPE_LINUX_SLL:
+                return end - offset >= 16 && u16(b, offset + 14) == ETHERTYPE_IPV4 && decodeIpv4(b, offset + 16, end);
+            case LINKTYPE_LINUX_SLL2:
+                return end - offset >= 20 && u16(b, offset) == ETHERTYPE_IPV4 && decodeIpv4(b, offset + 20, end);
+            case LINKTYPE_NULL:
+            case LINKTYPE_LOOP:
+                // Address family is in the capturing host's byte order
+                return end - offset >= 4
+                        && ((b.get(offset) & 0xFF) == AF_INET || (b.get(offset + 3) & 0xFF) == AF_INET)
+                        && decodeIpv4(b, offset + 4, end);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decodes an Ethernet II frame, skipping up to two 802.1Q/802.1ad tags.
+     */
+    public boolean decodeEthernet(ByteBuffer b, int offset, int end) {
+        int typeOffset = offset + 12;
+        for (int tags = 0; tags <= 2; tags++) {
+            if (typeOffset + 2 > end) return false;
+            int etherType = u16(b, typeOffset);
+            if (etherType == ETHERTYPE_IPV4) {
+                return decodeIpv4(b, typeOffset + 2, end);
+            }
+            if (etherType != ETHERTYPE_VLAN && etherType != ETHERTYPE_QINQ) return false;
+            typeOffset += 4;
+        }
+        return false;
+    }
+
+    public boolean decodeIpv4(ByteBuffer b, int offset, int end) {
+        if (end - offset < 20) return false;
+
+        int versionAndLength = b.get(offset) & 0xFF;
+        int headerLength = (versionAndLength & 0x0F) * 4;
+        if ((versionAndLength >> 4) != 4 || headerLength < 20) return false;
+        if ((b.get(offset + 9) & 0xFF) != IP_PROTOCOL_UDP) return false;
+
+        // Later fragments carry no UDP header
+        if ((u16(b, offset + 6) & 0x1FFF) != 0) return false;
+
+        // Trust the IP total length over the frame length, which includes Ethernet padding
+        int totalLength = u16(b, offset + 2);
+        if (totalLength >= headerLength && offset + totalLength < end) {
+            end = offset + totalLength;
+        }
+
+        int udp = offset + headerLength;
+        if (end - udp < 8) return false;
+
+        this.buffer = b;
+        this.ipIdentification = u16(b, offset + 4);
+        this.sourceIp = b.get(offset + 12) << 24 | (b.get(offset + 13) & 0xFF) << 16 |
+                        (b.get(offset + 14) & 0xFF) << 8 | (b.get(offset + 15) & 0xFF);
+        this.destinationIp = b.get(offset + 16) << 24 | (b.get(offset + 17) & 0xFF) << 16 |
+                             (b.get(offset + 18) & 0xFF) << 8 | (b.get(offset + 19) & 0xFF);
+        this.sourcePort = u16(b, udp);
+        this.destinationPort = u16(b, udp + 2);
+        this.payloadOffset = udp + 8;
+
+        int udpLength = u16(b, udp + 4);
+        int available = end - payloadOffset;
+        this.payloadLength = udpLength >= 8 ? Math.min(udpLength - 8, available) : available;
+        return true;
+    }
+
+    /**
+     * Sets the fields directly, for datagrams that were decoded earlier and kept without their frame.
+     */
+    public void wrap(int sourceIp, int sourcePort, int destinationIp, int destinationPort, int ipIdentification,
+                     ByteBuffer buffer, int payloadOffset, int payloadLength) {
+        this.buffer = buffer;
+        this.sourceIp = sourceIp;
+        this.sourcePort = sourcePort;
+        this.destinationIp = destinationIp;
+        this.destinationPort = destinationPort;
+        this.ipIdentification = ipIdentification;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+    }
+
+    private static int u16(ByteBuffer b, int index) {
+        return ((b.get(index) & 0xFF) << 8) | (b.get(index + 1) & 0xFF);
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getSourceIp() {
+        return sourceIp;
+    }
+
+    public int getDestinationIp() {
+        return destinationIp;
+    }
+
+    public int getIpIdentification() {
+        return ipIdentification;
+    }
+
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+}
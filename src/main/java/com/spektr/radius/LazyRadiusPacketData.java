@@ -0,0 +1,60 @@
+package com.spektr.radius;
+
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.pcap.Ipv4;
+
+import java.util.Map;
+
+/**
+ * {@link RadiusPacketData} that keeps only the packet bytes and addresses as ints until a
+ * field is read, normally by Jackson while writing the response.
+ */
+public class LazyRadiusPacketData extends RadiusPacketData {
+
+    final RadiusDictionary dictionary;
+    final byte[] packet;
+    final int sourceAddress;
+    final int destinationAddress;
+
+    public LazyRadiusPacketData(RadiusDictionary dictionary, String packetType, int sourceAddress,
+                                int destinationAddress, long timestamp, byte[] packet) {
+        this.dictionary = dictionary;
+        this.packet = packet;
+        this.sourceAddress = sourceAddress;
+        this.destinationAddress = destinationAddress;
+        setPacketType(packetType);
+        setTimestamp(timestamp);
+    }
+
+    @Override
+    public String getSourceIp() {
+        if (super.getSourceIp() == null) {
+            setSourceIp(Ipv4.format(sourceAddress));
+        }
+        return super.getSourceIp();
+    }
+
+    @Override
+    public String getDestinationIp() {
+        if (super.getDestinationIp() == null) {
+            setDestinationIp(Ipv4.format(destinationAddress));
+        }
+        return super.getDestinationIp();
+    }
+
+    @Override
+    public Map<String, String> getAttributes() {
+        if (super.getAttributes() == null) {
+            RadiusPacketFormatter.materialize(dictionary, packet, this);
+        }
+        return super.getAttributes();
+    }
+
+    @Override
+    public String getRawData() {
+        if (super.getRawData() == null) {
+            RadiusPacketFormatter.materialize(dictionary, packet, this);
+        }
+        return super.getRawData();
+    }
+}
@@ -0,0 +1,188 @@
+package com.spektr.radius;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Temporary file holding the rows of a {@link RadiusPacketStore} that did not fit in its memory
+ * budget. Rows are appended through a small write buffer and, once they are read, the file is
+ * mapped in 1 GB segments; a row never straddles two segments.
+ * <p>
+ * Row layout: type id, source and destination address, header (ints), timestamp and capture
+ * offset (longs), attribute count (unsigned short), then per attribute the name id (int) and the
+ * value as UTF-8 prefixed by its length (unsigned short). The file is deleted when it is closed,
+ * with its store or at the latest once the store is no longer reachable.
+ */
+class PacketSpillFile {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final int ROW_HEADER = 4 * Integer.BYTES + 2 * Long.BYTES + Short.BYTES;
+
+    private final FileChannel channel;
+    private final Cleaner.Cleanable cleanable;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(256 * 1024);
+    private long end;
+    private long[] offsets = new long[1024];
+    private int size;
+    private volatile MappedByteBuffer[] segments;
+
+    PacketSpillFile(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = Files.createTempFile(directory, "spektr-packets-", ".spill");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        FileChannel closing = channel;
+        cleanable = CLEANER.register(this, () -> {
+            try {
+                closing.close();
+            } catch (IOException ignored) {
+                // The file is in the temp directory
+            }
+        });
+    }
+
+    void write(int type, int sourceIp, int destinationIp, int header, long timestamp, long captureOffset,
+               int[] names, String[] values, int count) {
+        if (segments != null) throw new IllegalStateException("Spill file is already being read");
+
+        byte[][] encoded = new byte[count][];
+        int length = ROW_HEADER;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = values[i].getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > 0xFFFF) encoded[i] = Arrays.copyOf(encoded[i], 0xFFFF);
+            length += Integer.BYTES + Short.BYTES + encoded[i].length;
+        }
+
+        try {
+            // Rows are at most a few hundred KB, so padding to the next segment wastes little
+            if ((end >>> SEGMENT_SHIFT) != ((end + length - 1) >>> SEGMENT_SHIFT)) {
+                long padding = SEGMENT_SIZE - (end & (SEGMENT_SIZE - 1));
+                flush();
+                end += padding;
+                channel.position(end);
+            }
+            if (length > writeBuffer.remaining()) flush();
+            ByteBuffer out = length > writeBuffer.capacity() ? ByteBuffer.allocate(length) : writeBuffer;
+
+            out.putInt(type).putInt(sourceIp).putInt(destinationIp).putInt(header)
+               .putLong(timestamp).putLong(captureOffset).putShort((short) count);
+            for (int i = 0; i < count; i++) {
+                out.putInt(names[i]).putShort((short) encoded[i].length).put(encoded[i]);
+            }
+            if (out != writeBuffer) {
+                out.flip();
+                while (out.hasRemaining()) channel.write(out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill parsed packets to disk", e);
+        }
+
+        if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+        offsets[size++] = end;
+        end += length;
+    }
+
+    /**
+     * Deletes the file; rows are not to be read afterwards.
+     */
+    void close() {
+        cleanable.clean();
+    }
+
+    int size() {
+        return size;
+    }
+
+    long fileSize() {
+        return end;
+    }
+
+    int getType(int row) {
+        return segment(row).getInt(position(row));
+    }
+
+    int getSourceIp(int row) {
+        return segment(row).getInt(position(row) + 4);
+    }
+
+    int getDestinationIp(int row) {
+        return segment(row).getInt(position(row) + 8);
+    }
+
+    int getHeader(int row) {
+        return segment(row).getInt(position(row) + 12);
+    }
+
+    long getTimestamp(int row) {
+        return segment(row).getLong(position(row) + 16);
+    }
+
+    long getCaptureOffset(int row) {
+        return segment(row).getLong(position(row) + 24);
+    }
+
+    /**
+     * Reads the attributes of a row, names as ids.
+     */
+    void readAttributes(int row, AttributeConsumer consumer) {
+        ByteBuffer segment = segment(row);
+        int position = position(row) + ROW_HEADER - Short.BYTES;
+        int count = segment.getShort(position) & 0xFFFF;
+        position += Short.BYTES;
+        for (int i = 0; i < count; i++) {
+            int name = segment.getInt(position);
+            int length = segment.getShort(position + 4) & 0xFFFF;
+            byte[] value = new byte[length];
+            segment.get(position + 6, value);
+            consumer.accept(name, new String(value, StandardCharsets.UTF_8));
+            position += 6 + length;
+        }
+    }
+
+    interface AttributeConsumer {
+        void accept(int name, String value);
+    }
+
+    private ByteBuffer segment(int row) {
+        MappedByteBuffer[] mapped = segments;
+        if (mapped == null) mapped = map();
+        return mapped[(int) (offsets[row] >>> SEGMENT_SHIFT)];
+    }
+
+    private int position(int row) {
+        return (int) (offsets[row] & (SEGMENT_SIZE - 1));
+    }
+
+    private synchronized MappedByteBuffer[] map() {
+        if (segments != null) return segments;
+        try {
+            flush();
+            MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((end + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < mapped.length; i++) {
+                long start = i * SEGMENT_SIZE;
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, end - start));
+            }
+            segments = mapped;
+            return mapped;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map spilled packets", e);
+        }
+    }
+
+    private void flush() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) channel.write(writeBuffer);
+        writeBuffer.clear();
+    }
+}
@@ -0,0 +1,110 @@
+package com.spektr.radius;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary definition of a standard or vendor-specific RADIUS attribute.
+ */
+public class RadiusAttribute {
+
+    private final String name;
+    private final int vendorId;
+    private final int type;
+    private final RadiusAttributeType dataType;
+    private final boolean tagged;
+    private final boolean encrypted;
+    private final Map<Long, String> values = new HashMap<>();
+
+    RadiusAttribute(String name, int vendorId, int type, RadiusAttributeType dataType, boolean tagged, boolean encrypted) {
+        this.name = name;
+        this.vendorId = vendorId;
+        this.type = type;
+        this.dataType = dataType;
+        this.tagged = tagged;
+        this.encrypted = encrypted;
+    }
+
+    void addValue(long value, String valueName) {
+        values.put(value, valueName);
+    }
+
+    /**
+     * Renders a value of this attribute for display: enumerated integers by their VALUE name,
+     * encrypted attributes as hex, everything else with the decoder of the attribute's type.
+     */
+    public String format(byte[] data, int offset, int length) {
+        if (tagged && length > 0 && (data[offset] & 0xFF) <= 0x1F) {
+            // RFC 2868: integers always carry the tag in their first byte, strings only if it is in range
+            int tag = data[offset] & 0xFF;
+            if (dataType == RadiusAttributeType.INTEGER) {
+                return tag + ":" + formatTaggedInteger(data, offset, length);
+            }
+            return tag + ":" + formatValue(data, offset + 1, length - 1);
+        }
+        return formatValue(data, offset, length);
+    }
+
+    private String formatValue(byte[] data, int offset, int length) {
+        if (encrypted) {
+            return RadiusAttributeType.hex(data, offset, length);
+        }
+        if (!values.isEmpty() && length == 4 && dataType == RadiusAttributeType.INTEGER) {
+            String valueName = values.get(RadiusAttributeType.readUnsigned(data, offset, 4));
+            if (valueName != null) return valueName;
+        }
+        return dataType.format(data, offset, length);
+    }
+
+    private String formatTaggedInteger(byte[] data, int offset, int length) {
+        if (length != 4) return RadiusAttributeType.hex(data, offset, length);
+        long value = RadiusAttributeType.readUnsigned(data, offset + 1, 3);
+        String valueName = values.get(value);
+        return valueName != null ? valueName : Long.toString(value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getVendorId() {
+        return vendorId;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public RadiusAttributeType getDataType() {
+        return dataType;
+    }
+
+    public boolean isTagged() {
+        return tagged;
+    }
+
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * @return the VALUE names defined for this attribute
+     */
+    public Collection<String> getValueNames() {
+        return Collections.unmodifiableCollection(values.values());
+    }
+
+    /**
+     * Looks up the numeric value of an enumerated attribute by VALUE name.
+     *
+     * @return the value, or -1 if the name is not defined for this attribute
+     */
+    public long valueOf(String valueName) {
+        for (Map.Entry<Long, String> value : values.entrySet()) {
+            if (value.getValue().equalsIgnoreCase(valueName)) return value.getKey();
+        }
+        return -1;
+    }
+}
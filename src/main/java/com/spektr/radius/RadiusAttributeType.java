@@ -0,0 +1,187 @@
+package com.spektr.radius;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Data types used in FreeRADIUS dictionaries, each with the decoder that renders a value for display.
+ */
+public enum RadiusAttributeType {
+
+    STRING {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            return RadiusPacketFormatter.printable(data, offset, length);
+        }
+    },
+    OCTETS {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            return hex(data, offset, length);
+        }
+    },
+    INTEGER {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 4) return hex(data, offset, length);
+            return Long.toString(readUnsigned(data, offset, 4));
+        }
+    },
+    INTEGER64 {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 8) return hex(data, offset, length);
+            return Long.toUnsignedString(readUnsigned(data, offset, 8));
+        }
+    },
+    BYTE {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 1) return hex(data, offset, length);
+            return Integer.toString(data[offset] & 0xFF);
+        }
+    },
+    SHORT {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 2) return hex(data, offset, length);
+            return Long.toString(readUnsigned(data, offset, 2));
+        }
+    },
+    SIGNED {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 4) return hex(data, offset, length);
+            return Integer.toString((int) readUnsigned(data, offset, 4));
+        }
+    },
+    DATE {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 4) return hex(data, offset, length);
+            return Instant.ofEpochSecond(readUnsigned(data, offset, 4)).toString();
+        }
+    },
+    IPADDR {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 4) return hex(data, offset, length);
+            return new StringBuilder(15)
+                    .append(data[offset] & 0xFF).append('.')
+                    .append(data[offset + 1] & 0xFF).append('.')
+                    .append(data[offset + 2] & 0xFF).append('.')
+                    .append(data[offset + 3] & 0xFF)
+                    .toString();
+        }
+    },
+    IPV6ADDR {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 16) return hex(data, offset, length);
+            return ipv6(Arrays.copyOfRange(data, offset, offset + 16));
+        }
+    },
+    IPV6PREFIX {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            // Reserved byte, prefix length, then only as many prefix bytes as needed
+            if (length < 2 || length > 18) return hex(data, offset, length);
+            byte[] prefix = new byte[16];
+            System.arraycopy(data, offset + 2, prefix, 0, length - 2);
+            return ipv6(prefix) + "/" + (data[offset + 1] & 0xFF);
+        }
+    },
+    IFID {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 8) return hex(data, offset, length);
+            StringBuilder id = new StringBuilder(19);
+            for (int i = 0; i < 8; i += 2) {
+                if (i > 0) id.append(':');
+                id.append(HEX[(data[offset + i] >> 4) & 0x0F]).append(HEX[data[offset + i] & 0x0F])
+                  .append(HEX[(data[offset + i + 1] >> 4) & 0x0F]).append(HEX[data[offset + i + 1] & 0x0F]);
+            }
+            return id.toString();
+        }
+    },
+    ETHER {
+        @Override
+        String format(byte[] data, int offset, int length) {
+            if (length != 6) return hex(data, offset, length);
+            StringBuilder mac = new StringBuilder(17);
+            for (int i = 0; i < 6; i++) {
+                if (i > 0) mac.append(':');
+                mac.append(HEX[(data[offset + i] >> 4) & 0x0F]).append(HEX[data[offset + i] & 0x0F]);
+            }
+            return mac.toString();
+        }
+    };
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    abstract String format(byte[] data, int offset, int length);
+
+    /**
+     * Maps a dictionary type keyword to a type. Types we have no dedicated decoder for
+     * (abinary, tlv, extended...) are shown as octets.
+     */
+    static RadiusAttributeType fromDictionary(String keyword) {
+        switch (keyword.toLowerCase()) {
+            case "string":
+                return STRING;
+            case "integer":
+                return INTEGER;
+            case "integer64":
+                return INTEGER64;
+            case "byte":
+                return BYTE;
+            case "short":
+                return SHORT;
+            case "signed":
+                return SIGNED;
+            case "date":
+                return DATE;
+            case "ipaddr":
+                return IPADDR;
+            case "ipv6addr":
+                return IPV6ADDR;
+            case "ipv6prefix":
+                return IPV6PREFIX;
+            case "ifid":
+                return IFID;
+            case "ether":
+                return ETHER;
+            default:
+                return OCTETS;
+        }
+    }
+
+    static long readUnsigned(byte[] data, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    static String hex(byte[] data, int offset, int length) {
+        char[] hex = new char[2 + length * 2];
+        hex[0] = '0';
+        hex[1] = 'x';
+        for (int i = 0; i < length; i++) {
+            hex[2 + i * 2] = HEX[(data[offset + i] >> 4) & 0x0F];
+            hex[3 + i * 2] = HEX[data[offset + i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    private static String ipv6(byte[] address) {
+        try {
+            return InetAddress.getByAddress(address).getHostAddress();
+        } catch (UnknownHostException e) {
+            return hex(address, 0, address.length);
+        }
+    }
+}
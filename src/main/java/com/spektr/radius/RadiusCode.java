@@ -0,0 +1,64 @@
+package com.spektr.radius;
+
+/**
+ * RADIUS packet codes (RFC 2865, 2866, 5176) and their names.
+ */
+public final class RadiusCode {
+
+    public static final int ACCESS_REQUEST = 1;
+    public static final int ACCESS_ACCEPT = 2;
+    public static final int ACCESS_REJECT = 3;
+    public static final int ACCOUNTING_REQUEST = 4;
+    public static final int ACCOUNTING_RESPONSE = 5;
+    public static final int ACCESS_CHALLENGE = 11;
+    public static final int STATUS_SERVER = 12;
+    public static final int STATUS_CLIENT = 13;
+    public static final int DISCONNECT_REQUEST = 40;
+    public static final int DISCONNECT_ACK = 41;
+    public static final int DISCONNECT_NAK = 42;
+    public static final int COA_REQUEST = 43;
+    public static final int COA_ACK = 44;
+    public static final int COA_NAK = 45;
+
+    private static final String[] NAMES = new String[256];
+
+    static {
+        NAMES[ACCESS_REQUEST] = "Access-Request";
+        NAMES[ACCESS_ACCEPT] = "Access-Accept";
+        NAMES[ACCESS_REJECT] = "Access-Reject";
+        NAMES[ACCOUNTING_REQUEST] = "Accounting-Request";
+        NAMES[ACCOUNTING_RESPONSE] = "Accounting-Response";
+        NAMES[ACCESS_CHALLENGE] = "Access-Challenge";
+        NAMES[STATUS_SERVER] = "Status-Server";
+        NAMES[STATUS_CLIENT] = "Status-Client";
+        NAMES[DISCONNECT_REQUEST] = "Disconnect-Request";
+        NAMES[DISCONNECT_ACK] = "Disconnect-ACK";
+        NAMES[DISCONNECT_NAK] = "Disconnect-NAK";
+        NAMES[COA_REQUEST] = "CoA-Request";
+        NAMES[COA_ACK] = "CoA-ACK";
+        NAMES[COA_NAK] = "CoA-NAK";
+    }
+
+    private RadiusCode() {
+    }
+
+    /**
+     * @return the name of the code, or "Code-N" for codes without one
+     */
+    public static String name(int code) {
+        String name = NAMES[code & 0xFF];
+        return name != null ? name : "Code-" + (code & 0xFF);
+    }
+
+    /**
+     * Looks up a code by name, ignoring case.
+     *
+     * @return the code, or -1 if the name is unknown
+     */
+    public static int valueOf(String name) {
+        for (int code = 0; code < NAMES.length; code++) {
+            if (NAMES[code] != null && NAMES[code].equalsIgnoreCase(name)) return code;
+        }
+        return -1;
+    }
+}
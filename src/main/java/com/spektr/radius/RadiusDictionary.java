@@ -0,0 +1,298 @@
+package com.spektr.radius;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * RADIUS attribute dictionary loaded from FreeRADIUS-format dictionary files.
+ * Definitions are compiled into dense arrays: standard attributes are indexed directly by type,
+ * vendor-specific ones by (vendor slot, type) where the vendor slot comes from a small
+ * open-addressing table, so every lookup on the decoding path is O(1) and allocation-free.
+ */
+public class RadiusDictionary {
+
+    public static final int VENDOR_SPECIFIC = 26;
+
+    private static final String DEFAULT_DICTIONARY = "radius/dictionary";
+    private static final int MAX_VENDOR_TYPE = 0xFFFF;
+
+    private final RadiusAttribute[] standard = new RadiusAttribute[256];
+    private final Map<String, RadiusAttribute> attributesByName = new HashMap<>();
+    private final Map<String, Vendor> vendorsByName = new HashMap<>();
+    private final List<String[]> pendingValues = new ArrayList<>();
+
+    // Vendor ids are sparse (9, 311, 14823...), vendor id 0 marks an empty slot
+    private int[] vendorIds = new int[64];
+    private Vendor[] vendorSlots = new Vendor[64];
+    private int vendorCount;
+
+    /**
+     * Loads the dictionaries bundled with the application.
+     */
+    public static RadiusDictionary loadDefault() throws IOException {
+        RadiusDictionary dictionary = new RadiusDictionary();
+        dictionary.loadClasspath(DEFAULT_DICTIONARY);
+        dictionary.resolvePendingValues();
+        return dictionary;
+    }
+
+    /**
+     * Loads the bundled dictionaries plus additional dictionary files, which may override
+     * or extend the bundled definitions.
+     */
+    public static RadiusDictionary load(List<Path> additionalDictionaries) throws IOException {
+        RadiusDictionary dictionary = new RadiusDictionary();
+        dictionary.loadClasspath(DEFAULT_DICTIONARY);
+        for (Path path : additionalDictionaries) {
+            dictionary.loadFile(path);
+        }
+        dictionary.resolvePendingValues();
+        return dictionary;
+    }
+
+    /**
+     * @return the standard attribute with this type, or null if the dictionary does not define it
+     */
+    public RadiusAttribute getAttribute(int type) {
+        return standard[type & 0xFF];
+    }
+
+    /**
+     * @return the vendor attribute with this type, or null if vendor or attribute are unknown
+     */
+    public RadiusAttribute getVendorAttribute(int vendorId, int type) {
+        Vendor vendor = findVendor(vendorId);
+        if (vendor == null || type < 0 || type >= vendor.attributes.length) return null;
+        return vendor.attributes[type];
+    }
+
+    /**
+     * Looks up a standard or vendor attribute by name, ignoring case.
+     */
+    public RadiusAttribute getAttribute(String name) {
+        return attributesByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return every standard and vendor attribute, in no particular order
+     */
+    public Collection<RadiusAttribute> getAttributes() {
+        return Collections.unmodifiableCollection(attributesByName.values());
+    }
+
+    public String getVendorName(int vendorId) {
+        Vendor vendor = findVendor(vendorId);
+        return vendor != null ? vendor.name : null;
+    }
+
+    /**
+     * Size in bytes of the type field of this vendor's sub-attributes (1 unless the dictionary says otherwise).
+     */
+    public int getVendorTypeLength(int vendorId) {
+        Vendor vendor = findVendor(vendorId);
+        return vendor != null ? vendor.typeLength : 1;
+    }
+
+    /**
+     * Size in bytes of the length field of this vendor's sub-attributes; 0 means no length field.
+     */
+    public int getVendorLengthLength(int vendorId) {
+        Vendor vendor = findVendor(vendorId);
+        return vendor != null ? vendor.lengthLength : 1;
+    }
+
+    private Vendor findVendor(int vendorId) {
+        if (vendorId == 0) return null;
+        int mask = vendorIds.length - 1;
+        for (int slot = mix(vendorId) & mask; vendorIds[slot] != 0; slot = (slot + 1) & mask) {
+            if (vendorIds[slot] == vendorId) return vendorSlots[slot];
+        }
+        return null;
+    }
+
+    private void putVendor(Vendor vendor) {
+        if ((vendorCount + 1) * 2 > vendorIds.length) {
+            int[] oldIds = vendorIds;
+            Vendor[] oldSlots = vendorSlots;
+            vendorIds = new int[oldIds.length * 2];
+            vendorSlots = new Vendor[oldIds.length * 2];
+            vendorCount = 0;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != 0) putVendor(oldSlots[i]);
+            }
+        }
+
+        int mask = vendorIds.length - 1;
+        int slot = mix(vendor.id) & mask;
+        while (vendorIds[slot] != 0 && vendorIds[slot] != vendor.id) {
+            slot = (slot + 1) & mask;
+        }
+        if (vendorIds[slot] == 0) vendorCount++;
+        vendorIds[slot] = vendor.id;
+        vendorSlots[slot] = vendor;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void loadClasspath(String resource) throws IOException {
+        InputStream in = RadiusDictionary.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("RADIUS dictionary not found on classpath: " + resource);
+        }
+        try (in) {
+            String directory = resource.contains("/") ? resource.substring(0, resource.lastIndexOf('/') + 1) : "";
+            parse(in, resource, include -> loadClasspath(directory + include));
+        }
+    }
+
+    private void loadFile(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            parse(in, path.toString(), include -> loadFile(path.resolveSibling(include)));
+        }
+    }
+
+    private interface IncludeLoader {
+        void load(String include) throws IOException;
+    }
+
+    private void parse(InputStream in, String source, IncludeLoader includes) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Vendor currentVendor = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            String[] fields = line.trim().split("\\s+");
+            if (fields[0].isEmpty()) continue;
+
+            try {
+                switch (fields[0]) {
+                    case "$INCLUDE":
+                        includes.load(fields[1]);
+                        break;
+                    case "VENDOR":
+                        defineVendor(fields);
+                        break;
+                    case "BEGIN-VENDOR":
+                        currentVendor = vendorsByName.get(fields[1].toLowerCase(Locale.ROOT));
+                        if (currentVendor == null) throw new IllegalArgumentException("unknown vendor " + fields[1]);
+                        break;
+                    case "END-VENDOR":
+                        currentVendor = null;
+                        break;
+                    case "ATTRIBUTE":
+                        defineAttribute(fields, currentVendor);
+                        break;
+                    case "VALUE":
+                        pendingValues.add(fields);
+                        break;
+                    default:
+                        // TLV, PROTOCOL, STRUCT... are not needed for display
+                        break;
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Invalid RADIUS dictionary entry at " + source + ":" + lineNumber + ": " + line.trim(), e);
+            }
+        }
+    }
+
+    private void defineVendor(String[] fields) {
+        Vendor vendor = new Vendor(fields[1], (int) parseNumber(fields[2]));
+        if (fields.length > 3 && fields[3].startsWith("format=")) {
+            String[] format = fields[3].substring("format=".length()).split(",");
+            vendor.typeLength = Integer.parseInt(format[0]);
+            vendor.lengthLength = Integer.parseInt(format[1]);
+        }
+        vendorsByName.put(vendor.name.toLowerCase(Locale.ROOT), vendor);
+        putVendor(vendor);
+    }
+
+    private void defineAttribute(String[] fields, Vendor vendor) {
+        if (fields[2].contains(".")) return; // OID-style numbers only appear in TLV definitions
+
+        boolean tagged = false;
+        boolean encrypted = false;
+        if (fields.length > 4) {
+            Vendor oldStyleVendor = vendorsByName.get(fields[4].toLowerCase(Locale.ROOT));
+            if (oldStyleVendor != null) {
+                vendor = oldStyleVendor;
+            } else {
+                for (String flag : fields[4].split(",")) {
+                    tagged |= flag.equals("has_tag");
+                    encrypted |= flag.startsWith("encrypt=");
+                }
+            }
+        }
+
+        int type = (int) parseNumber(fields[2]);
+        RadiusAttribute attribute = new RadiusAttribute(fields[1], vendor != null ? vendor.id : 0, type,
+                RadiusAttributeType.fromDictionary(fields[3]), tagged, encrypted);
+
+        if (vendor == null) {
+            if (type < 1 || type > 255) throw new IllegalArgumentException("attribute type out of range");
+            standard[type] = attribute;
+        } else {
+            if (type < 0 || type > MAX_VENDOR_TYPE) throw new IllegalArgumentException("vendor attribute type out of range");
+            if (type >= vendor.attributes.length) {
+                RadiusAttribute[] grown = new RadiusAttribute[Math.min(MAX_VENDOR_TYPE + 1, Integer.highestOneBit(type) << 1)];
+                System.arraycopy(vendor.attributes, 0, grown, 0, vendor.attributes.length);
+                vendor.attributes = grown;
+            }
+            vendor.attributes[type] = attribute;
+        }
+        attributesByName.put(attribute.getName().toLowerCase(Locale.ROOT), attribute);
+    }
+
+    /**
+     * VALUE lines may come before the ATTRIBUTE they refer to, so they are applied once everything is loaded.
+     */
+    private void resolvePendingValues() throws IOException {
+        for (String[] fields : pendingValues) {
+            if (fields.length < 4) {
+                throw new IOException("Invalid RADIUS dictionary VALUE entry: " + String.join(" ", fields));
+            }
+            RadiusAttribute attribute = getAttribute(fields[1]);
+            if (attribute != null) {
+                attribute.addValue(parseNumber(fields[3]), fields[2]);
+            }
+        }
+        pendingValues.clear();
+    }
+
+    private static long parseNumber(String number) {
+        if (number.startsWith("0x") || number.startsWith("0X")) {
+            return Long.parseLong(number.substring(2), 16);
+        }
+        return Long.parseLong(number);
+    }
+
+    private static class Vendor {
+        final String name;
+        final int id;
+        int typeLength = 1;
+        int lengthLength = 1;
+        RadiusAttribute[] attributes = new RadiusAttribute[256];
+
+        Vendor(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.spektr.radius;
+
+import com.spektr.dto.RadiusPacketData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns the bytes of a RADIUS packet into the human-readable attribute map and text dump
+ * shown in the UI. Only called for packets that are actually returned to the client.
+ */
+public final class RadiusPacketFormatter {
+
+    private RadiusPacketFormatter() {
+    }
+
+    /**
+     * Receives the attributes of a packet as they are decoded.
+     */
+    @FunctionalInterface
+    public interface AttributeVisitor {
+        void attribute(String name, String value);
+    }
+
+    /**
+     * Decodes every attribute of the packet with the dictionary and fills in the attribute map
+     * and text dump of {@code target}. Vendor-Specific attributes are split into their
+     * sub-attributes, each listed under its own vendor attribute name.
+     */
+    public static void materialize(RadiusDictionary dictionary, byte[] packet, RadiusPacketData target) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        StringBuilder dump = new StringBuilder(64 + packet.length * 2);
+        appendHeader(dump, packet[0] & 0xFF, packet[1] & 0xFF, ((packet[2] & 0xFF) << 8) | (packet[3] & 0xFF));
+        decode(dictionary, packet, (name, value) -> {
+            attributes.put(name, value);
+            appendAttribute(dump, name, value);
+        });
+
+        target.setAttributes(attributes);
+        target.setRawData(dump.toString());
+    }
+
+    /**
+     * Decodes every attribute of the packet, in packet order, like {@link #materialize} does.
+     */
+    public static void decode(RadiusDictionary dictionary, byte[] packet, AttributeVisitor visitor) {
+        visit(dictionary, packet, (vendorId, type, name, attribute, data, offset, length) ->
+                visitor.attribute(name, format(vendorId, attribute, data, offset, length)));
+    }
+
+    /**
+     * Receives the attributes of a packet by name, with their value still undecoded.
+     */
+    @FunctionalInterface
+    public interface RawAttributeVisitor {
+        /**
+         * @param vendorId  vendor of a sub-attribute of a Vendor-Specific attribute, 0 for standard attributes
+         * @param type      type of the attribute, -1 for Vendor-Specific attributes that could not be split
+         * @param attribute dictionary entry of the attribute, null if unknown
+         */
+        void attribute(int vendorId, int type, String name, RadiusAttribute attribute, byte[] packet, int offset,
+                       int length);
+    }
+
+    /**
+     * Walks the attributes of the packet as {@link #decode} does, without formatting their values.
+     */
+    public static void visit(RadiusDictionary dictionary, byte[] packet, RawAttributeVisitor visitor) {
+        visit(dictionary, packet, packet.length, visitor);
+    }
+
+    /**
+     * Walks the attributes of the packet held in the first {@code available} bytes of {@code packet}.
+     */
+    public static void visit(RadiusDictionary dictionary, byte[] packet, int available, RawAttributeVisitor visitor) {
+        int length = Math.min(((packet[2] & 0xFF) << 8) | (packet[3] & 0xFF), available);
+        int offset = RadiusPacketView.HEADER_LENGTH;
+        while (offset + 2 <= length) {
+            int type = packet[offset] & 0xFF;
+            int attributeLength = packet[offset + 1] & 0xFF;
+            if (attributeLength < 2 || offset + attributeLength > length) break;
+
+            if (type == RadiusDictionary.VENDOR_SPECIFIC) {
+                visitVendorSpecific(dictionary, packet, offset + 2, attributeLength - 2, visitor);
+            } else {
+                RadiusAttribute attribute = dictionary.getAttribute(type);
+                String name = attribute != null ? attribute.getName() : "Attribute-" + type;
+                visitor.attribute(0, type, name, attribute, packet, offset + 2, attributeLength - 2);
+            }
+            offset += attributeLength;
+        }
+    }
+
+    /**
+     * Value of an attribute walked by {@link #visit}, as {@link #decode} shows it: unknown
+     * standard attributes as printable text, unknown vendor attributes in hex.
+     */
+    public static String format(int vendorId, RadiusAttribute attribute, byte[] packet, int offset, int length) {
+        if (attribute != null) return attribute.format(packet, offset, length);
+        return vendorId == 0 ? printable(packet, offset, length) : RadiusAttributeType.hex(packet, offset, length);
+    }
+
+    static void appendHeader(StringBuilder dump, int code, int identifier, int length) {
+        dump.append("Code: ").append(code)
+            .append(", Identifier: ").append(identifier)
+            .append(", Length: ").append(length)
+            .append('\n');
+    }
+
+    static void appendAttribute(StringBuilder dump, String name, String value) {
+        dump.append("  ").append(name).append(": ").append(value).append('\n');
+    }
+
+    private static void visitVendorSpecific(RadiusDictionary dictionary, byte[] packet, int offset, int length,
+                                            RawAttributeVisitor visitor) {
+        if (length < 4) {
+            visitor.attribute(-1, -1, "Vendor-Specific", null, packet, offset, length);
+            return;
+        }
+
+        int vendorId = (int) RadiusAttributeType.readUnsigned(packet, offset, 4);
+        int typeLength = dictionary.getVendorTypeLength(vendorId);
+        int lengthLength = dictionary.getVendorLengthLength(vendorId);
+        int start = offset + 4;
+        int end = offset + length;
+
+        if (!hasValidSubAttributes(packet, start, end, typeLength, lengthLength)) {
+            visitor.attribute(vendorId, -1, "Attr-26." + vendorId, null, packet, start, end - start);
+            return;
+        }
+
+        int header = typeLength + lengthLength;
+        for (int position = start; position < end; ) {
+            int type = (int) RadiusAttributeType.readUnsigned(packet, position, typeLength);
+            int subLength = lengthLength == 0
+                    ? end - position
+                    : (int) RadiusAttributeType.readUnsigned(packet, position + typeLength, lengthLength);
+
+            RadiusAttribute attribute = dictionary.getVendorAttribute(vendorId, type);
+            String name = attribute != null ? attribute.getName() : "Attr-26." + vendorId + "." + type;
+            visitor.attribute(vendorId, type, name, attribute, packet, position + header, subLength - header);
+            position += subLength;
+        }
+    }
+
+    static boolean hasValidSubAttributes(byte[] packet, int position, int end, int typeLength, int lengthLength) {
+        if (position >= end) return false;
+        if (lengthLength == 0) return end - position >= typeLength;
+
+        int header = typeLength + lengthLength;
+        while (position < end) {
+            if (end - position < header) return false;
+            long subLength = RadiusAttributeType.readUnsigned(packet, position + typeLength, lengthLength);
+            if (subLength < header || position + subLength > end) return false;
+            position += (int) subLength;
+        }
+        return true;
+    }
+
+    /**
+     * Keeps only printable ASCII, like the UI always did for string attributes.
+     * Bytes of multi-byte UTF-8 sequences are all >= 0x80, so filtering bytes is equivalent to
+     * decoding first and dropping non-printable characters.
+     */
+    static String printable(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end && data[i] >= 0x20 && data[i] < 0x7F) i++;
+        if (i == end) {
+            return new String(data, offset, length, StandardCharsets.US_ASCII);
+        }
+
+        byte[] filtered = new byte[length];
+        int count = 0;
+        for (i = offset; i < end; i++) {
+            if (data[i] >= 0x20 && data[i] < 0x7F) filtered[count++] = data[i];
+        }
+        return new String(filtered, 0, count, StandardCharsets.US_ASCII);
+    }
+}
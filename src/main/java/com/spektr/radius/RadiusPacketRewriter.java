@@ -0,0 +1,121 @@
+package com.spektr.radius;
+
+import com.spektr.pcap.Ipv4;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Copies RADIUS requests for sending them again, with another identifier, NAS-IP-Address and
+ * Acct-Session-Id, and signs the copy with the shared secret if there is one (RFC 2866 request
+ * authenticator, RFC 3579 Message-Authenticator). Without the secret, rewritten Accounting,
+ * CoA and Disconnect requests and packets with a Message-Authenticator no longer verify.
+ * Not thread-safe.
+ */
+public class RadiusPacketRewriter {
+
+    private static final int NAS_IP_ADDRESS = 4;
+    private static final int ACCT_SESSION_ID = 44;
+    private static final int MESSAGE_AUTHENTICATOR = 80;
+    private static final int MAX_VALUE_LENGTH = 253;
+
+    private final Integer nasIpAddress;
+    private final byte[] sessionSuffix;
+    private final byte[] secret;
+    private final MessageDigest md5;
+    private final Mac hmac;
+
+    /**
+     * @param nasIpAddress NAS-IP-Address to put in place of the original one, may be null
+     * @param acctSessionIdSuffix appended to every Acct-Session-Id, may be null
+     * @param secret shared secret to sign the copies with, may be null
+     * @throws IllegalArgumentException if the address is invalid
+     */
+    public RadiusPacketRewriter(String nasIpAddress, String acctSessionIdSuffix, String secret) {
+        this.nasIpAddress = nasIpAddress != null && !nasIpAddress.isEmpty() ? Ipv4.parse(nasIpAddress) : null;
+        this.sessionSuffix = acctSessionIdSuffix != null
+                ? acctSessionIdSuffix.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        this.secret = secret != null && !secret.isEmpty() ? secret.getBytes(StandardCharsets.UTF_8) : null;
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+            this.hmac = Mac.getInstance("HmacMD5");
+            if (this.secret != null) {
+                hmac.init(new SecretKeySpec(this.secret, "HmacMD5"));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * Writes the rewritten packet at the start of {@code target}, which must hold at least
+     * {@link RadiusPacketView#MAX_PACKET_LENGTH} bytes.
+     *
+     * @return the length of the rewritten packet
+     */
+    public int rewrite(RadiusPacketView radius, int identifier, byte[] target) {
+        ByteBuffer b = radius.getBuffer();
+        b.get(radius.getOffset(), target, 0, RadiusPacketView.HEADER_LENGTH);
+        target[1] = (byte) identifier;
+
+        int position = RadiusPacketView.HEADER_LENGTH;
+        int messageAuthenticator = -1;
+        for (int i = 0; i < radius.getAttributeCount(); i++) {
+            int type = radius.getAttributeType(i);
+            int valueLength = radius.getAttributeValueLength(i);
+            int suffix = type == ACCT_SESSION_ID ? Math.min(sessionSuffix.length, MAX_VALUE_LENGTH - valueLength) : 0;
+            int value = position + 2;
+            if (value + valueLength + suffix > RadiusPacketView.MAX_PACKET_LENGTH) break;
+
+            target[position] = (byte) type;
+            target[position + 1] = (byte) (2 + valueLength + suffix);
+            b.get(radius.getAttributeValueOffset(i), target, value, valueLength);
+            System.arraycopy(sessionSuffix, 0, target, value + valueLength, suffix);
+            if (type == NAS_IP_ADDRESS && valueLength == 4 && nasIpAddress != null) {
+                target[value] = (byte) (nasIpAddress >> 24);
+                target[value + 1] = (byte) (nasIpAddress >> 16);
+                target[value + 2] = (byte) (nasIpAddress >> 8);
+                target[value + 3] = (byte) (int) nasIpAddress;
+            } else if (type == MESSAGE_AUTHENTICATOR && valueLength == 16) {
+                messageAuthenticator = value;
+            }
+            position = value + valueLength + suffix;
+        }
+        target[2] = (byte) (position >> 8);
+        target[3] = (byte) position;
+
+        if (secret != null) {
+            sign(target, position, messageAuthenticator);
+        }
+        return position;
+    }
+
+    private void sign(byte[] packet, int length, int messageAuthenticator) {
+        int code = packet[0] & 0xFF;
+        // These carry an authenticator computed over the packet, Access-Requests a random one
+        boolean computed = code == RadiusCode.ACCOUNTING_REQUEST
+                || code == RadiusCode.DISCONNECT_REQUEST || code == RadiusCode.COA_REQUEST;
+        if (computed) {
+            Arrays.fill(packet, 4, RadiusPacketView.HEADER_LENGTH, (byte) 0);
+        }
+        try {
+            if (messageAuthenticator >= 0) {
+                Arrays.fill(packet, messageAuthenticator, messageAuthenticator + 16, (byte) 0);
+                hmac.update(packet, 0, length);
+                hmac.doFinal(packet, messageAuthenticator);
+            }
+            if (computed) {
+                md5.update(packet, 0, length);
+                md5.update(secret);
+                md5.digest(packet, 4, 16);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to sign RADIUS packet", e);
+        }
+    }
+}
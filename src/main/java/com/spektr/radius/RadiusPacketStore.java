@@ -0,0 +1,514 @@
+package com.spektr.radius;
+
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.pcap.Ipv4;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.LongSupplier;
+
+/**
+ * Column store for the packets of a parse result.
+ * Each packet is one row spread over primitive arrays (addresses as ints, timestamps and capture
+ * offsets as longs) and its decoded attributes are pairs of ids into a string table, so the names
+ * and the many repeated values (NAS addresses, service types, realms...) are held only once.
+ * The lists returned by {@link #view(String)} build a {@link RadiusPacketData} per element on access;
+ * lists of rows leave out the raw dump, which {@link #get(int)} rebuilds for a single packet.
+ * <p>
+ * Once the columns would grow beyond the memory budget, further rows are written to a
+ * {@link PacketSpillFile} instead and read back from it; rows keep their order either way.
+ * Closing the store deletes the spill file right away instead of once the store is collected.
+ */
+public class RadiusPacketStore implements AutoCloseable {
+
+    private static final int INITIAL_ROWS = 256;
+
+    private final StringTable strings = new StringTable();
+    private final Path spillDirectory;
+    private final LongSupplier sharedSize;
+    private long memoryBudget;
+    private PacketSpillFile spill;
+
+    private int size;
+    private int heapRows;
+    private int[] types = new int[INITIAL_ROWS];
+    private int[] sourceIps = new int[INITIAL_ROWS];
+    private int[] destinationIps = new int[INITIAL_ROWS];
+    private int[] headers = new int[INITIAL_ROWS]; // code << 24 | identifier << 16 | length
+    private long[] timestamps = new long[INITIAL_ROWS];
+    private long[] captureOffsets = new long[INITIAL_ROWS];
+    private int[] attributeEnds = new int[INITIAL_ROWS];
+
+    private int attributeCount;
+    private int[] attributeNames = new int[INITIAL_ROWS * 8];
+    private int[] attributeValues = new int[INITIAL_ROWS * 8];
+
+    // Attributes of the row being added
+    private int pendingCount;
+    private String[] pendingNames = new String[64];
+    private String[] pendingValues = new String[64];
+    private int[] pendingIds = new int[64];
+
+    /**
+     * A store without memory budget.
+     */
+    public RadiusPacketStore() {
+        this(Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param memoryBudget   heap size in bytes the columns may grow to before rows are spilled
+     * @param spillDirectory directory of the spill file
+     */
+    public RadiusPacketStore(long memoryBudget, Path spillDirectory) {
+        this(memoryBudget, spillDirectory, () -> 0);
+    }
+
+    /**
+     * @param sharedSize heap size of what shares the memory budget with the columns, such as the
+     *                   datagrams kept along with the packets of a cached capture
+     * @see #RadiusPacketStore(long, Path)
+     */
+    public RadiusPacketStore(long memoryBudget, Path spillDirectory, LongSupplier sharedSize) {
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.sharedSize = sharedSize;
+    }
+
+    /**
+     * Decodes the packet's attributes into a new row.
+     *
+     * @param captureOffset offset of the packet's record in the capture
+     * @throws UncheckedIOException if the row could not be spilled
+     */
+    public void add(LazyRadiusPacketData packet, long captureOffset) {
+        byte[] bytes = packet.packet;
+        pendingCount = 0;
+        RadiusPacketFormatter.decode(packet.dictionary, bytes, this::addPending);
+        addRow(strings.intern(packet.getPacketType()), packet.sourceAddress, packet.destinationAddress,
+                (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF),
+                packet.getTimestamp(), captureOffset);
+    }
+
+    /**
+     * Appends the rows of {@code next} after the rows of this store; the memory budget of this
+     * store grows by the budget of {@code next}. Rows of {@code next} that had to be copied one by
+     * one are not needed afterwards, so {@code next} is closed.
+     *
+     * @return this store
+     */
+    public RadiusPacketStore append(RadiusPacketStore next) {
+        memoryBudget = memoryBudget + next.memoryBudget < 0 ? Long.MAX_VALUE : memoryBudget + next.memoryBudget;
+        int[] ids = new int[next.strings.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = strings.intern(next.strings.get(i));
+        }
+
+        if (spill != null || next.spill != null || !fits(heapRows + next.heapRows, attributeCount + next.attributeCount)) {
+            for (int row = 0; row < next.size; row++) {
+                next.copyRow(row, this, ids);
+            }
+            next.close();
+            return this;
+        }
+
+        ensureRows(size + next.size);
+        ensureAttributes(attributeCount + next.attributeCount);
+        for (int row = 0; row < next.size; row++) {
+            types[size + row] = ids[next.types[row]];
+            attributeEnds[size + row] = attributeCount + next.attributeEnds[row];
+        }
+        System.arraycopy(next.sourceIps, 0, sourceIps, size, next.size);
+        System.arraycopy(next.destinationIps, 0, destinationIps, size, next.size);
+        System.arraycopy(next.headers, 0, headers, size, next.size);
+        System.arraycopy(next.timestamps, 0, timestamps, size, next.size);
+        System.arraycopy(next.captureOffsets, 0, captureOffsets, size, next.size);
+        for (int i = 0; i < next.attributeCount; i++) {
+            attributeNames[attributeCount + i] = ids[next.attributeNames[i]];
+            attributeValues[attributeCount + i] = ids[next.attributeValues[i]];
+        }
+        size += next.size;
+        heapRows += next.size;
+        attributeCount += next.attributeCount;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of rows held in the spill file
+     */
+    public int spilledSize() {
+        return size - heapRows;
+    }
+
+    public long getTimestamp(int row) {
+        return row < heapRows ? timestamps[row] : spill.getTimestamp(row - heapRows);
+    }
+
+    public long getCaptureOffset(int row) {
+        return row < heapRows ? captureOffsets[row] : spill.getCaptureOffset(row - heapRows);
+    }
+
+    /**
+     * @return the packets of this type in capture order, as a read-only list
+     */
+    public List<RadiusPacketData> view(String packetType) {
+        return view(packetType, null, size);
+    }
+
+    /**
+     * @param rows  rows to pick the packets from, in increasing order; null for every row
+     * @param count number of rows used from {@code rows}
+     * @return the packets of this type among these rows, as a read-only list
+     */
+    public List<RadiusPacketData> view(String packetType, int[] rows, int count) {
+        return view(packetType, rows, count, true);
+    }
+
+    /**
+     * @param rawData whether the packets carry their raw dump; without it they carry their row
+     *                number instead, so that the whole packet can be fetched when needed
+     * @see #view(String, int[], int)
+     */
+    public List<RadiusPacketData> view(String packetType, int[] rows, int count, boolean rawData) {
+        int type = strings.find(packetType);
+        int matching = 0;
+        for (int i = 0; i < count && type >= 0; i++) {
+            if (typeOf(rows != null ? rows[i] : i) == type) matching++;
+        }
+
+        int[] selected = new int[matching];
+        for (int i = 0, j = 0; j < matching; i++) {
+            int row = rows != null ? rows[i] : i;
+            if (typeOf(row) == type) selected[j++] = row;
+        }
+        return new Rows(selected, rawData);
+    }
+
+    /**
+     * Approximate heap size of the store in bytes, not counting the spilled rows.
+     */
+    public long estimatedSize() {
+        long rowBytes = (long) types.length * (5 * Integer.BYTES + 2 * Long.BYTES);
+        long attributeBytes = (long) attributeNames.length * 2 * Integer.BYTES;
+        return rowBytes + attributeBytes + strings.estimatedSize();
+    }
+
+    /**
+     * Deletes the spill file, if there is one; spilled rows are not to be read afterwards.
+     */
+    @Override
+    public void close() {
+        if (spill != null) spill.close();
+    }
+
+    /**
+     * Closes the store behind a list returned by {@link #view}; other lists are left alone.
+     */
+    public static void closeView(List<RadiusPacketData> packets) {
+        if (packets instanceof Rows rows) rows.store().close();
+    }
+
+    /**
+     * Builds the packet of a row as the UI expects it.
+     */
+    public RadiusPacketData get(int row) {
+        return new StoredPacket(row, true);
+    }
+
+    private int typeOf(int row) {
+        return row < heapRows ? types[row] : spill.getType(row - heapRows);
+    }
+
+    private void addPending(String name, String value) {
+        if (pendingCount == pendingNames.length) {
+            pendingNames = Arrays.copyOf(pendingNames, pendingCount * 2);
+            pendingValues = Arrays.copyOf(pendingValues, pendingCount * 2);
+        }
+        pendingNames[pendingCount] = name;
+        pendingValues[pendingCount] = value;
+        pendingCount++;
+    }
+
+    /**
+     * Adds a row with the pending attributes, to the columns while they fit in the memory budget.
+     */
+    private void addRow(int type, int sourceIp, int destinationIp, int header, long timestamp, long captureOffset) {
+        if (spill == null && fits(heapRows + 1, attributeCount + pendingCount)) {
+            ensureRows(heapRows + 1);
+            ensureAttributes(attributeCount + pendingCount);
+            types[heapRows] = type;
+            sourceIps[heapRows] = sourceIp;
+            destinationIps[heapRows] = destinationIp;
+            headers[heapRows] = header;
+            timestamps[heapRows] = timestamp;
+            captureOffsets[heapRows] = captureOffset;
+            for (int i = 0; i < pendingCount; i++) {
+                attributeNames[attributeCount] = strings.intern(pendingNames[i]);
+                attributeValues[attributeCount] = strings.intern(pendingValues[i]);
+                attributeCount++;
+            }
+            attributeEnds[heapRows] = attributeCount;
+            heapRows++;
+        } else {
+            if (pendingIds.length < pendingCount) pendingIds = new int[pendingNames.length];
+            for (int i = 0; i < pendingCount; i++) {
+                pendingIds[i] = strings.intern(pendingNames[i]);
+            }
+            spill().write(type, sourceIp, destinationIp, header, timestamp, captureOffset,
+                    pendingIds, pendingValues, pendingCount);
+        }
+        size++;
+    }
+
+    /**
+     * Adds a row of this store to {@code target}.
+     *
+     * @param ids ids in {@code target} of the strings of this store
+     */
+    private void copyRow(int row, RadiusPacketStore target, int[] ids) {
+        target.pendingCount = 0;
+        if (row < heapRows) {
+            for (int i = row == 0 ? 0 : attributeEnds[row - 1]; i < attributeEnds[row]; i++) {
+                target.addPending(strings.get(attributeNames[i]), strings.get(attributeValues[i]));
+            }
+            target.addRow(ids[types[row]], sourceIps[row], destinationIps[row], headers[row], timestamps[row],
+                    captureOffsets[row]);
+        } else {
+            int spilled = row - heapRows;
+            spill.readAttributes(spilled, (name, value) -> target.addPending(strings.get(name), value));
+            target.addRow(ids[spill.getType(spilled)], spill.getSourceIp(spilled), spill.getDestinationIp(spilled),
+                    spill.getHeader(spilled), spill.getTimestamp(spilled), spill.getCaptureOffset(spilled));
+        }
+    }
+
+    /**
+     * Whether the columns fit in the memory budget once grown to hold these rows and attributes.
+     */
+    private boolean fits(int rows, int attributes) {
+        if (memoryBudget == Long.MAX_VALUE) return true;
+        long rowCapacity = rows <= types.length ? types.length : Math.max(rows, types.length * 2L);
+        long attributeCapacity = attributes <= attributeNames.length ? attributeNames.length
+                : Math.max(attributes, attributeNames.length * 2L);
+        long grown = rowCapacity * (5 * Integer.BYTES + 2 * Long.BYTES) + attributeCapacity * 2 * Integer.BYTES;
+        return grown + strings.estimatedSize() + sharedSize.getAsLong() <= memoryBudget;
+    }
+
+    private PacketSpillFile spill() {
+        if (spill == null) {
+            if (spillDirectory == null) throw new IllegalStateException("No spill directory configured");
+            try {
+                spill = new PacketSpillFile(spillDirectory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create spill file in " + spillDirectory, e);
+            }
+        }
+        return spill;
+    }
+
+    private void ensureRows(int rows) {
+        if (rows <= types.length) return;
+        int capacity = Math.max(rows, types.length * 2);
+        types = Arrays.copyOf(types, capacity);
+        sourceIps = Arrays.copyOf(sourceIps, capacity);
+        destinationIps = Arrays.copyOf(destinationIps, capacity);
+        headers = Arrays.copyOf(headers, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        captureOffsets = Arrays.copyOf(captureOffsets, capacity);
+        attributeEnds = Arrays.copyOf(attributeEnds, capacity);
+    }
+
+    private void ensureAttributes(int attributes) {
+        if (attributes <= attributeNames.length) return;
+        int capacity = Math.max(attributes, attributeNames.length * 2);
+        attributeNames = Arrays.copyOf(attributeNames, capacity);
+        attributeValues = Arrays.copyOf(attributeValues, capacity);
+    }
+
+    private class Rows extends AbstractList<RadiusPacketData> implements RandomAccess {
+
+        private final int[] rows;
+        private final boolean rawData;
+
+        Rows(int[] rows, boolean rawData) {
+            this.rows = rows;
+            this.rawData = rawData;
+        }
+
+        @Override
+        public RadiusPacketData get(int index) {
+            return new StoredPacket(rows[index], rawData);
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+
+        RadiusPacketStore store() {
+            return RadiusPacketStore.this;
+        }
+    }
+
+    /**
+     * Packet of one row; attributes and raw dump are only rebuilt from the columns when read.
+     */
+    private class StoredPacket extends RadiusPacketData {
+
+        // Not named after the row and rawData properties, whose JSON settings they would hide
+        private final int index;
+        private final boolean withRawData;
+
+        StoredPacket(int index, boolean withRawData) {
+            this.index = index;
+            this.withRawData = withRawData;
+            setPacketType(strings.get(typeOf(index)));
+            setTimestamp(RadiusPacketStore.this.getTimestamp(index));
+            if (!withRawData) {
+                setRow(index);
+            }
+        }
+
+        @Override
+        public String getSourceIp() {
+            if (super.getSourceIp() == null) {
+                setSourceIp(Ipv4.format(index < heapRows ? sourceIps[index] : spill.getSourceIp(index - heapRows)));
+            }
+            return super.getSourceIp();
+        }
+
+        @Override
+        public String getDestinationIp() {
+            if (super.getDestinationIp() == null) {
+                setDestinationIp(Ipv4.format(index < heapRows ? destinationIps[index] : spill.getDestinationIp(index - heapRows)));
+            }
+            return super.getDestinationIp();
+        }
+
+        @Override
+        public Map<String, String> getAttributes() {
+            if (super.getAttributes() == null) {
+                materialize();
+            }
+            return super.getAttributes();
+        }
+
+        @Override
+        public String getRawData() {
+            if (super.getRawData() == null && withRawData) {
+                materialize();
+            }
+            return super.getRawData();
+        }
+
+        private void materialize() {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            // Rows of lists leave the dump out, it is most of the size of a packet
+            StringBuilder dump = withRawData ? new StringBuilder(512) : null;
+            if (index < heapRows) {
+                int header = headers[index];
+                if (dump != null) {
+                    RadiusPacketFormatter.appendHeader(dump, header >>> 24, (header >>> 16) & 0xFF, header & 0xFFFF);
+                }
+                for (int i = index == 0 ? 0 : attributeEnds[index - 1]; i < attributeEnds[index]; i++) {
+                    String name = strings.get(attributeNames[i]);
+                    String value = strings.get(attributeValues[i]);
+                    attributes.put(name, value);
+                    if (dump != null) RadiusPacketFormatter.appendAttribute(dump, name, value);
+                }
+            } else {
+                int header = spill.getHeader(index - heapRows);
+                if (dump != null) {
+                    RadiusPacketFormatter.appendHeader(dump, header >>> 24, (header >>> 16) & 0xFF, header & 0xFFFF);
+                }
+                spill.readAttributes(index - heapRows, (name, value) -> {
+                    attributes.put(strings.get(name), value);
+                    if (dump != null) RadiusPacketFormatter.appendAttribute(dump, strings.get(name), value);
+                });
+            }
+            setAttributes(attributes);
+            if (dump != null) {
+                setRawData(dump.toString());
+            }
+        }
+    }
+
+    /**
+     * Interned strings with dense ids, in an open-addressing table like the dictionary's vendor table.
+     */
+    private static class StringTable {
+
+        private String[] values = new String[256];
+        private int[] slots = new int[512]; // id + 1, 0 marks an empty slot
+        private int count;
+        private long characters;
+
+        int intern(String value) {
+            int mask = slots.length - 1;
+            int slot = mix(value.hashCode()) & mask;
+            for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+                if (values[slots[slot] - 1].equals(value)) return slots[slot] - 1;
+            }
+
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = value;
+            slots[slot] = ++count;
+            characters += value.length();
+            if (count * 2 > slots.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        /**
+         * @return the id of this string, or -1 if it was never interned
+         */
+        int find(String value) {
+            int mask = slots.length - 1;
+            for (int slot = mix(value.hashCode()) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                if (values[slots[slot] - 1].equals(value)) return slots[slot] - 1;
+            }
+            return -1;
+        }
+
+        String get(int id) {
+            return values[id];
+        }
+
+        int size() {
+            return count;
+        }
+
+        long estimatedSize() {
+            // About 40 bytes of String and array headers per entry plus one byte per (Latin-1) character
+            return (long) slots.length * Integer.BYTES + (long) values.length * 8 + count * 40L + characters;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int id = 0; id < count; id++) {
+                int slot = mix(values[id].hashCode()) & mask;
+                while (slots[slot] != 0) slot = (slot + 1) & mask;
+                slots[slot] = id + 1;
+            }
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
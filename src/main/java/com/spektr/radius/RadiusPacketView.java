@@ -0,0 +1,134 @@
+package com.spektr.radius;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation-free view of a RADIUS packet inside a larger buffer (RFC 2865 section 3).
+ * {@link #wrap} indexes the attribute offsets once; names and values are never decoded here.
+ * A view is reused packet after packet and is only valid while the wrapped bytes are.
+ */
+public class RadiusPacketView {
+
+    public static final int HEADER_LENGTH = 20;
+    public static final int MAX_PACKET_LENGTH = 4096;
+
+    // Every attribute takes at least 2 bytes
+    private static final int MAX_ATTRIBUTES = (MAX_PACKET_LENGTH - HEADER_LENGTH) / 2;
+
+    private final int[] attributeOffsets = new int[MAX_ATTRIBUTES];
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private int attributeCount;
+
+    /**
+     * Points the view at the RADIUS packet starting at {@code offset}.
+     *
+     * @param available bytes actually present, the declared length is clamped to it
+     * @return false if the bytes cannot be a RADIUS packet
+     */
+    public boolean wrap(ByteBuffer buffer, int offset, int available) {
+        if (available < HEADER_LENGTH) return false;
+
+        int declared = ((buffer.get(offset + 2) & 0xFF) << 8) | (buffer.get(offset + 3) & 0xFF);
+        if (declared < HEADER_LENGTH) return false;
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = Math.min(Math.min(declared, available), MAX_PACKET_LENGTH);
+
+        // Index attributes, stopping at the first malformed one
+        int count = 0;
+        int position = offset + HEADER_LENGTH;
+        int end = offset + length;
+        while (position + 2 <= end) {
+            int attributeLength = buffer.get(position + 1) & 0xFF;
+            if (attributeLength < 2 || position + attributeLength > end) break;
+            attributeOffsets[count++] = position;
+            position += attributeLength;
+        }
+        this.attributeCount = count;
+        return true;
+    }
+
+    public int getCode() {
+        return buffer.get(offset) & 0xFF;
+    }
+
+    public int getIdentifier() {
+        return buffer.get(offset + 1) & 0xFF;
+    }
+
+    /**
+     * Length declared in the RADIUS header.
+     */
+    public int getDeclaredLength() {
+        return ((buffer.get(offset + 2) & 0xFF) << 8) | (buffer.get(offset + 3) & 0xFF);
+    }
+
+    /**
+     * Number of bytes of the packet actually covered by this view.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getAuthenticatorOffset() {
+        return offset + 4;
+    }
+
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    public int getAttributeType(int index) {
+        return buffer.get(attributeOffsets[index]) & 0xFF;
+    }
+
+    public int getAttributeValueOffset(int index) {
+        return attributeOffsets[index] + 2;
+    }
+
+    public int getAttributeValueLength(int index) {
+        return (buffer.get(attributeOffsets[index] + 1) & 0xFF) - 2;
+    }
+
+    /**
+     * @return index of the first attribute of the given type, or -1 if absent
+     */
+    public int findAttribute(int type) {
+        for (int i = 0; i < attributeCount; i++) {
+            if ((buffer.get(attributeOffsets[i]) & 0xFF) == type) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a 4-byte integer attribute value.
+     *
+     * @return the value, or {@code defaultValue} if the attribute is shorter than 4 bytes
+     */
+    public int getIntValue(int index, int defaultValue) {
+        if (getAttributeValueLength(index) < 4) return defaultValue;
+        int value = getAttributeValueOffset(index);
+        return ((buffer.get(value) & 0xFF) << 24) | ((buffer.get(value + 1) & 0xFF) << 16) |
+               ((buffer.get(value + 2) & 0xFF) << 8) | (buffer.get(value + 3) & 0xFF);
+    }
+
+    /**
+     * Copies the packet out of the wrapped buffer, for packets that outlive the current record.
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        buffer.get(offset, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,62 @@
+package com.spektr.service;
+
+import com.spektr.analysis.RadiusDatagramLog;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.radius.RadiusPacketStore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unfiltered parse of a capture, kept so that other filters can be applied without reading the
+ * capture again: every RADIUS datagram, for the packet filter and the observers, and the decoded
+ * packets of the reported types, for the text filter and the packet lists.
+ */
+public class CachedCapture {
+
+    // Filtered results kept per capture for paging through them
+    private static final int MAX_RESULTS = 4;
+
+    private final int totalPackets;
+    private final RadiusDatagramLog datagrams;
+    private final RadiusPacketStore packets;
+    private final Map<String, PcapParseResponse> results = new LinkedHashMap<>(MAX_RESULTS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PcapParseResponse> eldest) {
+            return size() > MAX_RESULTS;
+        }
+    };
+
+    public CachedCapture(int totalPackets, RadiusDatagramLog datagrams, RadiusPacketStore packets) {
+        this.totalPackets = totalPackets;
+        this.datagrams = datagrams;
+        this.packets = packets;
+    }
+
+    public int getTotalPackets() {
+        return totalPackets;
+    }
+
+    public RadiusDatagramLog getDatagrams() {
+        return datagrams;
+    }
+
+    public RadiusPacketStore getPackets() {
+        return packets;
+    }
+
+    /**
+     * Approximate heap size in bytes, not counting the filtered results.
+     */
+    public long estimatedSize() {
+        return datagrams.estimatedSize() + packets.estimatedSize();
+    }
+
+    synchronized PcapParseResponse getResult(String filterKey) {
+        return results.get(filterKey);
+    }
+
+    synchronized void putResult(String filterKey, PcapParseResponse response) {
+        results.put(filterKey, response);
+    }
+}
@@ -0,0 +1,354 @@
+package com.spektr.service;
+
+import com.spektr.analysis.RadiusDatagramLog;
+import com.spektr.dto.PacketPage;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.pcap.CaptureReaders;
+import com.spektr.radius.RadiusPacketStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the unfiltered parse of uploaded captures under the SHA-256 of the upload, so that the
+ * same capture uploaded again with other filters is not read again, and the packets of a parse
+ * can be fetched page by page. Packet lists hold rows without the raw dump, {@link #getPacket}
+ * returns one whole packet.
+ * <p>
+ * Captures are evicted least recently used first once their estimated size exceeds the memory
+ * budget. With a cache directory configured they are also saved there, and reloaded from it after
+ * eviction or a restart; the oldest files go once the directory grows beyond its own budget.
+ * Uncompressed uploads are kept there too, for decoding single packets again at the record offset
+ * of their row.
+ */
+@Service
+public class CaptureCacheService {
+
+    private static final int FILE_MAGIC = 0x53505243; // "SPRC"
+    private static final String FILE_SUFFIX = ".radius";
+    private static final String CAPTURE_SUFFIX = ".capture";
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final PcapParserService pcapParserService;
+    private final long maxSize;
+    private final Path directory;
+    private final long maxDiskSize;
+    private final Map<String, CachedCapture> captures = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    public CaptureCacheService(PcapParserService pcapParserService,
+                               @Value("${spektr.pcap.cache.max-size:256MB}") DataSize maxSize,
+                               @Value("${spektr.pcap.cache.directory:}") String directory,
+                               @Value("${spektr.pcap.cache.max-disk-size:4GB}") DataSize maxDiskSize) {
+        this.pcapParserService = pcapParserService;
+        this.maxSize = maxSize.toBytes();
+        this.directory = directory.isEmpty() ? null : Path.of(directory);
+        this.maxDiskSize = maxDiskSize.toBytes();
+    }
+
+    /**
+     * Parses an uploaded capture like {@link PcapParserService#parsePcapFile(MultipartFile, ParseOptions)},
+     * from the cache if the same capture was uploaded before.
+     */
+    public PcapParseResponse parsePcapFile(MultipartFile file, ParseOptions options) throws IOException {
+        if ((maxSize == 0 && directory == null) || options.isSummary() || options.isRates() || options.isTimeline()) {
+            // Summaries, rates and timelines are meant for captures too large to keep, they are computed in a single pass
+            return pcapParserService.parsePcapFile(file, options);
+        }
+
+        String captureId = captureId(file);
+        CachedCapture capture;
+        try {
+            capture = getCapture(file, captureId);
+        } catch (IllegalStateException e) {
+            // Too much RADIUS traffic to keep, given up on as soon as it showed: the capture is
+            // parsed without the cache every time
+            return pcapParserService.parsePcapFile(file, options);
+        }
+
+        PcapParseResponse response = result(capture, options);
+        response.setCaptureId(captureId);
+        return response;
+    }
+
+    /**
+     * The unfiltered parse of an upload, from the cache or parsed and added to it.
+     *
+     * @param captureId {@link #captureId} of the upload
+     * @throws IllegalStateException if the RADIUS traffic of the capture is too large to keep, that
+     *                               is larger than the memory budget (or the disk budget without one)
+     */
+    public CachedCapture getCapture(MultipartFile file, String captureId) throws IOException {
+        CachedCapture capture = get(captureId);
+        if (capture == null) {
+            capture = pcapParserService.capturePcapFile(file, maxSize > 0 ? maxSize : maxDiskSize);
+            put(captureId, capture, file);
+        }
+        return capture;
+    }
+
+    /**
+     * Returns up to {@code limit} packets of one category of a cached capture, with the filters of
+     * {@code options} applied, starting at {@code cursor} (the first page if null).
+     *
+     * @param category one of the packet lists of {@link PcapParseResponse}, such as {@code accessRequests}
+     * @return the page, or null if the capture is not cached (any more)
+     * @throws IllegalArgumentException if category, cursor or limit are invalid
+     */
+    public PacketPage getPage(String captureId, String category, ParseOptions options, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        CachedCapture capture = get(captureId);
+        if (capture == null) return null;
+
+        List<RadiusPacketData> packets = getCategory(result(capture, ParseOptions.of(options.getFilter())), category);
+        int from = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                from = Integer.parseInt(cursor);
+            } catch (NumberFormatException e) {
+                from = -1;
+            }
+            if (from < 0 || from > packets.size()) throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+
+        int to = Math.min(packets.size(), from + limit);
+        return new PacketPage(packets.subList(from, to), packets.size(),
+                to < packets.size() ? Integer.toString(to) : null);
+    }
+
+    /**
+     * One packet of a cached capture with its raw dump, by the {@code row} of the packet lists.
+     * The packet is decoded again from the record at the row's offset in the saved capture, if
+     * there is one, and rebuilt from the cached rows otherwise.
+     *
+     * @return the packet, or null if the capture is not cached (any more)
+     * @throws IllegalArgumentException if the capture has no such row
+     */
+    public RadiusPacketData getPacket(String captureId, int row) throws IOException {
+        CachedCapture capture = get(captureId);
+        if (capture == null) return null;
+        RadiusPacketStore packets = capture.getPackets();
+        if (row < 0 || row >= packets.size()) {
+            throw new IllegalArgumentException("No packet " + row + " in capture " + captureId);
+        }
+
+        Path file = directory != null ? directory.resolve(captureId + CAPTURE_SUFFIX) : null;
+        if (file != null && Files.exists(file)) {
+            RadiusPacketData packet = pcapParserService.decodePacket(file, packets.getCaptureOffset(row));
+            // A pcapng file whose interfaces change after the first packet is not read from the middle
+            if (packet != null && packet.getTimestamp().equals(packets.getTimestamp(row))) {
+                packet.setRow(row);
+                return packet;
+            }
+        }
+        RadiusPacketData packet = packets.get(row);
+        packet.setRow(row);
+        return packet;
+    }
+
+    /**
+     * Packet lists are kept per filter for paging; correlation, sessions, duplicate detection and
+     * profiles are computed every time.
+     */
+    private PcapParseResponse result(CachedCapture capture, ParseOptions options) {
+        if (options.isCorrelate() || options.isSessions() || options.isDedup() || options.isProfile()) {
+            return pcapParserService.parseCached(capture, options);
+        }
+
+        String key = options.getFilter().getKey();
+        PcapParseResponse response = capture.getResult(key);
+        if (response == null) {
+            response = pcapParserService.parseCached(capture, options);
+            capture.putResult(key, response);
+        }
+        return response;
+    }
+
+    private static List<RadiusPacketData> getCategory(PcapParseResponse response, String category) {
+        switch (category) {
+            case "accessRequests":
+                return response.getAccessRequests();
+            case "accountingStarts":
+                return response.getAccountingStarts();
+            case "accountingUpdates":
+                return response.getAccountingUpdates();
+            case "accountingStops":
+                return response.getAccountingStops();
+            default:
+                throw new IllegalArgumentException("Unknown packet category: " + category);
+        }
+    }
+
+    private CachedCapture get(String captureId) {
+        if (!captureId.matches("[0-9a-f]{64}")) return null;
+
+        synchronized (this) {
+            CachedCapture capture = captures.get(captureId);
+            if (capture != null || directory == null) return capture;
+        }
+
+        CachedCapture capture = load(captureId);
+        if (capture != null) {
+            keep(captureId, capture);
+        }
+        return capture;
+    }
+
+    private void put(String captureId, CachedCapture capture, MultipartFile file) throws IOException {
+        keep(captureId, capture);
+        if (directory != null) {
+            save(captureId, capture, file);
+        }
+    }
+
+    private synchronized void keep(String captureId, CachedCapture capture) {
+        long captureSize = capture.estimatedSize();
+        if (captureSize > maxSize) return;
+
+        // Replaced and evicted captures are not closed: requests that got them before may still
+        // be reading their packets, the spill files go once the last page served from them does
+        CachedCapture previous = captures.put(captureId, capture);
+        if (previous != null) size -= previous.estimatedSize();
+        size += captureSize;
+
+        Iterator<CachedCapture> eldest = captures.values().iterator();
+        while (size > maxSize) {
+            CachedCapture evicted = eldest.next();
+            size -= evicted.estimatedSize();
+            eldest.remove();
+        }
+    }
+
+    private CachedCapture load(String captureId) {
+        Path file = directory.resolve(captureId + FILE_SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) return null;
+            int totalPackets = in.readInt();
+            long[] captureOffsets = new long[in.readInt()];
+            for (int i = 0; i < captureOffsets.length; i++) {
+                captureOffsets[i] = in.readLong();
+            }
+            RadiusDatagramLog datagrams = RadiusDatagramLog.read(in);
+
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            Path saved = directory.resolve(captureId + CAPTURE_SUFFIX);
+            if (Files.exists(saved)) {
+                Files.setLastModifiedTime(saved, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            return pcapParserService.restoreCapture(totalPackets, datagrams, captureOffsets);
+        } catch (IOException | RuntimeException e) {
+            // Missing, truncated or from an incompatible version: parse the upload again
+            return null;
+        }
+    }
+
+    private void save(String captureId, CachedCapture capture, MultipartFile file) throws IOException {
+        Files.createDirectories(directory);
+        saveCapture(captureId, file);
+        Path temp = Files.createTempFile(directory, captureId, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                RadiusPacketStore packets = capture.getPackets();
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(capture.getTotalPackets());
+                out.writeInt(packets.size());
+                for (int row = 0; row < packets.size(); row++) {
+                    out.writeLong(packets.getCaptureOffset(row));
+                }
+                capture.getDatagrams().write(out);
+            }
+            Files.move(temp, directory.resolve(captureId + FILE_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        trimDirectory();
+    }
+
+    /**
+     * Keeps the upload itself, unless compressed: record offsets of compressed captures are
+     * offsets in the decompressed stream.
+     */
+    private void saveCapture(String captureId, MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            if (CaptureReaders.isCompressed(in)) return;
+        }
+        Path temp = Files.createTempFile(directory, captureId, ".tmp");
+        try {
+            try (InputStream in = file.getInputStream()) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(temp, directory.resolve(captureId + CAPTURE_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void trimDirectory() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX)
+                            || path.getFileName().toString().endsWith(CAPTURE_SUFFIX))
+                    .sorted(Comparator.comparing(CaptureCacheService::lastModified).reversed())
+                    .toList();
+        }
+
+        long total = 0;
+        for (Path file : files) {
+            total += Files.size(file);
+            if (total > maxDiskSize) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the SHA-256 of the upload, in hex
+     */
+    public static String captureId(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,429 @@
+package com.spektr.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spektr.dto.LibraryCapture;
+import com.spektr.dto.LibraryPacket;
+import com.spektr.dto.MacAppearance;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.radius.RadiusPacketStore;
+import jakarta.annotation.PostConstruct;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Library of every capture ever imported, kept in PostgreSQL for searching across captures.
+ * <p>
+ * Packets go into {@code library_packets}, range-partitioned by month of the packet time so that
+ * searches over a time window only touch the partitions it covers. They are bulk-loaded with COPY,
+ * the attributes as JSONB with a GIN index for containment queries, and the client MAC
+ * (Calling-Station-Id), access point MAC (Called-Station-Id) and user name normalized into
+ * columns of their own with B-tree indexes, which answer the common questions directly.
+ */
+@Service
+public class CaptureLibraryService {
+
+    // Rows are sent to the server in batches of about this size
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS library_captures ("
+                    + " id BIGSERIAL PRIMARY KEY,"
+                    + " capture_hash CHAR(64) NOT NULL UNIQUE,"
+                    + " file_name TEXT,"
+                    + " owner TEXT NOT NULL,"
+                    + " uploaded_at TIMESTAMPTZ NOT NULL,"
+                    + " packet_count INTEGER NOT NULL,"
+                    + " first_packet_at TIMESTAMPTZ,"
+                    + " last_packet_at TIMESTAMPTZ)",
+            "CREATE TABLE IF NOT EXISTS library_packets ("
+                    + " capture_id BIGINT NOT NULL,"
+                    + " packet_time TIMESTAMPTZ NOT NULL,"
+                    + " packet_type TEXT NOT NULL,"
+                    + " source_ip INET NOT NULL,"
+                    + " destination_ip INET NOT NULL,"
+                    + " user_name TEXT,"
+                    + " client_mac MACADDR,"
+                    + " ap_mac MACADDR,"
+                    + " attributes JSONB NOT NULL"
+                    + ") PARTITION BY RANGE (packet_time)",
+            "CREATE INDEX IF NOT EXISTS library_packets_client_mac ON library_packets (client_mac, packet_time)",
+            "CREATE INDEX IF NOT EXISTS library_packets_ap_mac ON library_packets (ap_mac, packet_time)",
+            "CREATE INDEX IF NOT EXISTS library_packets_user_name ON library_packets (user_name, packet_time)",
+            "CREATE INDEX IF NOT EXISTS library_packets_capture ON library_packets (capture_id)",
+            "CREATE INDEX IF NOT EXISTS library_packets_attributes ON library_packets USING GIN (attributes jsonb_path_ops)"
+    };
+
+    private static final String COPY_PACKETS = "COPY library_packets (capture_id, packet_time, packet_type, source_ip,"
+            + " destination_ip, user_name, client_mac, ap_mac, attributes) FROM STDIN";
+
+    private static final String PACKET_COLUMNS = "p.capture_id, c.file_name, p.packet_time, p.packet_type,"
+            + " host(p.source_ip) AS source_ip, host(p.destination_ip) AS destination_ip, p.user_name,"
+            + " p.client_mac::text AS client_mac, p.ap_mac::text AS ap_mac, p.attributes::text AS attributes";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final CaptureCacheService captureCacheService;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    public CaptureLibraryService(DataSource dataSource, CaptureCacheService captureCacheService,
+                                 ObjectMapper objectMapper,
+                                 @Value("${spektr.library.enabled:false}") boolean enabled) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.captureCacheService = captureCacheService;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void createSchema() {
+        if (!enabled) return;
+        for (String statement : SCHEMA) {
+            jdbcTemplate.execute(statement);
+        }
+    }
+
+    /**
+     * Parses the upload (or takes it from the capture cache) and loads all its packets into the
+     * library. A capture already in the library is not loaded again.
+     *
+     * @throws IllegalStateException if the library is disabled or the capture too large to load
+     */
+    public LibraryCapture importCapture(MultipartFile file, String owner) throws IOException {
+        checkEnabled();
+        String captureHash = CaptureCacheService.captureId(file);
+        LibraryCapture existing = findCapture(captureHash);
+        if (existing != null) return existing;
+
+        RadiusPacketStore packets = captureCacheService.getCapture(file, captureHash).getPackets();
+        try {
+            return load(captureHash, file.getOriginalFilename(), owner, packets);
+        } catch (SQLException e) {
+            // Two imports of the same capture at once: the later one loses on the unique hash
+            existing = findCapture(captureHash);
+            if (existing != null) return existing;
+            throw new IOException("Failed to load capture into the library: " + e.getMessage(), e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public List<LibraryCapture> getCaptures() {
+        checkEnabled();
+        return jdbcTemplate.query("SELECT * FROM library_captures ORDER BY uploaded_at DESC", CAPTURE_ROW);
+    }
+
+    /**
+     * Packets of all captures matching every given criterion, most recent first.
+     *
+     * @param mac       client or access point MAC address, in any common notation
+     * @param userName  user name, ignoring case
+     * @param attribute attribute name, only together with {@code value}: the attribute has exactly this value
+     * @param from      only packets at or after this time, may be null
+     * @param to        only packets before this time, may be null
+     * @throws IllegalArgumentException if no criterion is given or one is invalid
+     */
+    public List<LibraryPacket> search(String mac, String userName, String attribute, String value,
+                                      Instant from, Instant to, int limit) {
+        checkEnabled();
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT " + PACKET_COLUMNS
+                + " FROM library_packets p JOIN library_captures c ON c.id = p.capture_id WHERE true");
+        List<Object> parameters = new ArrayList<>();
+        boolean criteria = false;
+        if (mac != null && !mac.isEmpty()) {
+            String normalized = normalizeMac(mac);
+            if (normalized == null) throw new IllegalArgumentException("Invalid MAC address: " + mac);
+            sql.append(" AND (p.client_mac = ?::macaddr OR p.ap_mac = ?::macaddr)");
+            parameters.add(normalized);
+            parameters.add(normalized);
+            criteria = true;
+        }
+        if (userName != null && !userName.isEmpty()) {
+            sql.append(" AND p.user_name = ?");
+            parameters.add(normalizeUserName(userName));
+            criteria = true;
+        }
+        if (attribute != null && !attribute.isEmpty()) {
+            if (value == null) throw new IllegalArgumentException("An attribute search needs a value");
+            sql.append(" AND p.attributes @> jsonb_build_object(?::text, ?::text)");
+            parameters.add(attribute);
+            parameters.add(value);
+            criteria = true;
+        }
+        if (!criteria) {
+            throw new IllegalArgumentException("Search by MAC address, user name or attribute value");
+        }
+        appendTimeRange(sql, parameters, from, to);
+        sql.append(" ORDER BY p.packet_time DESC LIMIT ?");
+        parameters.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), this::mapPacket, parameters.toArray());
+    }
+
+    /**
+     * Every capture in which the MAC address appears, as client or access point, most recent first.
+     *
+     * @throws IllegalArgumentException if the MAC address is invalid
+     */
+    public List<MacAppearance> findMac(String mac, Instant from, Instant to) {
+        checkEnabled();
+        String normalized = normalizeMac(mac);
+        if (normalized == null) throw new IllegalArgumentException("Invalid MAC address: " + mac);
+
+        StringBuilder sql = new StringBuilder("SELECT p.capture_id, c.file_name, min(p.packet_time) AS first_seen,"
+                + " max(p.packet_time) AS last_seen, count(*) AS packets,"
+                + " array_remove(array_agg(DISTINCT p.user_name), NULL) AS user_names"
+                + " FROM library_packets p JOIN library_captures c ON c.id = p.capture_id"
+                + " WHERE (p.client_mac = ?::macaddr OR p.ap_mac = ?::macaddr)");
+        List<Object> parameters = new ArrayList<>(List.of(normalized, normalized));
+        appendTimeRange(sql, parameters, from, to);
+        sql.append(" GROUP BY p.capture_id, c.file_name ORDER BY last_seen DESC");
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new MacAppearance(
+                rs.getLong("capture_id"), rs.getString("file_name"),
+                rs.getTimestamp("first_seen").toInstant(), rs.getTimestamp("last_seen").toInstant(),
+                rs.getLong("packets"), Arrays.asList((String[]) rs.getArray("user_names").getArray())),
+                parameters.toArray());
+    }
+
+    /**
+     * Normalizes the MAC address notations found in Calling-/Called-Station-Id
+     * ({@code 00-11-22-33-44-55}, {@code 0011.2233.4455}, {@code 001122aabbcc}...), ignoring
+     * anything after the address and a separator such as the {@code :SSID} suffix of
+     * Called-Station-Id. Twelve decimal digits without separators are taken for the phone number
+     * (MSISDN) mobile gateways send in Calling-Station-Id.
+     *
+     * @return the address as {@code 00:11:22:33:44:55}, or null if the text does not start with one
+     */
+    public static String normalizeMac(String text) {
+        StringBuilder mac = new StringBuilder(17);
+        int digits = 0;
+        boolean separated = false;
+        boolean letters = false;
+        int i = 0;
+        for (; i < text.length() && digits < 12; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f')) {
+                if (digits > 0 && digits % 2 == 0) mac.append(':');
+                mac.append(c);
+                letters |= c >= 'a';
+                digits++;
+            } else if (c == ':' || c == '-' || c == '.' || c == ' ') {
+                separated = true;
+            } else {
+                return null;
+            }
+        }
+        if (digits < 12) return null;
+        // A longer run of digits is not an address, whatever it starts with
+        if (i < text.length() && Character.digit(text.charAt(i), 16) >= 0) return null;
+        return separated || letters ? mac.toString() : null;
+    }
+
+    static String normalizeUserName(String userName) {
+        return userName.trim().toLowerCase();
+    }
+
+    /**
+     * Appends a field in the text format of COPY: backslash, tab and line breaks are escaped
+     * and null is {@code \N}.
+     */
+    static void appendCopyField(StringBuilder row, String value) {
+        if (value == null) {
+            row.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> row.append("\\\\");
+                case '\t' -> row.append("\\t");
+                case '\n' -> row.append("\\n");
+                case '\r' -> row.append("\\r");
+                default -> row.append(c);
+            }
+        }
+    }
+
+    private LibraryCapture load(String captureHash, String fileName, String owner, RadiusPacketStore packets)
+            throws SQLException, IOException {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int row = 0; row < packets.size(); row++) {
+            first = Math.min(first, packets.getTimestamp(row));
+            last = Math.max(last, packets.getTimestamp(row));
+        }
+        Instant firstPacketAt = packets.size() > 0 ? Instant.ofEpochMilli(first) : null;
+        Instant lastPacketAt = packets.size() > 0 ? Instant.ofEpochMilli(last) : null;
+        if (firstPacketAt != null) {
+            createPartitions(firstPacketAt, lastPacketAt);
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long captureId;
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO library_captures"
+                        + " (capture_hash, file_name, owner, uploaded_at, packet_count, first_packet_at, last_packet_at)"
+                        + " VALUES (?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+                    insert.setString(1, captureHash);
+                    insert.setString(2, fileName);
+                    insert.setString(3, owner);
+                    insert.setTimestamp(4, Timestamp.from(Instant.now()));
+                    insert.setInt(5, packets.size());
+                    insert.setTimestamp(6, firstPacketAt != null ? Timestamp.from(firstPacketAt) : null);
+                    insert.setTimestamp(7, lastPacketAt != null ? Timestamp.from(lastPacketAt) : null);
+                    insert.executeUpdate();
+                    try (ResultSet keys = insert.getGeneratedKeys()) {
+                        keys.next();
+                        captureId = keys.getLong("id");
+                    }
+                }
+
+                copyPackets(connection, captureId, packets);
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        return findCapture(captureHash);
+    }
+
+    private void copyPackets(Connection connection, long captureId, RadiusPacketStore packets)
+            throws SQLException, IOException {
+        CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_PACKETS);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE + 4096);
+            StringBuilder row = new StringBuilder(1024);
+            for (int i = 0; i < packets.size(); i++) {
+                RadiusPacketData packet = packets.get(i);
+                Map<String, String> attributes = packet.getAttributes();
+                String userName = attributes.get("User-Name");
+                String clientMac = attributes.get("Calling-Station-Id");
+                String apMac = attributes.get("Called-Station-Id");
+
+                row.setLength(0);
+                row.append(captureId).append('\t');
+                row.append(Instant.ofEpochMilli(packet.getTimestamp())).append('\t');
+                appendCopyField(row, packet.getPacketType());
+                row.append('\t').append(packet.getSourceIp()).append('\t').append(packet.getDestinationIp()).append('\t');
+                appendCopyField(row, userName != null ? normalizeUserName(userName) : null);
+                row.append('\t');
+                appendCopyField(row, clientMac != null ? normalizeMac(clientMac) : null);
+                row.append('\t');
+                appendCopyField(row, apMac != null ? normalizeMac(apMac) : null);
+                row.append('\t');
+                appendCopyField(row, objectMapper.writeValueAsString(attributes));
+                row.append('\n');
+
+                buffer.write(row.toString().getBytes(StandardCharsets.UTF_8));
+                if (buffer.size() >= COPY_BUFFER_SIZE) {
+                    copy.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                    buffer.reset();
+                }
+            }
+            if (buffer.size() > 0) {
+                copy.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+            }
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) copy.cancelCopy();
+        }
+    }
+
+    /**
+     * Creates the monthly partitions covering this time range. Done outside of the load's
+     * transaction and serialized, as concurrent CREATE TABLE IF NOT EXISTS can still collide.
+     */
+    private synchronized void createPartitions(Instant first, Instant last) {
+        YearMonth month = YearMonth.from(first.atOffset(ZoneOffset.UTC));
+        YearMonth lastMonth = YearMonth.from(last.atOffset(ZoneOffset.UTC));
+        for (; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+            LocalDate start = month.atDay(1);
+            // Bounds in UTC like the months, a bare date would be midnight in the session time zone
+            jdbcTemplate.execute(String.format("CREATE TABLE IF NOT EXISTS library_packets_y%04dm%02d"
+                            + " PARTITION OF library_packets FOR VALUES FROM ('%s 00:00:00+00') TO ('%s 00:00:00+00')",
+                    month.getYear(), month.getMonthValue(), start, start.plusMonths(1)));
+        }
+    }
+
+    private LibraryCapture findCapture(String captureHash) {
+        List<LibraryCapture> captures = jdbcTemplate.query(
+                "SELECT * FROM library_captures WHERE capture_hash = ?", CAPTURE_ROW, captureHash);
+        return captures.isEmpty() ? null : captures.get(0);
+    }
+
+    private static void appendTimeRange(StringBuilder sql, List<Object> parameters, Instant from, Instant to) {
+        if (from != null) {
+            sql.append(" AND p.packet_time >= ?");
+            parameters.add(Timestamp.from(from));
+        }
+        if (to != null) {
+            sql.append(" AND p.packet_time < ?");
+            parameters.add(Timestamp.from(to));
+        }
+    }
+
+    private LibraryPacket mapPacket(ResultSet rs, int rowNum) throws SQLException {
+        Map<String, String> attributes;
+        try {
+            attributes = objectMapper.readValue(rs.getString("attributes"), new TypeReference<>() { });
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid attributes of a library packet", e);
+        }
+        return new LibraryPacket(rs.getLong("capture_id"), rs.getString("file_name"),
+                rs.getTimestamp("packet_time").toInstant(), rs.getString("packet_type"),
+                rs.getString("source_ip"), rs.getString("destination_ip"), rs.getString("user_name"),
+                rs.getString("client_mac"), rs.getString("ap_mac"), attributes);
+    }
+
+    private static final RowMapper<LibraryCapture> CAPTURE_ROW = (rs, rowNum) -> new LibraryCapture(
+            rs.getLong("id"), rs.getString("capture_hash"), rs.getString("file_name"), rs.getString("owner"),
+            rs.getTimestamp("uploaded_at").toInstant(), rs.getInt("packet_count"),
+            toInstant(rs.getTimestamp("first_packet_at")), toInstant(rs.getTimestamp("last_packet_at")));
+
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toInstant() : null;
+    }
+
+    private void checkEnabled() {
+        if (!enabled) {
+            throw new IllegalStateException("The capture library is disabled");
+        }
+    }
+}
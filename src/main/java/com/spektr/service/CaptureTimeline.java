@@ -0,0 +1,167 @@
+package com.spektr.service;
+
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Merges the packets of several captures into one timeline as they are decoded. Every capture is
+ * parsed on its own thread into a small bounded queue, and a heap holding the next packet of each
+ * capture hands them on in timestamp order (k-way merge); packets of a single capture keep their
+ * order. At most a few batches of packets per capture are in memory at any time.
+ */
+class CaptureTimeline {
+
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUED_BATCHES = 4;
+
+    /**
+     * Parses one capture, handing its packets to the sink in capture order.
+     */
+    @FunctionalInterface
+    interface Producer {
+        PcapParseResponse produce(RadiusPacketSink sink) throws IOException;
+    }
+
+    private CaptureTimeline() {
+    }
+
+    /**
+     * Runs the producers in parallel and hands their packets to {@code sink} by timestamp, each
+     * tagged with the name of its capture.
+     *
+     * @return the response of each producer, in the order of {@code names}
+     */
+    static List<PcapParseResponse> merge(List<String> names, List<Producer> producers, RadiusPacketSink sink)
+            throws IOException {
+        int count = producers.size();
+        List<Stream> streams = new ArrayList<>(count);
+        // One thread per capture: the merge needs the next packet of every capture to go on
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, count),
+                new CustomizableThreadFactory("pcap-batch-"));
+        try {
+            for (int i = 0; i < count; i++) {
+                Stream stream = new Stream(i, names.get(i));
+                streams.add(stream);
+                Producer producer = producers.get(i);
+                executor.execute(() -> stream.run(producer));
+            }
+
+            PriorityQueue<Stream> heap = new PriorityQueue<>(Math.max(1, count),
+                    Comparator.comparingLong(Stream::headTimestamp).thenComparingInt(stream -> stream.index));
+            for (Stream stream : streams) {
+                if (stream.advance()) heap.add(stream);
+            }
+            while (!heap.isEmpty()) {
+                Stream stream = heap.poll();
+                RadiusPacketData packet = stream.head();
+                packet.setCaptureFile(stream.name);
+                sink.accept(packet);
+                if (stream.advance()) heap.add(stream);
+            }
+
+            List<PcapParseResponse> responses = new ArrayList<>(count);
+            for (Stream stream : streams) {
+                responses.add(stream.response);
+            }
+            return responses;
+        } finally {
+            // Stops the producers still running if the merge failed or the client went away
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Packets of one capture on their way from its producer to the merge.
+     */
+    private static class Stream {
+
+        private static final List<RadiusPacketData> END = List.of();
+
+        final int index;
+        final String name;
+        private final BlockingQueue<List<RadiusPacketData>> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        private List<RadiusPacketData> batch = new ArrayList<>(BATCH_SIZE);
+        private List<RadiusPacketData> current = END;
+        private int position;
+        private volatile PcapParseResponse response;
+        private volatile Throwable failure;
+
+        Stream(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        void run(Producer producer) {
+            try {
+                response = producer.produce(packet -> {
+                    batch.add(packet);
+                    if (batch.size() == BATCH_SIZE) {
+                        put(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                });
+                if (!batch.isEmpty()) put(batch);
+            } catch (Throwable e) {
+                failure = e;
+            } finally {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    // The merge is over
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void put(List<RadiusPacketData> packets) throws InterruptedIOException {
+            try {
+                queue.put(packets);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Batch parse cancelled");
+            }
+        }
+
+        /**
+         * Moves to the next packet of the capture, waiting for it to be decoded.
+         *
+         * @return false at the end of the capture
+         */
+        boolean advance() throws IOException {
+            if (++position < current.size()) return true;
+            try {
+                current = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Batch parse cancelled");
+            }
+            position = 0;
+            if (current != END) return true;
+
+            if (failure instanceof IOException e) throw e;
+            if (failure instanceof RuntimeException e) throw e;
+            if (failure != null) throw (Error) failure;
+            return false;
+        }
+
+        RadiusPacketData head() {
+            return current.get(position);
+        }
+
+        long headTimestamp() {
+            return head().getTimestamp();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.spektr.service;
+
+import com.spektr.dto.IngestStatus;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.filter.CaptureFilter;
+import com.spektr.pcap.Tzsp;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.LazyRadiusPacketData;
+import com.spektr.radius.RadiusPacketView;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Live RADIUS analysis of a port-mirrored feed received on a UDP port, as TZSP-encapsulated
+ * frames, bare Ethernet frames one per datagram, or copies of the RADIUS datagrams themselves.
+ * Packets are decoded as in a capture and kept in a rolling window per packet list, which
+ * clients can read or subscribe to.
+ * <p>
+ * A receiver thread reads datagrams into a fixed pool of direct buffers and hands them to a
+ * decoder thread over a lock-free queue; the buffers come back over a second one. When the
+ * decoder falls behind and no buffer is free, datagrams are dropped and counted.
+ */
+@Service
+public class MirrorIngestService {
+
+    private static final int MAX_DATAGRAM = 65_535;
+    private static final int RECEIVE_BUFFER = 4 * 1024 * 1024;
+    private static final int SUBSCRIBER_QUEUE = 4096;
+    private static final int IDLE_SPINS = 1000;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private static final List<String> CATEGORIES = List.of(
+            "Access-Request", "Accounting-Start", "Accounting-Interim-Update", "Accounting-Stop");
+
+    public enum Mode {
+        TZSP, ETHERNET, RADIUS;
+
+        static Mode of(String name) {
+            for (Mode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) return mode;
+            }
+            throw new IllegalArgumentException("Unsupported ingest mode: " + name + " (use tzsp, ethernet or radius)");
+        }
+    }
+
+    private final PcapParserService pcapParserService;
+    private final boolean enabled;
+    private final InetSocketAddress bindAddress;
+    private final Mode mode;
+    private final int bufferCount;
+    private final Duration window;
+    private final int maxSubscribers;
+    private final Map<String, RollingWindow> windows = new LinkedHashMap<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong datagramsReceived = new AtomicLong();
+    private final AtomicLong datagramsDropped = new AtomicLong();
+    private final AtomicLong radiusPacketsFound = new AtomicLong();
+
+    private DatagramChannel channel;
+    private InetSocketAddress localAddress;
+    private Thread receiver;
+    private Thread decoder;
+    private volatile boolean running;
+    private volatile boolean decoderIdle;
+    private volatile String error;
+
+    public MirrorIngestService(PcapParserService pcapParserService,
+                               @Value("${spektr.ingest.enabled:false}") boolean enabled,
+                               @Value("${spektr.ingest.bind-address:127.0.0.1}") String bindAddress,
+                               @Value("${spektr.ingest.port:37008}") int port,
+                               @Value("${spektr.ingest.mode:tzsp}") String mode,
+                               @Value("${spektr.ingest.buffers:256}") int buffers,
+                               @Value("${spektr.ingest.window:5m}") Duration window,
+                               @Value("${spektr.ingest.window-max-packets:10000}") int windowMaxPackets,
+                               @Value("${spektr.ingest.max-subscribers:32}") int maxSubscribers) {
+        this.pcapParserService = pcapParserService;
+        this.enabled = enabled;
+        this.bindAddress = new InetSocketAddress(bindAddress, port);
+        this.mode = Mode.of(mode);
+        this.bufferCount = buffers;
+        this.window = window;
+        this.maxSubscribers = maxSubscribers;
+        for (String category : CATEGORIES) {
+            windows.put(category, new RollingWindow(windowMaxPackets, window.toMillis()));
+        }
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) return;
+
+        channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER);
+        channel.bind(bindAddress);
+        localAddress = (InetSocketAddress) channel.getLocalAddress();
+
+        // One direct allocation sliced into the buffers of the pool, all free to start with
+        SpscQueue<Slot> free = new SpscQueue<>(bufferCount);
+        SpscQueue<Slot> filled = new SpscQueue<>(bufferCount);
+        ByteBuffer pool = ByteBuffer.allocateDirect(bufferCount * MAX_DATAGRAM);
+        for (int i = 0; i < bufferCount; i++) {
+            free.offer(new Slot(pool.slice(i * MAX_DATAGRAM, MAX_DATAGRAM)));
+        }
+
+        running = true;
+        decoder = new Thread(() -> decode(filled, free), "ingest-decoder");
+        receiver = new Thread(() -> receive(free, filled), "ingest-receiver");
+        decoder.setDaemon(true);
+        receiver.setDaemon(true);
+        decoder.start();
+        receiver.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) return;
+        running = false;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closing only wakes up the receiver
+        }
+        LockSupport.unpark(decoder);
+        receiver.join(1000);
+        decoder.join(1000);
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Where the feed is received, with the actual port if it was bound to port 0.
+     */
+    public InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    public IngestStatus getStatus() {
+        checkEnabled();
+        return new IngestStatus(mode.name().toLowerCase(), localAddress.getHostString() + ":" + localAddress.getPort(),
+                datagramsReceived.get(), datagramsDropped.get(), radiusPacketsFound.get(), subscriptions.size(),
+                window.toSeconds(), error);
+    }
+
+    /**
+     * The packets of the rolling window, as the packet lists of a parse.
+     */
+    public PcapParseResponse getWindow() {
+        checkEnabled();
+        long now = System.currentTimeMillis();
+        PcapParseResponse response = new PcapParseResponse();
+        response.setAccessRequests(windows.get("Access-Request").snapshot(now));
+        response.setAccountingStarts(windows.get("Accounting-Start").snapshot(now));
+        response.setAccountingUpdates(windows.get("Accounting-Interim-Update").snapshot(now));
+        response.setAccountingStops(windows.get("Accounting-Stop").snapshot(now));
+        int packets = response.getAccessRequests().size() + response.getAccountingStarts().size()
+                + response.getAccountingUpdates().size() + response.getAccountingStops().size();
+        response.setTotalPacketsProcessed(packets);
+        response.setRadiusPacketsFound(packets);
+        response.setMessage("Packets received over the last " + window.toSeconds() + "s");
+        return response;
+    }
+
+    /**
+     * Subscribes to the packets matching {@code filter} received from now on.
+     *
+     * @throws IllegalStateException if ingest is disabled or has as many subscribers as allowed
+     */
+    public synchronized Subscription subscribe(CaptureFilter filter) {
+        checkEnabled();
+        if (subscriptions.size() >= maxSubscribers) {
+            throw new IllegalStateException("Too many live streams (" + maxSubscribers + "), try again later");
+        }
+        Subscription subscription = new Subscription(filter);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    private void checkEnabled() {
+        if (!enabled) {
+            throw new IllegalStateException("Mirror ingest is disabled");
+        }
+    }
+
+    private void receive(SpscQueue<Slot> free, SpscQueue<Slot> filled) {
+        // Datagrams that find no free buffer are still read, so the socket keeps up with the feed
+        ByteBuffer discard = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        try {
+            while (running) {
+                Slot slot = free.poll();
+                ByteBuffer target = slot != null ? slot.buffer : discard;
+                target.clear();
+                InetSocketAddress sender = (InetSocketAddress) channel.receive(target);
+                datagramsReceived.incrementAndGet();
+                if (slot == null) {
+                    datagramsDropped.incrementAndGet();
+                    continue;
+                }
+
+                target.flip();
+                slot.timestampMillis = System.currentTimeMillis();
+                slot.sender = sender;
+                filled.offer(slot); // never full, it has room for every buffer of the pool
+                if (decoderIdle) {
+                    LockSupport.unpark(decoder);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Closed by stop()
+        } catch (IOException e) {
+            error = "Mirror feed stopped: " + e.getMessage();
+        }
+    }
+
+    private void decode(SpscQueue<Slot> filled, SpscQueue<Slot> free) {
+        UdpDatagram datagram = new UdpDatagram();
+        RadiusPacketView radius = new RadiusPacketView();
+        int idle = 0;
+        while (running) {
+            Slot slot = filled.poll();
+            if (slot == null) {
+                if (++idle < IDLE_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    decoderIdle = true;
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    decoderIdle = false;
+                }
+                continue;
+            }
+            idle = 0;
+            try {
+                process(slot, datagram, radius);
+            } catch (RuntimeException e) {
+                // A malformed datagram must not stop the feed
+            } finally {
+                free.offer(slot);
+            }
+        }
+    }
+
+    private void process(Slot slot, UdpDatagram datagram, RadiusPacketView radius) {
+        ByteBuffer b = slot.buffer;
+        int end = b.limit();
+        switch (mode) {
+            case TZSP:
+                int frame = Tzsp.ethernetOffset(b, 0, end);
+                if (frame < 0 || !datagram.decodeEthernet(b, frame, end) || !isRadius(datagram)) return;
+                break;
+            case ETHERNET:
+                if (!datagram.decodeEthernet(b, 0, end) || !isRadius(datagram)) return;
+                break;
+            case RADIUS:
+                // The datagram was sent to us, whatever its port
+                if (!(slot.sender.getAddress() instanceof Inet4Address)) return;
+                datagram.wrap(toInt(slot.sender.getAddress()), slot.sender.getPort(),
+                        toInt(localAddress.getAddress()), localAddress.getPort(), 0, b, 0, end);
+                break;
+        }
+
+        LazyRadiusPacketData packet = pcapParserService.decode(slot.timestampMillis, datagram, radius);
+        if (packet == null) return;
+        radiusPacketsFound.incrementAndGet();
+
+        // Decoded once here, the packet is then shared by the window and every subscriber
+        packet.getSourceIp();
+        packet.getDestinationIp();
+        packet.getAttributes();
+        packet.getRawData();
+
+        windows.get(packet.getPacketType()).add(packet);
+        for (Subscription subscription : subscriptions) {
+            CaptureFilter filter = subscription.filter;
+            if (filter.getPacketFilter().matches(datagram, radius) && filter.matchesText(packet)) {
+                subscription.offer(packet);
+            }
+        }
+    }
+
+    private static boolean isRadius(UdpDatagram datagram) {
+        return PcapParserService.isRadiusPort(datagram.getSourcePort())
+                || PcapParserService.isRadiusPort(datagram.getDestinationPort());
+    }
+
+    private static int toInt(InetAddress address) {
+        byte[] b = address.getAddress();
+        return b.length != 4 ? 0 : b[0] << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF);
+    }
+
+    /**
+     * A pooled buffer and what the receiver knows of the datagram in it.
+     */
+    private static class Slot {
+        final ByteBuffer buffer;
+        long timestampMillis;
+        InetSocketAddress sender;
+
+        Slot(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Live packets matching a filter. Packets the subscriber does not take fast enough are
+     * dropped and counted, the decoder never waits for a subscriber.
+     */
+    public class Subscription implements AutoCloseable {
+
+        private final CaptureFilter filter;
+        private final BlockingQueue<RadiusPacketData> queue = new ArrayBlockingQueue<>(SUBSCRIBER_QUEUE);
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean closed;
+
+        private Subscription(CaptureFilter filter) {
+            this.filter = filter;
+        }
+
+        private void offer(RadiusPacketData packet) {
+            if (!queue.offer(packet)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return the next packet, or null if none arrived in time or the subscription is closed
+         */
+        public RadiusPacketData poll(Duration timeout) throws InterruptedException {
+            if (closed) return null;
+            return queue.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+        }
+    }
+}
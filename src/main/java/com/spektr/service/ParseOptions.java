@@ -0,0 +1,46 @@
+package com.spektr.service;
+
+import com.spektr.filter.CaptureFilter;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * What a parse should keep and compute, besides the packet lists.
+ */
+@Data
+@NoArgsConstructor
+public class ParseOptions {
+    private CaptureFilter filter = CaptureFilter.NONE;
+    private boolean correlate; // pair requests with responses and report response times, of transactions with a matching packet
+    private boolean sessions; // return the accounting sessions with a matching packet instead of the packet lists
+    private boolean summary; // return an approximate summary of the capture instead of the packet lists
+    private boolean profile; // return the inferred RADIUS profile of the device instead of the packet lists
+    private Duration rateBucket; // return packet rates over buckets this wide instead of the packet lists, if set
+    private int timelinePoints; // return a timeline of at most this many points instead of the packet lists, if set
+    private boolean dedup; // count duplicated and retransmitted packets
+    private boolean suppressDuplicates; // and leave the copies out of the results
+
+    public static ParseOptions of(CaptureFilter filter) {
+        ParseOptions options = new ParseOptions();
+        options.setFilter(filter);
+        return options;
+    }
+
+    public boolean isRates() {
+        return rateBucket != null;
+    }
+
+    public boolean isTimeline() {
+        return timelinePoints > 0;
+    }
+
+    /**
+     * Whether the matching packets are returned, rather than sessions, a summary, a profile, rates
+     * or a timeline.
+     */
+    public boolean keepsPackets() {
+        return !sessions && !summary && !profile && !isRates() && !isTimeline();
+    }
+}
@@ -0,0 +1,47 @@
+package com.spektr.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a running parse, updated by the parse loop(s) every few thousand packets and
+ * readable from any thread. Also carries the cancellation request back into the loop.
+ */
+public class ParseProgress {
+
+    private final AtomicLong bytesProcessed = new AtomicLong();
+    private final AtomicLong packetsProcessed = new AtomicLong();
+    private volatile boolean cancelled;
+
+    void add(long bytes, long packets) {
+        bytesProcessed.addAndGet(bytes);
+        packetsProcessed.addAndGet(packets);
+        if (cancelled) {
+            throw new CancellationException("Parse cancelled");
+        }
+    }
+
+    /**
+     * Starts counting from zero again, when a capture has to be read a second time.
+     */
+    void restart() {
+        bytesProcessed.set(0);
+        packetsProcessed.set(0);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed.get();
+    }
+
+    public long getPacketsProcessed() {
+        return packetsProcessed.get();
+    }
+}
@@ -0,0 +1,225 @@
+package com.spektr.service;
+
+import com.spektr.dto.PcapJobStatus;
+import com.spektr.dto.PcapJobStatus.State;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.pcap.CaptureFormatException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Runs PCAP parses in the background so that large uploads do not hold a request thread.
+ * Uploads are moved to a temp file, parsed on a bounded worker pool, and their results kept
+ * until the retention period after they finish.
+ */
+@Service
+public class PcapJobService {
+
+    private final PcapParserService pcapParserService;
+    private final ThreadPoolExecutor executor;
+    private final Duration retention;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public PcapJobService(PcapParserService pcapParserService,
+                          @Value("${spektr.pcap.jobs.concurrency:2}") int concurrency,
+                          @Value("${spektr.pcap.jobs.queue-capacity:16}") int queueCapacity,
+                          @Value("${spektr.pcap.jobs.retention:30m}") Duration retention) {
+        this.pcapParserService = pcapParserService;
+        this.retention = retention;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("pcap-job-"));
+    }
+
+    /**
+     * Queues a parse of the uploaded capture.
+     *
+     * @throws IllegalStateException if the job queue is full
+     */
+    public PcapJobStatus submit(MultipartFile file, ParseOptions options, String owner) throws IOException {
+        evictExpired();
+
+        Path capture = Files.createTempFile("spektr-job-", ".capture");
+        try {
+            file.transferTo(capture);
+        } catch (IOException e) {
+            Files.deleteIfExists(capture);
+            throw e;
+        }
+
+        Job job = new Job(UUID.randomUUID().toString(), owner, file.getOriginalFilename(), Files.size(capture), capture);
+        jobs.put(job.id, job);
+        try {
+            job.future = executor.submit(() -> run(job, options));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            Files.deleteIfExists(capture);
+            throw new IllegalStateException("Too many PCAP parse jobs queued, try again later");
+        }
+        return job.toStatus();
+    }
+
+    private void run(Job job, ParseOptions options) {
+        try {
+            if (job.progress.isCancelled()) throw new CancellationException();
+            job.startedAt = Instant.now();
+            job.state = State.RUNNING;
+            job.result = pcapParserService.parsePcapFile(job.capture, options, job.progress);
+            job.state = State.COMPLETED;
+            if (jobs.get(job.id) != job) {
+                // Deleted while running
+                PcapParserService.release(job.result);
+            }
+        } catch (CancellationException e) {
+            job.state = State.CANCELLED;
+        } catch (CaptureFormatException e) {
+            job.fail("Invalid PCAP file: " + e.getMessage());
+        } catch (IOException e) {
+            job.fail("Failed to parse PCAP file: " + e.getMessage());
+        } catch (RuntimeException e) {
+            job.fail("Unexpected error: " + e.getMessage());
+        } finally {
+            job.finishedAt = Instant.now();
+            deleteCapture(job);
+        }
+    }
+
+    /**
+     * @return the job, or null if there is no such job for this owner
+     */
+    public PcapJobStatus getStatus(String id, String owner) {
+        Job job = find(id, owner);
+        return job != null ? job.toStatus() : null;
+    }
+
+    public List<PcapJobStatus> getJobs(String owner) {
+        evictExpired();
+        return jobs.values().stream()
+                .filter(job -> job.owner.equals(owner))
+                .sorted(Comparator.comparing((Job job) -> job.submittedAt).reversed())
+                .map(Job::toStatus)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the parse result, or null while the job has not completed
+     */
+    public PcapParseResponse getResult(String id, String owner) {
+        Job job = find(id, owner);
+        return job != null ? job.result : null;
+    }
+
+    /**
+     * Stops a queued or running job. A running parse stops at its next progress update.
+     *
+     * @return the job, or null if there is no such job for this owner
+     */
+    public PcapJobStatus cancel(String id, String owner) {
+        Job job = find(id, owner);
+        if (job == null) return null;
+
+        job.progress.cancel();
+        if (job.future != null && job.future.cancel(false)) {
+            // Never started, so run() will not clean up after it
+            job.state = State.CANCELLED;
+            job.finishedAt = Instant.now();
+            deleteCapture(job);
+        }
+        return job.toStatus();
+    }
+
+    /**
+     * Cancels the job if needed and forgets it, result included.
+     *
+     * @return false if there is no such job for this owner
+     */
+    public boolean delete(String id, String owner) {
+        if (cancel(id, owner) == null) return false;
+        Job job = jobs.remove(id);
+        if (job != null && job.result != null) PcapParserService.release(job.result);
+        return true;
+    }
+
+    private Job find(String id, String owner) {
+        evictExpired();
+        Job job = jobs.get(id);
+        return job != null && job.owner.equals(owner) ? job : null;
+    }
+
+    private void evictExpired() {
+        Instant expiry = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (job.finishedAt == null || !job.finishedAt.isBefore(expiry)) return false;
+            if (job.result != null) PcapParserService.release(job.result);
+            return true;
+        });
+    }
+
+    private static void deleteCapture(Job job) {
+        try {
+            Files.deleteIfExists(job.capture);
+        } catch (IOException e) {
+            job.capture.toFile().deleteOnExit();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(job -> job.progress.cancel());
+        executor.shutdownNow();
+    }
+
+    private static class Job {
+        final String id;
+        final String owner;
+        final String fileName;
+        final long totalBytes;
+        final Path capture;
+        final Instant submittedAt = Instant.now();
+        final ParseProgress progress = new ParseProgress();
+        volatile Future<?> future;
+        volatile State state = State.QUEUED;
+        volatile Instant startedAt;
+        volatile Instant finishedAt;
+        volatile PcapParseResponse result;
+        volatile String error;
+
+        Job(String id, String owner, String fileName, long totalBytes, Path capture) {
+            this.id = id;
+            this.owner = owner;
+            this.fileName = fileName;
+            this.totalBytes = totalBytes;
+            this.capture = capture;
+        }
+
+        void fail(String message) {
+            error = message;
+            state = State.FAILED;
+        }
+
+        PcapJobStatus toStatus() {
+            return new PcapJobStatus(id, state, fileName, totalBytes, progress.getBytesProcessed(),
+                    progress.getPacketsProcessed(), error, submittedAt, startedAt, finishedAt);
+        }
+    }
+}
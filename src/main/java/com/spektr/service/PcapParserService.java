@@ -1,309 +1,984 @@
 package com.spektr.service;
 
+import com.spektr.analysis.CaptureSummarizer;
+import com.spektr.analysis.CorrelationLog;
+import com.spektr.analysis.DuplicateDetector;
+import com.spektr.analysis.PacketObserver;
+import com.spektr.analysis.RadiusCorrelator;
+import com.spektr.analysis.RadiusDatagramLog;
+import com.spektr.analysis.RadiusProfiler;
+import com.spektr.analysis.RateAggregator;
+import com.spektr.analysis.TimelineDownsampler;
+import com.spektr.analysis.SessionBuilder;
+import com.spektr.dto.CaptureTotals;
 import com.spektr.dto.PcapParseResponse;
-import com.spektr.dto.RadiusPacketData;
-import org.pcap4j.core.*;
-import org.pcap4j.packet.*;
+import com.spektr.filter.CaptureFilter;
+import com.spektr.filter.PacketFilter;
+import com.spektr.pcap.CaptureChunk;
+import com.spektr.pcap.CaptureFormatException;
+import com.spektr.pcap.CaptureReader;
+import com.spektr.pcap.CaptureReaders;
+import com.spektr.pcap.CaptureRecord;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.LazyRadiusPacketData;
+import com.spektr.radius.RadiusCode;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.radius.RadiusPacketStore;
+import com.spektr.radius.RadiusPacketView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.EOFException;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
 
 @Service
+@RequiredArgsConstructor
 public class PcapParserService {
 
     private static final int RADIUS_AUTH_PORT = 1812;
     private static final int RADIUS_ACCT_PORT = 1813;
     private static final int RADIUS_OLD_AUTH_PORT = 1645;
     private static final int RADIUS_OLD_ACCT_PORT = 1646;
+    private static final int RADIUS_DYNAMIC_AUTH_PORT = 3799; // CoA and Disconnect (RFC 5176)
 
     // RADIUS packet codes
     private static final int ACCESS_REQUEST = 1;
     private static final int ACCOUNTING_REQUEST = 4;
 
+    // RADIUS attribute types
+    private static final int ACCT_STATUS_TYPE = 40;
+
     // RADIUS Acct-Status-Type values
     private static final int ACCT_STATUS_START = 1;
     private static final int ACCT_STATUS_STOP = 2;
     private static final int ACCT_STATUS_INTERIM_UPDATE = 3;
 
+    // Packets between two progress updates (and cancellation checks)
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private static final Set<String> REPORTED_PACKET_TYPES = Set.of(
+            "Access-Request", "Accounting-Start", "Accounting-Interim-Update", "Accounting-Stop");
+
+    private final RadiusDictionary dictionary;
+
+    // Mapped captures of at least two chunks are decoded in parallel
+    @Value("${spektr.pcap.parallel-chunk-size:16MB}")
+    private DataSize parallelChunkSize = DataSize.ofMegabytes(16);
+
+    // Requests unanswered for longer are counted as timeouts when correlating
+    @Value("${spektr.pcap.correlation.timeout:5s}")
+    private Duration correlationTimeout = Duration.ofSeconds(5);
+
+    @Value("${spektr.pcap.correlation.max-pending:1000000}")
+    private int correlationMaxPending = 1_000_000;
+
+    // Open accounting sessions beyond this estimated size are evicted, least recently active first
+    @Value("${spektr.pcap.sessions.memory-budget:256MB}")
+    private DataSize sessionMemoryBudget = DataSize.ofMegabytes(256);
+
+    // Finished accounting sessions past this many are counted but left out of the response
+    @Value("${spektr.pcap.sessions.max-sessions:1000000}")
+    private long sessionMaxSessions = 1_000_000;
+
+    // Decoded packets beyond this estimated size are spilled to a temporary file
+    @Value("${spektr.pcap.memory-budget:512MB}")
+    private DataSize packetMemoryBudget = DataSize.ofMegabytes(512);
+
+    @Value("${spektr.pcap.spill-directory:${java.io.tmpdir}}")
+    private String spillDirectory = System.getProperty("java.io.tmpdir");
+
+    // Copies of a packet seen within this window are duplicates or retransmissions
+    @Value("${spektr.pcap.dedup.window:5s}")
+    private Duration dedupWindow = Duration.ofSeconds(5);
+
+    @Value("${spektr.pcap.dedup.max-entries:100000}")
+    private int dedupMaxEntries = 100_000;
+
+    // Each capture of a batch is parsed on its own thread
+    @Value("${spektr.pcap.batch.max-captures:32}")
+    private int batchMaxCaptures = 32;
+
+    // NAS-Identifiers and SSIDs with a rate series of their own, the others are counted together
+    @Value("${spektr.pcap.rates.max-series:50}")
+    private int rateMaxSeries = 50;
+
+    // Buckets of all the rate series of a parse together, 8 bytes each
+    @Value("${spektr.pcap.rates.max-buckets:4000000}")
+    private long rateMaxBuckets = 4_000_000;
+
+    @Value("${spektr.pcap.timeline.max-points:5000}")
+    private int timelineMaxPoints = 5000;
+
     public PcapParseResponse parsePcapFile(MultipartFile file, String sourceIpFilter, String textFilter) throws IOException {
-        // Create temporary file
-        File tempFile = File.createTempFile("upload-", ".pcap");
-        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-            fos.write(file.getBytes());
+        return parsePcapFile(file, ParseOptions.of(compileFilter(sourceIpFilter, textFilter, null)));
+    }
+
+    public PcapParseResponse parsePcapFile(MultipartFile file, ParseOptions options) throws IOException {
+        if (isMappable(file)) {
+            // Large uploads are already spooled to disk by the container, so moving them to a file
+            // of our own is cheap and lets the capture be mapped and decoded in parallel
+            Path capture = Files.createTempFile("spektr-", ".capture");
+            try {
+                file.transferTo(capture);
+                return parsePcapFile(capture, options, null);
+            } finally {
+                Files.deleteIfExists(capture);
+            }
         }
 
-        PcapParseResponse response = new PcapParseResponse();
-        response.setAccessRequests(new ArrayList<>());
-        response.setAccountingStarts(new ArrayList<>());
-        response.setAccountingUpdates(new ArrayList<>());
-        response.setAccountingStops(new ArrayList<>());
+        // Stream the upload straight into the reader, no temp file or full in-memory copy
+        try (CaptureReader reader = CaptureReaders.open(Channels.newChannel(file.getInputStream()))) {
+            return parse(reader, options, null);
+        }
+    }
 
-        int totalPackets = 0;
-        int radiusPackets = 0;
+    /**
+     * Parses an uploaded capture and hands each matching packet to {@code sink} as soon as it is
+     * decoded, in capture order, instead of collecting them.
+     *
+     * @return the packet counters, without packet lists
+     */
+    public PcapParseResponse streamPcapFile(MultipartFile file, ParseOptions options, RadiusPacketSink sink) throws IOException {
+        PcapParseResponse totals = new PcapParseResponse();
+        RadiusCorrelator correlator = options.isCorrelate() ? newCorrelator() : null;
+        SessionBuilder sessions = options.isSessions() ? newSessionBuilder(1) : null;
+        CaptureSummarizer summary = options.isSummary() ? newSummarizer() : null;
+        RadiusProfiler profile = options.isProfile() ? newProfiler() : null;
+        RateAggregator rates = options.isRates() ? newRateAggregator(options) : null;
+        TimelineDownsampler timeline = options.isTimeline() ? newTimelineDownsampler(options) : null;
+        try (CaptureReader reader = CaptureReaders.open(Channels.newChannel(file.getInputStream()))) {
+            scan(reader, options.getFilter(), newDuplicateDetector(options),
+                    PacketObserver.all(correlator, sessions, summary, profile, rates, timeline),
+                    (packet, captureOffset) -> sink.accept(packet), totals, null);
+        }
+        complete(totals, correlator, sessions, summary, profile, rates, timeline);
+        return totals;
+    }
 
+    /**
+     * Shows every RADIUS packet of an uploaded capture that passes the packet filter to
+     * {@code observer}, in capture order. The text filter does not apply.
+     *
+     * @return the packet counters
+     */
+    public PcapParseResponse observePcapFile(MultipartFile file, CaptureFilter filter, PacketObserver observer)
+            throws IOException {
+        PcapParseResponse totals = new PcapParseResponse();
+        try (CaptureReader reader = CaptureReaders.open(Channels.newChannel(file.getInputStream()))) {
+            scan(reader, filter, null, observer, null, totals, null);
+        }
+        return totals;
+    }
+
+    /**
+     * Parses captures of the same traffic taken at different points (controller, RADIUS server,
+     * AP uplink...) in parallel and hands their matching packets to {@code sink} as one timeline,
+     * ordered by timestamp and tagged with their capture. Zip archives stand for the captures they
+     * hold. Correlation, sessions and summaries are not available across captures.
+     *
+     * @return the packet counters of all captures, and of each one
+     * @throws IllegalArgumentException if there are no captures or too many
+     */
+    public PcapParseResponse streamBatch(List<MultipartFile> files, ParseOptions options, RadiusPacketSink sink)
+            throws IOException {
+        List<String> names = new ArrayList<>();
+        List<CaptureTimeline.Producer> producers = new ArrayList<>();
+        List<Path> extracted = new ArrayList<>();
         try {
-            PcapHandle handle;
-            try {
-                handle = Pcaps.openOffline(tempFile.getAbsolutePath(), PcapHandle.TimestampPrecision.MICRO);
-            } catch (UnsatisfiedLinkError e) {
-                // Native library not available (likely ARM Mac without libpcap)
-                Files.deleteIfExists(tempFile.toPath());
-                throw new IOException(
-                    "PCAP parsing requires native libpcap libraries. " +
-                    "On ARM Mac: Run in Docker container or install libpcap: brew install libpcap. " +
-                    "Error: " + e.getMessage()
-                );
+            for (MultipartFile file : files) {
+                if (isZip(file)) {
+                    extract(file, names, producers, extracted, options);
+                } else {
+                    addBatchCapture(file.getOriginalFilename(), names, producers,
+                            () -> CaptureReaders.open(Channels.newChannel(file.getInputStream())), options);
+                }
+            }
+            if (names.isEmpty()) {
+                throw new IllegalArgumentException("The batch holds no captures");
             }
 
-            Packet packet;
-            while ((packet = handle.getNextPacketEx()) != null) {
-                totalPackets++;
+            List<PcapParseResponse> responses = CaptureTimeline.merge(names, producers, sink);
 
-                // Extract IP and UDP layers
-                IpV4Packet ipPacket = packet.get(IpV4Packet.class);
-                if (ipPacket == null) continue;
+            PcapParseResponse totals = new PcapParseResponse();
+            List<CaptureTotals> captures = new ArrayList<>(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                PcapParseResponse response = responses.get(i);
+                totals.setTotalPacketsProcessed(totals.getTotalPacketsProcessed() + response.getTotalPacketsProcessed());
+                totals.setRadiusPacketsFound(totals.getRadiusPacketsFound() + response.getRadiusPacketsFound());
+                captures.add(new CaptureTotals(names.get(i), response.getTotalPacketsProcessed(),
+                        response.getRadiusPacketsFound(), response.getDuplicates()));
+            }
+            totals.setCaptures(captures);
+            totals.setMessage("Successfully parsed " + names.size() + " PCAP files");
+            return totals;
+        } finally {
+            for (Path path : extracted) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
 
-                UdpPacket udpPacket = packet.get(UdpPacket.class);
-                if (udpPacket == null) continue;
+    /**
+     * Opens a capture of a batch, on the thread parsing it.
+     */
+    private interface ReaderSource {
+        CaptureReader open() throws IOException;
+    }
 
-                String srcIp = ipPacket.getHeader().getSrcAddr().getHostAddress();
-                String dstIp = ipPacket.getHeader().getDstAddr().getHostAddress();
+    private void addBatchCapture(String name, List<String> names, List<CaptureTimeline.Producer> producers,
+                                 ReaderSource source, ParseOptions options) {
+        if (names.size() == batchMaxCaptures) {
+            throw new IllegalArgumentException("A batch holds at most " + batchMaxCaptures + " captures");
+        }
+        names.add(name);
+        producers.add(sink -> {
+            PcapParseResponse totals = new PcapParseResponse();
+            try (CaptureReader reader = source.open()) {
+                scan(reader, options.getFilter(), newDuplicateDetector(options), null,
+                        (packet, captureOffset) -> sink.accept(packet), totals, null);
+            } catch (CaptureFormatException e) {
+                throw new CaptureFormatException(name + ": " + e.getMessage());
+            }
+            return totals;
+        });
+    }
 
-                // Apply source IP filter
-                if (sourceIpFilter != null && !sourceIpFilter.isEmpty() && !srcIp.equals(sourceIpFilter)) {
-                    continue;
-                }
+    private static boolean isZip(MultipartFile file) throws IOException {
+        byte[] magic = new byte[4];
+        try (InputStream in = file.getInputStream()) {
+            return in.readNBytes(magic, 0, magic.length) == magic.length
+                    && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+        }
+    }
+
+    /**
+     * Copies the captures of a zip archive to temp files: entries can only be read one after the
+     * other from the upload, and are then parsed in parallel from their copies.
+     */
+    private void extract(MultipartFile file, List<String> names, List<CaptureTimeline.Producer> producers,
+                         List<Path> extracted, ParseOptions options) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(file.getInputStream())) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                String baseName = name.substring(name.lastIndexOf('/') + 1);
+                // Folders and the metadata macOS adds to archives
+                if (entry.isDirectory() || name.startsWith("__MACOSX/") || baseName.startsWith(".")) continue;
+
+                Path capture = Files.createTempFile("spektr-", ".capture");
+                extracted.add(capture);
+                Files.copy(zip, capture, StandardCopyOption.REPLACE_EXISTING);
+                addBatchCapture(name, names, producers,
+                        () -> CaptureReaders.open(FileChannel.open(capture, StandardOpenOption.READ)), options);
+            }
+        } catch (ZipException e) {
+            throw new CaptureFormatException(file.getOriginalFilename() + ": " + e.getMessage());
+        }
+    }
 
-                // Check if it's a RADIUS packet
-                int srcPort = udpPacket.getHeader().getSrcPort().valueAsInt();
-                int dstPort = udpPacket.getHeader().getDstPort().valueAsInt();
+    /**
+     * Compiles the filter parameters of a request, so that they are checked before anything is
+     * read or written and evaluated without further parsing.
+     *
+     * @throws IllegalArgumentException if a filter is invalid
+     */
+    public CaptureFilter compileFilter(String sourceIpFilter, String textFilter, String filterExpression) {
+        return CaptureFilter.compile(dictionary, sourceIpFilter, textFilter, filterExpression);
+    }
 
-                boolean isRadiusAuth = dstPort == RADIUS_AUTH_PORT || srcPort == RADIUS_AUTH_PORT ||
-                                        dstPort == RADIUS_OLD_AUTH_PORT || srcPort == RADIUS_OLD_AUTH_PORT;
-                boolean isRadiusAcct = dstPort == RADIUS_ACCT_PORT || srcPort == RADIUS_ACCT_PORT ||
-                                        dstPort == RADIUS_OLD_ACCT_PORT || srcPort == RADIUS_OLD_ACCT_PORT;
+    public PcapParseResponse parsePcapFile(Path path, String sourceIpFilter, String textFilter) throws IOException {
+        return parsePcapFile(path, ParseOptions.of(compileFilter(sourceIpFilter, textFilter, null)), null);
+    }
 
-                if (!isRadiusAuth && !isRadiusAcct) continue;
+    /**
+     * Parses a capture file, reporting to {@code progress} (if not null) as it goes.
+     *
+     * @throws java.util.concurrent.CancellationException if the parse is cancelled through {@code progress}
+     */
+    public PcapParseResponse parsePcapFile(Path path, ParseOptions options, ParseProgress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<CaptureChunk> chunks = split(channel);
+            // Copies straddling chunk boundaries would go unnoticed, duplicate detection reads in one pass
+            if (chunks.size() > 1 && !options.isDedup()) {
+                PcapParseResponse response = parseChunks(chunks, options, progress);
+                if (response != null) return response;
+                // A chunk boundary was misplaced, fall back to reading the file in one pass
+                if (progress != null) progress.restart();
+            }
 
-                radiusPackets++;
+            try (CaptureReader reader = open(channel)) {
+                return parse(reader, options, progress);
+            }
+        }
+    }
 
-                // Parse RADIUS packet
-                byte[] radiusData = udpPacket.getPayload().getRawData();
-                if (radiusData == null || radiusData.length < 20) continue; // Minimum RADIUS packet size
+    /**
+     * Parses an uploaded capture without any filter, keeping what {@link #parseCached} needs.
+     *
+     * @param maxSize bound of the estimated size of the datagrams kept; the capture is given up
+     *                on as soon as they grow beyond it
+     * @throws IllegalStateException if the RADIUS traffic of the capture is too large to keep
+     */
+    public CachedCapture capturePcapFile(MultipartFile file, long maxSize) throws IOException {
+        if (isMappable(file)) {
+            Path capture = Files.createTempFile("spektr-", ".capture");
+            try {
+                file.transferTo(capture);
+                return capturePcapFile(capture, maxSize);
+            } finally {
+                Files.deleteIfExists(capture);
+            }
+        }
 
-                RadiusPacketData radiusPacketData = parseRadiusPacket(radiusData, srcIp, dstIp, handle.getTimestamp().getTime());
+        try (CaptureReader reader = CaptureReaders.open(Channels.newChannel(file.getInputStream()))) {
+            return capture(reader, maxSize);
+        }
+    }
 
-                // Apply text filter
-                if (textFilter != null && !textFilter.isEmpty()) {
-                    boolean matchesFilter = radiusPacketData.getRawData().toLowerCase().contains(textFilter.toLowerCase()) ||
-                                            radiusPacketData.getAttributes().values().stream()
-                                                    .anyMatch(v -> v.toLowerCase().contains(textFilter.toLowerCase()));
-                    if (!matchesFilter) continue;
+    /**
+     * @see #capturePcapFile(MultipartFile, long)
+     */
+    public CachedCapture capturePcapFile(Path path, long maxSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<CaptureChunk> chunks = split(channel);
+            if (chunks.size() > 1) {
+                ChunkResult result = invokeChunks(chunks, new ParseOptions(), maxSize, null);
+                if (result != null) {
+                    return new CachedCapture(result.response.getTotalPacketsProcessed(), result.datagrams,
+                            result.packets);
                 }
+            }
 
-                // Categorize packet
-                if (radiusPacketData != null) {
-                    switch (radiusPacketData.getPacketType()) {
-                        case "Access-Request":
-                            response.getAccessRequests().add(radiusPacketData);
-                            break;
-                        case "Accounting-Start":
-                            response.getAccountingStarts().add(radiusPacketData);
-                            break;
-                        case "Accounting-Interim-Update":
-                            response.getAccountingUpdates().add(radiusPacketData);
-                            break;
-                        case "Accounting-Stop":
-                            response.getAccountingStops().add(radiusPacketData);
-                            break;
-                    }
-                }
+            try (CaptureReader reader = open(channel)) {
+                return capture(reader, maxSize);
             }
+        }
+    }
 
-            handle.close();
+    /**
+     * Rebuilds the decoded packets of a capture from its datagrams, as saved by the capture cache.
+     *
+     * @param captureOffsets record offsets of the reported packets, in capture order
+     */
+    public CachedCapture restoreCapture(int totalPackets, RadiusDatagramLog datagrams, long[] captureOffsets) {
+        RadiusPacketStore packets = newPacketStore(1, datagrams);
+        datagrams.replay((timestampNanos, datagram, radius) -> {
+            String packetType = getRadiusPacketType(radius);
+            if (packetType == null || !REPORTED_PACKET_TYPES.contains(packetType)) return;
+            packets.add(new LazyRadiusPacketData(dictionary, packetType, datagram.getSourceIp(),
+                    datagram.getDestinationIp(), Math.floorDiv(timestampNanos, 1_000_000L), radius.toByteArray()),
+                    captureOffsets[packets.size()]);
+        });
+        return new CachedCapture(totalPackets, datagrams, packets);
+    }
 
-        } catch (PcapNativeException | NotOpenException | TimeoutException e) {
-            throw new IOException("Failed to parse PCAP file: " + e.getMessage(), e);
-        } catch (EOFException e) {
-            // End of file reached, this is normal
-        } finally {
-            // Clean up temporary file
-            Files.deleteIfExists(tempFile.toPath());
+    /**
+     * Deletes the spill file behind the packet lists of a parse result, once they are no longer read.
+     */
+    public static void release(PcapParseResponse response) {
+        RadiusPacketStore.closeView(response.getAccessRequests());
+        RadiusPacketStore.closeView(response.getAccountingStarts());
+        RadiusPacketStore.closeView(response.getAccountingUpdates());
+        RadiusPacketStore.closeView(response.getAccountingStops());
+    }
+
+    /**
+     * Decodes the packet of the record at {@code captureOffset} of an uncompressed capture file,
+     * mapping only that record instead of reading the capture up to it.
+     *
+     * @return the packet, or null if the record is not a packet of the packet lists
+     */
+    public LazyRadiusPacketData decodePacket(Path path, long captureOffset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CaptureRecord record = CaptureReaders.readRecord(channel, captureOffset);
+            UdpDatagram datagram = new UdpDatagram();
+            if (record == null || !datagram.decode(record)) return null;
+            return decode(record.getTimestampMillis(), datagram, new RadiusPacketView());
         }
+    }
 
-        response.setTotalPacketsProcessed(totalPackets);
-        response.setRadiusPacketsFound(radiusPackets);
-        response.setMessage("Successfully parsed PCAP file");
+    /**
+     * Applies the options to a cached capture; the result is the same as parsing the capture with them.
+     */
+    public PcapParseResponse parseCached(CachedCapture capture, ParseOptions options) {
+        RadiusCorrelator correlator = options.isCorrelate() ? newCorrelator() : null;
+        SessionBuilder sessions = options.isSessions() ? newSessionBuilder(1) : null;
+        CaptureSummarizer summary = options.isSummary() ? newSummarizer() : null;
+        RadiusProfiler profile = options.isProfile() ? newProfiler() : null;
+        RateAggregator rates = options.isRates() ? newRateAggregator(options) : null;
+        TimelineDownsampler timeline = options.isTimeline() ? newTimelineDownsampler(options) : null;
+        DuplicateDetector duplicates = newDuplicateDetector(options);
+        CachedScan scan = new CachedScan(capture.getPackets(), options, duplicates,
+                PacketObserver.all(correlator, sessions, summary, profile, rates, timeline));
+        capture.getDatagrams().replay(scan);
 
+        PcapParseResponse response = new PcapParseResponse();
+        response.setTotalPacketsProcessed(capture.getTotalPackets());
+        response.setRadiusPacketsFound(scan.radiusPackets);
+        response.setMessage("Successfully parsed PCAP file");
+        if (duplicates != null) {
+            response.setDuplicates(duplicates.report());
+        }
+        if (options.keepsPackets()) {
+            // Rows only, the capture cache hands out whole packets one at a time
+            setPackets(response, capture.getPackets(), scan.rows, scan.count, false);
+        }
+        complete(response, correlator, sessions, summary, profile, rates, timeline);
         return response;
     }
 
-    private RadiusPacketData parseRadiusPacket(byte[] data, String srcIp, String dstIp, long timestamp) {
-        if (data.length < 20) return null;
+    /**
+     * The filtering part of {@link #scan}, run over the datagrams of a cached capture. Rows of the
+     * packet store follow the reported packets of the capture one to one.
+     */
+    private class CachedScan implements PacketObserver {
+
+        private final RadiusPacketStore packets;
+        private final CaptureFilter filter;
+        private final PacketFilter packetFilter;
+        private final DuplicateDetector duplicates;
+        private final PacketObserver observer;
+        private final boolean keepPackets;
+        private final int[] rows;
+        private int nextRow;
+        private int count;
+        private int radiusPackets;
+
+        CachedScan(RadiusPacketStore packets, ParseOptions options, DuplicateDetector duplicates,
+                   PacketObserver observer) {
+            this.packets = packets;
+            this.filter = options.getFilter();
+            this.packetFilter = filter.getPacketFilter();
+            this.duplicates = duplicates;
+            this.observer = observer;
+            this.keepPackets = options.keepsPackets();
+            this.rows = new int[keepPackets ? packets.size() : 0];
+        }
 
-        // RADIUS packet structure:
-        // 0: Code (1 byte)
-        // 1: Identifier (1 byte)
-        // 2-3: Length (2 bytes)
-        // 4-19: Authenticator (16 bytes)
-        // 20+: Attributes
+        @Override
+        public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+            String packetType = getRadiusPacketType(radius);
+            int row = packetType != null && REPORTED_PACKET_TYPES.contains(packetType) ? nextRow++ : -1;
 
-        int code = data[0] & 0xFF;
-        int identifier = data[1] & 0xFF;
-        int length = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+            if (duplicates != null && duplicates.isSuppressed(timestampNanos, datagram, radius)) return;
+            if (!packetFilter.matches(datagram, radius)) {
+                if (observer != null) observer.observeUnmatched(timestampNanos, datagram, radius);
+                return;
+            }
+            radiusPackets++;
 
-        String packetType = getRadiusPacketType(code, data);
-        if (packetType == null) return null; // Not a packet type we're interested in
+            if (observer != null) {
+                observer.observe(timestampNanos, datagram, radius);
+            }
+            if (row < 0 || !keepPackets) return;
 
-        Map<String, String> attributes = new HashMap<>();
-        StringBuilder rawDataBuilder = new StringBuilder();
+            if (!filter.mayMatchText(radius) || !filter.matchesText(packets.get(row))) return;
+            rows[count++] = row;
+        }
+    }
 
-        rawDataBuilder.append(String.format("Code: %d, Identifier: %d, Length: %d\n", code, identifier, length));
+    /**
+     * Whether an upload is large enough to be decoded in parallel from a file; compressed uploads
+     * are decompressed as they stream in instead.
+     */
+    private boolean isMappable(MultipartFile file) throws IOException {
+        if (file.getSize() < 2 * parallelChunkSize.toBytes()) return false;
+        try (InputStream in = file.getInputStream()) {
+            return !CaptureReaders.isCompressed(in);
+        }
+    }
 
-        // Parse attributes starting at offset 20
-        int offset = 20;
-        while (offset < data.length && offset < length) {
-            if (offset + 2 > data.length) break;
+    /**
+     * A few chunks per worker keeps them all busy when some chunks hold more RADIUS traffic.
+     */
+    private List<CaptureChunk> split(FileChannel channel) throws IOException {
+        return CaptureChunk.split(channel, 4 * (ForkJoinPool.getCommonPoolParallelism() + 1),
+                parallelChunkSize.toBytes());
+    }
 
-            int attrType = data[offset] & 0xFF;
-            int attrLength = data[offset + 1] & 0xFF;
+    private static CaptureReader open(FileChannel channel) throws IOException {
+        // A single mapping is limited to 2 GB, larger files are read through the channel
+        return channel.size() <= Integer.MAX_VALUE
+                ? CaptureReaders.open(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+                : CaptureReaders.open(channel);
+    }
 
-            if (attrLength < 2 || offset + attrLength > data.length) break;
+    /**
+     * Decodes the chunks of a large capture on the common ForkJoin pool and merges the
+     * per-chunk results back in capture order.
+     *
+     * @return the merged result, or null if a chunk turned out not to be record-aligned
+     */
+    private PcapParseResponse parseChunks(List<CaptureChunk> chunks, ParseOptions options, ParseProgress progress)
+            throws IOException {
+        ChunkResult result = invokeChunks(chunks, options, 0, progress);
+        if (result == null) return null;
+
+        RadiusCorrelator correlator = null;
+        if (result.correlationLog != null) {
+            correlator = newCorrelator();
+            result.correlationLog.replay(correlator);
+        }
+        setPackets(result.response, result.packets);
+        complete(result.response, correlator, result.sessions, result.summary, result.profile, result.rates,
+                result.timeline);
+        result.response.setMessage("Successfully parsed PCAP file");
+        return result.response;
+    }
 
-            byte[] attrValue = new byte[attrLength - 2];
-            System.arraycopy(data, offset + 2, attrValue, 0, attrLength - 2);
+    /**
+     * @param datagramLogSize bound of the datagram logs of all chunks together, 0 to keep no datagrams
+     * @return the merged chunk results, or null if a chunk turned out not to be record-aligned
+     */
+    private ChunkResult invokeChunks(List<CaptureChunk> chunks, ParseOptions options, long datagramLogSize,
+                                     ParseProgress progress) throws IOException {
+        try {
+            return ForkJoinPool.commonPool().invoke(
+                    new ChunkParseTask(chunks, chunks.size(), options, datagramLogSize, progress));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-            String attrName = getRadiusAttributeName(attrType);
-            String attrValueStr = parseRadiusAttributeValue(attrType, attrValue);
+    /**
+     * Result of a run of consecutive chunks; packets, correlation log, sessions and datagrams are
+     * only kept when requested.
+     */
+    private static class ChunkResult {
+        final PcapParseResponse response;
+        final RadiusPacketStore packets;
+        final CorrelationLog correlationLog;
+        final SessionBuilder sessions;
+        final CaptureSummarizer summary;
+        final RadiusProfiler profile;
+        final RateAggregator rates;
+        final TimelineDownsampler timeline;
+        final RadiusDatagramLog datagrams;
+
+        ChunkResult(PcapParseResponse response, RadiusPacketStore packets, CorrelationLog correlationLog,
+                    SessionBuilder sessions, CaptureSummarizer summary, RadiusProfiler profile,
+                    RateAggregator rates, TimelineDownsampler timeline, RadiusDatagramLog datagrams) {
+            this.response = response;
+            this.packets = packets;
+            this.correlationLog = correlationLog;
+            this.sessions = sessions;
+            this.summary = summary;
+            this.profile = profile;
+            this.rates = rates;
+            this.timeline = timeline;
+            this.datagrams = datagrams;
+        }
 
-            attributes.put(attrName, attrValueStr);
-            rawDataBuilder.append(String.format("  %s: %s\n", attrName, attrValueStr));
+        ChunkResult merge(ChunkResult next) {
+            // Datagrams first, the packets share their memory budget
+            RadiusDatagramLog mergedDatagrams = datagrams != null ? datagrams.append(next.datagrams) : null;
+            return new ChunkResult(PcapParserService.merge(response, next.response),
+                    packets != null ? packets.append(next.packets) : null,
+                    correlationLog != null ? correlationLog.append(next.correlationLog) : null,
+                    sessions != null ? sessions.merge(next.sessions) : null,
+                    summary != null ? summary.merge(next.summary) : null,
+                    profile != null ? profile.merge(next.profile) : null,
+                    rates != null ? rates.merge(next.rates) : null,
+                    timeline != null ? timeline.merge(next.timeline) : null,
+                    mergedDatagrams);
+        }
 
-            offset += attrLength;
+        /**
+         * Deletes the spill file of a result that is given up on.
+         */
+        static void close(ChunkResult result) {
+            if (result != null && result.packets != null) result.packets.close();
         }
+    }
 
-        RadiusPacketData packetData = new RadiusPacketData();
-        packetData.setPacketType(packetType);
-        packetData.setSourceIp(srcIp);
-        packetData.setDestinationIp(dstIp);
-        packetData.setTimestamp(timestamp);
-        packetData.setAttributes(attributes);
-        packetData.setRawData(rawDataBuilder.toString());
+    private class ChunkParseTask extends RecursiveTask<ChunkResult> {
+
+        private final List<CaptureChunk> chunks;
+        private final int totalChunks;
+        private final ParseOptions options;
+        private final long datagramLogSize;
+        private final ParseProgress progress;
+
+        ChunkParseTask(List<CaptureChunk> chunks, int totalChunks, ParseOptions options, long datagramLogSize,
+                       ParseProgress progress) {
+            this.chunks = chunks;
+            this.totalChunks = totalChunks;
+            this.options = options;
+            this.datagramLogSize = datagramLogSize;
+            this.progress = progress;
+        }
 
-        return packetData;
-    }
+        @Override
+        protected ChunkResult compute() {
+            if (chunks.size() == 1) {
+                CaptureChunk chunk = chunks.get(0);
+                try (chunk) {
+                    CorrelationLog log = options.isCorrelate() ? new CorrelationLog() : null;
+                    SessionBuilder sessions = options.isSessions() ? newSessionBuilder(totalChunks) : null;
+                    CaptureSummarizer summary = options.isSummary() ? newSummarizer() : null;
+                    RadiusProfiler profile = options.isProfile() ? newProfiler() : null;
+                    RateAggregator rates = options.isRates() ? newRateAggregator(options, totalChunks) : null;
+                    TimelineDownsampler timeline = options.isTimeline() ? newTimelineDownsampler(options) : null;
+                    // Like the other budgets, the bound is shared evenly between the chunks
+                    RadiusDatagramLog datagrams = datagramLogSize > 0
+                            ? new RadiusDatagramLog(datagramLogSize / totalChunks) : null;
+                    RadiusPacketStore packets = options.keepsPackets() ? newPacketStore(totalChunks, datagrams) : null;
+                    ChunkResult result = null;
+                    try {
+                        PcapParseResponse response = collect(chunk, options,
+                                PacketObserver.all(log, sessions, summary, profile, rates, timeline, datagrams), packets, progress);
+                        if (chunk.isAligned()) {
+                            result = new ChunkResult(response, packets, log, sessions, summary, profile, rates, timeline, datagrams);
+                        }
+                        return result;
+                    } finally {
+                        if (result == null && packets != null) packets.close();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
 
-    private String getRadiusPacketType(int code, byte[] data) {
-        if (code == ACCESS_REQUEST) {
-            return "Access-Request";
-        } else if (code == ACCOUNTING_REQUEST) {
-            // For accounting, check Acct-Status-Type attribute (type 40)
-            int acctStatusType = getAcctStatusType(data);
-            switch (acctStatusType) {
-                case ACCT_STATUS_START:
-                    return "Accounting-Start";
-                case ACCT_STATUS_STOP:
-                    return "Accounting-Stop";
-                case ACCT_STATUS_INTERIM_UPDATE:
-                    return "Accounting-Interim-Update";
-                default:
-                    return "Accounting-Request"; // Generic
+            int middle = chunks.size() / 2;
+            ChunkParseTask second = new ChunkParseTask(chunks.subList(middle, chunks.size()), totalChunks,
+                    options, datagramLogSize, progress);
+            second.fork();
+            ChunkResult first;
+            try {
+                first = new ChunkParseTask(chunks.subList(0, middle), totalChunks, options, datagramLogSize,
+                        progress).compute();
+            } catch (RuntimeException e) {
+                // Waits for the other half only to delete what it kept
+                try {
+                    ChunkResult.close(second.join());
+                } catch (RuntimeException ignored) {
+                    // Reported through the first failure
+                }
+                throw e;
+            }
+            ChunkResult rest;
+            try {
+                rest = second.join();
+            } catch (RuntimeException e) {
+                ChunkResult.close(first);
+                throw e;
+            }
+            if (first == null || rest == null) {
+                ChunkResult.close(first);
+                ChunkResult.close(rest);
+                return null;
+            }
+            try {
+                return first.merge(rest);
+            } catch (RuntimeException e) {
+                ChunkResult.close(first);
+                ChunkResult.close(rest);
+                throw e;
             }
         }
-        return null; // Not interested in other codes
     }
 
-    private int getAcctStatusType(byte[] data) {
-        // Find Acct-Status-Type attribute (type 40)
-        int offset = 20;
-        while (offset < data.length - 2) {
-            int attrType = data[offset] & 0xFF;
-            int attrLength = data[offset + 1] & 0xFF;
+    private static PcapParseResponse merge(PcapParseResponse first, PcapParseResponse second) {
+        PcapParseResponse merged = new PcapParseResponse();
+        merged.setTotalPacketsProcessed(first.getTotalPacketsProcessed() + second.getTotalPacketsProcessed());
+        merged.setRadiusPacketsFound(first.getRadiusPacketsFound() + second.getRadiusPacketsFound());
+        return merged;
+    }
+
+    private PcapParseResponse parse(CaptureReader reader, ParseOptions options, ParseProgress progress) throws IOException {
+        RadiusCorrelator correlator = options.isCorrelate() ? newCorrelator() : null;
+        SessionBuilder sessions = options.isSessions() ? newSessionBuilder(1) : null;
+        CaptureSummarizer summary = options.isSummary() ? newSummarizer() : null;
+        RadiusProfiler profile = options.isProfile() ? newProfiler() : null;
+        RateAggregator rates = options.isRates() ? newRateAggregator(options) : null;
+        TimelineDownsampler timeline = options.isTimeline() ? newTimelineDownsampler(options) : null;
+        RadiusPacketStore packets = options.keepsPackets() ? newPacketStore(1) : null;
+        PcapParseResponse response = collect(reader, options, PacketObserver.all(correlator, sessions, summary, profile, rates, timeline),
+                packets, progress);
+        setPackets(response, packets);
+        complete(response, correlator, sessions, summary, profile, rates, timeline);
+        return response;
+    }
 
-            if (attrLength < 2 || offset + attrLength > data.length) break;
+    /**
+     * Scans the capture into the packet counters of a response, storing the matching packets in
+     * {@code packets} unless it is null, as when the session table replaces the packet lists.
+     */
+    private PcapParseResponse collect(CaptureReader reader, ParseOptions options, PacketObserver observer,
+                                      RadiusPacketStore packets, ParseProgress progress) throws IOException {
+        PcapParseResponse response = new PcapParseResponse();
+        scan(reader, options.getFilter(), newDuplicateDetector(options), observer,
+                packets != null ? packets::add : null, response, progress);
+        return response;
+    }
+
+    private CachedCapture capture(CaptureReader reader, long maxSize) throws IOException {
+        RadiusDatagramLog datagrams = new RadiusDatagramLog(maxSize);
+        RadiusPacketStore packets = newPacketStore(1, datagrams);
+        try {
+            PcapParseResponse totals = collect(reader, new ParseOptions(), datagrams, packets, null);
+            return new CachedCapture(totals.getTotalPacketsProcessed(), datagrams, packets);
+        } catch (IOException | RuntimeException e) {
+            packets.close();
+            throw e;
+        }
+    }
+
+    private static void setPackets(PcapParseResponse response, RadiusPacketStore packets) {
+        if (packets == null) return;
+        setPackets(response, packets, null, packets.size(), true);
+    }
+
+    /**
+     * Sets the packet lists to the rows of {@code packets} selected by {@code rows} (all if null).
+     *
+     * @param rawData whether the packets carry their raw dump, or their row in {@code packets}
+     */
+    private static void setPackets(PcapParseResponse response, RadiusPacketStore packets, int[] rows, int count,
+                                   boolean rawData) {
+        response.setAccessRequests(packets.view("Access-Request", rows, count, rawData));
+        response.setAccountingStarts(packets.view("Accounting-Start", rows, count, rawData));
+        response.setAccountingUpdates(packets.view("Accounting-Interim-Update", rows, count, rawData));
+        response.setAccountingStops(packets.view("Accounting-Stop", rows, count, rawData));
+    }
+
+    private static void complete(PcapParseResponse response, RadiusCorrelator correlator, SessionBuilder sessions,
+                                 CaptureSummarizer summary, RadiusProfiler profile, RateAggregator rates,
+                                 TimelineDownsampler timeline) {
+        if (correlator != null) {
+            response.setCorrelation(correlator.report());
+        }
+        if (sessions != null) {
+            response.setSessions(sessions.getSessions());
+            if (sessions.getDroppedSessions() > 0) response.setDroppedSessions(sessions.getDroppedSessions());
+        }
+        if (summary != null) {
+            response.setSummary(summary.summary());
+        }
+        if (profile != null) {
+            response.setProfile(profile.profile());
+        }
+        if (rates != null) {
+            response.setRates(rates.rates());
+        }
+        if (timeline != null) {
+            response.setTimeline(timeline.timeline());
+        }
+    }
+
+    private RadiusCorrelator newCorrelator() {
+        return new RadiusCorrelator(correlationTimeout, correlationMaxPending);
+    }
+
+    /**
+     * @param parts number of builders sharing the memory budget; each keeps as many sessions as
+     *              the whole parse, the cap applying again to the merged builder
+     */
+    private SessionBuilder newSessionBuilder(int parts) {
+        return new SessionBuilder(dictionary, sessionMemoryBudget.toBytes() / parts, sessionMaxSessions);
+    }
+
+    /**
+     * Summary counting packets under the categories of the packet lists, other packets under their code.
+     */
+    private CaptureSummarizer newSummarizer() {
+        return new CaptureSummarizer(dictionary, this::getPacketName);
+    }
+
+    private RadiusProfiler newProfiler() {
+        return new RadiusProfiler(dictionary, this::getPacketName);
+    }
+
+    private RateAggregator newRateAggregator(ParseOptions options) {
+        return newRateAggregator(options, 1);
+    }
+
+    /**
+     * @param parts number of aggregators sharing the bucket budget
+     */
+    private RateAggregator newRateAggregator(ParseOptions options, int parts) {
+        return new RateAggregator(options.getRateBucket(), rateMaxSeries, rateMaxBuckets / parts, this::getPacketName);
+    }
 
-            if (attrType == 40 && attrLength >= 6) {
-                // Acct-Status-Type is 4 bytes (integer)
-                return ((data[offset + 2] & 0xFF) << 24) |
-                       ((data[offset + 3] & 0xFF) << 16) |
-                       ((data[offset + 4] & 0xFF) << 8) |
-                       (data[offset + 5] & 0xFF);
+    /**
+     * @throws IllegalArgumentException if more points are requested than allowed
+     */
+    private TimelineDownsampler newTimelineDownsampler(ParseOptions options) {
+        if (options.getTimelinePoints() > timelineMaxPoints) {
+            throw new IllegalArgumentException("A timeline has at most " + timelineMaxPoints + " points");
+        }
+        return new TimelineDownsampler(options.getTimelinePoints());
+    }
+
+    private DuplicateDetector newDuplicateDetector(ParseOptions options) {
+        return options.isDedup() ? new DuplicateDetector(dedupWindow, dedupMaxEntries, options.isSuppressDuplicates()) : null;
+    }
+
+    private RadiusPacketStore newPacketStore(int parts) {
+        return newPacketStore(parts, null);
+    }
+
+    /**
+     * @param datagrams datagrams kept along with the packets, counted against the same memory budget
+     */
+    private RadiusPacketStore newPacketStore(int parts, RadiusDatagramLog datagrams) {
+        return datagrams != null
+                ? new RadiusPacketStore(packetMemoryBudget.toBytes() / parts, Path.of(spillDirectory), datagrams::estimatedSize)
+                : new RadiusPacketStore(packetMemoryBudget.toBytes() / parts, Path.of(spillDirectory));
+    }
+
+    /**
+     * Runs the capture through the filters, shows every RADIUS packet passing the packet filter to
+     * {@code observer} (if not null) and the others to its {@link PacketObserver#observeUnmatched},
+     * hands every matching packet to {@code sink} (if not null) and records the packet counters in
+     * {@code totals}. Duplicates are detected among all RADIUS packets.
+     */
+    private void scan(CaptureReader reader, CaptureFilter filter, DuplicateDetector duplicates, PacketObserver observer,
+                      PacketConsumer sink, PcapParseResponse totals, ParseProgress progress) throws IOException {
+        PacketFilter packetFilter = filter.getPacketFilter();
+
+        int totalPackets = 0;
+        int radiusPackets = 0;
+        long reportedPosition = reader.position();
+        int reportedPackets = 0;
+
+        UdpDatagram datagram = new UdpDatagram();
+        RadiusPacketView radius = new RadiusPacketView();
+        CaptureRecord record;
+        while ((record = reader.next()) != null) {
+            totalPackets++;
+
+            if (progress != null && totalPackets - reportedPackets == PROGRESS_INTERVAL) {
+                progress.add(reader.position() - reportedPosition, PROGRESS_INTERVAL);
+                reportedPosition = reader.position();
+                reportedPackets = totalPackets;
             }
 
-            offset += attrLength;
-        }
-        return -1;
-    }
-
-    private String getRadiusAttributeName(int type) {
-        // Common RADIUS attributes
-        Map<Integer, String> attributeNames = new HashMap<>();
-        attributeNames.put(1, "User-Name");
-        attributeNames.put(2, "User-Password");
-        attributeNames.put(4, "NAS-IP-Address");
-        attributeNames.put(5, "NAS-Port");
-        attributeNames.put(6, "Service-Type");
-        attributeNames.put(7, "Framed-Protocol");
-        attributeNames.put(8, "Framed-IP-Address");
-        attributeNames.put(30, "Called-Station-Id");
-        attributeNames.put(31, "Calling-Station-Id");
-        attributeNames.put(32, "NAS-Identifier");
-        attributeNames.put(40, "Acct-Status-Type");
-        attributeNames.put(41, "Acct-Delay-Time");
-        attributeNames.put(42, "Acct-Input-Octets");
-        attributeNames.put(43, "Acct-Output-Octets");
-        attributeNames.put(44, "Acct-Session-Id");
-        attributeNames.put(45, "Acct-Authentic");
-        attributeNames.put(46, "Acct-Session-Time");
-        attributeNames.put(49, "Acct-Terminate-Cause");
-        attributeNames.put(61, "NAS-Port-Type");
-        attributeNames.put(79, "EAP-Message");
-        attributeNames.put(80, "Message-Authenticator");
-        attributeNames.put(87, "NAS-Port-Id");
-
-        return attributeNames.getOrDefault(type, "Attribute-" + type);
-    }
-
-    private String parseRadiusAttributeValue(int type, byte[] value) {
-        // Integer types (4 bytes)
-        if ((type >= 4 && type <= 6) || type == 40 || type == 41 || type == 46 || type == 49 || type == 61) {
-            if (value.length >= 4) {
-                int intValue = ((value[0] & 0xFF) << 24) |
-                              ((value[1] & 0xFF) << 16) |
-                              ((value[2] & 0xFF) << 8) |
-                              (value[3] & 0xFF);
-                return String.valueOf(intValue);
+            // Extract IP and UDP layers
+            if (!datagram.decode(record)) continue;
+
+            // Check if it's a RADIUS packet
+            if (!isRadiusPort(datagram.getSourcePort()) && !isRadiusPort(datagram.getDestinationPort())) continue;
+
+            // Index the RADIUS packet in place, nothing is decoded or copied yet
+            if (!radius.wrap(datagram.getBuffer(), datagram.getPayloadOffset(), datagram.getPayloadLength())) continue;
+
+            // Drop copies of a packet seen just before, if asked to; ahead of the packet filter so that
+            // observers pairing packets do not take copies of the packets it leaves out for retransmissions
+            if (duplicates != null && duplicates.isSuppressed(record.getTimestampNanos(), datagram, radius)) continue;
+
+            // Apply the compiled filter expression on the raw packet
+            if (!packetFilter.matches(datagram, radius)) {
+                if (observer != null) observer.observeUnmatched(record.getTimestampNanos(), datagram, radius);
+                continue;
             }
-        }
 
-        // IP Address types
-        if (type == 4 || type == 8) {
-            if (value.length >= 4) {
-                return String.format("%d.%d.%d.%d",
-                        value[0] & 0xFF, value[1] & 0xFF, value[2] & 0xFF, value[3] & 0xFF);
+            radiusPackets++;
+
+            if (observer != null) {
+                observer.observe(record.getTimestampNanos(), datagram, radius);
             }
+            if (sink == null) continue;
+
+            String packetType = getRadiusPacketType(radius);
+            if (packetType == null || !REPORTED_PACKET_TYPES.contains(packetType)) continue; // Not a packet type we're interested in
+
+            // Scan the raw bytes for the text filter terms before paying for decoding
+            if (!filter.mayMatchText(radius)) continue;
+
+            LazyRadiusPacketData radiusPacketData = new LazyRadiusPacketData(dictionary, packetType,
+                    datagram.getSourceIp(), datagram.getDestinationIp(), record.getTimestampMillis(),
+                    radius.toByteArray());
+
+            // Apply text filter
+            if (!filter.matchesText(radiusPacketData)) continue;
+
+            sink.accept(radiusPacketData, record.getFileOffset());
         }
 
-        // String types (default)
-        try {
-            return new String(value, "UTF-8").replaceAll("[^\\p{Print}]", "");
-        } catch (Exception e) {
-            return bytesToHex(value);
+        if (progress != null) {
+            progress.add(reader.position() - reportedPosition, totalPackets - reportedPackets);
+        }
+
+        totals.setTotalPacketsProcessed(totalPackets);
+        totals.setRadiusPacketsFound(radiusPackets);
+        totals.setMessage("Successfully parsed PCAP file");
+        if (duplicates != null) {
+            totals.setDuplicates(duplicates.report());
         }
     }
 
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02X", b));
+    /**
+     * Receives the matching packets of a scan along with the offset of their record in the capture.
+     */
+    private interface PacketConsumer {
+        void accept(LazyRadiusPacketData packet, long captureOffset) throws IOException;
+    }
+
+    /**
+     * Categorizes a RADIUS datagram received live the same way as the packets of a capture.
+     * {@code radius} is left wrapped around the packet for filters.
+     *
+     * @return null if it is not a valid RADIUS packet of one of the packet lists
+     */
+    public LazyRadiusPacketData decode(long timestampMillis, UdpDatagram datagram, RadiusPacketView radius) {
+        if (!radius.wrap(datagram.getBuffer(), datagram.getPayloadOffset(), datagram.getPayloadLength())) return null;
+
+        String packetType = getRadiusPacketType(radius);
+        if (packetType == null || !REPORTED_PACKET_TYPES.contains(packetType)) return null;
+
+        return new LazyRadiusPacketData(dictionary, packetType, datagram.getSourceIp(), datagram.getDestinationIp(),
+                timestampMillis, radius.toByteArray());
+    }
+
+    public static boolean isRadiusPort(int port) {
+        return port == RADIUS_AUTH_PORT || port == RADIUS_ACCT_PORT ||
+               port == RADIUS_OLD_AUTH_PORT || port == RADIUS_OLD_ACCT_PORT || port == RADIUS_DYNAMIC_AUTH_PORT;
+    }
+
+    /**
+     * The category of the packet lists for the packets listed, the name of the code for the others.
+     */
+    private String getPacketName(RadiusPacketView radius) {
+        String packetType = getRadiusPacketType(radius);
+        return packetType != null ? packetType : RadiusCode.name(radius.getCode());
+    }
+
+    private String getRadiusPacketType(RadiusPacketView radius) {
+        int code = radius.getCode();
+        if (code == ACCESS_REQUEST) {
+            return "Access-Request";
+        } else if (code == ACCOUNTING_REQUEST) {
+            // For accounting, check Acct-Status-Type attribute (type 40)
+            int acctStatusType = radius.findAttribute(ACCT_STATUS_TYPE);
+            switch (acctStatusType < 0 ? -1 : radius.getIntValue(acctStatusType, -1)) {
+                case ACCT_STATUS_START:
+                    return "Accounting-Start";
+                case ACCT_STATUS_STOP:
+                    return "Accounting-Stop";
+                case ACCT_STATUS_INTERIM_UPDATE:
+                    return "Accounting-Interim-Update";
+                default:
+                    return "Accounting-Request"; // Generic
+            }
         }
-        return sb.toString();
+        return null; // Not interested in other codes
     }
 }
@@ -0,0 +1,14 @@
+package com.spektr.service;
+
+import com.spektr.dto.RadiusPacketData;
+
+import java.io.IOException;
+
+/**
+ * Receives the RADIUS packets of a capture as they are decoded.
+ */
+@FunctionalInterface
+public interface RadiusPacketSink {
+
+    void accept(RadiusPacketData packet) throws IOException;
+}
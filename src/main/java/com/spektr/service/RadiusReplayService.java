@@ -0,0 +1,344 @@
+package com.spektr.service;
+
+import com.spektr.analysis.LatencyHistogram;
+import com.spektr.analysis.PacketObserver;
+import com.spektr.dto.ReplayReport;
+import com.spektr.pcap.UdpDatagram;
+import com.spektr.radius.RadiusCode;
+import com.spektr.radius.RadiusPacketRewriter;
+import com.spektr.radius.RadiusPacketView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the RADIUS requests of a capture again to a RADIUS server or NAS, to reproduce an issue
+ * or load-test it, and reports the achieved rate and the response times. Disabled by default,
+ * and only sends to the hosts listed in {@code spektr.replay.allowed-targets}.
+ * <p>
+ * One thread drives a non-blocking {@link DatagramChannel}: requests that are due go out back
+ * to back, and responses are read between batches and while waiting for the next request.
+ * Requests are sent while the capture is read, without holding them in memory. Responses are
+ * matched to requests by identifier, so replays meant to measure response times should renumber them.
+ */
+@Service
+public class RadiusReplayService {
+
+    private static final int BATCH = 32;
+    // Waits shorter than this spin instead of sleeping in select, which has millisecond resolution
+    private static final long SPIN_NANOS = 2_000_000L;
+
+    private final PcapParserService pcapParserService;
+    private final boolean enabled;
+    private final List<String> allowedTargets;
+    private final int maxRate;
+    private final Duration maxDuration;
+    private final Duration responseTimeout;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public RadiusReplayService(PcapParserService pcapParserService,
+                               @Value("${spektr.replay.enabled:false}") boolean enabled,
+                               @Value("${spektr.replay.allowed-targets:}") List<String> allowedTargets,
+                               @Value("${spektr.replay.max-rate:1000}") int maxRate,
+                               @Value("${spektr.replay.max-duration:10m}") Duration maxDuration,
+                               @Value("${spektr.replay.response-timeout:2s}") Duration responseTimeout) {
+        this.pcapParserService = pcapParserService;
+        this.enabled = enabled;
+        this.allowedTargets = allowedTargets;
+        this.maxRate = maxRate;
+        this.maxDuration = maxDuration;
+        this.responseTimeout = responseTimeout;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sends the Access, Accounting, CoA and Disconnect requests of the capture that pass the
+     * packet filter, then waits for the responses still outstanding.
+     *
+     * @throws IllegalArgumentException if the options are invalid or the target is not allowed
+     * @throws IllegalStateException    if replay is disabled or another replay is running
+     */
+    public ReplayReport replay(MultipartFile file, ReplayOptions options) throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("RADIUS replay is disabled");
+        }
+        InetSocketAddress target = resolveTarget(options.getTarget());
+        if (options.getTiming() == ReplayOptions.Timing.RATE && (options.getRate() <= 0 || options.getRate() > maxRate)) {
+            throw new IllegalArgumentException("Replay rate must be between 1 and " + maxRate + " packets per second");
+        }
+        if (options.getTiming() == ReplayOptions.Timing.SCALED && !(options.getSpeed() > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive");
+        }
+        RadiusPacketRewriter rewriter = new RadiusPacketRewriter(options.getNasIpAddress(),
+                options.getAcctSessionIdSuffix(), options.getSecret());
+
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A replay is already running, try again later");
+        }
+        try (Replay replay = new Replay(target, options, rewriter)) {
+            // Sent as the capture is read, the scan waiting for each request to be due
+            pcapParserService.observePcapFile(file, options.getFilter(), (timestampNanos, datagram, radius) -> {
+                if (isRequest(radius.getCode())) replay.observe(timestampNanos, datagram, radius);
+            });
+            return replay.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private static boolean isRequest(int code) {
+        return code == RadiusCode.ACCESS_REQUEST || code == RadiusCode.ACCOUNTING_REQUEST
+                || code == RadiusCode.DISCONNECT_REQUEST || code == RadiusCode.COA_REQUEST;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the target is not a host:port of an allowed host
+     */
+    private InetSocketAddress resolveTarget(String target) {
+        int colon = target != null ? target.lastIndexOf(':') : -1;
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Invalid replay target: " + target + " (use host:port)");
+        }
+        String host = target.substring(0, colon);
+        int port;
+        try {
+            port = Integer.parseInt(target.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Invalid replay target port: " + target.substring(colon + 1));
+        }
+
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown replay target host: " + host);
+        }
+        for (String allowed : allowedTargets) {
+            if (allowed.isBlank()) continue;
+            try {
+                for (InetAddress allowedAddress : InetAddress.getAllByName(allowed.trim())) {
+                    if (allowedAddress.equals(address)) return new InetSocketAddress(address, port);
+                }
+            } catch (UnknownHostException e) {
+                // Hosts that do not resolve allow nothing
+            }
+        }
+        throw new IllegalArgumentException("Replay target " + host + " is not in spektr.replay.allowed-targets");
+    }
+
+    /**
+     * One replay, fed the requests in capture order by {@link PcapParserService#observePcapFile}.
+     */
+    private class Replay implements PacketObserver, AutoCloseable {
+
+        private final InetSocketAddress target;
+        private final ReplayOptions options;
+        private final RadiusPacketRewriter rewriter;
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private final SelectionKey key;
+        private final byte[] packet = new byte[RadiusPacketView.MAX_PACKET_LENGTH];
+        private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(RadiusPacketView.MAX_PACKET_LENGTH);
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(RadiusPacketView.MAX_PACKET_LENGTH);
+        private final long[] sentAt = new long[256]; // send time of the request in flight per identifier, 0 if none
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<String, Long> responseCodes = new TreeMap<>();
+        private final long minIntervalNanos;
+        private boolean started;
+        private long start;
+        private long firstTimestamp;
+        private long lastSend;
+        private int inFlight;
+        private long sent;
+        private long responses;
+        private long timeouts;
+        private long unmatched;
+        private long sendErrors;
+        private boolean truncated;
+
+        Replay(InetSocketAddress target, ReplayOptions options, RadiusPacketRewriter rewriter) throws IOException {
+            this.target = target;
+            this.options = options;
+            this.rewriter = rewriter;
+            this.minIntervalNanos = 1_000_000_000L / maxRate;
+            this.channel = DatagramChannel.open();
+            this.selector = Selector.open();
+            channel.configureBlocking(false);
+            channel.connect(target);
+            this.key = channel.register(selector, SelectionKey.OP_READ);
+        }
+
+        @Override
+        public void observe(long timestampNanos, UdpDatagram datagram, RadiusPacketView radius) {
+            if (truncated) return;
+            try {
+                send(timestampNanos, radius);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void send(long timestampNanos, RadiusPacketView radius) throws IOException {
+            if (!started) {
+                started = true;
+                start = System.nanoTime();
+                firstTimestamp = timestampNanos;
+                lastSend = start - minIntervalNanos;
+            }
+            long due = Math.max(dueTime(timestampNanos), lastSend + minIntervalNanos);
+            if (due - start > maxDuration.toNanos()) {
+                truncated = true;
+                return;
+            }
+            waitUntil(due);
+
+            int identifier = options.isRewriteIdentifiers() ? (int) (sent & 0xFF) : radius.getIdentifier();
+            int length = rewriter.rewrite(radius, identifier, packet);
+            sendBuffer.clear();
+            sendBuffer.put(packet, 0, length).flip();
+            try {
+                while (channel.write(sendBuffer) == 0) {
+                    waitWritable();
+                }
+            } catch (PortUnreachableException e) {
+                sendErrors++;
+                return;
+            }
+
+            lastSend = System.nanoTime();
+            sent++;
+            if (sentAt[identifier] != 0) {
+                timeouts++; // the identifier is reused before its request was answered
+            } else {
+                inFlight++;
+            }
+            sentAt[identifier] = lastSend;
+            if (sent % BATCH == 0) {
+                receive();
+            }
+        }
+
+        private long dueTime(long timestampNanos) {
+            switch (options.getTiming()) {
+                case ORIGINAL:
+                    return start + (timestampNanos - firstTimestamp);
+                case SCALED:
+                    return start + (long) ((timestampNanos - firstTimestamp) / options.getSpeed());
+                default:
+                    return start + sent * 1_000_000_000L / options.getRate();
+            }
+        }
+
+        /**
+         * Reads responses until {@code due}.
+         */
+        private void waitUntil(long due) throws IOException {
+            long remaining;
+            while ((remaining = due - System.nanoTime()) > 0) {
+                if (remaining > SPIN_NANOS) {
+                    selector.select(remaining / 1_000_000L);
+                } else {
+                    selector.selectNow();
+                    Thread.onSpinWait();
+                }
+                receive();
+            }
+        }
+
+        private void waitWritable() throws IOException {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            selector.select(100);
+            key.interestOps(SelectionKey.OP_READ);
+            receive();
+        }
+
+        private void receive() throws IOException {
+            selector.selectedKeys().clear();
+            while (true) {
+                receiveBuffer.clear();
+                int length;
+                try {
+                    length = channel.read(receiveBuffer);
+                } catch (PortUnreachableException e) {
+                    sendErrors++;
+                    continue;
+                }
+                if (length <= 0) return;
+                if (length < RadiusPacketView.HEADER_LENGTH) continue;
+
+                long now = System.nanoTime();
+                int identifier = receiveBuffer.get(1) & 0xFF;
+                responses++;
+                responseCodes.merge(RadiusCode.name(receiveBuffer.get(0)), 1L, Long::sum);
+                if (sentAt[identifier] != 0) {
+                    latency.record((now - sentAt[identifier]) / 1000);
+                    sentAt[identifier] = 0;
+                    inFlight--;
+                } else {
+                    unmatched++;
+                }
+            }
+        }
+
+        /**
+         * Waits for the responses still outstanding, then counts the rest as timeouts.
+         */
+        ReplayReport finish() throws IOException {
+            long deadline = System.nanoTime() + responseTimeout.toNanos();
+            long remaining;
+            while (inFlight > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                selector.select(Math.max(1, remaining / 1_000_000L));
+                receive();
+            }
+            timeouts += inFlight;
+
+            ReplayReport report = new ReplayReport();
+            report.setTarget(target.getHostString() + ":" + target.getPort());
+            report.setPacketsSent(sent);
+            if (started) {
+                report.setDurationMillis((System.nanoTime() - start) / 1_000_000L);
+            }
+            if (sent > 1) {
+                report.setPacketsPerSecond((sent - 1) * 1e9 / Math.max(1, lastSend - start));
+            }
+            report.setResponses(responses);
+            report.setResponseCodes(responseCodes);
+            report.setTimeouts(timeouts);
+            report.setUnmatchedResponses(unmatched);
+            report.setSendErrors(sendErrors);
+            report.setTruncated(truncated);
+            report.setLatency(latency.toData());
+            return report;
+        }
+
+        @Override
+        public void close() throws IOException {
+            selector.close();
+            channel.close();
+        }
+    }
+}
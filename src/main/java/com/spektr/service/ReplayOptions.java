@@ -0,0 +1,36 @@
+package com.spektr.service;
+
+import com.spektr.filter.CaptureFilter;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How the requests of a capture are sent again, see {@link RadiusReplayService}.
+ */
+@Data
+@NoArgsConstructor
+public class ReplayOptions {
+
+    public enum Timing {
+        ORIGINAL, // as far apart as in the capture
+        SCALED, // the capture's spacing divided by speed
+        RATE; // evenly at rate packets per second
+
+        public static Timing of(String name) {
+            for (Timing timing : values()) {
+                if (timing.name().equalsIgnoreCase(name)) return timing;
+            }
+            throw new IllegalArgumentException("Unsupported replay timing: " + name + " (use original, scaled or rate)");
+        }
+    }
+
+    private String target; // host:port
+    private CaptureFilter filter = CaptureFilter.NONE;
+    private Timing timing = Timing.ORIGINAL;
+    private double speed = 1; // for SCALED
+    private int rate; // for RATE, packets per second
+    private boolean rewriteIdentifiers; // number the requests in sending order, so none are in flight twice
+    private String nasIpAddress; // NAS-IP-Address of every request, may be null
+    private String acctSessionIdSuffix; // appended to every Acct-Session-Id, may be null
+    private String secret; // shared secret to sign rewritten requests with, may be null
+}
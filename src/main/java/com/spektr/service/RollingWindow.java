@@ -0,0 +1,47 @@
+package com.spektr.service;
+
+import com.spektr.dto.RadiusPacketData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The packets of one category received over the last {@code windowMillis}, at most
+ * {@code capacity} of them, in arrival order. The oldest packets are overwritten first.
+ */
+class RollingWindow {
+
+    private final RadiusPacketData[] packets;
+    private final long windowMillis;
+    private int head; // oldest packet
+    private int size;
+
+    RollingWindow(int capacity, long windowMillis) {
+        this.packets = new RadiusPacketData[capacity];
+        this.windowMillis = windowMillis;
+    }
+
+    synchronized void add(RadiusPacketData packet) {
+        if (size == packets.length) {
+            packets[head] = packet;
+            head = (head + 1) % packets.length;
+        } else {
+            packets[(head + size++) % packets.length] = packet;
+        }
+    }
+
+    synchronized List<RadiusPacketData> snapshot(long nowMillis) {
+        long cutoff = nowMillis - windowMillis;
+        while (size > 0 && packets[head].getTimestamp() < cutoff) {
+            packets[head] = null;
+            head = (head + 1) % packets.length;
+            size--;
+        }
+
+        List<RadiusPacketData> copy = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            copy.add(packets[(head + i) % packets.length]);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,52 @@
+package com.spektr.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer thread. Each side
+ * only writes its own index and caches the other's, so the common case touches no shared
+ * cache line that the other thread is writing.
+ */
+final class SpscQueue<E> {
+
+    private final Object[] elements;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next element to poll, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next free slot, written by the producer
+    private long cachedHead; // producer's last read of head
+    private long cachedTail; // consumer's last read of tail
+
+    SpscQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.elements = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    boolean offer(E element) {
+        long t = tail.get();
+        if (t - cachedHead == elements.length) {
+            cachedHead = head.get();
+            if (t - cachedHead == elements.length) return false;
+        }
+        elements[(int) t & mask] = element;
+        tail.lazySet(t + 1); // publishes the element
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long h = head.get();
+        if (h == cachedTail) {
+            cachedTail = tail.get();
+            if (h == cachedTail) return null;
+        }
+        int index = (int) h & mask;
+        E element = (E) elements[index];
+        elements[index] = null;
+        head.lazySet(h + 1);
+        return element;
+    }
+}
@@ -0,0 +1,209 @@
+package com.spektr.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spektr.dto.PacketPage;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.radius.LazyRadiusPacketData;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.util.RadiusPcapGenerator.Frame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.spektr.util.RadiusPcapGenerator.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class CaptureCacheServiceTest {
+
+    private PcapParserService pcapParserService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pcapParserService = spy(new PcapParserService(RadiusDictionary.loadDefault()));
+    }
+
+    @Test
+    void testRefiltersCachedCapture() throws IOException {
+        CaptureCacheService cache = new CaptureCacheService(pcapParserService, DataSize.ofMegabytes(16), "",
+                DataSize.ofGigabytes(1));
+        MultipartFile file = sampleFile();
+
+        PcapParseResponse all = cache.parsePcapFile(file, new ParseOptions());
+        ParseOptions bySource = ParseOptions.of(pcapParserService.compileFilter("192.168.1.100", "", null));
+        PcapParseResponse filtered = cache.parsePcapFile(file, bySource);
+        ParseOptions byText = ParseOptions.of(pcapParserService.compileFilter(null, "user2", "code == 4"));
+        PcapParseResponse textFiltered = cache.parsePcapFile(file, byText);
+
+        // The capture is read once, every filter is then applied to the cached packets
+        verify(pcapParserService, times(1)).capturePcapFile(any(MultipartFile.class), anyLong());
+        verify(pcapParserService, never()).parsePcapFile(any(MultipartFile.class), any(ParseOptions.class));
+        assertNotNull(all.getCaptureId());
+        assertEquals(all.getCaptureId(), filtered.getCaptureId());
+
+        assertSameResult(pcapParserService.parsePcapFile(file, new ParseOptions()), all);
+        assertSameResult(pcapParserService.parsePcapFile(file, bySource), filtered);
+        assertSameResult(pcapParserService.parsePcapFile(file, byText), textFiltered);
+        assertEquals(1, textFiltered.getAccountingStarts().size());
+        assertTrue(textFiltered.getAccessRequests().isEmpty());
+    }
+
+    @Test
+    void testPagesThroughPackets(@TempDir Path tempDir) throws IOException {
+        CaptureCacheService cache = new CaptureCacheService(pcapParserService, DataSize.ofMegabytes(16), "",
+                DataSize.ofGigabytes(1));
+        MultipartFile file = generatedFile(tempDir, 250);
+        String captureId = cache.parsePcapFile(file, new ParseOptions()).getCaptureId();
+
+        ParseOptions options = ParseOptions.of(pcapParserService.compileFilter(null, null, "attr[User-Name] ~ \"user1\""));
+        List<RadiusPacketData> expected = pcapParserService.parsePcapFile(file, options).getAccessRequests();
+        assertEquals(111, expected.size());
+
+        List<RadiusPacketData> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            PacketPage page = cache.getPage(captureId, "accessRequests", options, cursor, 50);
+            assertEquals(expected.size(), page.getTotal());
+            paged.addAll(page.getPackets());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertSameRows(expected, paged);
+        assertThrows(IllegalArgumentException.class, () -> cache.getPage(captureId, "accessRequests", options, "x", 50));
+        assertThrows(IllegalArgumentException.class, () -> cache.getPage(captureId, "responses", options, null, 50));
+        assertNull(cache.getPage("0".repeat(64), "accessRequests", options, null, 50));
+    }
+
+    @Test
+    void testReloadsCaptureFromDisk(@TempDir Path tempDir) throws IOException {
+        Path directory = tempDir.resolve("cache");
+        MultipartFile file = generatedFile(tempDir, 40);
+        CaptureCacheService cache = new CaptureCacheService(pcapParserService, DataSize.ofMegabytes(16),
+                directory.toString(), DataSize.ofGigabytes(1));
+        PcapParseResponse parsed = cache.parsePcapFile(file, new ParseOptions());
+
+        // A new cache, as after a restart, loads the capture saved by the first one
+        CaptureCacheService restarted = new CaptureCacheService(pcapParserService, DataSize.ofMegabytes(16),
+                directory.toString(), DataSize.ofGigabytes(1));
+        PacketPage page = restarted.getPage(parsed.getCaptureId(), "accessRequests", new ParseOptions(), null, 100);
+        assertNotNull(page);
+        assertEquals(parsed.getAccessRequests(), page.getPackets());
+
+        PcapParseResponse again = restarted.parsePcapFile(file, new ParseOptions());
+        assertSameResult(parsed, again);
+        verify(pcapParserService, times(1)).capturePcapFile(any(MultipartFile.class), anyLong());
+    }
+
+    @Test
+    void testFetchesPacketsByRow(@TempDir Path tempDir) throws IOException {
+        MultipartFile file = generatedFile(tempDir, 40);
+        List<RadiusPacketData> expected = pcapParserService.parsePcapFile(file, new ParseOptions()).getAccessRequests();
+
+        // Decoded again from the saved capture, at the record offset of the row
+        CaptureCacheService saving = new CaptureCacheService(pcapParserService, DataSize.ofMegabytes(16),
+                tempDir.resolve("cache").toString(), DataSize.ofGigabytes(1));
+        PcapParseResponse parsed = saving.parsePcapFile(file, new ParseOptions());
+        RadiusPacketData row = parsed.getAccessRequests().get(17);
+        JsonNode json = new ObjectMapper().valueToTree(row);
+        assertFalse(json.has("rawData"));
+        assertEquals(row.getRow(), json.get("row").asInt());
+        RadiusPacketData packet = saving.getPacket(parsed.getCaptureId(), row.getRow());
+        assertInstanceOf(LazyRadiusPacketData.class, packet, "Decoded from the capture file");
+        assertEquals(expected.get(17).getRawData(), packet.getRawData());
+        assertEquals(expected.get(17).getAttributes(), packet.getAttributes());
+        assertEquals(row.getRow(), packet.getRow());
+        verify(pcapParserService, times(1)).decodePacket(any(Path.class), anyLong());
+
+        // Rebuilt from the cached rows without a cache directory
+        CaptureCacheService inMemory = new CaptureCacheService(pcapParserService, DataSize.ofMegabytes(16), "",
+                DataSize.ofGigabytes(1));
+        String captureId = inMemory.parsePcapFile(file, new ParseOptions()).getCaptureId();
+        assertEquals(expected.get(17).getRawData(), inMemory.getPacket(captureId, row.getRow()).getRawData());
+        verify(pcapParserService, times(1)).decodePacket(any(Path.class), anyLong());
+
+        assertThrows(IllegalArgumentException.class, () -> inMemory.getPacket(captureId, 80));
+        assertNull(inMemory.getPacket("0".repeat(64), 0));
+    }
+
+    @Test
+    void testBypassesCacheForLargeCapture(@TempDir Path tempDir) throws IOException {
+        CaptureCacheService cache = new CaptureCacheService(pcapParserService, DataSize.ofKilobytes(8), "",
+                DataSize.ofGigabytes(1));
+        MultipartFile file = generatedFile(tempDir, 250);
+        ParseOptions options = new ParseOptions();
+
+        // The capture is given up on once its datagrams outgrow the cache, and parsed without it
+        PcapParseResponse response = cache.parsePcapFile(file, options);
+        verify(pcapParserService, times(1)).capturePcapFile(any(MultipartFile.class), eq(8L * 1024));
+        verify(pcapParserService, times(1)).parsePcapFile(file, options);
+        assertNull(response.getCaptureId());
+        assertEquals(250, response.getAccessRequests().size());
+        assertThrows(IllegalStateException.class, () -> pcapParserService.capturePcapFile(file, 8L * 1024));
+    }
+
+    private static void assertSameResult(PcapParseResponse expected, PcapParseResponse actual) {
+        assertEquals(expected.getTotalPacketsProcessed(), actual.getTotalPacketsProcessed());
+        assertEquals(expected.getRadiusPacketsFound(), actual.getRadiusPacketsFound());
+        assertSameRows(expected.getAccessRequests(), actual.getAccessRequests());
+        assertSameRows(expected.getAccountingStarts(), actual.getAccountingStarts());
+        assertSameRows(expected.getAccountingUpdates(), actual.getAccountingUpdates());
+        assertSameRows(expected.getAccountingStops(), actual.getAccountingStops());
+    }
+
+    /**
+     * Cached captures list rows, the packets without their raw dump.
+     */
+    private static void assertSameRows(List<RadiusPacketData> packets, List<RadiusPacketData> rows) {
+        assertEquals(packets.size(), rows.size());
+        for (int i = 0; i < packets.size(); i++) {
+            RadiusPacketData packet = packets.get(i);
+            RadiusPacketData row = rows.get(i);
+            assertEquals(packet.getPacketType(), row.getPacketType());
+            assertEquals(packet.getTimestamp(), row.getTimestamp());
+            assertEquals(packet.getSourceIp(), row.getSourceIp());
+            assertEquals(packet.getDestinationIp(), row.getDestinationIp());
+            assertEquals(packet.getAttributes(), row.getAttributes());
+            assertNull(row.getRawData());
+            assertNotNull(row.getRow());
+        }
+    }
+
+    private static MultipartFile sampleFile() throws IOException {
+        return new MockMultipartFile("file", "sample-radius.pcap", "application/vnd.tcpdump.pcap",
+                Files.readAllBytes(Path.of("src/test/resources/sample-radius.pcap")));
+    }
+
+    /**
+     * Access requests of users user0 to user{count-1}, each answered by an Access-Accept.
+     */
+    private static MultipartFile generatedFile(Path tempDir, int count) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_700_000_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            String user = "user" + i;
+            frames.add(frame(start + i * 1000L, "10.0.0.1", 40000, "10.0.1.1", 1812,
+                    radiusPacket(1, i & 0xFF, buffer -> addStringAttribute(buffer, 1, user))));
+            frames.add(frame(start + i * 1000L + 500, "10.0.1.1", 1812, "10.0.0.1", 40000,
+                    radiusPacket(2, i & 0xFF, buffer -> { })));
+        }
+        Path pcap = tempDir.resolve("generated.pcap");
+        writePcap(pcap.toString(), frames);
+        return new MockMultipartFile("file", "generated.pcap", "application/vnd.tcpdump.pcap", Files.readAllBytes(pcap));
+    }
+}
@@ -0,0 +1,35 @@
+package com.spektr.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CaptureLibraryServiceTest {
+
+    @Test
+    void testNormalizesMacAddresses() {
+        assertEquals("00:11:22:aa:bb:cc", CaptureLibraryService.normalizeMac("00-11-22-AA-BB-CC"));
+        assertEquals("00:11:22:aa:bb:cc", CaptureLibraryService.normalizeMac("0011.22aa.bbcc"));
+        assertEquals("00:11:22:aa:bb:cc", CaptureLibraryService.normalizeMac("001122AABBCC"));
+        assertEquals("00:11:22:aa:bb:cc", CaptureLibraryService.normalizeMac("00:11:22:aa:bb:cc"));
+        // Called-Station-Id carries the SSID after the access point address
+        assertEquals("00:11:22:aa:bb:cc", CaptureLibraryService.normalizeMac("00-11-22-AA-BB-CC:Guest WiFi"));
+
+        assertNull(CaptureLibraryService.normalizeMac("10.0.0.1"));
+        assertNull(CaptureLibraryService.normalizeMac("+393331234567"));
+        assertNull(CaptureLibraryService.normalizeMac("00-11-22"));
+        // Phone numbers in Calling-Station-Id
+        assertNull(CaptureLibraryService.normalizeMac("336123456789"));
+        assertNull(CaptureLibraryService.normalizeMac("3361234567890"));
+        assertNull(CaptureLibraryService.normalizeMac("00112233aabbcc"));
+    }
+
+    @Test
+    void testEscapesCopyFields() {
+        StringBuilder row = new StringBuilder();
+        CaptureLibraryService.appendCopyField(row, "a\tb\\c\nd");
+        row.append('\t');
+        CaptureLibraryService.appendCopyField(row, null);
+        assertEquals("a\\tb\\\\c\\nd\t\\N", row.toString());
+    }
+}
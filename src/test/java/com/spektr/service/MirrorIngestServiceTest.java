@@ -0,0 +1,131 @@
+package com.spektr.service;
+
+import com.spektr.dto.IngestStatus;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.radius.RadiusDictionary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+
+import static com.spektr.util.RadiusPcapGenerator.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MirrorIngestServiceTest {
+
+    private MirrorIngestService ingest;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (ingest != null) ingest.stop();
+    }
+
+    @Test
+    void testDecodesTzspFeed() throws Exception {
+        ingest = start("tzsp");
+        MirrorIngestService.Subscription subscription =
+                ingest.subscribe(newParser().compileFilter("10.1.2.3", null, null));
+
+        byte[] accessRequest = radiusPacket(1, 1, buffer -> addStringAttribute(buffer, 1, "alice"));
+        byte[] accountingStop = radiusPacket(4, 2, buffer -> {
+            addStringAttribute(buffer, 1, "bob");
+            addIntegerAttribute(buffer, 40, 2);
+        });
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            sender.connect(ingest.getLocalAddress());
+            sender.write(tzsp(frame(0, "10.1.2.3", 40000, "10.0.0.2", 1812, accessRequest).getData()));
+            sender.write(tzsp(frame(0, "10.1.2.4", 40000, "10.0.0.2", 1813, accountingStop).getData()));
+            // Not RADIUS, and not TZSP
+            sender.write(tzsp(frame(0, "10.1.2.3", 40000, "10.0.0.53", 53, accessRequest).getData()));
+            sender.write(ByteBuffer.wrap("not a mirrored frame".getBytes()));
+        }
+
+        RadiusPacketData live = subscription.poll(Duration.ofSeconds(5));
+        assertNotNull(live);
+        assertEquals("Access-Request", live.getPacketType());
+        assertEquals("10.1.2.3", live.getSourceIp());
+        assertEquals("alice", live.getAttributes().get("User-Name"));
+
+        IngestStatus status = awaitDatagrams(4);
+        assertEquals(2, status.getRadiusPacketsFound());
+        assertEquals(0, status.getDatagramsDropped());
+        assertEquals(1, status.getSubscribers());
+        assertNull(subscription.poll(Duration.ofMillis(100)), "Filtered out by source address");
+
+        PcapParseResponse window = ingest.getWindow();
+        assertEquals(1, window.getAccessRequests().size());
+        assertEquals(1, window.getAccountingStops().size());
+        assertEquals("bob", window.getAccountingStops().get(0).getAttributes().get("User-Name"));
+
+        // Each live stream holds a request thread, so there are only so many
+        MirrorIngestService.Subscription second = ingest.subscribe(newParser().compileFilter(null, null, null));
+        assertThrows(IllegalStateException.class, () -> ingest.subscribe(newParser().compileFilter(null, null, null)));
+        second.close();
+
+        subscription.close();
+        assertEquals(0, ingest.getStatus().getSubscribers());
+    }
+
+    @Test
+    void testDecodesForwardedRadiusDatagrams() throws Exception {
+        ingest = start("radius");
+        MirrorIngestService.Subscription subscription = ingest.subscribe(newParser().compileFilter(null, null, null));
+
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            sender.connect(ingest.getLocalAddress());
+            sender.write(ByteBuffer.wrap(radiusPacket(1, 9, buffer -> addStringAttribute(buffer, 1, "carol"))));
+        }
+
+        RadiusPacketData live = subscription.poll(Duration.ofSeconds(5));
+        assertNotNull(live);
+        assertEquals("127.0.0.1", live.getSourceIp());
+        assertEquals("carol", live.getAttributes().get("User-Name"));
+        assertEquals(1, ingest.getWindow().getAccessRequests().size());
+    }
+
+    @Test
+    void testDisabledByDefault() throws Exception {
+        MirrorIngestService disabled = new MirrorIngestService(newParser(), false, "127.0.0.1", 0, "tzsp", 4,
+                Duration.ofMinutes(5), 100, 2);
+        disabled.start();
+        assertFalse(disabled.isEnabled());
+        assertThrows(IllegalStateException.class, disabled::getWindow);
+    }
+
+    private static MirrorIngestService start(String mode) throws IOException {
+        MirrorIngestService service = new MirrorIngestService(newParser(), true, "127.0.0.1", 0, mode, 4,
+                Duration.ofMinutes(5), 100, 2);
+        service.start();
+        return service;
+    }
+
+    private static PcapParserService newParser() throws IOException {
+        return new PcapParserService(RadiusDictionary.loadDefault());
+    }
+
+    private IngestStatus awaitDatagrams(int datagrams) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        IngestStatus status = ingest.getStatus();
+        while (status.getDatagramsReceived() < datagrams && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = ingest.getStatus();
+        }
+        Thread.sleep(50); // let the decoder finish the last one
+        return ingest.getStatus();
+    }
+
+    /**
+     * TZSP header for a received Ethernet frame, without tagged fields.
+     */
+    private static ByteBuffer tzsp(byte[] frame) {
+        ByteBuffer datagram = ByteBuffer.allocate(5 + frame.length);
+        datagram.put(new byte[]{1, 0, 0, 1, 1});
+        datagram.put(frame);
+        return datagram.flip();
+    }
+}
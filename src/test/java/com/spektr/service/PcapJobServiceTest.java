@@ -0,0 +1,96 @@
+package com.spektr.service;
+
+import com.spektr.dto.PcapJobStatus;
+import com.spektr.dto.PcapParseResponse;
+import com.spektr.radius.RadiusDictionary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PcapJobServiceTest {
+
+    private PcapParserService pcapParserService;
+    private PcapJobService pcapJobService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        pcapParserService = new PcapParserService(RadiusDictionary.loadDefault());
+        pcapJobService = new PcapJobService(pcapParserService, 1, 4, Duration.ofMinutes(30));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pcapJobService.shutdown();
+    }
+
+    @Test
+    void testJobCompletes() throws Exception {
+        PcapJobStatus submitted = pcapJobService.submit(sampleFile(), options("192.168.1.100"), "alice");
+        assertNotNull(submitted.getId());
+
+        PcapJobStatus status = awaitFinished(submitted.getId(), "alice");
+        assertEquals(PcapJobStatus.State.COMPLETED, status.getState());
+        assertEquals(6, status.getPacketsProcessed());
+        assertEquals(status.getTotalBytes() - 24, status.getBytesProcessed(), "All records after the global header");
+
+        PcapParseResponse result = pcapJobService.getResult(submitted.getId(), "alice");
+        assertEquals(1, result.getAccessRequests().size());
+        assertEquals(1, result.getAccountingStops().size());
+
+        // Jobs are only visible to the user who submitted them
+        assertNull(pcapJobService.getStatus(submitted.getId(), "bob"));
+        assertTrue(pcapJobService.getJobs("bob").isEmpty());
+
+        assertTrue(pcapJobService.delete(submitted.getId(), "alice"));
+        assertNull(pcapJobService.getStatus(submitted.getId(), "alice"));
+    }
+
+    @Test
+    void testFailedJobReportsError() throws Exception {
+        MultipartFile notACapture = new MockMultipartFile("file", "broken.pcap", "application/octet-stream",
+                "this is not a capture file".getBytes());
+        PcapJobStatus failed = pcapJobService.submit(notACapture, new ParseOptions(), "alice");
+
+        // Cancelling cannot undo a job that already finished
+        PcapJobStatus status = awaitFinished(failed.getId(), "alice");
+        assertEquals(PcapJobStatus.State.FAILED, status.getState());
+        assertTrue(status.getError().startsWith("Invalid PCAP file"));
+        assertEquals(PcapJobStatus.State.FAILED, pcapJobService.cancel(failed.getId(), "alice").getState());
+        assertNull(pcapJobService.getResult(failed.getId(), "alice"));
+    }
+
+    @Test
+    void testRejectsInvalidFilter() {
+        assertThrows(IllegalArgumentException.class,
+                () -> pcapJobService.submit(sampleFile(), options("not-an-ip"), "alice"));
+        assertTrue(pcapJobService.getJobs("alice").isEmpty());
+    }
+
+    private PcapJobStatus awaitFinished(String id, String owner) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            PcapJobStatus status = pcapJobService.getStatus(id, owner);
+            if (status.getFinishedAt() != null) return status;
+            Thread.sleep(10);
+        }
+        fail("Job did not finish");
+        return null;
+    }
+
+    private ParseOptions options(String sourceIpFilter) {
+        return ParseOptions.of(pcapParserService.compileFilter(sourceIpFilter, null, null));
+    }
+
+    private static MultipartFile sampleFile() throws IOException {
+        return new MockMultipartFile("file", "sample-radius.pcap", "application/vnd.tcpdump.pcap",
+                Files.readAllBytes(Path.of("src/test/resources/sample-radius.pcap")));
+    }
+}
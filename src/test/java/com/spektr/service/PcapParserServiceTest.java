@@ -1,15 +1,55 @@
 package com.spektr.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spektr.analysis.RateAggregator;
+import com.spektr.dto.AccountingSession;
+import com.spektr.dto.AttributePresence;
+import com.spektr.dto.CaptureRates;
+import com.spektr.dto.TrafficTimeline;
+import com.spektr.dto.CaptureSummary;
+import com.spektr.dto.CaptureTotals;
+import com.spektr.dto.CorrelationReport;
+import com.spektr.dto.DuplicateReport;
 import com.spektr.dto.PcapParseResponse;
+import com.spektr.dto.RadiusPacketData;
+import com.spektr.dto.RadiusProfile;
+import com.spektr.dto.TransactionStats;
+import com.spektr.dto.ValueCount;
+import com.spektr.model.Vendor;
+import com.spektr.pcap.CaptureFormatException;
+import com.spektr.radius.RadiusDictionary;
+import com.spektr.util.RadiusPcapGenerator;
+import com.spektr.util.RadiusPcapGenerator.Frame;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import static com.spektr.util.RadiusPcapGenerator.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 class PcapParserServiceTest {
@@ -17,8 +57,8 @@ class PcapParserServiceTest {
     private PcapParserService pcapParserService;
 
     @BeforeEach
-    void setUp() {
-        pcapParserService = new PcapParserService();
+    void setUp() throws IOException {
+        pcapParserService = new PcapParserService(RadiusDictionary.loadDefault());
     }
 
     @Test
@@ -181,4 +221,937 @@ class PcapParserServiceTest {
         System.out.println("\n=== Filtered by IP and text ===");
         System.out.println("Results: " + response.getRadiusPacketsFound());
     }
+
+    @Test
+    void testParseMemoryMappedFile() throws IOException {
+        PcapParseResponse response = pcapParserService.parsePcapFile(
+                Path.of("src/test/resources/sample-radius.pcap"), new ParseOptions(), null);
+
+        assertEquals(6, response.getTotalPacketsProcessed());
+        assertEquals(2, response.getAccessRequests().size());
+        assertEquals(2, response.getAccountingStarts().size());
+        assertEquals(1, response.getAccountingUpdates().size());
+        assertEquals(1, response.getAccountingStops().size());
+    }
+
+    @Test
+    void testParseTruncatedCapture() throws IOException {
+        byte[] content = Files.readAllBytes(Path.of("src/test/resources/sample-radius.pcap"));
+        byte[] truncated = Arrays.copyOf(content, content.length - 10);
+        MultipartFile multipartFile = new MockMultipartFile("file", "truncated.pcap",
+                "application/vnd.tcpdump.pcap", truncated);
+
+        // The last record is cut short and dropped, everything before it is still returned
+        PcapParseResponse response = pcapParserService.parsePcapFile(multipartFile, null, null);
+        assertEquals(5, response.getTotalPacketsProcessed());
+        assertEquals(1, response.getAccountingStarts().size());
+    }
+
+    @Test
+    void testRejectsNonPcapFile() {
+        MultipartFile multipartFile = new MockMultipartFile("file", "notes.pcap",
+                "application/octet-stream", "this is not a capture file".getBytes());
+
+        assertThrows(CaptureFormatException.class,
+                () -> pcapParserService.parsePcapFile(multipartFile, null, null));
+    }
+
+    @Test
+    void testParsePcapNg(@TempDir Path tempDir) throws IOException {
+        Path pcapNg = tempDir.resolve("sample-radius.pcapng");
+        RadiusPcapGenerator.generateRadiusPcapNg(pcapNg.toString());
+
+        MultipartFile multipartFile = new MockMultipartFile("file", "sample-radius.pcapng",
+                "application/x-pcapng", Files.readAllBytes(pcapNg));
+        PcapParseResponse response = pcapParserService.parsePcapFile(multipartFile, "192.168.1.100", null);
+
+        assertEquals(6, response.getTotalPacketsProcessed());
+        assertEquals(1, response.getAccessRequests().size());
+        assertEquals(1, response.getAccountingStarts().size());
+        assertEquals(1, response.getAccountingUpdates().size());
+        assertEquals(1, response.getAccountingStops().size());
+
+        // Nanosecond interface resolution must still come out as epoch milliseconds
+        long start = response.getAccountingStarts().get(0).getTimestamp();
+        long update = response.getAccountingUpdates().get(0).getTimestamp();
+        assertEquals(29_000L, update - start);
+        assertEquals(0L, start % 1000);
+
+        // Same result when the capture is memory-mapped instead of streamed
+        PcapParseResponse mapped = pcapParserService.parsePcapFile(pcapNg, new ParseOptions(), null);
+        assertEquals(2, mapped.getAccessRequests().size());
+        assertEquals(2, mapped.getAccountingStarts().size());
+    }
+
+    @Test
+    void testPacketsSerializeLazily() throws IOException {
+        PcapParseResponse response = pcapParserService.parsePcapFile(
+                Path.of("src/test/resources/sample-radius.pcap"), new ParseOptions(), null);
+
+        // Attributes and the raw dump are only built when Jackson writes the response
+        JsonNode json = new ObjectMapper().valueToTree(response);
+        JsonNode accessRequest = json.get("accessRequests").get(0);
+        assertEquals("192.168.1.100", accessRequest.get("sourceIp").asText());
+        assertEquals("testuser@example.com", accessRequest.get("attributes").get("User-Name").asText());
+        assertEquals("10.0.0.1", accessRequest.get("attributes").get("NAS-IP-Address").asText());
+        assertTrue(accessRequest.get("rawData").asText().startsWith("Code: 1, Identifier: 1"));
+        assertEquals(6, accessRequest.size(), "Only the RadiusPacketData properties are serialized");
+    }
+
+    @Test
+    void testStreamPackets() throws IOException {
+        MultipartFile multipartFile = new MockMultipartFile("file", "sample-radius.pcap",
+                "application/vnd.tcpdump.pcap", Files.readAllBytes(Path.of("src/test/resources/sample-radius.pcap")));
+
+        List<RadiusPacketData> streamed = new ArrayList<>();
+        PcapParseResponse totals = pcapParserService.streamPcapFile(multipartFile,
+                ParseOptions.of(pcapParserService.compileFilter(null, "user2", null)), streamed::add);
+
+        // Packets come out in capture order and the totals carry no packet lists
+        assertEquals(2, streamed.size());
+        assertEquals("Access-Request", streamed.get(0).getPacketType());
+        assertEquals("Accounting-Start", streamed.get(1).getPacketType());
+        assertEquals(6, totals.getTotalPacketsProcessed());
+        assertEquals(6, totals.getRadiusPacketsFound());
+        assertNull(totals.getAccessRequests());
+        assertFalse(new ObjectMapper().valueToTree(totals).has("accessRequests"));
+    }
+
+    @Test
+    void testStoredPacketsMatchDecodedPackets() throws IOException {
+        Path sample = Path.of("src/test/resources/sample-radius.pcap");
+        MultipartFile multipartFile = new MockMultipartFile("file", "sample-radius.pcap",
+                "application/vnd.tcpdump.pcap", Files.readAllBytes(sample));
+
+        List<RadiusPacketData> streamed = new ArrayList<>();
+        pcapParserService.streamPcapFile(multipartFile, new ParseOptions(), streamed::add);
+        PcapParseResponse stored = pcapParserService.parsePcapFile(sample, new ParseOptions(), null);
+
+        // Rows rebuilt from the column store are the packets the formatter decodes directly
+        List<RadiusPacketData> accessRequests = streamed.stream()
+                .filter(packet -> packet.getPacketType().equals("Access-Request")).toList();
+        assertEquals(accessRequests, stored.getAccessRequests());
+        assertEquals(accessRequests.get(0).getRawData(), stored.getAccessRequests().get(0).getRawData());
+        assertThrows(UnsupportedOperationException.class, () -> stored.getAccessRequests().add(new RadiusPacketData()));
+    }
+
+    @Test
+    void testDecodesAttributesWithDictionary(@TempDir Path tempDir) throws IOException {
+        Path pcap = tempDir.resolve("vsa.pcap");
+        byte[] accountingStart = radiusPacket(4, 7, buffer -> {
+            addStringAttribute(buffer, 1, "guest");
+            addIntegerAttribute(buffer, 40, 1);
+            addIntegerAttribute(buffer, 61, 19);
+            addVendorAttribute(buffer, 14823, 5, "Guest-WiFi");
+            addVendorAttribute(buffer, 14823, 200, "unknown");
+            addVendorAttribute(buffer, 99999, 1, "x");
+            addStringAttribute(buffer, 33, "state-1");
+            addStringAttribute(buffer, 33, "state-2");
+        });
+        writePcap(pcap.toString(), List.of(
+                frame(1_700_000_000_000_000L, "10.0.0.1", 40000, "10.0.0.2", 1813, accountingStart)));
+
+        RadiusPacketData packet = pcapParserService.parsePcapFile(pcap, new ParseOptions(), null).getAccountingStarts().get(0);
+        Map<String, String> attributes = packet.getAttributes();
+        assertEquals("Start", attributes.get("Acct-Status-Type"));
+        assertEquals("Wireless-802.11", attributes.get("NAS-Port-Type"));
+        assertEquals("Guest-WiFi", attributes.get("Aruba-Essid-Name"));
+        assertEquals("0x756e6b6e6f776e", attributes.get("Attr-26.14823.200"));
+        assertEquals("0x78", attributes.get("Attr-26.99999.1"));
+
+        // Repeated attributes keep one map entry but every occurrence stays in the dump
+        assertTrue(packet.getRawData().contains("Proxy-State: 0x73746174652d31"));
+        assertTrue(packet.getRawData().contains("Proxy-State: 0x73746174652d32"));
+    }
+
+    @Test
+    void testFilterExpression(@TempDir Path tempDir) throws IOException {
+        Path pcap = tempDir.resolve("filter.pcap");
+        long start = 1_700_000_000_000_000L;
+        writePcap(pcap.toString(), List.of(
+                frame(start, "10.1.2.3", 40000, "10.0.0.2", 1812,
+                        radiusPacket(1, 1, buffer -> addStringAttribute(buffer, 1, "Guest-42"))),
+                frame(start + 1000, "10.1.2.4", 40000, "10.0.0.2", 1813, radiusPacket(4, 2, buffer -> {
+                    addStringAttribute(buffer, 1, "guest-43");
+                    addIntegerAttribute(buffer, 40, 1);
+                    addVendorAttribute(buffer, 14823, 5, "Corp-WiFi");
+                })),
+                frame(start + 2000, "192.168.1.1", 40000, "10.0.0.2", 1813, radiusPacket(4, 3, buffer -> {
+                    addStringAttribute(buffer, 1, "employee");
+                    addIntegerAttribute(buffer, 40, 2);
+                }))));
+
+        assertEquals(List.of("guest-43"), userNames(pcap,
+                "src in 10.0.0.0/8 and attr[User-Name] ~ \"GUEST\" and code == 4"));
+        assertEquals(List.of("Guest-42", "guest-43"), userNames(pcap, "src in 10.0.0.0/8"));
+        assertEquals(List.of("employee"), userNames(pcap, "attr[Acct-Status-Type] == Stop"));
+        assertEquals(List.of("guest-43"), userNames(pcap, "attr[Aruba-Essid-Name] == Corp-WiFi"));
+        assertEquals(List.of("Guest-42", "employee"), userNames(pcap, "not attr[Aruba-Essid-Name] && id != 2"));
+        assertEquals(List.of("Guest-42", "employee"), userNames(pcap, "code == Access-Request or dst == 10.0.0.2 and id >= 3"));
+        assertEquals(List.of("employee"), userNames(pcap, "ip in (192.168.1.1, 172.16.0.1) and port == 1813"));
+
+        // Packets rejected by the expression are not counted as found
+        PcapParseResponse response = pcapParserService.parsePcapFile(pcap,
+                ParseOptions.of(pcapParserService.compileFilter(null, null, "code == Access-Request")), null);
+        assertEquals(3, response.getTotalPacketsProcessed());
+        assertEquals(1, response.getRadiusPacketsFound());
+
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.compileFilter(null, null, "src in 10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.compileFilter(null, null, "attr[No-Such-Attribute]"));
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.compileFilter(null, null, "code == 1 and"));
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.compileFilter(null, null, "attr[User-Name] < 3"));
+    }
+
+    @Test
+    void testTextFilterTerms(@TempDir Path tempDir) throws IOException {
+        Path pcap = tempDir.resolve("text.pcap");
+        long start = 1_700_000_000_000_000L;
+        writePcap(pcap.toString(), List.of(
+                frame(start, "10.1.2.3", 40000, "10.0.0.2", 1812, radiusPacket(1, 1, buffer -> {
+                    addStringAttribute(buffer, 1, "Guest\u0001-42");
+                    addIpAttribute(buffer, 4, "10.9.8.7");
+                })),
+                frame(start + 1000, "10.1.2.4", 40000, "10.0.0.2", 1813, radiusPacket(4, 2, buffer -> {
+                    addStringAttribute(buffer, 1, "employee");
+                    addIntegerAttribute(buffer, 40, 1);
+                    addStringAttribute(buffer, 31, "AA-BB-CC-DD-EE-FF");
+                })),
+                frame(start + 2000, "10.1.2.5", 40000, "10.0.0.2", 1813, radiusPacket(4, 3, buffer -> {
+                    addStringAttribute(buffer, 1, "contractor");
+                    addIntegerAttribute(buffer, 40, 2);
+                }))));
+
+        // Terms matched in the raw bytes, case-insensitively and across non-printable bytes
+        assertEquals(List.of("Guest-42", "contractor"), textMatches(pcap, "GUEST-4|tractor"));
+        assertEquals(List.of("employee"), textMatches(pcap, "aa-bb-cc"));
+        // Terms that can only be found in the decoded text
+        assertEquals(List.of("Guest-42"), textMatches(pcap, "10.9.8.7"));
+        assertEquals(List.of("contractor"), textMatches(pcap, "stop"));
+        assertEquals(List.of("Guest-42", "employee", "contractor"), textMatches(pcap, "user-name"));
+        assertEquals(List.of("employee", "contractor"), textMatches(pcap, "Acct-Status|nobody"));
+        assertEquals(List.of(), textMatches(pcap, "nobody"));
+    }
+
+    private List<String> textMatches(Path pcap, String text) throws IOException {
+        return userNames(pcapParserService.parsePcapFile(pcap, null, text));
+    }
+
+    private List<String> userNames(Path pcap, String filter) throws IOException {
+        return userNames(pcapParserService.parsePcapFile(pcap,
+                ParseOptions.of(pcapParserService.compileFilter(null, null, filter)), null));
+    }
+
+    private static List<String> userNames(PcapParseResponse response) {
+        List<RadiusPacketData> packets = new ArrayList<>(response.getAccessRequests());
+        packets.addAll(response.getAccountingStarts());
+        packets.addAll(response.getAccountingStops());
+        List<String> names = new ArrayList<>();
+        packets.sort((a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+        packets.forEach(packet -> names.add(packet.getAttributes().get("User-Name")));
+        return names;
+    }
+
+    @Test
+    void testCorrelatesRequestsAndResponses(@TempDir Path tempDir) throws IOException {
+        long t0 = 1_700_000_000_000_000L;
+        List<Frame> frames = new ArrayList<>();
+        // Retransmitted once, answered 1.5 s after the first transmission
+        frames.add(frame(t0, "10.0.0.1", 40000, "10.0.0.2", 1812, radiusPacket(1, 1, buffer -> { })));
+        frames.add(frame(t0 + 1_000_000, "10.0.0.1", 40000, "10.0.0.2", 1812, radiusPacket(1, 1, buffer -> { })));
+        frames.add(frame(t0 + 1_500_000, "10.0.0.2", 1812, "10.0.0.1", 40000, radiusPacket(2, 1, buffer -> { })));
+        frames.add(frame(t0 + 2_000_000, "10.0.0.1", 40000, "10.0.0.2", 1812, radiusPacket(1, 2, buffer -> { })));
+        frames.add(frame(t0 + 2_010_000, "10.0.0.2", 1812, "10.0.0.1", 40000, radiusPacket(3, 2, buffer -> { })));
+        frames.add(frame(t0 + 3_000_000, "10.0.0.3", 40001, "10.0.0.2", 1813,
+                radiusPacket(4, 3, buffer -> addIntegerAttribute(buffer, 40, 1))));
+        frames.add(frame(t0 + 3_005_000, "10.0.0.2", 1813, "10.0.0.3", 40001, radiusPacket(5, 3, buffer -> { })));
+        // Never answered, and an answer to nothing
+        frames.add(frame(t0 + 4_000_000, "10.0.0.3", 40001, "10.0.0.2", 1812, radiusPacket(1, 4, buffer -> { })));
+        frames.add(frame(t0 + 4_100_000, "10.0.0.2", 1812, "10.0.0.3", 40001, radiusPacket(2, 9, buffer -> { })));
+        Path pcap = tempDir.resolve("correlation.pcap");
+        writePcap(pcap.toString(), frames);
+
+        ParseOptions options = new ParseOptions();
+        options.setCorrelate(true);
+        CorrelationReport report = pcapParserService.parsePcapFile(pcap, options, null).getCorrelation();
+
+        TransactionStats total = report.getTotal();
+        assertEquals(4, total.getRequests());
+        assertEquals(1, total.getRetransmissions());
+        assertEquals(3, total.getResponses());
+        assertEquals(1, total.getAccessAccepts());
+        assertEquals(1, total.getAccessRejects());
+        assertEquals(1, total.getAccountingResponses());
+        assertEquals(1, total.getTimeouts());
+        assertEquals(1, total.getUnmatchedResponses());
+        assertEquals(3, total.getLatency().getCount());
+        assertEquals(5.0, total.getLatency().getMinMillis());
+        assertEquals(1500.0, total.getLatency().getMaxMillis());
+
+        assertEquals(List.of("10.0.0.1", "10.0.0.3"),
+                report.getByNas().stream().map(TransactionStats::getAddress).toList());
+        TransactionStats nas = report.getByNas().get(0);
+        assertEquals(2, nas.getResponses());
+        assertEquals(10.0, nas.getLatency().getP50Millis(), 1.0);
+        assertEquals(1, report.getByServer().size());
+        assertEquals(4, report.getByServer().get(0).getRequests());
+
+        // Chunks decoded in parallel are correlated as one capture
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofBytes(256));
+        CorrelationReport parallel = pcapParserService.parsePcapFile(pcap, options, null).getCorrelation();
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+        assertEquals(report, parallel);
+
+        // A filter on the NAS leaves the answers of the server out of the packet lists, not out of its transactions
+        ParseOptions byNas = ParseOptions.of(pcapParserService.compileFilter("10.0.0.1", null, null));
+        byNas.setCorrelate(true);
+        CorrelationReport filtered = pcapParserService.parsePcapFile(pcap, byNas, null).getCorrelation();
+        assertEquals(2, filtered.getTotal().getRequests());
+        assertEquals(1, filtered.getTotal().getRetransmissions());
+        assertEquals(2, filtered.getTotal().getResponses());
+        assertEquals(0, filtered.getTotal().getTimeouts());
+        assertEquals(0, filtered.getTotal().getUnmatchedResponses());
+        assertEquals(List.of("10.0.0.1"), filtered.getByNas().stream().map(TransactionStats::getAddress).toList());
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofBytes(256));
+        assertEquals(filtered, pcapParserService.parsePcapFile(pcap, byNas, null).getCorrelation());
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+        CachedCapture cached = pcapParserService.capturePcapFile(pcap, Long.MAX_VALUE);
+        assertEquals(filtered, pcapParserService.parseCached(cached, byNas).getCorrelation());
+
+        assertNull(pcapParserService.parsePcapFile(pcap, new ParseOptions(), null).getCorrelation());
+    }
+
+    @Test
+    void testBuildsAccountingSessions(@TempDir Path tempDir) throws IOException {
+        long t0 = 1_700_000_000_000_000L;
+        List<Frame> frames = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String sessionId = "session-" + i;
+            int status = i % 2 == 0 ? 1 : 2;
+            frames.add(frame(t0 + i * 1000L, "10.0.0.1", 40000, "10.0.0.2", 1813, radiusPacket(4, i, buffer -> {
+                addStringAttribute(buffer, 44, "filler-" + sessionId);
+                addIntegerAttribute(buffer, 40, status);
+            })));
+        }
+        frames.add(frame(t0 + 1_000_000, "10.0.0.1", 40000, "10.0.0.2", 1813, radiusPacket(4, 100, buffer -> {
+            addStringAttribute(buffer, 1, "alice");
+            addStringAttribute(buffer, 44, "A1");
+            addIntegerAttribute(buffer, 40, 1);
+        })));
+        frames.add(frame(t0 + 61_000_000, "10.0.0.1", 40000, "10.0.0.2", 1813, radiusPacket(4, 101, buffer -> {
+            addStringAttribute(buffer, 44, "A1");
+            addIntegerAttribute(buffer, 40, 3);
+            addIntegerAttribute(buffer, 42, 1000);
+        })));
+        frames.add(frame(t0 + 181_000_000, "10.0.0.1", 40000, "10.0.0.2", 1813, radiusPacket(4, 102, buffer -> {
+            addStringAttribute(buffer, 44, "A1");
+            addIntegerAttribute(buffer, 40, 3);
+            addIntegerAttribute(buffer, 42, 5000);
+        })));
+        frames.add(frame(t0 + 200_000_000, "10.0.0.1", 40000, "10.0.0.2", 1813, radiusPacket(4, 103, buffer -> {
+            addStringAttribute(buffer, 44, "A1");
+            addIntegerAttribute(buffer, 40, 2);
+            addIntegerAttribute(buffer, 42, 7);
+            addIntegerAttribute(buffer, 52, 2);
+            addIntegerAttribute(buffer, 43, 9);
+            addIntegerAttribute(buffer, 46, 199);
+            addIntegerAttribute(buffer, 49, 1);
+        })));
+        // Same session id on another NAS is another session, still open at the end
+        frames.add(frame(t0 + 201_000_000, "10.0.0.5", 40000, "10.0.0.2", 1813, radiusPacket(4, 104, buffer -> {
+            addStringAttribute(buffer, 44, "A1");
+            addIpAttribute(buffer, 4, "10.0.0.9");
+            addIntegerAttribute(buffer, 40, 3);
+        })));
+        Path pcap = tempDir.resolve("sessions.pcap");
+        writePcap(pcap.toString(), frames);
+
+        ParseOptions options = new ParseOptions();
+        options.setSessions(true);
+        PcapParseResponse response = pcapParserService.parsePcapFile(pcap, options, null);
+        assertNull(response.getAccountingStarts(), "The session table replaces the packet lists");
+        assertEquals(42, response.getSessions().size());
+
+        AccountingSession alice = response.getSessions().stream()
+                .filter(session -> session.getSessionId().equals("A1") && session.getNas().equals("10.0.0.1"))
+                .findFirst().orElseThrow();
+        assertEquals(AccountingSession.State.STOPPED, alice.getState());
+        assertEquals("alice", alice.getUserName());
+        assertEquals(1_700_000_001_000L, alice.getStartTime());
+        assertEquals(1_700_000_200_000L, alice.getStopTime());
+        assertEquals(2, alice.getInterimUpdates());
+        assertEquals(60_000L, alice.getMinInterimIntervalMillis());
+        assertEquals(120_000L, alice.getMaxInterimIntervalMillis());
+        assertEquals(2L * (1L << 32) + 7, alice.getInputOctets());
+        assertEquals(9L, alice.getOutputOctets());
+        assertEquals(199L, alice.getSessionTime());
+        assertEquals("User-Request", alice.getTerminateCause());
+
+        AccountingSession other = response.getSessions().get(41);
+        assertEquals("10.0.0.9", other.getNas());
+        assertEquals(AccountingSession.State.OPEN, other.getState());
+
+        // Sessions spanning chunks decoded in parallel are stitched back together
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofBytes(512));
+        PcapParseResponse parallel = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+        assertEquals(response.getSessions(), parallel.getSessions());
+
+        // Sessions with a matching packet are reported whole, with the packets the filter leaves out
+        ParseOptions byUser = ParseOptions.of(pcapParserService.compileFilter(null, null, "attr[User-Name] == alice"));
+        byUser.setSessions(true);
+        assertEquals(List.of(alice), pcapParserService.parsePcapFile(pcap, byUser, null).getSessions());
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofBytes(512));
+        assertEquals(List.of(alice), pcapParserService.parsePcapFile(pcap, byUser, null).getSessions());
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+
+        // Past the finished sessions kept, the later ones are only counted: 10 of the 20 stopped
+        // fillers and alice's are dropped, the 21 open sessions are still reported
+        ReflectionTestUtils.setField(pcapParserService, "sessionMaxSessions", 10L);
+        PcapParseResponse capped = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "sessionMaxSessions", 1_000_000L);
+        assertEquals(31, capped.getSessions().size());
+        assertEquals(11L, capped.getDroppedSessions());
+        assertNull(response.getDroppedSessions());
+
+        // The cap applies to the whole parse, not to each chunk, and only to matching sessions
+        ReflectionTestUtils.setField(pcapParserService, "sessionMaxSessions", 10L);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofBytes(512));
+        PcapParseResponse cappedParallel = pcapParserService.parsePcapFile(pcap, options, null);
+        assertEquals(capped.getSessions(), cappedParallel.getSessions());
+        assertEquals(11L, cappedParallel.getDroppedSessions());
+        ReflectionTestUtils.setField(pcapParserService, "sessionMaxSessions", 1L);
+        PcapParseResponse cappedByUser = pcapParserService.parsePcapFile(pcap, byUser, null);
+        assertEquals(List.of(alice), cappedByUser.getSessions());
+        assertNull(cappedByUser.getDroppedSessions());
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+        cappedByUser = pcapParserService.parsePcapFile(pcap, byUser, null);
+        assertEquals(List.of(alice), cappedByUser.getSessions());
+        assertNull(cappedByUser.getDroppedSessions());
+        ReflectionTestUtils.setField(pcapParserService, "sessionMaxSessions", 1_000_000L);
+
+        // Over the memory budget, the least recently active open sessions are evicted
+        ReflectionTestUtils.setField(pcapParserService, "sessionMemoryBudget", DataSize.ofBytes(1024));
+        List<AccountingSession> evicted = pcapParserService.parsePcapFile(pcap, options, null).getSessions();
+        assertTrue(evicted.stream().anyMatch(session -> session.getState() == AccountingSession.State.EVICTED));
+        assertEquals(alice, evicted.stream().filter(session -> session.getSessionId().equals("A1")).findFirst().orElseThrow());
+    }
+
+    @Test
+    void testParallelParseMatchesSequential(@TempDir Path tempDir) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_700_000_000_000_000L;
+        for (int i = 0; i < 3000; i++) {
+            String user = "user" + i;
+            int status = i % 3 + 1;
+            byte[] packet = i % 4 == 0
+                    ? radiusPacket(1, i & 0xFF, buffer -> addStringAttribute(buffer, 1, user))
+                    : radiusPacket(4, i & 0xFF, buffer -> {
+                        addStringAttribute(buffer, 1, user);
+                        addIntegerAttribute(buffer, 40, status);
+                    });
+            frames.add(frame(start + i * 1000L, "10.0.0." + (i % 7 + 1), 40000, "10.0.1.1", 1813, packet));
+        }
+        Path pcap = tempDir.resolve("large.pcap");
+        Path pcapNg = tempDir.resolve("large.pcapng");
+        writePcap(pcap.toString(), frames);
+        writePcapNg(pcapNg.toString(), frames);
+
+        for (Path capture : List.of(pcap, pcapNg)) {
+            PcapParseResponse sequential = pcapParserService.parsePcapFile(capture, null, "user1");
+
+            // Small chunks so that the test captures are split across all workers
+            ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofKilobytes(4));
+            PcapParseResponse parallel = pcapParserService.parsePcapFile(capture, null, "user1");
+            CachedCapture cached = pcapParserService.capturePcapFile(capture, Long.MAX_VALUE);
+            ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+
+            assertEquals(3000, parallel.getTotalPacketsProcessed());
+            assertEquals(3000, parallel.getRadiusPacketsFound());
+            assertEquals(summary(sequential.getAccessRequests()), summary(parallel.getAccessRequests()));
+            assertEquals(summary(sequential.getAccountingStarts()), summary(parallel.getAccountingStarts()));
+            assertEquals(summary(sequential.getAccountingUpdates()), summary(parallel.getAccountingUpdates()));
+            assertEquals(summary(sequential.getAccountingStops()), summary(parallel.getAccountingStops()));
+            assertFalse(parallel.getAccountingStarts().isEmpty());
+
+            // The datagrams and packets kept per chunk line up again once the chunks are merged
+            PcapParseResponse refiltered = pcapParserService.parseCached(cached,
+                    ParseOptions.of(pcapParserService.compileFilter(null, "user1", null)));
+            assertEquals(3000, refiltered.getRadiusPacketsFound());
+            assertEquals(summary(sequential.getAccessRequests()), summary(refiltered.getAccessRequests()));
+            assertEquals(summary(sequential.getAccountingStops()), summary(refiltered.getAccountingStops()));
+        }
+    }
+
+    @Test
+    void testSpillsPacketsBeyondMemoryBudget(@TempDir Path tempDir) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_700_000_000_000_000L;
+        for (int i = 0; i < 2000; i++) {
+            String user = "user" + i;
+            frames.add(frame(start + i * 1000L, "10.0.0." + (i % 7 + 1), 40000, "10.0.1.1", 1813,
+                    radiusPacket(4, i & 0xFF, buffer -> {
+                        addStringAttribute(buffer, 1, user);
+                        addIntegerAttribute(buffer, 40, 1);
+                    })));
+        }
+        Path pcap = tempDir.resolve("spill.pcap");
+        writePcap(pcap.toString(), frames);
+        PcapParseResponse inMemory = pcapParserService.parsePcapFile(pcap, new ParseOptions(), null);
+
+        Path spillDirectory = tempDir.resolve("spill");
+        ReflectionTestUtils.setField(pcapParserService, "spillDirectory", spillDirectory.toString());
+        ReflectionTestUtils.setField(pcapParserService, "packetMemoryBudget", DataSize.ofKilobytes(64));
+        PcapParseResponse spilled = pcapParserService.parsePcapFile(pcap, new ParseOptions(), null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofKilobytes(4));
+        PcapParseResponse parallel = pcapParserService.parsePcapFile(pcap, new ParseOptions(), null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+
+        assertEquals(2000, inMemory.getAccountingStarts().size());
+        assertEquals(inMemory.getAccountingStarts(), spilled.getAccountingStarts());
+        assertEquals(inMemory.getAccountingStarts(), parallel.getAccountingStarts());
+
+        // Releasing a result closes its spill file, which frees the disk space
+        long open = openFiles(spillDirectory);
+        PcapParseResponse released = pcapParserService.parsePcapFile(pcap, new ParseOptions(), null);
+        if (open >= 0) assertEquals(open + 1, openFiles(spillDirectory));
+        PcapParserService.release(released);
+        if (open >= 0) assertEquals(open, openFiles(spillDirectory));
+
+        // The spill file is unlinked as soon as it is open, a directory that cannot be created shows it is used
+        ReflectionTestUtils.setField(pcapParserService, "spillDirectory", pcap.resolve("spill").toString());
+        assertThrows(UncheckedIOException.class, () -> pcapParserService.parsePcapFile(pcap, new ParseOptions(), null));
+        ReflectionTestUtils.setField(pcapParserService, "packetMemoryBudget", DataSize.ofMegabytes(512));
+        assertEquals(2000, pcapParserService.parsePcapFile(pcap, new ParseOptions(), null).getAccountingStarts().size());
+    }
+
+    /**
+     * @return the number of files of the directory open in this process, or -1 where that is not known
+     */
+    private static long openFiles(Path directory) throws IOException {
+        Path descriptors = Path.of("/proc/self/fd");
+        if (!Files.isDirectory(descriptors)) return -1;
+        try (Stream<Path> links = Files.list(descriptors)) {
+            return links.filter(link -> {
+                try {
+                    return Files.readSymbolicLink(link).startsWith(directory);
+                } catch (IOException e) {
+                    return false; // closed while listing
+                }
+            }).count();
+        }
+    }
+
+    @Test
+    void testSummarizesCapture(@TempDir Path tempDir) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_700_000_000_000_000L;
+        for (int i = 0; i < 6000; i++) {
+            String user = "user" + i % 2000;
+            // The same 500 clients, half of them written in another notation
+            int client = i % 500;
+            String mac = i % 2 == 0 ? String.format("a0b0c000%04x", client)
+                    : String.format("A0-B0-C0-00-%02X-%02X", client >> 8, client & 0xFF);
+            // nas-0 sends half of the packets, nas-1 a quarter...
+            String nas = "nas-" + Integer.numberOfTrailingZeros(i + 1 | 1 << 5);
+            int status = i % 3 + 1;
+            frames.add(frame(start + i * 1000L, "10.0.0.1", 40000, "10.0.1.1", 1813,
+                    radiusPacket(4, i & 0xFF, buffer -> {
+                        addStringAttribute(buffer, 1, user);
+                        addStringAttribute(buffer, 31, mac);
+                        addStringAttribute(buffer, 32, nas);
+                        addIntegerAttribute(buffer, 40, status);
+                    })));
+            frames.add(frame(start + i * 1000L + 500, "10.0.1.1", 1813, "10.0.0.1", 40000,
+                    radiusPacket(5, i & 0xFF, buffer -> { })));
+        }
+        Path pcap = tempDir.resolve("summary.pcap");
+        writePcap(pcap.toString(), frames);
+
+        ParseOptions options = new ParseOptions();
+        options.setSummary(true);
+        PcapParseResponse sequential = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofKilobytes(16));
+        PcapParseResponse parallel = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+
+        CaptureSummary summary = sequential.getSummary();
+        assertNull(sequential.getAccountingStarts());
+        assertEquals(12000, summary.getPackets());
+        assertEquals(Map.of("Accounting-Start", 2000L, "Accounting-Stop", 2000L, "Accounting-Interim-Update", 2000L,
+                "Accounting-Response", 6000L), summary.getPacketTypes());
+        assertEquals(2000, summary.getDistinctUsers(), 2000 * 3 * summary.getDistinctError());
+        assertEquals(500, summary.getDistinctClientMacs(), 500 * 3 * summary.getDistinctError());
+
+        List<ValueCount> nas = summary.getTopNasIdentifiers();
+        assertEquals(List.of("nas-0", "nas-1", "nas-2", "nas-3", "nas-4", "nas-5"),
+                nas.stream().map(ValueCount::getValue).toList());
+        assertEquals(3000, nas.get(0).getCount(), summary.getNasIdentifierMaxOvercount());
+        assertEquals("NAS-Identifier=nas-0", summary.getTopAttributeValues().get(0).getValue());
+
+        // Sketches of the chunks merge into the sketch of the whole capture
+        assertEquals(summary, parallel.getSummary());
+    }
+
+    @Test
+    void testDetectsDuplicatesAndRetransmissions(@TempDir Path tempDir) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_700_000_000_000_000L;
+        for (int i = 0; i < 100; i++) {
+            String user = "user" + i;
+            Frame request = frame(start + i * 100_000L, "10.0.0.1", 40000, "10.0.1.1", 1812,
+                    radiusPacket(1, i, buffer -> addStringAttribute(buffer, 1, user)));
+            frames.add(request);
+            if (i % 10 == 0) {
+                // Seen again on a second interface
+                frames.add(at(request, start + i * 100_000L + 100));
+            } else if (i % 10 == 5) {
+                // Sent again, answered once
+                frames.add(withIpIdentification(at(request, start + i * 100_000L + 50_000), 2));
+            }
+            frames.add(frame(start + i * 100_000L + 60_000, "10.0.1.1", 1812, "10.0.0.1", 40000,
+                    radiusPacket(2, i, buffer -> { })));
+        }
+        // Identifier 0 used again long after the window
+        frames.add(at(frames.get(0), start + 60_000_000L));
+        Path pcap = tempDir.resolve("copies.pcap");
+        writePcap(pcap.toString(), frames);
+
+        ParseOptions counting = new ParseOptions();
+        counting.setDedup(true);
+        PcapParseResponse counted = pcapParserService.parsePcapFile(pcap, counting, null);
+        assertEquals(new DuplicateReport(10, 10, false), counted.getDuplicates());
+        assertEquals(221, counted.getRadiusPacketsFound());
+        assertEquals(121, counted.getAccessRequests().size());
+
+        ParseOptions suppressing = new ParseOptions();
+        suppressing.setDedup(true);
+        suppressing.setSuppressDuplicates(true);
+        suppressing.setCorrelate(true);
+        PcapParseResponse suppressed = pcapParserService.parsePcapFile(pcap, suppressing, null);
+        assertEquals(new DuplicateReport(10, 10, true), suppressed.getDuplicates());
+        assertEquals(201, suppressed.getRadiusPacketsFound());
+        assertEquals(101, suppressed.getAccessRequests().size());
+        assertEquals(0, suppressed.getCorrelation().getTotal().getRetransmissions());
+        assertNull(pcapParserService.parsePcapFile(pcap, new ParseOptions(), null).getDuplicates());
+
+        // Cached captures are replayed through the same window
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofKilobytes(4));
+        CachedCapture cached = pcapParserService.capturePcapFile(pcap, Long.MAX_VALUE);
+        PcapParseResponse parallel = pcapParserService.parsePcapFile(pcap, suppressing, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+        PcapParseResponse replayed = pcapParserService.parseCached(cached, suppressing);
+        assertEquals(suppressed.getDuplicates(), replayed.getDuplicates());
+        // Cached captures list rows without the raw dump
+        assertEquals(suppressed.getAccessRequests().stream().map(RadiusPacketData::getAttributes).toList(),
+                replayed.getAccessRequests().stream().map(RadiusPacketData::getAttributes).toList());
+        assertEquals(suppressed.getDuplicates(), parallel.getDuplicates());
+    }
+
+    @Test
+    void testParsesCompressedCaptures(@TempDir Path tempDir) throws IOException {
+        byte[] capture = Files.readAllBytes(Path.of("src/test/resources/sample-radius.pcap"));
+        PcapParseResponse expected = pcapParserService.parsePcapFile(
+                new MockMultipartFile("file", "sample-radius.pcap", "application/vnd.tcpdump.pcap", capture), new ParseOptions());
+
+        Map<String, OutputStreamFactory> compressors = Map.of(
+                ".gz", GZIPOutputStream::new,
+                ".zst", ZstdCompressorOutputStream::new,
+                ".lz4", FramedLZ4CompressorOutputStream::new,
+                ".xz", XZCompressorOutputStream::new);
+        for (Map.Entry<String, OutputStreamFactory> compressor : compressors.entrySet()) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (OutputStream out = compressor.getValue().open(compressed)) {
+                out.write(capture);
+            }
+            String name = "sample-radius.pcap" + compressor.getKey();
+            MultipartFile file = new MockMultipartFile("file", name, "application/octet-stream", compressed.toByteArray());
+            Path path = tempDir.resolve(name);
+            Files.write(path, compressed.toByteArray());
+
+            assertEquals(expected.getAccessRequests(), pcapParserService.parsePcapFile(file, new ParseOptions()).getAccessRequests(), name);
+            assertEquals(expected.getAccountingStops(), pcapParserService.parsePcapFile(path, new ParseOptions(), null).getAccountingStops(), name);
+
+            // Large compressed uploads are streamed, neither split nor mapped
+            ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofBytes(64));
+            PcapParseResponse streamed = pcapParserService.parsePcapFile(file, new ParseOptions());
+            ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+            assertEquals(expected.getTotalPacketsProcessed(), streamed.getTotalPacketsProcessed(), name);
+        }
+
+        byte[] corrupt = {0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3, 4, 5, 6, 7, 8};
+        MultipartFile file = new MockMultipartFile("file", "corrupt.pcap.gz", "application/gzip", corrupt);
+        assertThrows(CaptureFormatException.class, () -> pcapParserService.parsePcapFile(file, new ParseOptions()));
+    }
+
+    @Test
+    void testInfersRadiusProfile(@TempDir Path tempDir) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_700_000_000_000_000L;
+        for (int n = 0; n < 3000; n++) {
+            int i = n;
+            int id = i & 0xFF;
+            String mac = String.format("a0-b0-c0-00-%02x-%02x", i >> 8 & 0xFF, i & 0xFF);
+            boolean macAuthentication = i % 10 == 0;
+            frames.add(frame(start + i * 1000L, "10.0.0." + (1 + i % 2), 40000, "10.0.1.1", 1812,
+                    radiusPacket(1, id, buffer -> {
+                        addStringAttribute(buffer, 1, macAuthentication ? mac.replace("-", "") : "user" + i);
+                        addStringAttribute(buffer, 2, "0123456789abcdef");
+                        addStringAttribute(buffer, 31, mac);
+                        addStringAttribute(buffer, 32, "ap-" + i % 3);
+                        if (i % 4 == 0) addVendorAttribute(buffer, 14122, 1, "isocc=it");
+                    })));
+            frames.add(frame(start + i * 1000L + 500, "10.0.0.1", 40001, "10.0.1.1", 1813,
+                    radiusPacket(4, id, buffer -> {
+                        addStringAttribute(buffer, 1, "user" + i);
+                        addIntegerAttribute(buffer, 40, 1);
+                        addStringAttribute(buffer, 44, "session-" + i);
+                    })));
+        }
+        frames.add(frame(start + 4_000_000L, "10.0.1.1", 50000, "10.0.0.1", 3799,
+                radiusPacket(43, 1, buffer -> addStringAttribute(buffer, 1, "user1"))));
+        Path pcap = tempDir.resolve("profile.pcap");
+        writePcap(pcap.toString(), frames);
+
+        ParseOptions options = new ParseOptions();
+        options.setProfile(true);
+        PcapParseResponse sequential = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofKilobytes(16));
+        PcapParseResponse parallel = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+
+        RadiusProfile profile = sequential.getProfile();
+        assertNull(sequential.getAccessRequests());
+        assertEquals(Map.of("Access-Request", 3000L, "Accounting-Start", 3000L, "CoA-Request", 1L),
+                profile.getPacketTypes());
+        assertEquals(List.of(new ValueCount("10.0.0.1", 4500), new ValueCount("10.0.0.2", 1500)),
+                profile.getRequestSources());
+
+        AttributePresence nas = profile.getAttributes().stream()
+                .filter(a -> a.getAttribute().equals("NAS-Identifier")).findFirst().orElseThrow();
+        assertEquals(3000, nas.getPackets());
+        assertEquals(List.of("ap-0", "ap-1", "ap-2"), nas.getValues().stream().map(ValueCount::getValue).toList());
+        AttributePresence location = profile.getAttributes().stream()
+                .filter(a -> a.getAttribute().equals("WISPr-Location-ID")).findFirst().orElseThrow();
+        assertEquals(0.25, location.getFrequency());
+        AttributePresence password = profile.getAttributes().stream()
+                .filter(a -> a.getAttribute().equals("User-Password")).findFirst().orElseThrow();
+        assertNull(password.getValues());
+        assertTrue(profile.getAttributes().stream()
+                .filter(a -> a.getAttribute().equals("User-Name") && a.getPacketType().startsWith("Acc"))
+                .allMatch(AttributePresence::isMoreValues));
+
+        Vendor.Radius draft = profile.getDraft();
+        assertEquals(List.of("User-Name", "User-Password", "Calling-Station-Id", "NAS-Identifier"),
+                new ArrayList<>(draft.getAuthAttributes().keySet()));
+        assertEquals("<hidden>", draft.getAuthAttributes().get("User-Password"));
+        assertEquals("ap-0", draft.getAuthAttributes().get("NAS-Identifier"));
+        assertEquals(List.of("User-Name", "Acct-Status-Type", "Acct-Session-Id"),
+                new ArrayList<>(draft.getAcctAttributes().keySet()));
+        assertEquals("Start", draft.getAcctAttributes().get("Acct-Status-Type"));
+        assertEquals(Vendor.PasswordAuthenticationMask.PAP.getFlag(), draft.getAuthenticationMask());
+        assertTrue(draft.getSupportMacAuthentication());
+        assertTrue(draft.getSupportCoa());
+        assertEquals("10.0.0.1", draft.getPacketSource());
+        assertTrue(draft.getAccessRequest().contains("User-Name: a0b0c0000000"));
+        assertNull(draft.getAccountingStop());
+
+        // Profiles of the chunks merge into the profile of the whole capture. Values seen a few
+        // times each only top their sketch by collisions, which differ from chunk to chunk
+        List<AttributePresence> merged = parallel.getProfile().getAttributes();
+        assertEquals(profile.getAttributes().size(), merged.size());
+        for (int i = 0; i < merged.size(); i++) {
+            AttributePresence expected = profile.getAttributes().get(i);
+            assertEquals(expected.getAttribute(), merged.get(i).getAttribute());
+            assertEquals(expected.getPackets(), merged.get(i).getPackets());
+            assertEquals(expected.isMoreValues(), merged.get(i).isMoreValues());
+            if (!expected.isMoreValues()) assertEquals(expected.getValues(), merged.get(i).getValues());
+        }
+        assertEquals(draft.getAuthAttributes().keySet(), parallel.getProfile().getDraft().getAuthAttributes().keySet());
+        assertEquals("ap-0", parallel.getProfile().getDraft().getAuthAttributes().get("NAS-Identifier"));
+        assertEquals(draft.getAccessRequest(), parallel.getProfile().getDraft().getAccessRequest());
+    }
+
+    @Test
+    void testAggregatesRates(@TempDir Path tempDir) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_699_999_980_000_000L; // on a minute boundary
+        for (int n = 0; n < 3000; n++) {
+            int i = n;
+            frames.add(frame(start + i * 60_000L, "10.0.0.1", 40000, "10.0.1.1", 1812, radiusPacket(1, i & 0xFF, buffer -> {
+                addStringAttribute(buffer, 1, "user" + i);
+                addStringAttribute(buffer, 30, "00-11-22-33-44-55:" + (i % 3 == 0 ? "Corp" : "Guest"));
+                addStringAttribute(buffer, 32, "ap-" + i % 2);
+            })));
+            if (i % 10 == 0) {
+                frames.add(frame(start + i * 60_000L + 1, "10.0.0.1", 40001, "10.0.1.1", 1813, radiusPacket(4, i & 0xFF, buffer -> {
+                    addIntegerAttribute(buffer, 40, 1);
+                    addStringAttribute(buffer, 30, "00:11:22:33:44:55"); // no SSID
+                    addStringAttribute(buffer, 32, "nas-" + i);
+                })));
+            }
+        }
+        Path pcap = tempDir.resolve("rates.pcap");
+        writePcap(pcap.toString(), frames);
+
+        ParseOptions options = new ParseOptions();
+        options.setRateBucket(Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(pcapParserService, "rateMaxSeries", 4);
+        PcapParseResponse sequential = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofKilobytes(16));
+        PcapParseResponse parallel = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+
+        CaptureRates rates = sequential.getRates();
+        assertNull(sequential.getAccessRequests());
+        assertEquals(60_000, rates.getBucketMillis());
+        assertEquals(1_699_999_980_000L, rates.getStart());
+        assertEquals(3, rates.getBuckets());
+        assertArrayEquals(new long[]{1100, 1100, 1100}, rates.getTotal());
+        assertArrayEquals(new long[]{1000, 1000, 1000}, rates.getPacketTypes().get("Access-Request"));
+        assertArrayEquals(new long[]{100, 100, 100}, rates.getPacketTypes().get("Accounting-Start"));
+        assertEquals(List.of("Guest", "Corp"), new ArrayList<>(rates.getSsids().keySet()));
+        assertArrayEquals(new long[]{334, 333, 333}, rates.getSsids().get("Corp"));
+
+        // Two APs and the first two NAS-Identifiers of accounting, the rest together
+        assertEquals(List.of("ap-0", "ap-1", "nas-0", "nas-10", RateAggregator.OTHER),
+                new ArrayList<>(rates.getNasIdentifiers().keySet()));
+        assertArrayEquals(new long[]{500, 500, 500}, rates.getNasIdentifiers().get("ap-1"));
+        assertArrayEquals(new long[]{98, 100, 100}, rates.getNasIdentifiers().get(RateAggregator.OTHER));
+
+        // Rates of the chunks merge into the rates of the whole capture
+        assertArrayEquals(rates.getTotal(), parallel.getRates().getTotal());
+        assertArrayEquals(rates.getSsids().get("Guest"), parallel.getRates().getSsids().get("Guest"));
+        assertArrayEquals(rates.getNasIdentifiers().get("ap-0"), parallel.getRates().getNasIdentifiers().get("ap-0"));
+
+        options.setRateBucket(Duration.ofNanos(1000));
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.parsePcapFile(pcap, options, null));
+
+        // 179941 buckets of 1ms fit in one series, but not a dozen of them in the bucket budget
+        options.setRateBucket(Duration.ofMillis(1));
+        ReflectionTestUtils.setField(pcapParserService, "rateMaxBuckets", 1_000_000L);
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.parsePcapFile(pcap, options, null));
+        ReflectionTestUtils.setField(pcapParserService, "rateMaxBuckets", 4_000_000L);
+        assertEquals(179_941, pcapParserService.parsePcapFile(pcap, options, null).getRates().getBuckets());
+    }
+
+    @Test
+    void testDownsamplesTimeline(@TempDir Path tempDir) throws IOException {
+        // A request every 100ms for 200s, and a burst of 50 within a millisecond halfway through
+        List<Frame> frames = new ArrayList<>();
+        long start = 1_700_000_000_000_000L;
+        long octets = 0;
+        for (int n = 0; n < 2000; n++) {
+            int i = n;
+            byte[] request = radiusPacket(1, i & 0xFF, buffer -> addStringAttribute(buffer, 1, "user" + i));
+            frames.add(frame(start + i * 100_000L, "10.0.0.1", 40000, "10.0.1.1", 1812, request));
+            octets += request.length;
+            if (i == 1000) {
+                for (int burst = 0; burst < 50; burst++) {
+                    frames.add(frame(start + i * 100_000L + 10 + burst, "10.0.0.2", 40000, "10.0.1.1", 1812, request));
+                    octets += request.length;
+                }
+            }
+        }
+        Path pcap = tempDir.resolve("timeline.pcap");
+        writePcap(pcap.toString(), frames);
+
+        ParseOptions options = new ParseOptions();
+        options.setTimelinePoints(100);
+        PcapParseResponse sequential = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofKilobytes(16));
+        PcapParseResponse parallel = pcapParserService.parsePcapFile(pcap, options, null);
+        ReflectionTestUtils.setField(pcapParserService, "parallelChunkSize", DataSize.ofMegabytes(16));
+
+        TrafficTimeline timeline = sequential.getTimeline();
+        assertNull(sequential.getAccessRequests());
+        assertTrue(timeline.getPoints() > 50 && timeline.getPoints() <= 100, "Points: " + timeline.getPoints());
+        assertEquals(timeline.getPoints(), timeline.getPackets().length);
+        assertTrue(timeline.getStart() <= start / 1000);
+        assertTrue(timeline.getStart() + timeline.getPoints() * timeline.getPointMillis() > start / 1000 + 199_900);
+        assertEquals(0, timeline.getPointMillis() % timeline.getSampleMillis());
+        assertEquals(2050, Arrays.stream(timeline.getPackets()).sum());
+        assertEquals(octets, Arrays.stream(timeline.getOctets()).sum());
+
+        // The burst stands out of the samples of its point, the steady rate does not
+        long peak = Arrays.stream(timeline.getMaxPackets()).max().getAsLong();
+        assertTrue(peak >= 51, "Peak: " + peak);
+        assertEquals(1, Arrays.stream(timeline.getMaxPackets()).filter(max -> max == peak).count());
+        assertTrue(timeline.getMaxPackets()[1] <= timeline.getSampleMillis() / 100 + 1);
+        assertTrue(timeline.getMinPackets()[1] <= timeline.getMaxPackets()[1]);
+
+        // Timelines of the chunks merge into the timeline of the whole capture
+        assertArrayEquals(timeline.getPackets(), parallel.getTimeline().getPackets());
+        assertArrayEquals(timeline.getMaxOctets(), parallel.getTimeline().getMaxOctets());
+        assertEquals(timeline.getStart(), parallel.getTimeline().getStart());
+
+        options.setTimelinePoints(100_000);
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.parsePcapFile(pcap, options, null));
+    }
+
+    @Test
+    void testMergesBatchIntoTimeline(@TempDir Path tempDir) throws IOException {
+        // Three vantage points seeing every third request, each one well beyond a queued batch
+        long start = 1_700_000_000_000_000L;
+        byte[][] captures = new byte[3][];
+        for (int capture = 0; capture < 3; capture++) {
+            List<Frame> frames = new ArrayList<>();
+            for (int i = capture; i < 3000; i += 3) {
+                String user = "user" + i;
+                frames.add(frame(start + i * 1000L, "10.0.0." + (capture + 1), 40000, "10.0.1.1", 1812,
+                        radiusPacket(1, i & 0xFF, buffer -> addStringAttribute(buffer, 1, user))));
+            }
+            Path pcap = tempDir.resolve("capture" + capture + ".pcap");
+            writePcap(pcap.toString(), frames);
+            captures[capture] = Files.readAllBytes(pcap);
+        }
+
+        ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(zipped)) {
+            zip.putNextEntry(new ZipEntry("uplink/"));
+            zip.putNextEntry(new ZipEntry("uplink/ap.pcap"));
+            zip.write(captures[2]);
+            zip.putNextEntry(new ZipEntry("__MACOSX/uplink/._ap.pcap"));
+            zip.write(new byte[]{1, 2, 3});
+        }
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "controller.pcap", "application/vnd.tcpdump.pcap", captures[0]),
+                new MockMultipartFile("files", "radius.pcap", "application/vnd.tcpdump.pcap", captures[1]),
+                new MockMultipartFile("files", "uplink.zip", "application/zip", zipped.toByteArray()));
+
+        List<RadiusPacketData> merged = new ArrayList<>();
+        PcapParseResponse totals = pcapParserService.streamBatch(files, new ParseOptions(), merged::add);
+
+        assertEquals(3000, merged.size());
+        List<String> names = List.of("controller.pcap", "radius.pcap", "uplink/ap.pcap");
+        for (int i = 0; i < merged.size(); i++) {
+            RadiusPacketData packet = merged.get(i);
+            assertEquals("user" + i, packet.getAttributes().get("User-Name"));
+            assertEquals(names.get(i % 3), packet.getCaptureFile());
+        }
+        assertEquals(3000, totals.getRadiusPacketsFound());
+        assertEquals(names, totals.getCaptures().stream().map(CaptureTotals::getCaptureFile).toList());
+        assertEquals(1000, totals.getCaptures().get(2).getRadiusPacketsFound());
+
+        // A broken capture fails the batch, naming the capture
+        List<MultipartFile> broken = List.of(files.get(0),
+                new MockMultipartFile("files", "broken.pcap", "application/octet-stream", new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+        CaptureFormatException failure = assertThrows(CaptureFormatException.class,
+                () -> pcapParserService.streamBatch(broken, new ParseOptions(), packet -> { }));
+        assertTrue(failure.getMessage().startsWith("broken.pcap: "));
+
+        ReflectionTestUtils.setField(pcapParserService, "batchMaxCaptures", 2);
+        assertThrows(IllegalArgumentException.class, () -> pcapParserService.streamBatch(files, new ParseOptions(), merged::add));
+    }
+
+    private interface OutputStreamFactory {
+        OutputStream open(OutputStream out) throws IOException;
+    }
+
+    private static List<String> summary(List<RadiusPacketData> packets) {
+        List<String> summary = new ArrayList<>();
+        for (RadiusPacketData packet : packets) {
+            summary.add(packet.getTimestamp() + " " + packet.getSourceIp() + " " + packet.getAttributes().get("User-Name"));
+        }
+        return summary;
+    }
 }
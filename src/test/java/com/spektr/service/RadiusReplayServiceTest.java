@@ -0,0 +1,150 @@
+package com.spektr.service;
+
+import com.spektr.dto.ReplayReport;
+import com.spektr.radius.RadiusDictionary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.spektr.util.RadiusPcapGenerator.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RadiusReplayServiceTest {
+
+    private DatagramChannel server;
+    private Thread echo;
+    private final List<byte[]> received = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startEchoServer() throws IOException {
+        // Answers every request with an Accept or Accounting-Response of the same identifier
+        server = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        echo = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(4096);
+            try {
+                while (true) {
+                    buffer.clear();
+                    SocketAddress client = server.receive(buffer);
+                    byte[] request = Arrays.copyOf(buffer.array(), buffer.position());
+                    received.add(request);
+                    byte[] response = radiusPacket(request[0] == 1 ? 2 : 5, request[1] & 0xFF, attributes -> { });
+                    server.send(ByteBuffer.wrap(response), client);
+                }
+            } catch (ClosedChannelException e) {
+                // Test over
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        echo.start();
+    }
+
+    @AfterEach
+    void stopEchoServer() throws Exception {
+        server.close();
+        echo.join(1000);
+    }
+
+    @Test
+    void testReplaysRequestsWithRewrittenFields(@TempDir Path tempDir) throws Exception {
+        RadiusReplayService replayService = newService(true);
+        ReplayOptions options = new ReplayOptions();
+        options.setTarget("127.0.0.1:" + ((InetSocketAddress) server.getLocalAddress()).getPort());
+        options.setTiming(ReplayOptions.Timing.RATE);
+        options.setRate(200);
+        options.setRewriteIdentifiers(true);
+        options.setNasIpAddress("10.9.9.9");
+        options.setAcctSessionIdSuffix("-r1");
+        options.setSecret("testing123");
+
+        ReplayReport report = replayService.replay(capture(tempDir), options);
+
+        assertEquals(3, report.getPacketsSent(), "Requests only, not the Access-Accept");
+        assertEquals(3, report.getResponses());
+        assertEquals(0, report.getTimeouts());
+        assertEquals(0, report.getUnmatchedResponses());
+        assertEquals(Map.of("Access-Accept", 1L, "Accounting-Response", 2L), report.getResponseCodes());
+        assertEquals(3, report.getLatency().getCount());
+        assertTrue(report.getPacketsPerSecond() > 0 && report.getPacketsPerSecond() <= 250,
+                "Paced at about 200 pps: " + report.getPacketsPerSecond());
+
+        assertEquals(3, received.size());
+        for (int i = 0; i < 3; i++) {
+            byte[] request = received.get(i);
+            assertEquals(i, request[1], "Renumbered in sending order");
+            String text = new String(request, StandardCharsets.ISO_8859_1);
+            assertTrue(text.contains(new String(new byte[]{4, 6, 10, 9, 9, 9}, StandardCharsets.ISO_8859_1)),
+                    "NAS-IP-Address rewritten");
+        }
+        byte[] accountingStart = received.get(1);
+        assertTrue(new String(accountingStart, StandardCharsets.ISO_8859_1).contains("session-1-r1"));
+        assertArrayEquals(accountingAuthenticator(accountingStart, "testing123"),
+                Arrays.copyOfRange(accountingStart, 4, 20), "Signed again with the secret");
+    }
+
+    @Test
+    void testRefusesTargetsNotAllowed(@TempDir Path tempDir) throws Exception {
+        ReplayOptions options = new ReplayOptions();
+        options.setTarget("192.0.2.1:1812");
+        assertThrows(IllegalArgumentException.class, () -> newService(true).replay(capture(tempDir), options));
+
+        options.setTarget("127.0.0.1:1812");
+        assertThrows(IllegalStateException.class, () -> newService(false).replay(capture(tempDir), options));
+    }
+
+    private static RadiusReplayService newService(boolean enabled) throws IOException {
+        PcapParserService parser = new PcapParserService(RadiusDictionary.loadDefault());
+        return new RadiusReplayService(parser, enabled, List.of("127.0.0.1"), 1000,
+                Duration.ofMinutes(1), Duration.ofSeconds(2));
+    }
+
+    private static MultipartFile capture(Path tempDir) throws IOException {
+        long start = 1_700_000_000_000_000L;
+        Path pcap = tempDir.resolve("replay.pcap");
+        writePcap(pcap.toString(), List.of(
+                frame(start, "10.1.2.3", 40000, "10.0.0.2", 1812, radiusPacket(1, 40, buffer -> {
+                    addStringAttribute(buffer, 1, "alice");
+                    addIntegerAttribute(buffer, 4, 0x0A010203);
+                })),
+                frame(start + 1000, "10.0.0.2", 1812, "10.1.2.3", 40000, radiusPacket(2, 40, buffer -> { })),
+                frame(start + 2000, "10.1.2.3", 40001, "10.0.0.2", 1813, radiusPacket(4, 41, buffer -> {
+                    addIntegerAttribute(buffer, 4, 0x0A010203);
+                    addIntegerAttribute(buffer, 40, 1);
+                    addStringAttribute(buffer, 44, "session-1");
+                })),
+                frame(start + 3000, "10.1.2.3", 40001, "10.0.0.2", 1813, radiusPacket(4, 42, buffer -> {
+                    addIntegerAttribute(buffer, 4, 0x0A010203);
+                    addIntegerAttribute(buffer, 40, 2);
+                    addStringAttribute(buffer, 44, "session-1");
+                }))));
+        return new MockMultipartFile("file", "replay.pcap", "application/octet-stream", Files.readAllBytes(pcap));
+    }
+
+    private static byte[] accountingAuthenticator(byte[] packet, String secret) throws Exception {
+        byte[] copy = packet.clone();
+        Arrays.fill(copy, 4, 20, (byte) 0);
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        md5.update(copy);
+        md5.update(secret.getBytes(StandardCharsets.UTF_8));
+        return md5.digest();
+    }
+}
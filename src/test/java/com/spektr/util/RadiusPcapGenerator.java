@@ -5,6 +5,10 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Utility class to generate fake RADIUS PCAP files for testing.
@@ -29,34 +33,125 @@ public class RadiusPcapGenerator {
     }
 
     public static void generateRadiusPcap(String outputPath) throws IOException {
+        writePcap(outputPath, sampleFrames());
+    }
+
+    /**
+     * Writes arbitrary frames, built with {@link #frame} and {@link #radiusPacket}, as a classic pcap file.
+     */
+    public static void writePcap(String outputPath, List<Frame> frames) throws IOException {
         try (FileOutputStream fos = new FileOutputStream(outputPath)) {
             // Write PCAP global header
             writePcapGlobalHeader(fos);
 
-            long timestamp = Instant.now().getEpochSecond();
+            for (Frame frame : frames) {
+                writePcapRecord(fos, frame);
+            }
+        }
+    }
+
+    /**
+     * Builds an Ethernet/IPv4/UDP frame carrying a RADIUS packet.
+     */
+    public static Frame frame(long timestampMicros, String srcIp, int srcPort, String dstIp, int dstPort, byte[] radiusData) {
+        byte[] ethernetHeader = createEthernetHeader();
+        byte[] ipHeader = createIpHeader(srcIp, dstIp, radiusData.length + 8);
+        byte[] udpHeader = createUdpHeader(srcPort, dstPort, radiusData.length);
+
+        ByteBuffer frame = ByteBuffer.allocate(ethernetHeader.length + ipHeader.length + udpHeader.length + radiusData.length);
+        frame.put(ethernetHeader);
+        frame.put(ipHeader);
+        frame.put(udpHeader);
+        frame.put(radiusData);
+        return new Frame(timestampMicros, frame.array());
+    }
+
+    /**
+     * Copy of a frame in another IP datagram, as a retransmission of its packet would be sent.
+     */
+    public static Frame withIpIdentification(Frame frame, int identification) {
+        byte[] data = frame.data.clone();
+        data[18] = (byte) (identification >> 8);
+        data[19] = (byte) identification;
+        data[24] = 0x00; data[25] = 0x00;
+        int checksum = calculateChecksum(Arrays.copyOfRange(data, 14, 34));
+        data[24] = (byte) (checksum >> 8);
+        data[25] = (byte) (checksum & 0xFF);
+        return new Frame(frame.timestampMicros, data);
+    }
 
-            // Generate different RADIUS packets
-            writeRadiusPacket(fos, timestamp, 1, "192.168.1.100", "192.168.1.1",
-                             createAccessRequestPacket());
+    /**
+     * Copy of a frame captured at another time.
+     */
+    public static Frame at(Frame frame, long timestampMicros) {
+        return new Frame(timestampMicros, frame.data);
+    }
 
-            writeRadiusPacket(fos, timestamp + 1, 2, "192.168.1.100", "192.168.1.1",
-                             createAccountingStartPacket());
+    /**
+     * Builds a RADIUS packet with a zero authenticator; {@code attributes} writes the attributes
+     * with the add*Attribute helpers.
+     */
+    public static byte[] radiusPacket(int code, int identifier, Consumer<ByteBuffer> attributes) {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        buffer.put((byte) code);
+        buffer.put((byte) identifier);
+        buffer.putShort((short) 0);
+        buffer.put(new byte[16]);
+        attributes.accept(buffer);
 
-            writeRadiusPacket(fos, timestamp + 30, 3, "192.168.1.100", "192.168.1.1",
-                             createAccountingUpdatePacket());
+        int length = buffer.position();
+        buffer.putShort(2, (short) length);
+        byte[] packet = new byte[length];
+        buffer.flip();
+        buffer.get(packet);
+        return packet;
+    }
 
-            writeRadiusPacket(fos, timestamp + 60, 4, "192.168.1.100", "192.168.1.1",
-                             createAccountingStopPacket());
+    /**
+     * Writes the same packets as {@link #generateRadiusPcap(String)} in pcapng format,
+     * with nanosecond timestamp resolution on the capture interface.
+     */
+    public static void generateRadiusPcapNg(String outputPath) throws IOException {
+        writePcapNg(outputPath, sampleFrames());
+    }
 
-            // Add more packets from different source IP
-            writeRadiusPacket(fos, timestamp + 5, 5, "192.168.1.101", "192.168.1.1",
-                             createAccessRequestPacket("user2@example.com"));
+    public static void writePcapNg(String outputPath, List<Frame> frames) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
+            writeSectionHeaderBlock(fos);
+            writeInterfaceDescriptionBlock(fos);
 
-            writeRadiusPacket(fos, timestamp + 6, 6, "192.168.1.101", "192.168.1.1",
-                             createAccountingStartPacket("user2@example.com"));
+            for (Frame frame : frames) {
+                writeEnhancedPacketBlock(fos, frame);
+            }
         }
     }
 
+    private static List<Frame> sampleFrames() {
+        long timestamp = Instant.now().getEpochSecond();
+        List<Frame> frames = new ArrayList<>();
+
+        // Generate different RADIUS packets
+        frames.add(createFrame(timestamp, "192.168.1.100", "192.168.1.1",
+                         createAccessRequestPacket()));
+
+        frames.add(createFrame(timestamp + 1, "192.168.1.100", "192.168.1.1",
+                         createAccountingStartPacket()));
+
+        frames.add(createFrame(timestamp + 30, "192.168.1.100", "192.168.1.1",
+                         createAccountingUpdatePacket()));
+
+        frames.add(createFrame(timestamp + 60, "192.168.1.100", "192.168.1.1",
+                         createAccountingStopPacket()));
+
+        // Add more packets from different source IP
+        frames.add(createFrame(timestamp + 5, "192.168.1.101", "192.168.1.1",
+                         createAccessRequestPacket("user2@example.com")));
+
+        frames.add(createFrame(timestamp + 6, "192.168.1.101", "192.168.1.1",
+                         createAccountingStartPacket("user2@example.com")));
+        return frames;
+    }
+
     private static void writePcapGlobalHeader(FileOutputStream fos) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocate(24);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -72,30 +167,88 @@ public class RadiusPcapGenerator {
         fos.write(buffer.array());
     }
 
-    private static void writeRadiusPacket(FileOutputStream fos, long timestamp, int id,
-                                          String srcIp, String dstIp, byte[] radiusData) throws IOException {
-        // Build Ethernet + IP + UDP + RADIUS packet
-        byte[] ethernetHeader = createEthernetHeader();
-        byte[] ipHeader = createIpHeader(srcIp, dstIp, radiusData.length + 8); // +8 for UDP header
-        byte[] udpHeader = createUdpHeader(12345, 1812, radiusData.length); // src port 12345, dst port 1812 (RADIUS auth)
-
-        // Calculate total packet size
-        int packetSize = ethernetHeader.length + ipHeader.length + udpHeader.length + radiusData.length;
+    private static Frame createFrame(long timestamp, String srcIp, String dstIp, byte[] radiusData) {
+        // src port 12345, dst port 1812 (RADIUS auth)
+        return frame(timestamp * 1_000_000L, srcIp, 12345, dstIp, 1812, radiusData);
+    }
 
+    private static void writePcapRecord(FileOutputStream fos, Frame frame) throws IOException {
         // Write PCAP packet header (16 bytes)
         ByteBuffer packetHeader = ByteBuffer.allocate(16);
         packetHeader.order(ByteOrder.LITTLE_ENDIAN);
-        packetHeader.putInt((int) timestamp);        // timestamp seconds
-        packetHeader.putInt(0);                      // timestamp microseconds
-        packetHeader.putInt(packetSize);             // captured length
-        packetHeader.putInt(packetSize);             // original length
+        packetHeader.putInt((int) (frame.timestampMicros / 1_000_000L));  // timestamp seconds
+        packetHeader.putInt((int) (frame.timestampMicros % 1_000_000L));  // timestamp microseconds
+        packetHeader.putInt(frame.data.length);      // captured length
+        packetHeader.putInt(frame.data.length);      // original length
         fos.write(packetHeader.array());
 
         // Write packet data
-        fos.write(ethernetHeader);
-        fos.write(ipHeader);
-        fos.write(udpHeader);
-        fos.write(radiusData);
+        fos.write(frame.data);
+    }
+
+    private static void writeSectionHeaderBlock(FileOutputStream fos) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(28);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(0x0A0D0D0A);            // block type
+        block.putInt(28);                    // block total length
+        block.putInt(0x1A2B3C4D);            // byte-order magic
+        block.putShort((short) 1);           // version major
+        block.putShort((short) 0);           // version minor
+        block.putLong(-1L);                  // section length (unspecified)
+        block.putInt(28);                    // block total length
+        fos.write(block.array());
+    }
+
+    private static void writeInterfaceDescriptionBlock(FileOutputStream fos) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(32);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(0x00000001);            // block type
+        block.putInt(32);                    // block total length
+        block.putShort((short) LINKTYPE_ETHERNET);
+        block.putShort((short) 0);           // reserved
+        block.putInt(SNAPLEN);
+        block.putShort((short) 9);           // if_tsresol
+        block.putShort((short) 1);
+        block.put((byte) 9);                 // nanoseconds
+        block.put(new byte[3]);              // padding
+        block.putShort((short) 0);           // opt_endofopt
+        block.putShort((short) 0);
+        block.putInt(32);                    // block total length
+        fos.write(block.array());
+    }
+
+    private static void writeEnhancedPacketBlock(FileOutputStream fos, Frame frame) throws IOException {
+        int padded = (frame.data.length + 3) & ~3;
+        int totalLength = 32 + padded;
+        long nanos = frame.timestampMicros * 1_000L;
+
+        ByteBuffer block = ByteBuffer.allocate(totalLength);
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(0x00000006);            // block type
+        block.putInt(totalLength);
+        block.putInt(0);                     // interface id
+        block.putInt((int) (nanos >>> 32));  // timestamp (high)
+        block.putInt((int) nanos);           // timestamp (low)
+        block.putInt(frame.data.length);     // captured length
+        block.putInt(frame.data.length);     // original length
+        block.put(frame.data);
+        block.position(28 + padded);
+        block.putInt(totalLength);
+        fos.write(block.array());
+    }
+
+    public static class Frame {
+        final long timestampMicros;
+        final byte[] data;
+
+        Frame(long timestampMicros, byte[] data) {
+            this.timestampMicros = timestampMicros;
+            this.data = data;
+        }
+
+        public byte[] getData() {
+            return data.clone();
+        }
     }
 
     private static byte[] createEthernetHeader() {
@@ -357,20 +510,20 @@ public class RadiusPcapGenerator {
         return packet;
     }
 
-    private static void addStringAttribute(ByteBuffer buffer, int type, String value) {
+    public static void addStringAttribute(ByteBuffer buffer, int type, String value) {
         byte[] bytes = value.getBytes();
         buffer.put((byte)type);
         buffer.put((byte)(2 + bytes.length));
         buffer.put(bytes);
     }
 
-    private static void addIntegerAttribute(ByteBuffer buffer, int type, int value) {
+    public static void addIntegerAttribute(ByteBuffer buffer, int type, int value) {
         buffer.put((byte)type);
         buffer.put((byte)6); // Type(1) + Length(1) + Integer(4) = 6
         buffer.putInt(value);
     }
 
-    private static void addIpAttribute(ByteBuffer buffer, int type, String ipAddress) {
+    public static void addIpAttribute(ByteBuffer buffer, int type, String ipAddress) {
         String[] parts = ipAddress.split("\\.");
         buffer.put((byte)type);
         buffer.put((byte)6); // Type(1) + Length(1) + IP(4) = 6
@@ -378,4 +531,14 @@ public class RadiusPcapGenerator {
             buffer.put((byte)Integer.parseInt(part));
         }
     }
+
+    public static void addVendorAttribute(ByteBuffer buffer, int vendorId, int vendorType, String value) {
+        byte[] bytes = value.getBytes();
+        buffer.put((byte)26);
+        buffer.put((byte)(8 + bytes.length)); // Type + Length + Vendor-Id(4) + Vendor type + Vendor length
+        buffer.putInt(vendorId);
+        buffer.put((byte)vendorType);
+        buffer.put((byte)(2 + bytes.length));
+        buffer.put(bytes);
+    }
 }